@@ -0,0 +1,531 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.ContentEncodingFK;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+
+/**
+ * Local archive of the records consumed by a connector, so that catching up, or
+ * replaying the topic, reads local files instead of the Kafka broker.
+ * <p>
+ * Each partition of the topic has a directory of segment files. A segment is a
+ * sequence of blocks; each block holds consecutive records, compressed with LZ4,
+ * behind a header with the first and last offsets, the sizes and a CRC. The blocks
+ * of a partition are indexed in memory by offset when the archive is opened, from
+ * the block headers. Segments are memory-mapped for replay.
+ * <p>
+ * Records are added as they are received. The archive is never forced to disk
+ * ({@code FileChannel.force} is not called), so after a crash of the machine the
+ * most recent blocks may be missing or damaged; the topic is the record of the
+ * data.
+ * <p>
+ * When the archive is opened, only the blocks of the last segment of each
+ * partition are checked against their CRC, and that segment is truncated at the
+ * first bad block. Blocks of earlier segments are only checked to have a whole
+ * header and body; their CRC is checked when they are replayed, and a replay
+ * stops at a bad block.
+ * <p>
+ * A record that does not follow on from the last record archived (after a seek,
+ * or a message that was not received as bytes) starts a new block, and a replay
+ * stops at such a gap.
+ */
+public class FKArchive {
+
+    // Per topic; one connector per topic.
+    private static final Map<String, FKArchive> archives = new ConcurrentHashMap<>();
+
+    /** The archive for the connector, opened on first use; null if the connector does not have one. */
+    public static FKArchive get(KConnectorDesc conn) {
+        String directory = conn.getArchiveDirectory();
+        if ( directory == null )
+            return null;
+        return archives.computeIfAbsent(conn.getTopic(), topic->new FKArchive(Path.of(directory), topic));
+    }
+
+    /** Write and close the archive for a topic, if it is open. */
+    public static void close(String topic) {
+        FKArchive archive = archives.remove(topic);
+        if ( archive != null )
+            archive.close();
+    }
+
+    // Uncompressed size of a block, before it is written.
+    private static final int blockBytes = 1024*1024;
+    // A block with fewer bytes is written after this time.
+    private static final long blockMaxMillis = 1000;
+    // Size of a segment file, after which a new one is started.
+    private static final long segmentBytes = 256L*1024*1024;
+
+    private static final String encoding = ContentEncodingFK.LZ4;
+    private static final String segmentSuffix = ".seg";
+    // "FKAR"
+    private static final int MAGIC = 0x464B4152;
+    // Magic, compressed length, uncompressed length, record count, first offset, last offset, CRC of the compressed bytes.
+    private static final int headerLength = 4 + 4 + 4 + 4 + 8 + 8 + 4;
+
+    private final Path directory;
+    private final String topic;
+    private final Map<Integer, PartitionLog> partitions = new HashMap<>();
+
+    /** Archive in {@code directory/topic}. */
+    public FKArchive(Path directory, String topic) {
+        this.directory = directory.resolve(topic);
+        this.topic = topic;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /** Add records received from the topic. */
+    public synchronized void append(ConsumerRecords<String, RequestFK> cRecords) {
+        cRecords.forEach(this::append1);
+        writeOldBlocks();
+    }
+
+    /** Add records received from the topic. */
+    public synchronized void append(List<ConsumerRecord<String, RequestFK>> records) {
+        records.forEach(this::append1);
+        writeOldBlocks();
+    }
+
+    private void append1(ConsumerRecord<String, RequestFK> cRec) {
+        if ( cRec.topic().equals(topic) )
+            partition(cRec.partition()).append(cRec);
+    }
+
+    private void writeOldBlocks() {
+        long now = System.currentTimeMillis();
+        for ( PartitionLog log : partitions.values() ) {
+            if ( log.blockCount > 0 && now - log.blockStartMillis >= blockMaxMillis )
+                log.writeBlock();
+        }
+    }
+
+    /** Write all the records added. */
+    public synchronized void flush() {
+        partitions.values().forEach(PartitionLog::writeBlock);
+    }
+
+    /** The offset of the first record archived for the partition, or -1 if there is none. */
+    public synchronized long firstOffset(int partition) {
+        PartitionLog log = partition(partition);
+        if ( ! log.blocks.isEmpty() )
+            return log.blocks.get(0).first();
+        return log.blockCount > 0 ? log.blockFirst : -1;
+    }
+
+    /** The offset of the last record archived for the partition, or -1 if there is none. */
+    public synchronized long lastOffset(int partition) {
+        return partition(partition).lastOffset;
+    }
+
+    /**
+     * Pass the archived records of the partition, from offset {@code from}, to the
+     * handler, a block at a time. The replay stops at the end of the archive or at a
+     * gap in the offsets. Return the offset after the last record passed to the
+     * handler, or {@code from} if the archive does not have the record at
+     * {@code from}.
+     */
+    public synchronized long replay(int partition, long from, Consumer<List<ConsumerRecord<String, RequestFK>>> handler) {
+        PartitionLog log = partition(partition);
+        log.writeBlock();
+        int idx = log.findBlock(from);
+        if ( idx < 0 )
+            return from;
+        long next = from;
+        // Segments are mapped once for the replay; the mapping goes when the buffer is no longer used.
+        Map<Path, MappedByteBuffer> mapped = new HashMap<>();
+        for ( int i = idx ; i < log.blocks.size() ; i++ ) {
+            Block block = log.blocks.get(i);
+            if ( block.first() > next )
+                // Gap.
+                break;
+            MappedByteBuffer segment = mapped.computeIfAbsent(block.segment(), FKArchive::map);
+            List<ConsumerRecord<String, RequestFK>> records = log.readBlock(segment, block, next);
+            if ( records == null ) {
+                FmtLog.warn(LOG, "[%s] Archive: bad block at offset %d in %s", topic, block.first(), block.segment());
+                break;
+            }
+            handler.accept(records);
+            next = block.last() + 1;
+        }
+        return next;
+    }
+
+    /** Write and close the archive. */
+    public synchronized void close() {
+        partitions.values().forEach(PartitionLog::close);
+        partitions.clear();
+    }
+
+    private PartitionLog partition(int partition) {
+        return partitions.computeIfAbsent(partition, p->new PartitionLog(directory.resolve("p"+p), p));
+    }
+
+    private static MappedByteBuffer map(Path segment) {
+        try ( FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ) ) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int)crc.getValue();
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return (int)crc.getValue();
+    }
+
+    /** A block of a segment file; {@code position} is the start of the header. */
+    private record Block(Path segment, long position, int length, int rawLength, int count, long first, long last, int crc) {}
+
+    /** The segments of one partition. */
+    private class PartitionLog {
+        private final Path dir;
+        private final int partition;
+        // In offset order.
+        private final List<Block> blocks = new ArrayList<>();
+        // Offset of the last record archived, including the block being built.
+        private long lastOffset = -1;
+
+        // Segment being written.
+        private Path segment = null;
+        private FileChannel segmentChannel = null;
+        private long segmentSize = 0;
+
+        // Block being built.
+        private final ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream(blockBytes + blockBytes/8);
+        private final DataOutputStream blockOut = new DataOutputStream(blockBuffer);
+        private int blockCount = 0;
+        private long blockFirst = -1;
+        private long blockStartMillis = -1;
+
+        PartitionLog(Path dir, int partition) {
+            this.dir = dir;
+            this.partition = partition;
+            try {
+                Files.createDirectories(dir);
+                List<Path> segments;
+                try ( Stream<Path> files = Files.list(dir) ) {
+                    segments = files.filter(f->f.getFileName().toString().endsWith(segmentSuffix)).sorted().toList();
+                }
+                for ( int i = 0 ; i < segments.size() ; i++ )
+                    scan(segments.get(i), i == segments.size()-1);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            if ( ! blocks.isEmpty() ) {
+                lastOffset = blocks.get(blocks.size()-1).last();
+                FmtLog.info(LOG, "[%s] Archive partition %d: offsets %d to %d", topic, partition, blocks.get(0).first(), lastOffset);
+            }
+        }
+
+        /**
+         * Read the block headers of a segment. The blocks of the last segment are
+         * checked, and the segment is truncated at the first bad one.
+         */
+        private void scan(Path file, boolean last) throws IOException {
+            try ( FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE) ) {
+                long size = channel.size();
+                long position = 0;
+                ByteBuffer header = ByteBuffer.allocate(headerLength);
+                while ( position < size ) {
+                    Block block = null;
+                    if ( size - position >= headerLength ) {
+                        header.clear();
+                        channel.read(header, position);
+                        header.flip();
+                        block = header(file, position, header);
+                    }
+                    if ( block != null && position + headerLength + block.length() > size )
+                        block = null;
+                    if ( block != null && last ) {
+                        ByteBuffer data = ByteBuffer.allocate(block.length());
+                        channel.read(data, position + headerLength);
+                        data.flip();
+                        if ( crc(data) != block.crc() )
+                            block = null;
+                    }
+                    if ( block == null ) {
+                        FmtLog.warn(LOG, "[%s] Archive: truncate %s at %d (of %d bytes)", topic, file, position, size);
+                        channel.truncate(position);
+                        break;
+                    }
+                    blocks.add(block);
+                    position += headerLength + block.length();
+                }
+            }
+        }
+
+        /** Decode a block header, or return null if it is not valid. */
+        private Block header(Path file, long position, ByteBuffer header) {
+            if ( header.getInt() != MAGIC )
+                return null;
+            int length = header.getInt();
+            int rawLength = header.getInt();
+            int count = header.getInt();
+            long first = header.getLong();
+            long last = header.getLong();
+            int crc = header.getInt();
+            if ( length < 0 || rawLength < 0 || count <= 0 || last < first )
+                return null;
+            return new Block(file, position, length, rawLength, count, first, last, crc);
+        }
+
+        /** Index of the block containing offset, or -1. */
+        int findBlock(long offset) {
+            int lo = 0;
+            int hi = blocks.size()-1;
+            while ( lo <= hi ) {
+                int mid = (lo + hi) >>> 1;
+                Block block = blocks.get(mid);
+                if ( offset < block.first() )
+                    hi = mid-1;
+                else if ( offset > block.last() )
+                    lo = mid+1;
+                else
+                    return mid;
+            }
+            return -1;
+        }
+
+        void append(ConsumerRecord<String, RequestFK> cRec) {
+            long offset = cRec.offset();
+            if ( offset <= lastOffset )
+                // Already archived (after a rewind).
+                return;
+            RequestFK request = cRec.value();
+            if ( lastOffset >= 0 && offset != lastOffset + 1 )
+                // Gap.
+                writeBlock();
+            lastOffset = offset;
+            if ( request == null || ! request.hasBytes() ) {
+                // Can not be archived: leave a gap.
+                writeBlock();
+                return;
+            }
+            try {
+                if ( blockCount == 0 ) {
+                    blockFirst = offset;
+                    blockStartMillis = System.currentTimeMillis();
+                }
+                writeRecord(blockOut, cRec);
+                blockCount++;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            if ( blockBuffer.size() >= blockBytes )
+                writeBlock();
+        }
+
+        /** Compress and write the block being built. */
+        void writeBlock() {
+            if ( blockCount == 0 )
+                return;
+            byte[] raw = blockBuffer.toByteArray();
+            byte[] compressed = ContentEncodingFK.encode(encoding, raw);
+            Block block = new Block(null, 0, compressed.length, raw.length, blockCount, blockFirst, lastOffsetInBlock(), crc(compressed));
+            blockBuffer.reset();
+            blockCount = 0;
+            blockFirst = -1;
+            blockStartMillis = -1;
+            try {
+                if ( segmentChannel == null || segmentSize + headerLength + compressed.length > segmentBytes )
+                    startSegment(block.first());
+                ByteBuffer header = ByteBuffer.allocate(headerLength);
+                header.putInt(MAGIC).putInt(block.length()).putInt(block.rawLength()).putInt(block.count())
+                      .putLong(block.first()).putLong(block.last()).putInt(block.crc());
+                header.flip();
+                long position = segmentSize;
+                writeFully(header, position);
+                writeFully(ByteBuffer.wrap(compressed), position + headerLength);
+                segmentSize = position + headerLength + compressed.length;
+                blocks.add(new Block(segment, position, block.length(), block.rawLength(), block.count(), block.first(), block.last(), block.crc()));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        // The block only holds consecutive records, and the last one is the last archived unless it could not be archived.
+        private long lastOffsetInBlock() {
+            return blockFirst + blockCount - 1;
+        }
+
+        private void writeFully(ByteBuffer bytes, long position) throws IOException {
+            while ( bytes.hasRemaining() )
+                position += segmentChannel.write(bytes, position);
+        }
+
+        private void startSegment(long firstOffset) throws IOException {
+            closeSegment();
+            // Continue with the last segment if there is space.
+            if ( ! blocks.isEmpty() ) {
+                Path lastSegment = blocks.get(blocks.size()-1).segment();
+                long size = Files.size(lastSegment);
+                if ( segment == null && size < segmentBytes ) {
+                    openSegment(lastSegment, size);
+                    return;
+                }
+            }
+            openSegment(dir.resolve(String.format("%020d%s", firstOffset, segmentSuffix)), 0);
+        }
+
+        private void openSegment(Path file, long size) throws IOException {
+            segment = file;
+            segmentChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segmentSize = size;
+        }
+
+        private void closeSegment() throws IOException {
+            if ( segmentChannel != null )
+                segmentChannel.close();
+            segmentChannel = null;
+        }
+
+        /** The records of a block, from offset {@code from}, or null if the block is bad. */
+        List<ConsumerRecord<String, RequestFK>> readBlock(ByteBuffer segmentBytes, Block block, long from) {
+            ByteBuffer data = segmentBytes.duplicate();
+            data.position(Math.toIntExact(block.position() + headerLength));
+            data.limit(Math.toIntExact(block.position() + headerLength + block.length()));
+            data = data.slice();
+            if ( crc(data) != block.crc() )
+                return null;
+            byte[] raw;
+            try ( InputStream in = ContentEncodingFK.decode(encoding, data) ) {
+                raw = in.readNBytes(block.rawLength());
+            } catch (IOException ex) {
+                return null;
+            }
+            if ( raw.length != block.rawLength() )
+                return null;
+            ByteBuffer bb = ByteBuffer.wrap(raw);
+            List<ConsumerRecord<String, RequestFK>> records = new ArrayList<>(block.count());
+            for ( int i = 0 ; i < block.count() ; i++ ) {
+                ConsumerRecord<String, RequestFK> cRec = readRecord(bb, raw);
+                if ( cRec.offset() >= from )
+                    records.add(cRec);
+            }
+            return records;
+        }
+
+        // Record: offset, timestamp, key, headers (count, then name and value), body.
+        private void writeRecord(DataOutputStream out, ConsumerRecord<String, RequestFK> cRec) throws IOException {
+            RequestFK request = cRec.value();
+            out.writeLong(cRec.offset());
+            out.writeLong(cRec.timestamp());
+            writeString(out, cRec.key());
+            Map<String, String> headers = request.getHeaders();
+            out.writeInt(headers.size());
+            for ( Map.Entry<String, String> e : headers.entrySet() ) {
+                writeString(out, e.getKey());
+                writeString(out, e.getValue());
+            }
+            ByteBuffer body = request.getByteBuffer();
+            out.writeInt(body.remaining());
+            if ( body.hasArray() )
+                out.write(body.array(), body.arrayOffset()+body.position(), body.remaining());
+            else {
+                byte[] bytes = new byte[body.remaining()];
+                body.get(bytes);
+                out.write(bytes);
+            }
+        }
+
+        private ConsumerRecord<String, RequestFK> readRecord(ByteBuffer bb, byte[] raw) {
+            long offset = bb.getLong();
+            long timestamp = bb.getLong();
+            String key = readString(bb);
+            int numHeaders = bb.getInt();
+            Map<String, String> headers = new LinkedHashMap<>();
+            for ( int i = 0 ; i < numHeaders ; i++ )
+                headers.put(readString(bb), readString(bb));
+            int length = bb.getInt();
+            // The body is part of the block array: no copy.
+            RequestFK request = new RequestFK(topic, headers, raw, bb.position(), length);
+            bb.position(bb.position() + length);
+            return new ConsumerRecord<>(topic, partition, offset, timestamp, TimestampType.CREATE_TIME,
+                                        -1, length, key, request, new RecordHeaders(), Optional.empty());
+        }
+
+        private void writeString(DataOutputStream out, String string) throws IOException {
+            if ( string == null ) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private String readString(ByteBuffer bb) {
+            int length = bb.getInt();
+            if ( length < 0 )
+                return null;
+            String string = new String(bb.array(), bb.position(), length, StandardCharsets.UTF_8);
+            bb.position(bb.position() + length);
+            return string;
+        }
+
+        void close() {
+            try {
+                writeBlock();
+                closeSegment();
+            } catch (IOException | UncheckedIOException ex) {
+                FmtLog.warn(LOG, "[%s] Archive: failed to close partition %d: %s", topic, partition, ex.getMessage());
+            }
+        }
+    }
+}
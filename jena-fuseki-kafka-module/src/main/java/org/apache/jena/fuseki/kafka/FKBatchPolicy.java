@@ -0,0 +1,138 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * Policy for how {@link FKBatchProcessor} groups Kafka records into transactions.
+ * <p>
+ * With no settings, the transaction boundary is whatever one {@code consumer.poll}
+ * returns.
+ * <p>
+ * If there is a linger time, records from several polls are accumulated until the
+ * maximum record count, the maximum payload size or the linger time is reached,
+ * whichever comes first.
+ * <p>
+ * Whatever has been received, a transaction is ended when it reaches the maximum
+ * record count, the maximum payload size or the maximum transaction time. The
+ * remaining records go into the next transaction.
+ * <p>
+ * A value of zero or less means "no limit".
+ */
+public class FKBatchPolicy {
+
+    private static final FKBatchPolicy perPoll = new FKBatchPolicy(-1, -1, -1, -1);
+
+    /** One transaction per {@code consumer.poll}. */
+    public static FKBatchPolicy perPoll() {
+        return perPoll;
+    }
+
+    public static FKBatchPolicy create(int maxRecords, long maxBytes, long lingerMillis, long maxTransactionMillis) {
+        if ( maxRecords <= 0 && maxBytes <= 0 && lingerMillis <= 0 && maxTransactionMillis <= 0 )
+            return perPoll;
+        return new FKBatchPolicy(maxRecords, maxBytes, lingerMillis, maxTransactionMillis);
+    }
+
+    /** The batch policy from the connector settings. */
+    public static FKBatchPolicy create(KConnectorDesc conn) {
+        return create(conn.getBatchMaxRecords(), conn.getBatchMaxBytes(),
+                      conn.getBatchLingerMillis(), conn.getMaxTransactionMillis());
+    }
+
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long lingerNanos;
+    private final long maxTransactionNanos;
+
+    private FKBatchPolicy(int maxRecords, long maxBytes, long lingerMillis, long maxTransactionMillis) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.lingerNanos = lingerMillis <= 0 ? -1 : Duration.ofMillis(lingerMillis).toNanos();
+        this.maxTransactionNanos = maxTransactionMillis <= 0 ? -1 : Duration.ofMillis(maxTransactionMillis).toNanos();
+    }
+
+    /** Whether records are accumulated across polls. */
+    public boolean lingers() {
+        return lingerNanos > 0;
+    }
+
+    /**
+     * Whether accumulated records should now be processed.
+     * {@code startNanos} is when the first of the accumulated records arrived.
+     */
+    /*package*/ boolean flushNow(int count, long bytes, long startNanos) {
+        if ( ! lingers() )
+            return true;
+        if ( maxRecords > 0 && count >= maxRecords )
+            return true;
+        if ( maxBytes > 0 && bytes >= maxBytes )
+            return true;
+        return System.nanoTime() - startNanos >= lingerNanos;
+    }
+
+    /** Time left to wait for more records before the accumulated records are processed. */
+    /*package*/ Duration lingerRemaining(long startNanos) {
+        long remaining = lingerNanos - (System.nanoTime() - startNanos);
+        return remaining <= 0 ? Duration.ZERO : Duration.ofNanos(remaining);
+    }
+
+    /**
+     * The end (exclusive) of the transaction starting at {@code start} based on
+     * record count and payload size. There is always at least one record.
+     */
+    /*package*/ int chunkEnd(List<ConsumerRecord<String, RequestFK>> records, int start) {
+        int end = start;
+        long bytes = 0;
+        while ( end < records.size() ) {
+            if ( maxRecords > 0 && end - start >= maxRecords )
+                break;
+            long size = Math.max(0, records.get(end).value().getByteCount());
+            if ( maxBytes > 0 && end > start && bytes + size > maxBytes )
+                break;
+            bytes += size;
+            end++;
+        }
+        // Do not split a message sent in chunks.
+        while ( end < records.size() && FKChunkedInput.isContinuation(records.get(end).value()) )
+            end++;
+        return end;
+    }
+
+    /** Time, in the {@link System#nanoTime} scale, by which a transaction started at {@code startNanos} should end. */
+    /*package*/ long transactionDeadline(long startNanos) {
+        if ( maxTransactionNanos <= 0 )
+            return Long.MAX_VALUE;
+        return startNanos + maxTransactionNanos;
+    }
+
+    @Override
+    public String toString() {
+        if ( this == perPoll )
+            return "FKBatchPolicy[per poll]";
+        return String.format("FKBatchPolicy[records=%d, bytes=%d, linger=%dms, txn=%dms]",
+                             maxRecords, maxBytes,
+                             Duration.ofNanos(Math.max(0, lingerNanos)).toMillis(),
+                             Duration.ofNanos(Math.max(0, maxTransactionNanos)).toMillis());
+    }
+}
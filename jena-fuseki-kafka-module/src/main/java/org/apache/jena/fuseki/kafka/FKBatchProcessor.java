@@ -17,7 +17,20 @@
 package org.apache.jena.fuseki.kafka;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
 
 import org.apache.jena.atlas.lib.Timer;
 import org.apache.jena.atlas.logging.FmtLog;
@@ -25,16 +38,43 @@ import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.kafka.FusekiKafka;
 import org.apache.jena.kafka.RequestFK;
 import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.kafka.common.ParseFK;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.system.Txn;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.errors.WakeupException;
 import org.slf4j.Logger;
 
 /**
  * The engine for the Kafka-Fuseki connector.
  * <p>
  * This reads the Kafka topic and sends batches to a {@link FKProcessor}.
+ * How records are grouped into batches is controlled by a {@link FKBatchPolicy}.
+ * <p>
+ * If the {@link FKProcessor} is a {@link FKProcessorPrepare} and there is a parse
+ * executor ({@link #setParseAhead}), records are parsed ahead on worker threads
+ * while this thread applies them in Kafka order. Otherwise, if the
+ * {@link FKProcessor} is a {@link FKProcessorCoalesce}, each run of consecutive
+ * SPARQL Update records, or RDF Patch records, in a batch is passed to it together.
+ * <p>
+ * If there is a partition lane executor ({@link #setPartitionLanes}), the records
+ * from each partition of the topic are processed on their own lane, in offset
+ * order within the partition, and the offset for each partition is recorded in the
+ * {@link DataState}. Lanes run in parallel; with a {@link Transactional}, the
+ * batch write transactions of the lanes take turns on the dataset.
+ * <p>
+ * A large message may be sent as several consecutive records ("chunks"). It is
+ * passed to the {@link FKProcessor} as one request with a body that is read from the
+ * chunks as it is parsed, receiving more records if necessary (see {@link FKChunkedInput}).
+ * All the chunks of the message must be on the same partition. When the records are
+ * received elsewhere ({@link #dispatch}), a message that is not complete is held back
+ * until the rest of its chunks arrive. Chunks that continue a message whose first chunk
+ * has not been received are skipped.
  */
 public class FKBatchProcessor {
 
@@ -50,6 +90,49 @@ public class FKBatchProcessor {
 
     private final Transactional transactional;
     private final FKProcessor   fkProcessor;
+    private final FKBatchPolicy batchPolicy;
+
+    // Records received, waiting to be processed, and their rewind generation.
+    private final List<ConsumerRecord<String, RequestFK>> pending = new ArrayList<>();
+    private long pendingGeneration = 0;
+    private long pendingBytes = 0;
+    private long pendingStartNanos = -1;
+
+    // Parse-ahead. Only used if the FKProcessor is a FKProcessorPrepare.
+    private ExecutorService parseExecutor = null;
+    private int parseWindow = 0;
+
+    // Partition lanes. Used when consuming all partitions of a topic.
+    private ExecutorService laneExecutor = null;
+    // Held while a batch is processed, so that lanes call the FKProcessor one batch at a time.
+    private final Object processorLock = new Object();
+
+    // Dataset to record offsets in, in the batch transaction. Null for "not used".
+    private DatasetGraph offsetDataset = null;
+
+    // Metrics for the connector.
+    private FKMetrics metrics = FKMetrics.unregistered();
+
+    // The control of the connector, or null. Records of an earlier rewind generation are not applied.
+    private FKControl control = null;
+
+    // Message of the last failure, cleared when a batch succeeds.
+    private volatile String lastFailure = null;
+
+    // Retrying failed batches: attempts so far, by partition, of the first record not applied.
+    private record Retry(long offset, int attempts) {}
+    private final Map<Integer, Retry> retries = new HashMap<>();
+    private int retryLimit = FKConst.batchRetryLimit;
+    private Duration retryBackoff = FKConst.batchRetryBackoff;
+
+    // Records received while reading a message sent in chunks that are not part of that message.
+    private final Deque<ConsumerRecord<String, RequestFK>> carryOver = new ArrayDeque<>();
+
+    // Chunked messages, by partition, not yet complete when records are passed to dispatch.
+    private final Map<Integer, List<ConsumerRecord<String, RequestFK>>> incompleteChunks = new HashMap<>();
+
+    // Chunk id of the last run of chunks skipped, by partition, so each run is logged once.
+    private final Map<Integer, String> skippedChunkIds = new ConcurrentHashMap<>();
 
     /**
      * Batch processor that applies a {@link FKProcessor} to each item in the batch.
@@ -66,44 +149,148 @@ public class FKBatchProcessor {
      * If the transactional is null, no transaction is added and the processor is in control.
      */
     public FKBatchProcessor(Transactional transactional, FKProcessor fkProcessor) {
+        this(transactional, fkProcessor, FKBatchPolicy.perPoll());
+    }
+
+    /**
+     * Batch processor, with a {@link FKBatchPolicy} for grouping records into batches.
+     * See {@link #FKBatchProcessor(Transactional, FKProcessor)}.
+     */
+    public FKBatchProcessor(Transactional transactional, FKProcessor fkProcessor, FKBatchPolicy batchPolicy) {
         this.transactional = transactional;
         this.fkProcessor = fkProcessor;
+        this.batchPolicy = Objects.requireNonNull(batchPolicy);
+        fkProcessor.setMetrics(metrics);
+    }
+
+    public FKBatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
+    /**
+     * Parse records ahead of applying them, using threads from {@code executor}.
+     * At most {@code window} records are parsed ahead of the record being applied.
+     * This has no effect unless the {@link FKProcessor} is a {@link FKProcessorPrepare}.
+     */
+    public void setParseAhead(ExecutorService executor, int window) {
+        if ( executor != null && window <= 0 )
+            throw new IllegalArgumentException("Parse-ahead window must be positive: "+window);
+        this.parseExecutor = executor;
+        this.parseWindow = window;
+    }
+
+    /**
+     * Process the records of each partition on a separate lane, using threads from
+     * {@code executor}. Offsets are recorded per partition.
+     * <p>
+     * The {@link FKProcessor} need not be thread-safe: the lanes call it one batch
+     * at a time. Lanes overlap in receiving, grouping and parsing ahead.
+     */
+    public void setPartitionLanes(ExecutorService executor) {
+        this.laneExecutor = executor;
+    }
+
+    /**
+     * Record the offset in {@code dsg}, inside the write transaction of each batch
+     * (see {@link FKDatasetOffsets}). {@code dsg} must be the dataset of the
+     * {@link Transactional} of this batch processor.
+     */
+    public void setOffsetsInDataset(DatasetGraph dsg) {
+        if ( dsg != null && transactional == null )
+            throw new FusekiKafkaException("Recording offsets in the dataset needs a transactional batch processor");
+        this.offsetDataset = dsg;
+    }
+
+    /**
+     * A batch that fails is received and applied again, up to {@code limit} times,
+     * waiting {@code backoff} before the first retry and doubling the wait for each
+     * further retry. After that, the records of the batch that were not applied are
+     * skipped and logged.
+     */
+    public void setRetryPolicy(int limit, Duration backoff) {
+        if ( limit < 0 )
+            throw new IllegalArgumentException("Retry limit must not be negative: "+limit);
+        this.retryLimit = limit;
+        this.retryBackoff = Objects.requireNonNull(backoff);
+    }
+
+    /** Record metrics for the batches processed in {@code metrics}. */
+    public void setMetrics(FKMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+        fkProcessor.setMetrics(metrics);
+    }
+
+    public FKMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Set by the {@link FKControl} of the connector. */
+    /*package*/ void setControl(FKControl control) {
+        this.control = control;
+    }
+
+    private long rewindGeneration() {
+        return ( control == null ) ? 0 : control.getGeneration();
+    }
+
+    /** The message of the last failure of the receiver or dispatch, or null if the last batch succeeded. */
+    public String getLastFailure() {
+        return lastFailure;
     }
 
     /**
      * Round the polling loop, updating the record.
      * Return true if some processing happened.
+     * <p>
+     * The {@link DataState} is updated after each batch has been processed.
      */
     public boolean receiver(Consumer<String, RequestFK> consumer, DataState dataState, Duration initialPollingDuration) {
         Objects.requireNonNull(consumer);
+        return receiver(consumer::poll, dataState, initialPollingDuration);
+    }
+
+    /**
+     * Round the polling loop, getting records from a {@link FKRecordSource} such as a
+     * {@link FKPrefetcher}.
+     * See {@link #receiver(Consumer, DataState, Duration)}.
+     */
+    public boolean receiver(FKRecordSource source, DataState dataState, Duration initialPollingDuration) {
+        Objects.requireNonNull(source);
         Objects.requireNonNull(dataState);
 
         Duration  pollingDuration = initialPollingDuration;
 
         if ( pollingDuration == null )
             pollingDuration = FKConst.pollingWaitDuration;
-        final long lastOffsetState = dataState.getLastOffset();
         final String topic = dataState.getTopic();
         try {
             boolean rtn = false;
-            long commitedState = lastOffsetState;
             int i;
-            for ( i = 0 ; i < FKConst.MAX_LOOPS_PER_CYCLE ; i++ ) {
-                long newOffset = receiverStep(topic, dataState.getLastOffset(), consumer, pollingDuration);
-                if ( newOffset == commitedState ) {
-                    // Nothing received.
+            // Keep going while there are records waiting - the batch policy decides when to stop.
+            for ( i = 0 ; i < FKConst.MAX_LOOPS_PER_CYCLE || ! pending.isEmpty() ; i++ ) {
+                boolean received = receiverStep(topic, source, pollingDuration);
+                if ( pending.isEmpty() )
+                    // Nothing received, nothing waiting.
                     break;
+                if ( batchPolicy.flushNow(pending.size(), pendingBytes, pendingStartNanos) ) {
+                    flush(topic, dataState, source);
+                    rtn = true;
+                    if ( ! received )
+                        break;
                 }
-                dataState.setLastOffset(newOffset);
-                commitedState = newOffset;
-                rtn = true;
-                // Switch to shorter polling wait
-                pollingDuration = FKConst.pollingWaitDurationMore;
+                // Switch to shorter polling wait, or wait for the rest of the linger time.
+                pollingDuration = pending.isEmpty()
+                        ? FKConst.pollingWaitDurationMore
+                        : batchPolicy.lingerRemaining(pendingStartNanos);
             }
             if ( LOG.isDebugEnabled() )
                 FmtLog.debug(LOG, "[%s] Exit receiver loop at i=%d", topic, i);
             return rtn;
         } catch (RuntimeException ex) {
+            // The records not applied are received again (see retryRecords).
+            clearPending();
+            carryOver.clear();
+            lastFailure = String.valueOf(ex.getMessage());
             String x = String.format("[%s] %s", dataState.getTopic(), ex.getMessage());
             Log.error(LOG, x, ex);
             return false;
@@ -112,40 +299,338 @@ public class FKBatchProcessor {
 
     private static final boolean VERBOSE = true;
 
-    /** Do one Kafka consumer poll step. */
-    private long receiverStep(String topic, long lastOffsetState, Consumer<String, RequestFK> consumer, Duration pollingDuration) {
+    /** Do one Kafka consumer poll step. Return true if something was received. */
+    private boolean receiverStep(String topic, FKRecordSource source, Duration pollingDuration) {
         Objects.requireNonNull(pollingDuration);
-        Objects.requireNonNull(consumer);
+        Objects.requireNonNull(source);
+        if ( ! carryOver.isEmpty() ) {
+            // Records received while reading a chunked message come first.
+            carryOver.forEach(this::addPending);
+            carryOver.clear();
+            return true;
+        }
         if ( LOG.isDebugEnabled() )
             FmtLog.debug(LOG, "[%s] consumer.poll(%s ms)", topic, pollingDuration.toMillis());
-        ConsumerRecords<String, RequestFK> cRecords = consumer.poll(pollingDuration);
-        return processBatch(topic, lastOffsetState, cRecords);
+        long pollStart = System.nanoTime();
+        ConsumerRecords<String, RequestFK> cRecords;
+        try {
+            cRecords = source.poll(pollingDuration);
+        } catch (WakeupException ex) {
+            // The connector is stopping.
+            return false;
+        }
+        metrics.pollNanos(System.nanoTime() - pollStart);
+        if ( cRecords.isEmpty() )
+            return false;
+        long generation = source.generation();
+        if ( ! pending.isEmpty() && generation != pendingGeneration ) {
+            FmtLog.info(LOG, "[%s] Rewind: %d records received before the rewind are not applied", topic, pending.size());
+            clearPending();
+        }
+        pendingGeneration = generation;
+        cRecords.forEach(this::addPending);
+        return true;
+    }
+
+    private void addPending(ConsumerRecord<String, RequestFK> cRec) {
+        if ( pending.isEmpty() )
+            pendingStartNanos = System.nanoTime();
+        pending.add(cRec);
+        pendingBytes += Math.max(0, cRec.value().getByteCount());
+    }
+
+    /** Process the waiting records, updating the {@link DataState} after each batch. */
+    private void flush(String topic, DataState dataState, FKRecordSource source) {
+        try {
+            if ( laneExecutor != null )
+                processPartitions(topic, dataState, pending, pendingGeneration);
+            else
+                processRecords(topic, dataState.getLastOffset(), pending, dataState::setLastOffset, source, pendingGeneration);
+            lastFailure = null;
+            retries.clear();
+        } catch (RuntimeException ex) {
+            retryRecords(topic, dataState, pending);
+            throw ex;
+        } finally {
+            clearPending();
+            if ( pendingGeneration != rewindGeneration() )
+                // Received while reading a chunked message, before a rewind.
+                carryOver.clear();
+        }
     }
 
+    /**
+     * Process records that have been received from Kafka, updating the
+     * {@link DataState} after each batch. This is used when the polling is done
+     * elsewhere, such as by a {@link FKSharedConsumer}.
+     * <p>
+     * Calls for the same topic must not overlap.
+     */
+    public void dispatch(String topic, DataState dataState, List<ConsumerRecord<String, RequestFK>> cRecords) {
+        List<ConsumerRecord<String, RequestFK>> records = completeMessages(topic, cRecords);
+        if ( records.isEmpty() )
+            return;
+        long generation = rewindGeneration();
+        try {
+            if ( laneExecutor != null )
+                processPartitions(topic, dataState, records, generation);
+            else
+                processRecords(topic, dataState.getLastOffset(), records, dataState::setLastOffset, null, generation);
+            lastFailure = null;
+            retries.clear();
+        } catch (RuntimeException ex) {
+            lastFailure = String.valueOf(ex.getMessage());
+            retryRecords(topic, dataState, records);
+            throw ex;
+        }
+    }
+
+    /**
+     * After a failure, rewind each partition of the records to the first record
+     * not applied, as recorded in the {@link DataState}, so that the records are
+     * received and applied again. This needs the connector's {@link FKControl}.
+     * <p>
+     * Before the rewind, wait as set by {@link #setRetryPolicy}. When a partition
+     * has failed at the same record more than the retry limit, its records are
+     * skipped instead.
+     */
+    private void retryRecords(String topic, DataState dataState, List<ConsumerRecord<String, RequestFK>> records) {
+        carryOver.clear();
+        Map<Integer, Long> partitionEnds = new TreeMap<>();
+        records.forEach(cRec->partitionEnds.merge(cRec.partition(), cRec.offset(), Math::max));
+        int attempts = 0;
+        for ( Map.Entry<Integer, Long> e : partitionEnds.entrySet() ) {
+            int partition = e.getKey();
+            long next = dataState.getLastOffset(partition) + 1;
+            long end = e.getValue();
+            if ( next > end )
+                continue;
+            Retry retry = retries.get(partition);
+            int attempt = ( retry != null && retry.offset() == next ) ? retry.attempts() + 1 : 1;
+            if ( attempt > retryLimit ) {
+                retries.remove(partition);
+                FmtLog.error(LOG, "[%s] Partition %d: skip records at offsets %d-%d after %d failed attempts",
+                             topic, partition, next, end, attempt);
+                skipRecords(topic, dataState, partition, end);
+                continue;
+            }
+            retries.put(partition, new Retry(next, attempt));
+            attempts = Math.max(attempts, attempt);
+            if ( control != null )
+                control.rewindToOffset(partition, next);
+            else
+                FmtLog.warn(LOG, "[%s] Partition %d: records from offset %d are not applied", topic, partition, next);
+        }
+        if ( attempts > 0 && control != null )
+            backoff(topic, attempts);
+    }
+
+    /** Record the records of a partition up to {@code offset} as done, without applying them. */
+    private void skipRecords(String topic, DataState dataState, int partition, long offset) {
+        writeDatasetOffset(topic, partition, offset);
+        dataState.setLastOffset(partition, offset);
+    }
+
+    /**
+     * Record the last offset of a partition in the dataset, in a write transaction of
+     * its own, if offsets are recorded in the dataset (see {@link #setOffsetsInDataset}).
+     * This is for a change of offset outside a batch, such as a rewind.
+     */
+    /*package*/ void writeDatasetOffset(String topic, int partition, long offset) {
+        if ( offsetDataset != null )
+            Txn.executeWrite(offsetDataset, ()->FKDatasetOffsets.write(offsetDataset, topic, partition, offset));
+    }
+
+    /** Wait before retrying: the backoff, doubled for each earlier attempt, up to the maximum. */
+    private void backoff(String topic, int attempt) {
+        long millis = retryBackoff.toMillis();
+        long maxMillis = Math.max(millis, FKConst.batchRetryBackoffMax.toMillis());
+        for ( int i = 1 ; i < attempt && millis < maxMillis ; i++ )
+            millis *= 2;
+        millis = Math.min(millis, maxMillis);
+        if ( millis <= 0 )
+            return;
+        FmtLog.info(LOG, "[%s] Retry %d in %d ms", topic, attempt, millis);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The records to process now: the records, after any held back by the previous
+     * call, less a chunked message at the end of a partition that is not complete.
+     * That message is held back until the rest of it has been received.
+     */
+    private List<ConsumerRecord<String, RequestFK>> completeMessages(String topic, List<ConsumerRecord<String, RequestFK>> records) {
+        if ( incompleteChunks.isEmpty() && ! hasChunks(records) )
+            return records;
+        Map<Integer, List<ConsumerRecord<String, RequestFK>>> partitions = new LinkedHashMap<>();
+        for ( ConsumerRecord<String, RequestFK> cRec : records )
+            partitions.computeIfAbsent(cRec.partition(), p->new ArrayList<>()).add(cRec);
+        List<ConsumerRecord<String, RequestFK>> ready = new ArrayList<>(records.size());
+        partitions.forEach((partition, partitionRecords)->{
+            List<ConsumerRecord<String, RequestFK>> held = incompleteChunks.remove(partition);
+            if ( held != null ) {
+                if ( partitionRecords.get(0).offset() > held.get(held.size()-1).offset() )
+                    partitionRecords.addAll(0, held);
+                else
+                    // Not following on from the held records, e.g. after a rewind.
+                    FmtLog.warn(LOG, "[%s] Partition %d: drop incomplete chunked message at offset %d",
+                                topic, partition, held.get(0).offset());
+            }
+            int start = FKChunkedInput.incompleteStart(partitionRecords);
+            if ( start < 0 ) {
+                ready.addAll(partitionRecords);
+                return;
+            }
+            ready.addAll(partitionRecords.subList(0, start));
+            incompleteChunks.put(partition, new ArrayList<>(partitionRecords.subList(start, partitionRecords.size())));
+        });
+        return ready;
+    }
+
+    /**
+     * Process records by partition, one lane per partition, waiting for all lanes
+     * to finish. Each lane records its partition offset in the {@link DataState}
+     * after each batch.
+     */
+    private void processPartitions(String topic, DataState dataState, List<ConsumerRecord<String, RequestFK>> records, long generation) {
+        // Group by partition, keeping the order within each partition.
+        Map<Integer, List<ConsumerRecord<String, RequestFK>>> lanes = new LinkedHashMap<>();
+        for ( ConsumerRecord<String, RequestFK> cRec : records )
+            lanes.computeIfAbsent(cRec.partition(), p->new ArrayList<>()).add(cRec);
+
+        if ( lanes.size() == 1 ) {
+            Map.Entry<Integer, List<ConsumerRecord<String, RequestFK>>> e = lanes.entrySet().iterator().next();
+            processLane(topic, dataState, e.getKey(), e.getValue(), generation);
+            return;
+        }
+
+        List<Future<?>> running = new ArrayList<>(lanes.size());
+        lanes.forEach((partition, laneRecords)->
+            running.add(laneExecutor.submit(()->processLane(topic, dataState, partition, laneRecords, generation))));
+
+        // Wait for all the lanes, then report the first failure.
+        RuntimeException failure = null;
+        for ( Future<?> future : running ) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if ( failure == null )
+                    failure = new FusekiKafkaException("Interrupted while waiting for partition lanes", ex);
+            } catch (ExecutionException ex) {
+                if ( failure == null ) {
+                    Throwable cause = ex.getCause();
+                    failure = ( cause instanceof RuntimeException runtimeEx )
+                            ? runtimeEx
+                            : new FusekiKafkaException("Partition lane failed", cause);
+                }
+            }
+        }
+        if ( failure != null )
+            throw failure;
+    }
+
+    private void processLane(String topic, DataState dataState, int partition, List<ConsumerRecord<String, RequestFK>> laneRecords,
+                             long generation) {
+        String label = topic+"-"+partition;
+        processRecords(label, dataState.getLastOffset(partition), laneRecords,
+                       newOffset->dataState.setLastOffset(partition, newOffset), null, generation);
+    }
+
+    private void clearPending() {
+        pending.clear();
+        pendingBytes = 0;
+        pendingStartNanos = -1;
+    }
+
+    /**
+     * Process the records, which may be split into several batches by the
+     * {@link FKBatchPolicy}. Return the new last offset.
+     */
     public long processBatch(String topic, long lastOffsetState, ConsumerRecords<String, RequestFK> cRecords) {
         if ( cRecords.isEmpty() )
             // Nothing received - no change.
             return lastOffsetState;
+        List<ConsumerRecord<String, RequestFK>> records = new ArrayList<>(cRecords.count());
+        cRecords.forEach(records::add);
+        return processRecords(topic, lastOffsetState, records, newOffset->{}, null, rewindGeneration());
+    }
 
-        int count = cRecords.count();
-        long payloadSize = payloadSize(cRecords);
+    /**
+     * Process the records in one or more batches, calling {@code onCommit} with the
+     * new last offset after each batch.
+     * <p>
+     * {@code source} is used to receive the rest of a message sent in chunks. It is
+     * null if more records can not be received by this thread.
+     * <p>
+     * The records are of the rewind {@code generation}. If the connector is rewound
+     * while they are being processed, the rest are not applied and the offset set
+     * by the rewind is kept.
+     */
+    private long processRecords(String topic, long lastOffsetState, List<ConsumerRecord<String, RequestFK>> records,
+                                LongConsumer onCommit, FKRecordSource source, long generation) {
+        long offset = lastOffsetState;
+        int start = 0;
+        while ( start < records.size() ) {
+            if ( rewound(topic, generation, records.size() - start) )
+                break;
+            int end = batchPolicy.chunkEnd(records, start);
+            List<ConsumerRecord<String, RequestFK>> chunk = records.subList(start, end);
+            BatchStep step = processChunk(topic, offset, chunk, source);
+            start += step.processed();
+            offset = step.lastOffset();
+            if ( rewound(topic, generation, records.size() - start) )
+                break;
+            long stateStart = System.nanoTime();
+            onCommit.accept(offset);
+            metrics.stateWriteNanos(System.nanoTime() - stateStart);
+        }
+        return offset;
+    }
+
+    /** Whether the connector has been rewound since records of {@code generation} were received. */
+    private boolean rewound(String topic, long generation, int remaining) {
+        if ( rewindGeneration() == generation )
+            return false;
+        FmtLog.info(LOG, "[%s] Rewind: %d records received before the rewind are not applied", topic, remaining);
+        return true;
+    }
+
+    private BatchStep processChunk(String topic, long lastOffsetState, List<ConsumerRecord<String, RequestFK>> chunk, FKRecordSource source) {
+        synchronized(processorLock) {
+            return processChunkLocked(topic, lastOffsetState, chunk, source);
+        }
+    }
+
+    private BatchStep processChunkLocked(String topic, long lastOffsetState, List<ConsumerRecord<String, RequestFK>> chunk, FKRecordSource source) {
+        int count = chunk.size();
+        long payloadSize = payloadSize(chunk);
         Timer timer = batchStart(topic, lastOffsetState, count, payloadSize);
 
-        long newOffset = batchProcess(topic, cRecords);
+        BatchStep step = batchProcess(topic, lastOffsetState, chunk, source);
+        long newOffset = step.lastOffset();
+        if ( step.processed() > 0 ) {
+            List<ConsumerRecord<String, RequestFK>> processed = chunk.subList(0, step.processed());
+            metrics.batch(step.processed(), payloadSize(processed));
+            metrics.committed(processed.get(step.processed()-1).timestamp());
+        }
 
         // Check expectation.
-        long newOffset2 = lastOffsetState + count;
+        long newOffset2 = lastOffsetState + step.processed();
         if ( newOffset != newOffset2 )
             // Transaction control messages and topic key-based compaction mean this test isn't strictly true.
             // This log message is just an indication of this.
             FmtLog.info(LOG, "[%s] Batch offsets not as predicated: [actual=%d, predicated=%d]", topic, newOffset, newOffset2);
 
         batchFinish(topic, lastOffsetState, newOffset, timer);
-
-        return newOffset;
+        return step;
     }
 
-    private long payloadSize(ConsumerRecords<String, RequestFK> cRecords) {
+    private long payloadSize(List<ConsumerRecord<String, RequestFK>> cRecords) {
         long sizeBytes = 0;
         for ( ConsumerRecord<String, RequestFK> cRec : cRecords ) {
             sizeBytes += cRec.value().getByteCount();
@@ -163,12 +648,39 @@ public class FKBatchProcessor {
         return timer;
     }
 
-    private long batchProcess(String topic, ConsumerRecords<String, RequestFK> cRecords) {
+    private BatchStep batchProcess(String topic, long lastOffsetState, List<ConsumerRecord<String, RequestFK>> cRecords, FKRecordSource source) {
+        long start = System.nanoTime();
         if ( transactional == null ) {
             // No transactional set. Assume the fkProcessor.process knows what it is doing.
-            return execBatch(cRecords);
+            BatchStep step = execBatch(lastOffsetState, cRecords, source);
+            metrics.applyNanos(System.nanoTime() - start);
+            return step;
+        }
+        long[] applied = new long[1];
+        BatchStep step;
+        try {
+            step = transactional.calculateWrite(()->{
+                BatchStep batchStep = execBatch(lastOffsetState, cRecords, source);
+                if ( offsetDataset != null && batchStep.processed() > 0 ) {
+                    // Commit the offset with the changes.
+                    ConsumerRecord<String, RequestFK> cRec = cRecords.get(0);
+                    FKDatasetOffsets.write(offsetDataset, cRec.topic(), cRec.partition(), batchStep.lastOffset());
+                }
+                applied[0] = System.nanoTime();
+                return batchStep;
+            });
+        } catch (RuntimeException ex) {
+            // A failed commit leaves the transaction open.
+            if ( transactional.isInTransaction() ) {
+                transactional.abort();
+                transactional.end();
+            }
+            throw ex;
         }
-        return transactional.calculate(()->execBatch(cRecords));
+        long end = System.nanoTime();
+        metrics.applyNanos(applied[0] - start);
+        metrics.commitNanos(end - applied[0]);
+        return step;
     }
 
     private void batchFinish(String topic, long lastOffsetState, long newOffsetState, Timer timer) {
@@ -183,24 +695,195 @@ public class FKBatchProcessor {
         }
     }
 
-    /** Execute a batch - return the new last seen offset. */
-    private long execBatch(ConsumerRecords<String, RequestFK> cRecords) {
-        long lastOffset = -1;
-        for ( ConsumerRecord<String, RequestFK> cRec : cRecords ) {
+    /** Result of executing a batch: the number of records used and the new last seen offset. */
+    private record BatchStep(int processed, long lastOffset) {}
+
+    /**
+     * Execute a batch - return the new last seen offset.
+     * This stops early if the batch has been running longer than the {@link FKBatchPolicy} allows.
+     */
+    private BatchStep execBatch(long lastOffsetState, List<ConsumerRecord<String, RequestFK>> cRecords, FKRecordSource source) {
+        if ( parseExecutor != null && fkProcessor instanceof FKProcessorPrepare prepareProcessor && ! hasChunks(cRecords) )
+            return execBatchParseAhead(lastOffsetState, cRecords, prepareProcessor);
+        long deadline = batchPolicy.transactionDeadline(System.nanoTime());
+        long lastOffset = lastOffsetState;
+        int processed = 0;
+        while ( processed < cRecords.size() ) {
+            ConsumerRecord<String, RequestFK> cRec = cRecords.get(processed);
             RequestFK requestFK = cRec.value();
             if ( LOG.isDebugEnabled() )
                 FmtLog.debug(LOG, "[%s] Record Offset %s", requestFK.getTopic(), cRec.offset());
+            if ( FKChunkedInput.isContinuation(requestFK) ) {
+                // The rest of a message whose first chunk has not been received.
+                int end = FKChunkedInput.orphanRunEnd(cRecords, processed);
+                skipChunks(requestFK.getTopic(), cRec, cRecords.get(end-1).offset());
+                processed = end;
+                lastOffset = cRecords.get(end-1).offset();
+                continue;
+            }
+            FKChunkedInput chunkedInput = null;
+            if ( FKChunkedInput.isChunk(requestFK) ) {
+                // Records not part of the message are kept for the next batch if receiving on this thread.
+                Deque<ConsumerRecord<String, RequestFK>> others = ( source != null ) ? carryOver : new ArrayDeque<>();
+                chunkedInput = new FKChunkedInput(cRecords, processed, others, source, FKConst.chunkWaitDuration);
+                requestFK = chunkedInput.request(requestFK);
+            }
+            if ( chunkedInput == null && fkProcessor instanceof FKProcessorCoalesce coalesce ) {
+                // Consecutive SPARQL Updates, or consecutive RDF Patches, processed as one.
+                boolean isUpdate = WebContent.contentTypeSPARQLUpdate.equals(requestFK.getContentType());
+                boolean isPatch = ParseFK.isPatch(requestFK.getContentType());
+                int runEnd = ( isUpdate || isPatch ) ? runEnd(cRecords, processed, isUpdate) : processed;
+                if ( runEnd - processed > 1 ) {
+                    List<RequestFK> requests = new ArrayList<>(runEnd - processed);
+                    cRecords.subList(processed, runEnd).forEach(r->requests.add(r.value()));
+                    try {
+                        if ( isUpdate )
+                            coalesce.processUpdates(requests);
+                        else
+                            coalesce.processPatches(requests);
+                    } catch(Throwable ex) {
+                        metrics.error(requestFK.getContentType());
+                        FmtLog.warn(LOG, ex, "Exception in processing: %s", ex.getMessage());
+                    }
+                    processed = runEnd;
+                    lastOffset = cRecords.get(runEnd - 1).offset();
+                    if ( System.nanoTime() >= deadline )
+                        break;
+                    continue;
+                }
+            }
+            processed++;
+            // A record that fails is logged and skipped, as for a run of records.
+            lastOffset = cRec.offset();
             try {
                 fkProcessor.process(requestFK);
-                lastOffset = cRec.offset();
             } catch(Throwable ex) {
                 // Something unexpected went wrong.
                 // Polling is asynchronous to the server.
                 // When shutting down, various things can go wrong.
                 // Log and ignore!
+                metrics.error(requestFK.getContentType());
                 FmtLog.warn(LOG, ex, "Exception in processing: %s", ex.getMessage());
             }
+            if ( chunkedInput != null ) {
+                // Move past all the chunks, whether or not they were all read.
+                if ( ! chunkedInput.finish() )
+                    FmtLog.warn(LOG, "[%s] Incomplete chunked message at offset %d", requestFK.getTopic(), cRec.offset());
+                processed = chunkedInput.position();
+                lastOffset = chunkedInput.lastOffset();
+            }
+            if ( System.nanoTime() >= deadline )
+                break;
+        }
+        return new BatchStep(processed, lastOffset);
+    }
+
+    /** Log skipping a run of chunks, once per message even if received in several polls. */
+    private void skipChunks(String topic, ConsumerRecord<String, RequestFK> first, long lastOffset) {
+        String chunkId = FKChunkedInput.chunkId(first.value());
+        if ( ! chunkId.equals(skippedChunkIds.put(first.partition(), chunkId)) )
+            FmtLog.warn(LOG, "[%s] Skip chunks of message %s at offsets %d-%d: no first chunk",
+                        topic, chunkId, first.offset(), lastOffset);
+    }
+
+    /**
+     * The end (exclusive) of the run of SPARQL Update records, or of RDF Patch
+     * records, not sent in chunks, from {@code start}. The records of a run have the
+     * same headers, apart from Content-Length.
+     */
+    private static int runEnd(List<ConsumerRecord<String, RequestFK>> cRecords, int start, boolean updates) {
+        Map<String, String> headers = runHeaders(cRecords.get(start).value());
+        int end = start;
+        while ( end < cRecords.size() ) {
+            RequestFK request = cRecords.get(end).value();
+            String contentType = request.getContentType();
+            boolean sameKind = updates ? WebContent.contentTypeSPARQLUpdate.equals(contentType) : ParseFK.isPatch(contentType);
+            if ( ! sameKind || FKChunkedInput.isChunk(request) || ! headers.equals(runHeaders(request)) )
+                break;
+            end++;
+        }
+        return end;
+    }
+
+    /** The headers that must be the same for records in one run. */
+    private static Map<String, String> runHeaders(RequestFK request) {
+        Map<String, String> headers = request.getHeaders();
+        if ( headers.keySet().stream().noneMatch(h->h.equalsIgnoreCase(HttpNames.hContentLength)) )
+            return headers;
+        Map<String, String> x = new HashMap<>(headers);
+        x.keySet().removeIf(h->h.equalsIgnoreCase(HttpNames.hContentLength));
+        return x;
+    }
+
+    private static boolean hasChunks(List<ConsumerRecord<String, RequestFK>> cRecords) {
+        for ( ConsumerRecord<String, RequestFK> cRec : cRecords ) {
+            if ( FKChunkedInput.isChunk(cRec.value()) )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Execute a batch, parsing records on the parse executor threads, up to the
+     * parse window ahead, and applying them in order on this thread.
+     */
+    private BatchStep execBatchParseAhead(long lastOffsetState, List<ConsumerRecord<String, RequestFK>> cRecords,
+                                          FKProcessorPrepare prepareProcessor) {
+        long deadline = batchPolicy.transactionDeadline(System.nanoTime());
+        int size = cRecords.size();
+        List<Future<FKPrepared>> parsed = new ArrayList<>(size);
+        int submitted = 0;
+        long lastOffset = lastOffsetState;
+        int processed = 0;
+        try {
+            for ( ConsumerRecord<String, RequestFK> cRec : cRecords ) {
+                // Keep the window of records being parsed full.
+                while ( submitted < size && submitted < processed + parseWindow ) {
+                    RequestFK request = cRecords.get(submitted).value();
+                    parsed.add(parseExecutor.submit(()->{
+                        long parseStart = System.nanoTime();
+                        FKPrepared prepared = prepareProcessor.prepare(request);
+                        metrics.parseNanos(System.nanoTime() - parseStart);
+                        return prepared;
+                    }));
+                    submitted++;
+                }
+                RequestFK requestFK = cRec.value();
+                if ( LOG.isDebugEnabled() )
+                    FmtLog.debug(LOG, "[%s] Record Offset %s", requestFK.getTopic(), cRec.offset());
+                Future<FKPrepared> future = parsed.set(processed, null);
+                processed++;
+                lastOffset = cRec.offset();
+                try {
+                    FKPrepared prepared = awaitPrepared(future);
+                    prepareProcessor.apply(requestFK, prepared);
+                } catch(Throwable ex) {
+                    metrics.error(requestFK.getContentType());
+                    FmtLog.warn(LOG, ex, "Exception in processing: %s", ex.getMessage());
+                }
+                if ( System.nanoTime() >= deadline )
+                    break;
+            }
+        } finally {
+            // Records parsed ahead but not applied will be parsed again for the next batch.
+            for ( int i = processed ; i < submitted ; i++ )
+                parsed.get(i).cancel(true);
+        }
+        return new BatchStep(processed, lastOffset);
+    }
+
+    private static FKPrepared awaitPrepared(Future<FKPrepared> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FusekiKafkaException("Interrupted while waiting for parsing", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            RuntimeException rex = ( cause instanceof RuntimeException runtimeEx )
+                    ? runtimeEx
+                    : new FusekiKafkaException("Parse failed", cause);
+            return new FKPrepared.Failed(cause.getMessage(), rex);
         }
-        return lastOffset;
     }
 }
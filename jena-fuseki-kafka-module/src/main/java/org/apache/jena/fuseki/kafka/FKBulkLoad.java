@@ -0,0 +1,270 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.util.*;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.kafka.FusekiKafka;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.kafka.common.ParseFK;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.loader.base.LoaderOps;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Initial load of an empty TDB2 dataset from a topic with the TDB2 bulk loader
+ * ({@link KConnectorDesc#getBulkLoad()}).
+ * <p>
+ * The data messages of each partition, up to the end offset when the load starts,
+ * are parsed into the loader. The load of a partition stops early at the first
+ * message that is not RDF data (an update, a patch, or a message sent in chunks);
+ * that message, and the rest of the topic, are then processed as usual. Only the
+ * offsets reached are recorded in the {@link DataState}; if the load fails, the
+ * connector starts again from the beginning.
+ * <p>
+ * Each message is parsed completely before any of it goes to the loader, so a
+ * message with a syntax error is skipped as a whole, as on the incremental path.
+ */
+public class FKBulkLoad {
+
+    // Stop waiting for records after this many polls in a row receive nothing.
+    private static final int maxEmptyPolls = 10;
+
+    /** The TDB2 loaders, as in {@link LoaderFactory}. */
+    /*package*/ enum TDB2Loader { BASIC, SEQUENTIAL, PHASED, PARALLEL }
+
+    /**
+     * Whether the connector, starting with this state, is set to bulk load into the
+     * dataset. Call before the connector is set up. The dataset must also be empty
+     * when the load starts.
+     */
+    /*package*/ static boolean applies(KConnectorDesc conn, DataState dataState, DatasetGraph dsg) {
+        if ( conn.getBulkLoad() == null )
+            return false;
+        // Check the setting.
+        loader(conn.getBulkLoad());
+        if ( dsg == null || ! TDBInternal.isTDB2(dsg) ) {
+            FmtLog.warn(LOG, "[%s] Bulk load: not a TDB2 dataset", conn.getTopic());
+            return false;
+        }
+        if ( dataState.getLastOffset() >= 0 || dataState.getPartitionOffsets().values().stream().anyMatch(x -> x >= 0) )
+            return false;
+        return true;
+    }
+
+    /** The TDB2 loader for a name such as "phased" or "parallel". */
+    /*package*/ static TDB2Loader loader(String name) {
+        for ( TDB2Loader loader : TDB2Loader.values() ) {
+            if ( loader.name().equalsIgnoreCase(name.trim()) )
+                return loader;
+        }
+        throw new FusekiKafkaException("Unknown TDB2 loader: "+name);
+    }
+
+    private static DataLoader createLoader(TDB2Loader loader, DatasetGraph dsg) {
+        MonitorOutput output = LoaderOps.outputToLog();
+        return switch (loader) {
+            case BASIC ->      LoaderFactory.basicLoader(dsg, output);
+            case SEQUENTIAL -> LoaderFactory.sequentialLoader(dsg, output);
+            case PHASED ->     LoaderFactory.phasedLoader(dsg, output);
+            case PARALLEL ->   LoaderFactory.parallelLoader(dsg, output);
+        };
+    }
+
+    /**
+     * Load the data messages of the partitions, from the consumer positions to the
+     * end offsets, into the dataset, recording in the connector's {@code metrics}.
+     * Return the number of messages loaded.
+     * Must be called on the thread that polls the consumer.
+     */
+    /*package*/ static long load(KConnectorDesc conn, Consumer<String, RequestFK> consumer, List<TopicPartition> partitions,
+                                 DataState dataState, DatasetGraph dsg, FKMetrics metrics) {
+        String topic = conn.getTopic();
+        if ( ! Txn.calculateRead(dsg, dsg::isEmpty) ) {
+            FmtLog.info(LOG, "[%s] Bulk load: dataset is not empty", topic);
+            return 0;
+        }
+        TDB2Loader tdb2Loader = loader(conn.getBulkLoad());
+        Map<TopicPartition, Long> ends = consumer.endOffsets(partitions, FKConst.checkKafkaDuration);
+        Set<TopicPartition> active = new HashSet<>();
+        for ( TopicPartition tp : partitions ) {
+            if ( consumer.position(tp) < ends.get(tp) )
+                active.add(tp);
+        }
+        if ( active.isEmpty() )
+            return 0;
+        // Partitions already at their end receive nothing during the load. Only
+        // those paused here are resumed afterwards.
+        Set<TopicPartition> paused = new HashSet<>();
+        pauseInactive(consumer, partitions, active, paused);
+
+        FmtLog.info(LOG, "[%s] Bulk load (%s) to offsets %s", topic, tdb2Loader.name().toLowerCase(Locale.ROOT), ends);
+        FKArchive archive = FKArchive.get(conn);
+        FKParserContext parserContext = FKParserContext.get(conn);
+        Map<TopicPartition, Long> loaded = new HashMap<>();
+        long count = 0;
+        long bytes = 0;
+        long startNanos = System.nanoTime();
+
+        DataLoader loader = createLoader(tdb2Loader, dsg);
+        StreamRDF dest = loader.stream();
+        loader.startBulk();
+        try {
+            int emptyPolls = 0;
+            while ( ! active.isEmpty() ) {
+                ConsumerRecords<String, RequestFK> cRecords = consumer.poll(FKConst.pollingWaitDuration);
+                if ( cRecords.isEmpty() ) {
+                    if ( ++emptyPolls >= maxEmptyPolls ) {
+                        FmtLog.warn(LOG, "[%s] Bulk load: no records received; stopping", topic);
+                        break;
+                    }
+                } else {
+                    emptyPolls = 0;
+                }
+                if ( archive != null )
+                    archive.append(cRecords);
+                int pollCount = 0;
+                long pollBytes = 0;
+                for ( TopicPartition tp : cRecords.partitions() ) {
+                    if ( ! active.contains(tp) ) {
+                        // Not loading this partition: read these records again after the load.
+                        consumer.seek(tp, cRecords.records(tp).get(0).offset());
+                        continue;
+                    }
+                    for ( ConsumerRecord<String, RequestFK> cRec : cRecords.records(tp) ) {
+                        RequestFK request = cRec.value();
+                        Lang lang = ( cRec.offset() < ends.get(tp) ) ? dataLang(request) : null;
+                        if ( lang == null ) {
+                            // Not included in the bulk load. Processing continues from here.
+                            FmtLog.info(LOG, "[%s] Bulk load: partition %d stops at offset %d", topic, tp.partition(), cRec.offset());
+                            consumer.seek(tp, cRec.offset());
+                            active.remove(tp);
+                            break;
+                        }
+                        MessageBuffer buffer = new MessageBuffer();
+                        try {
+                            if ( FKParallelParser.applies(request, lang) )
+                                FKParallelParser.parse(request, lang, buffer, parserContext);
+                            else if ( parserContext != null )
+                                parserContext.parse(lang, request.getInputStream(), buffer);
+                            else
+                                ParseFK.parse(lang, request.getInputStream(), buffer);
+                            buffer.sendTo(dest);
+                        } catch (RuntimeException ex) {
+                            // As for the incremental path: log and skip the whole message.
+                            FmtLog.warn(LOG, "[%s] Bulk load: failed to load offset %d: %s", topic, cRec.offset(), ex.getMessage());
+                            metrics.error(request.getContentType());
+                        }
+                        loaded.put(tp, cRec.offset());
+                        pollCount++;
+                        pollBytes += Math.max(0, request.getByteCount());
+                    }
+                }
+                if ( pollCount > 0 )
+                    metrics.batch(pollCount, pollBytes);
+                count += pollCount;
+                bytes += pollBytes;
+                active.removeIf(tp -> consumer.position(tp) >= ends.get(tp));
+                pauseInactive(consumer, partitions, active, paused);
+            }
+            loader.finishBulk();
+        } catch (RuntimeException ex) {
+            loader.finishException(ex);
+            throw ex;
+        } finally {
+            consumer.resume(paused);
+        }
+
+        loaded.forEach((tp, offset) -> {
+            if ( conn.getOffsetInDataset() )
+                Txn.executeWrite(dsg, ()->FKDatasetOffsets.write(dsg, tp.topic(), tp.partition(), offset));
+            dataState.setLastOffset(tp.partition(), offset);
+        });
+        dataState.flush();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        FmtLog.info(LOG, "[%s] Bulk load: %,d messages, %,d bytes, %,d triples, %,d quads in %.1fs",
+                    topic, count, bytes, loader.countTriples(), loader.countQuads(), seconds);
+        return count;
+    }
+
+    /**
+     * Pause the partitions that are not active, and not already paused (e.g. by the
+     * prefetcher or the shared consumer), adding them to {@code paused}.
+     */
+    private static void pauseInactive(Consumer<String, RequestFK> consumer, List<TopicPartition> partitions,
+                                      Set<TopicPartition> active, Set<TopicPartition> paused) {
+        Set<TopicPartition> alreadyPaused = consumer.paused();
+        List<TopicPartition> pause = partitions.stream()
+                .filter(tp -> ! active.contains(tp) && ! alreadyPaused.contains(tp))
+                .toList();
+        consumer.pause(pause);
+        paused.addAll(pause);
+    }
+
+    /** The triples, quads and prefixes of one message, kept until it has parsed completely. */
+    private static class MessageBuffer extends StreamRDFBase {
+        // Triples and quads, in order.
+        private final List<Object> items = new ArrayList<>();
+        private final Map<String, String> prefixes = new LinkedHashMap<>();
+
+        @Override public void triple(Triple triple)             { items.add(triple); }
+        @Override public void quad(Quad quad)                   { items.add(quad); }
+        @Override public void prefix(String prefix, String iri) { prefixes.put(prefix, iri); }
+
+        void sendTo(StreamRDF dest) {
+            prefixes.forEach(dest::prefix);
+            for ( Object item : items ) {
+                if ( item instanceof Triple triple )
+                    dest.triple(triple);
+                else
+                    dest.quad((Quad)item);
+            }
+        }
+    }
+
+    /** The RDF syntax of a message that can be bulk loaded, or null. */
+    private static Lang dataLang(RequestFK request) {
+        if ( request == null || request.getHeaders().containsKey(FusekiKafka.hChunkId) )
+            return null;
+        String contentType = request.getContentType();
+        if ( contentType == null )
+            return null;
+        Lang lang = RDFLanguages.contentTypeToLang(contentType);
+        if ( lang == null || ! ( RDFLanguages.isTriples(lang) || RDFLanguages.isQuads(lang) ) )
+            return null;
+        return lang;
+    }
+}
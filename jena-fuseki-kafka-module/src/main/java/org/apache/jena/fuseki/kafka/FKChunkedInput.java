@@ -0,0 +1,234 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.jena.kafka.FusekiKafka;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+
+/**
+ * The body of a message that has been sent as several consecutive Kafka records
+ * ("chunks"), read as one {@link InputStream}.
+ * <p>
+ * Each chunk has the headers {@link FusekiKafka#hChunkId} (the same for all the
+ * chunks of a message), {@link FusekiKafka#hChunkIndex} (0, 1, 2, ...) and the last
+ * chunk has {@link FusekiKafka#hChunkLast} set to "true". The first chunk carries
+ * the Content-Type of the message. If there is a Content-Encoding, each chunk is
+ * compressed separately and has the header; each chunk is decompressed as it is read.
+ * <p>
+ * Chunks are read as the stream is read, first from the records already received
+ * then, if necessary, by polling for more. Records polled that are not part of
+ * this message are left in the carry-over queue for the next batch. Only the chunk
+ * being read is held, not the whole message.
+ */
+class FKChunkedInput extends InputStream {
+
+    /** Whether the request is a chunk of a larger message. */
+    static boolean isChunk(RequestFK request) {
+        return request.getHeaders().containsKey(FusekiKafka.hChunkId);
+    }
+
+    /** Whether the request is a chunk, other than the first chunk, of a larger message. */
+    static boolean isContinuation(RequestFK request) {
+        return isChunk(request) && chunkIndex(request) != 0;
+    }
+
+    /**
+     * The end (exclusive) of the run of chunks, from {@code start}, that continue a
+     * message whose first chunk is not in {@code records}, for example, after a
+     * rewind to the middle of a message. Such chunks can not be read and are skipped.
+     */
+    static int orphanRunEnd(List<ConsumerRecord<String, RequestFK>> records, int start) {
+        String chunkId = chunkId(records.get(start).value());
+        int end = start;
+        while ( end < records.size() && isContinuation(records.get(end).value())
+                && Objects.equals(chunkId, chunkId(records.get(end).value())) )
+            end++;
+        return end;
+    }
+
+    /**
+     * The start of a chunked message, at the end of {@code records}, whose last
+     * chunk is not in {@code records}, or -1 if there is no such message.
+     */
+    static int incompleteStart(List<ConsumerRecord<String, RequestFK>> records) {
+        int open = -1;
+        String openId = null;
+        for ( int i = 0 ; i < records.size() ; i++ ) {
+            RequestFK request = records.get(i).value();
+            if ( ! isChunk(request) ) {
+                open = -1;
+                continue;
+            }
+            if ( chunkIndex(request) == 0 ) {
+                open = i;
+                openId = chunkId(request);
+            } else if ( open >= 0 && ! chunkId(request).equals(openId) ) {
+                open = -1;
+            }
+            if ( isLastChunk(request) )
+                open = -1;
+        }
+        return open;
+    }
+
+    static String chunkId(RequestFK request) {
+        return request.getHeaders().get(FusekiKafka.hChunkId);
+    }
+
+    private static long chunkIndex(RequestFK request) {
+        String x = request.getHeaders().get(FusekiKafka.hChunkIndex);
+        if ( x == null )
+            return -1;
+        try {
+            return Long.parseLong(x.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static boolean isLastChunk(RequestFK request) {
+        return "true".equalsIgnoreCase(request.getHeaders().get(FusekiKafka.hChunkLast));
+    }
+
+    private final String chunkId;
+    private final List<ConsumerRecord<String, RequestFK>> records;
+    private final Deque<ConsumerRecord<String, RequestFK>> carryOver;
+    private final FKRecordSource source;
+    private final Duration waitDuration;
+
+    // Next record in "records"
+    private int position;
+    private long nextIndex;
+    private boolean last;
+    private long lastOffset;
+    private InputStream current;
+
+    /**
+     * The chunked message starting at {@code records.get(start)}, which must be the
+     * first chunk (see {@link #orphanRunEnd}). {@code source} may be null, in which
+     * case the chunks must all be in {@code records} or {@code carryOver}.
+     */
+    FKChunkedInput(List<ConsumerRecord<String, RequestFK>> records, int start,
+                   Deque<ConsumerRecord<String, RequestFK>> carryOver, FKRecordSource source, Duration waitDuration) {
+        ConsumerRecord<String, RequestFK> first = records.get(start);
+        if ( isContinuation(first.value()) )
+            throw new IllegalArgumentException("Not the first chunk of a message: offset "+first.offset());
+        this.chunkId = Objects.requireNonNull(first.value().getHeaders().get(FusekiKafka.hChunkId));
+        this.records = records;
+        this.carryOver = carryOver;
+        this.source = source;
+        this.waitDuration = waitDuration;
+        this.position = start+1;
+        this.nextIndex = 1;
+        this.last = isLastChunk(first.value());
+        this.lastOffset = first.offset();
+        this.current = first.value().getInputStream();
+    }
+
+    /** The message as a request, with the headers of the first chunk. */
+    RequestFK request(RequestFK first) {
+        return new RequestFK(first.getTopic(), first.getHeaders(), this);
+    }
+
+    /** Index, in the records list, of the record after the last chunk read. */
+    int position() {
+        return position;
+    }
+
+    /** Offset of the last chunk read. */
+    long lastOffset() {
+        return lastOffset;
+    }
+
+    /**
+     * Move past any chunks that have not been read, for example, after a parse error.
+     * Returns false if the rest of the message could not be found.
+     */
+    boolean finish() {
+        try {
+            while ( ! last )
+                nextChunk();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        for ( ;; ) {
+            int b = current.read();
+            if ( b >= 0 )
+                return b;
+            if ( last )
+                return -1;
+            nextChunk();
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ( len == 0 )
+            return 0;
+        for ( ;; ) {
+            int n = current.read(b, off, len);
+            if ( n > 0 )
+                return n;
+            if ( last )
+                return -1;
+            nextChunk();
+        }
+    }
+
+    private void nextChunk() throws IOException {
+        boolean fromRecords = position < records.size();
+        ConsumerRecord<String, RequestFK> cRec = fromRecords ? records.get(position) : nextRecord();
+        if ( cRec == null )
+            throw new IOException("Chunked message "+chunkId+": chunk "+nextIndex+" not received");
+        RequestFK request = cRec.value();
+        if ( ! isChunk(request) || ! chunkId.equals(request.getHeaders().get(FusekiKafka.hChunkId)) || chunkIndex(request) != nextIndex ) {
+            // Not the next chunk - leave it to be processed normally.
+            if ( ! fromRecords )
+                carryOver.addFirst(cRec);
+            throw new IOException("Chunked message "+chunkId+": chunk "+nextIndex+" missing at offset "+cRec.offset());
+        }
+        if ( fromRecords )
+            position++;
+        current = request.getInputStream();
+        lastOffset = cRec.offset();
+        nextIndex++;
+        last = isLastChunk(request);
+    }
+
+    /** The next record after the records list, polling if necessary. */
+    private ConsumerRecord<String, RequestFK> nextRecord() {
+        if ( carryOver.isEmpty() && source != null ) {
+            ConsumerRecords<String, RequestFK> cRecords = source.poll(waitDuration);
+            cRecords.forEach(carryOver::addLast);
+        }
+        return carryOver.pollFirst();
+    }
+}
@@ -57,4 +57,94 @@ public class FKConst {
      * That is, the number of 500 message units to process in one polling loop.
      */
     public static final int MAX_LOOPS_PER_CYCLE = 10;
+
+    /**
+     * The number of records, per parse thread, that may be parsed ahead of the record
+     * being applied. See {@link FKBatchProcessor#setParseAhead}.
+     */
+    public static final int parseAheadPerThread = 4;
+
+    /**
+     * Interval between writes of the state file when the offset is recorded in the
+     * dataset ({@code fk:offsetInDataset}) and no checkpoint policy has been set.
+     * The state file is then only a fallback.
+     */
+    public static final Duration offsetInDatasetStateInterval = Duration.ofMillis(10_000);
+
+    /**
+     * How often to check whether the state of a connector with a checkpoint policy
+     * is due to be written. See {@link org.apache.jena.kafka.common.DataState#checkpoint}.
+     */
+    public static final Duration checkpointTick = Duration.ofMillis(100);
+
+    /**
+     * Number of times a batch that fails, for example because the commit fails, is
+     * received and applied again before it is skipped.
+     * See {@link FKBatchProcessor#setRetryPolicy}.
+     */
+    public static final int batchRetryLimit = 5;
+
+    /**
+     * Wait before a failed batch is applied again. The wait doubles with each
+     * further failure of the same batch, up to {@link #batchRetryBackoffMax}.
+     */
+    public static final Duration batchRetryBackoff = Duration.ofMillis(500);
+
+    /** Longest wait before a failed batch is applied again. */
+    public static final Duration batchRetryBackoffMax = Duration.ofSeconds(30);
+
+    /**
+     * Longest wait for the polling of a connector to stop, including the batch being
+     * processed, when the server stops. See {@link FKS#stopConnector}.
+     */
+    public static final Duration stopWaitDuration = Duration.ofSeconds(30);
+
+    /**
+     * Length of the wait when a {@link FKSharedConsumer} polls Kafka.
+     * Connectors are added, and paused topics resumed, between polls.
+     */
+    public static final Duration sharedPollingWaitDuration = Duration.ofMillis(500);
+
+    /**
+     * Number of threads used by a {@link FKSharedConsumer} to pass records to the
+     * connectors. Each connector processes one batch at a time.
+     */
+    public static final int sharedDispatchThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Length of the wait when a {@link FKPrefetcher} polls Kafka while its queue is
+     * full. The consumer is paused so the poll returns nothing; this is how often
+     * the fetcher checks whether to resume.
+     */
+    public static final Duration prefetchPausedWaitDuration = Duration.ofMillis(50);
+
+    /**
+     * Length of the wait for the next chunk of a message sent in chunks
+     * when it has not already been received. See {@link FKChunkedInput}.
+     */
+    public static final Duration chunkWaitDuration = Duration.ofSeconds(30);
+
+    /**
+     * Number of snapshots of a topic kept by a {@link FKSnapshotPublisher} when
+     * {@code fk:snapshotRetain} is not set.
+     */
+    public static final int snapshotRetain = 3;
+
+    /**
+     * Threads for parsing one large N-Triples or N-Quads message in parallel
+     * ({@link FKParallelParser}).
+     */
+    public static final int parallelParseThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Size of a message, in bytes, from which N-Triples and N-Quads are parsed in parallel. */
+    public static final long parallelParseMinBytes = 8*1024*1024;
+
+    /** Size of the chunks of a message parsed in parallel. */
+    public static final int parallelParseChunkBytes = 2*1024*1024;
+
+    /**
+     * Number of entries in the cache of IRIs to nodes of a connector
+     * ({@link FKParserContext}) when {@code fk:nodeCacheSize} is not set.
+     */
+    public static final int nodeCacheSize = 100_000;
 }
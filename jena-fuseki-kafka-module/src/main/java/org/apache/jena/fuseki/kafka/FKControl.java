@@ -0,0 +1,224 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Status and control of a running connector: pause, resume, and rewind to an
+ * offset or a time.
+ * <p>
+ * Requests are recorded here and carried out by the thread that polls the
+ * connector's Kafka consumer, before its next poll ({@link #applyRewinds},
+ * {@link #isPaused}). Each rewind starts a new {@link #getGeneration generation}:
+ * records already received when a rewind is carried out are not applied; the
+ * records from the new position replace them.
+ */
+public class FKControl {
+
+    /** State of a connector. */
+    public enum State {
+        /** Not yet polled. */
+        STARTING,
+        /** Records are waiting in the topic. */
+        CATCHING_UP,
+        /** Up to date with the topic. */
+        LIVE,
+        /** Paused by request. */
+        PAUSED,
+        /** The last batch failed. */
+        FAILED
+    }
+
+    // A rewind: to an offset, or to the first record at or after a timestamp. Partition -1 is all partitions.
+    private record Rewind(int partition, long offset, long timestamp) {}
+
+    private final KConnectorDesc conn;
+    private final DataState dataState;
+    private final FKBatchProcessor batchProcessor;
+    private volatile boolean paused = false;
+    private final Queue<Rewind> rewinds = new ConcurrentLinkedQueue<>();
+    // Incremented by each rewind carried out.
+    private final AtomicLong generation = new AtomicLong(0);
+
+    public FKControl(KConnectorDesc conn, DataState dataState, FKBatchProcessor batchProcessor) {
+        this.conn = conn;
+        this.dataState = dataState;
+        this.batchProcessor = batchProcessor;
+        if ( batchProcessor != null )
+            batchProcessor.setControl(this);
+    }
+
+    public KConnectorDesc getConnector() {
+        return conn;
+    }
+
+    public String getTopic() {
+        return conn.getTopic();
+    }
+
+    public DataState getDataState() {
+        return dataState;
+    }
+
+    public FKMetrics getMetrics() {
+        return batchProcessor.getMetrics();
+    }
+
+    /** Stop receiving records from the topic. */
+    public void pause() {
+        if ( ! paused )
+            FmtLog.info(LOG, "[%s] Pause", getTopic());
+        paused = true;
+    }
+
+    /** Start receiving records again after {@link #pause}. */
+    public void resume() {
+        if ( paused )
+            FmtLog.info(LOG, "[%s] Resume", getTopic());
+        paused = false;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Apply the records of a partition again, starting at {@code offset}.
+     * A partition of -1 means all the partitions of the connector.
+     */
+    public void rewindToOffset(int partition, long offset) {
+        if ( offset < 0 )
+            throw new FusekiKafkaException("Bad offset: "+offset);
+        FmtLog.info(LOG, "[%s] Rewind to offset %d", getTopic(), offset);
+        rewinds.add(new Rewind(partition, offset, -1));
+    }
+
+    /**
+     * Apply the records of a partition again, starting at the first record with a
+     * timestamp (milliseconds since the epoch) at or after {@code timestamp}.
+     * A partition of -1 means all the partitions of the connector.
+     */
+    public void rewindToTimestamp(int partition, long timestamp) {
+        if ( timestamp < 0 )
+            throw new FusekiKafkaException("Bad timestamp: "+timestamp);
+        FmtLog.info(LOG, "[%s] Rewind to timestamp %d", getTopic(), timestamp);
+        rewinds.add(new Rewind(partition, -1, timestamp));
+    }
+
+    /** The number of rewinds carried out. Records fetched before the last one are not applied. */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /** The state of the connector. */
+    public State getState() {
+        if ( batchProcessor.getLastFailure() != null )
+            return State.FAILED;
+        if ( paused )
+            return State.PAUSED;
+        Map<Integer, Long> lag = getMetrics().getPartitionLag();
+        if ( lag.isEmpty() )
+            return State.STARTING;
+        return lag.values().stream().anyMatch(x -> x > 0) ? State.CATCHING_UP : State.LIVE;
+    }
+
+    /** The message of the last batch failure, or null if the last batch succeeded. */
+    public String getLastFailure() {
+        return batchProcessor.getLastFailure();
+    }
+
+    /** The partitions of the connector's topic in the consumer's assignment. */
+    /*package*/ List<TopicPartition> partitions(Consumer<String, RequestFK> consumer) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        for ( TopicPartition tp : consumer.assignment() ) {
+            if ( tp.topic().equals(getTopic()) )
+                partitions.add(tp);
+        }
+        return partitions;
+    }
+
+    /**
+     * Carry out any rewind requests. Return true if the consumer position changed.
+     * Must be called on the thread that polls the consumer.
+     */
+    /*package*/ boolean applyRewinds(Consumer<String, RequestFK> consumer) {
+        boolean changed = false;
+        Rewind rewind;
+        while ( (rewind = rewinds.poll()) != null ) {
+            try {
+                if ( applyRewind(consumer, rewind) ) {
+                    generation.incrementAndGet();
+                    changed = true;
+                }
+            } catch (RuntimeException ex) {
+                FmtLog.warn(LOG, ex, "[%s] Rewind failed: %s", getTopic(), ex.getMessage());
+            }
+        }
+        return changed;
+    }
+
+    private boolean applyRewind(Consumer<String, RequestFK> consumer, Rewind rewind) {
+        List<TopicPartition> partitions = partitions(consumer);
+        if ( rewind.partition() >= 0 )
+            partitions.removeIf(tp -> tp.partition() != rewind.partition());
+        if ( partitions.isEmpty() ) {
+            FmtLog.warn(LOG, "[%s] Rewind: no such partition: %d", getTopic(), rewind.partition());
+            return false;
+        }
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        if ( rewind.timestamp() >= 0 ) {
+            Map<TopicPartition, Long> query = new HashMap<>();
+            partitions.forEach(tp -> query.put(tp, rewind.timestamp()));
+            Map<TopicPartition, OffsetAndTimestamp> found = consumer.offsetsForTimes(query, FKConst.checkKafkaDuration);
+            Map<TopicPartition, Long> ends = consumer.endOffsets(partitions, FKConst.checkKafkaDuration);
+            for ( TopicPartition tp : partitions ) {
+                OffsetAndTimestamp x = found.get(tp);
+                // No record at or after the time: go to the end.
+                positions.put(tp, ( x != null ) ? x.offset() : ends.get(tp));
+            }
+        } else {
+            partitions.forEach(tp -> positions.put(tp, rewind.offset()));
+        }
+        positions.forEach((tp, offset) -> {
+            FmtLog.info(LOG, "[%s] Partition %d: seek to %d", getTopic(), tp.partition(), offset);
+            consumer.seek(tp, offset);
+            // Last offset seen is the one before the next to read.
+            // Offsets recorded in the dataset are restored in preference to the state file.
+            if ( batchProcessor != null )
+                batchProcessor.writeDatasetOffset(getTopic(), tp.partition(), offset - 1);
+            dataState.setLastOffset(tp.partition(), offset - 1);
+        });
+        return true;
+    }
+}
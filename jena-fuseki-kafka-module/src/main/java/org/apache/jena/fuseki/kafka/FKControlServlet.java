@@ -0,0 +1,227 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.fuseki.auth.Auth;
+import org.apache.jena.fuseki.auth.AuthPolicy;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.riot.WebContent;
+
+/**
+ * Status and control of the running connectors, at {@link #controlPath}.
+ * <ul>
+ * <li>{@code GET /$/kafka} - status of all connectors</li>
+ * <li>{@code GET /$/kafka/TOPIC} - status of one connector</li>
+ * <li>{@code POST /$/kafka/TOPIC?action=pause}</li>
+ * <li>{@code POST /$/kafka/TOPIC?action=resume}</li>
+ * <li>{@code POST /$/kafka/TOPIC?action=rewind&offset=N} - apply again from offset N</li>
+ * <li>{@code POST /$/kafka/TOPIC?action=rewind&timestamp=T} - apply again from
+ *     time T, milliseconds since the epoch or an ISO 8601 instant</li>
+ * </ul>
+ * A rewind applies to all the partitions of the connector unless there is a
+ * {@code partition=P} parameter. A POST returns the status of the connector.
+ * <p>
+ * The endpoint is only added to the server if a connector has
+ * {@code fk:controlUsers}, and a connector is only available to the authenticated
+ * users it lists. The server must have a password file; the endpoint is
+ * protected in the same way as the datasets of the server.
+ */
+public class FKControlServlet extends HttpServlet {
+
+    /** Where the server publishes the connector status and control. */
+    public static final String controlPath = "/$/kafka";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String topic = topic(request);
+        if ( topic == null ) {
+            List<FKControl> controls = new ArrayList<>(FKRegistry.get().getControls());
+            controls.removeIf(control -> ! isAllowed(request, control.getConnector()));
+            controls.sort(Comparator.comparing(FKControl::getTopic));
+            JsonArray array = new JsonArray();
+            controls.forEach(control -> array.add(status(control)));
+            sendJson(response, array);
+            return;
+        }
+        FKControl control = control(request, response, topic);
+        if ( control == null )
+            return;
+        sendJson(response, status(control));
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String topic = topic(request);
+        if ( topic == null ) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No topic");
+            return;
+        }
+        FKControl control = control(request, response, topic);
+        if ( control == null )
+            return;
+        String action = request.getParameter("action");
+        try {
+            switch(action == null ? "" : action) {
+                case "pause" ->  control.pause();
+                case "resume" -> control.resume();
+                case "rewind" ->  rewind(request, control);
+                default -> {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Action must be pause, resume or rewind: "+action);
+                    return;
+                }
+            }
+        } catch (FusekiKafkaException ex) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+            return;
+        }
+        sendJson(response, status(control));
+    }
+
+    /** The control for a topic, or null, having sent an error response, if there is none or the user is not allowed it. */
+    private static FKControl control(HttpServletRequest request, HttpServletResponse response, String topic) throws IOException {
+        FKControl control = FKRegistry.get().getControl(topic);
+        if ( control == null || control.getConnector().getControlUsers() == null ) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No connector for topic: "+topic);
+            return null;
+        }
+        if ( ! isAllowed(request, control.getConnector()) ) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return null;
+        }
+        return control;
+    }
+
+    /** Whether the authenticated user of the request is one of the connector's {@code fk:controlUsers}. */
+    /*package*/ static boolean isAllowed(HttpServletRequest request, KConnectorDesc conn) {
+        String users = conn.getControlUsers();
+        if ( users == null )
+            return false;
+        List<String> allowed = new ArrayList<>();
+        for ( String user : users.split(",") ) {
+            if ( ! user.isBlank() )
+                allowed.add(user.trim());
+        }
+        AuthPolicy policy = allowed.contains("*") ? Auth.ANY_USER : Auth.policyAllowSpecific(allowed);
+        // No user if the request was not authenticated.
+        return policy.isAllowed(request.getRemoteUser());
+    }
+
+    private static void rewind(HttpServletRequest request, FKControl control) {
+        String partitionStr = request.getParameter("partition");
+        String offsetStr = request.getParameter("offset");
+        String timestampStr = request.getParameter("timestamp");
+        int partition = ( partitionStr == null ) ? -1 : partition(partitionStr);
+        if ( offsetStr != null && timestampStr == null ) {
+            control.rewindToOffset(partition, number("offset", offsetStr));
+            return;
+        }
+        if ( timestampStr != null && offsetStr == null ) {
+            control.rewindToTimestamp(partition, timestamp(timestampStr));
+            return;
+        }
+        throw new FusekiKafkaException("Rewind needs one of 'offset' or 'timestamp'");
+    }
+
+    private static int partition(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new FusekiKafkaException("Bad partition: "+value);
+        }
+    }
+
+    private static long number(String name, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new FusekiKafkaException("Bad "+name+": "+value);
+        }
+    }
+
+    private static long timestamp(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {}
+        try {
+            return Instant.parse(value.trim()).toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            throw new FusekiKafkaException("Bad timestamp: "+value);
+        }
+    }
+
+    /** The topic from the request path, or null for none. */
+    private static String topic(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        if ( pathInfo == null )
+            return null;
+        String topic = pathInfo.startsWith("/") ? pathInfo.substring(1) : pathInfo;
+        return topic.isEmpty() ? null : topic;
+    }
+
+    /*package*/ static JsonObject status(FKControl control) {
+        KConnectorDesc conn = control.getConnector();
+        FKMetrics metrics = control.getMetrics();
+        JsonObject obj = new JsonObject();
+        obj.put("topic", control.getTopic());
+        obj.put("destination", conn.dispatchLocal() ? conn.getLocalDispatchPath() : conn.getRemoteEndpoint());
+        obj.put("state", control.getState().name());
+        if ( control.getLastFailure() != null )
+            obj.put("failure", control.getLastFailure());
+
+        Map<Integer, Long> applied = control.getDataState().getPartitionOffsets();
+        Map<Integer, Long> ends = metrics.getPartitionEndOffsets();
+        Map<Integer, Long> lag = metrics.getPartitionLag();
+        TreeSet<Integer> partitions = new TreeSet<>(applied.keySet());
+        partitions.addAll(ends.keySet());
+        JsonArray partitionsArray = new JsonArray();
+        for ( int partition : partitions ) {
+            JsonObject p = new JsonObject();
+            p.put("partition", partition);
+            p.put("appliedOffset", control.getDataState().getLastOffset(partition));
+            if ( ends.containsKey(partition) )
+                p.put("endOffset", ends.get(partition));
+            if ( lag.containsKey(partition) )
+                p.put("lag", lag.get(partition));
+            partitionsArray.add(p);
+        }
+        obj.put("partitions", partitionsArray);
+        return obj;
+    }
+
+    private static void sendJson(HttpServletResponse response, JsonValue json) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(WebContent.contentTypeJSON);
+        response.setCharacterEncoding(WebContent.charsetUTF8);
+        JSON.write(response.getOutputStream(), json);
+    }
+}
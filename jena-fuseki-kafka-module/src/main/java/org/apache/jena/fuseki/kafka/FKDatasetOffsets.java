@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+
+/**
+ * Kafka offsets recorded in the dataset the messages are applied to.
+ * <p>
+ * The offsets are in the named graph {@link #graphName}, one triple per topic
+ * partition:
+ * <pre>
+ *   &lt;urn:x-fuseki-kafka:topic:TOPIC&gt; &lt;urn:x-fuseki-kafka:partition:0&gt; 1234 .
+ * </pre>
+ * Writing the offset in the write transaction of a batch means the offset and the
+ * changes are committed together: after a crash, there is no batch that has been
+ * applied but not recorded, or recorded but not applied.
+ */
+public class FKDatasetOffsets {
+
+    private static final String NS = "urn:x-fuseki-kafka:";
+
+    /** The named graph for the offsets. */
+    public static final Node graphName = NodeFactory.createURI(NS+"offsets");
+
+    private static final String topicBase = NS+"topic:";
+    private static final String partitionBase = NS+"partition:";
+
+    private static Node topicNode(String topic) {
+        return NodeFactory.createURI(topicBase+topic);
+    }
+
+    private static Node partitionNode(int partition) {
+        return NodeFactory.createURI(partitionBase+partition);
+    }
+
+    /** Record the last offset of a topic partition. Must be called inside a write transaction. */
+    public static void write(DatasetGraph dsg, String topic, int partition, long offset) {
+        dsg.deleteAny(graphName, topicNode(topic), partitionNode(partition), Node.ANY);
+        dsg.add(quad(topic, partition, offset));
+    }
+
+    /** The quad recording the last offset of a topic partition. */
+    /*package*/ static Quad quad(String topic, int partition, long offset) {
+        return Quad.create(graphName, topicNode(topic), partitionNode(partition),
+                           NodeFactory.createLiteral(Long.toString(offset), XSDDatatype.XSDinteger));
+    }
+
+    /** Whether the quad is an offset record of the topic. */
+    /*package*/ static boolean isOffset(Quad quad, String topic) {
+        return graphName.equals(quad.getGraph()) && topicNode(topic).equals(quad.getSubject());
+    }
+
+    /** Read the offsets recorded for a topic: partition to last offset. */
+    public static Map<Integer, Long> read(DatasetGraph dsg, String topic) {
+        return Txn.calculateRead(dsg, ()->{
+            Map<Integer, Long> offsets = new TreeMap<>();
+            Iterator<Quad> iter = dsg.find(graphName, topicNode(topic), Node.ANY, Node.ANY);
+            while ( iter.hasNext() ) {
+                Quad quad = iter.next();
+                String p = quad.getPredicate().isURI() ? quad.getPredicate().getURI() : "";
+                if ( ! p.startsWith(partitionBase) || ! quad.getObject().isLiteral() )
+                    continue;
+                try {
+                    int partition = Integer.parseInt(p.substring(partitionBase.length()));
+                    long offset = Long.parseLong(quad.getObject().getLiteralLexicalForm());
+                    offsets.put(partition, offset);
+                } catch (NumberFormatException ex) {
+                    FmtLog.warn(LOG, "[%s] Bad offset record: %s", topic, quad);
+                }
+            }
+            return offsets;
+        });
+    }
+
+    /**
+     * Set the {@link DataState} from the offsets in the dataset. The dataset is the
+     * record of what has been applied so, where it has an offset, that is used in
+     * preference to the state file.
+     */
+    public static void restore(DatasetGraph dsg, DataState dataState) {
+        String topic = dataState.getTopic();
+        Map<Integer, Long> offsets = read(dsg, topic);
+        offsets.forEach((partition, offset)->{
+            long stateOffset = dataState.getLastOffset(partition);
+            if ( stateOffset != offset ) {
+                FmtLog.info(LOG, "[%s] Partition %d: offset %d from the dataset (state file: %d)", topic, partition, offset, stateOffset);
+                dataState.setLastOffset(partition, offset);
+            }
+        });
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Metrics for a connector: throughput, consumer lag, batch sizes, the time spent
+ * in each phase of processing a batch, and errors.
+ * <p>
+ * There is one {@code FKMetrics} per topic ({@link #get}). Each is registered as a
+ * JMX MBean, {@code org.apache.jena.fuseki.kafka:type=Connector,topic=TOPIC},
+ * and all of them are available in Prometheus text format ({@link #writePrometheus}),
+ * which the server publishes at {@link #metricsPath} to the users allowed to see
+ * the status of the connector ({@link FKControlServlet}).
+ * <p>
+ * The phases of a batch are:
+ * <ul>
+ * <li>poll - waiting for records from Kafka (or from the prefetch queue)</li>
+ * <li>parse - parsing a message, when parsing ahead on other threads</li>
+ * <li>apply - applying the batch; this includes parsing when not parsing ahead</li>
+ * <li>commit - committing the batch transaction</li>
+ * <li>state write - recording the new offset in the connector state</li>
+ * </ul>
+ * End-to-end latency is from the timestamp of the last record in a batch to the
+ * batch being committed.
+ * <p>
+ * When consecutive RDF Patch messages are merged ({@link FKPatchCompactor}), the
+ * quad changes received and those cancelled by a later change are counted.
+ * <p>
+ * The size, estimated memory, hits and misses of the connector's cache of IRIs to
+ * nodes ({@link FKParserContext}) are reported, as zero if it has none.
+ */
+public class FKMetrics implements FKMetricsMBean {
+
+    /** Where the server publishes the metrics in Prometheus text format. */
+    public static final String metricsPath = "/$/kafka-metrics";
+
+    private static final String jmxDomain = "org.apache.jena.fuseki.kafka";
+
+    private static final Map<String, FKMetrics> registry = new ConcurrentHashMap<>();
+
+    /** The metrics for a topic, created and registered with JMX on first use. */
+    public static FKMetrics get(String topic) {
+        return registry.computeIfAbsent(topic, t->{
+            FKMetrics metrics = new FKMetrics(t);
+            metrics.registerJMX();
+            return metrics;
+        });
+    }
+
+    /** Metrics that are not registered, for a batch processor that has not been given any. */
+    /*package*/ static FKMetrics unregistered() {
+        return new FKMetrics("");
+    }
+
+    /** All the registered metrics. */
+    public static Collection<FKMetrics> all() {
+        return registry.values();
+    }
+
+    /** Remove the metrics for a topic. */
+    public static void remove(String topic) {
+        FKMetrics metrics = registry.remove(topic);
+        if ( metrics != null )
+            metrics.unregisterJMX();
+    }
+
+    // Bucket upper bounds.
+    private static final double[] secondsBuckets = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+    private static final double[] recordsBuckets = { 1, 10, 50, 100, 500, 1000, 5000, 10000, 50000 };
+
+    private final String topic;
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder patchChanges = new LongAdder();
+    private final LongAdder patchChangesCancelled = new LongAdder();
+    private final Map<Integer, Long> lag = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> endOffsets = new ConcurrentHashMap<>();
+    private final Rate recordRate = new Rate();
+    private final Rate byteRate = new Rate();
+
+    private final Histogram batchRecords = new Histogram(recordsBuckets);
+    private final Histogram pollTime = new Histogram(secondsBuckets);
+    private final Histogram parseTime = new Histogram(secondsBuckets);
+    private final Histogram applyTime = new Histogram(secondsBuckets);
+    private final Histogram commitTime = new Histogram(secondsBuckets);
+    private final Histogram stateWriteTime = new Histogram(secondsBuckets);
+    private final Histogram endToEndTime = new Histogram(secondsBuckets);
+
+    private FKMetrics(String topic) {
+        this.topic = topic;
+    }
+
+    // ---- Recording
+
+    /** A batch of {@code count} records, {@code numBytes} payload bytes, has been processed. */
+    public void batch(int count, long numBytes) {
+        batches.increment();
+        records.add(count);
+        bytes.add(numBytes);
+        recordRate.mark(count);
+        byteRate.mark(numBytes);
+        batchRecords.observe(count);
+    }
+
+    public void pollNanos(long nanos)       { pollTime.observe(nanos / 1e9); }
+
+    public void parseNanos(long nanos)      { parseTime.observe(nanos / 1e9); }
+
+    public void applyNanos(long nanos)      { applyTime.observe(nanos / 1e9); }
+
+    public void commitNanos(long nanos)     { commitTime.observe(nanos / 1e9); }
+
+    public void stateWriteNanos(long nanos) { stateWriteTime.observe(nanos / 1e9); }
+
+    /** A batch including a record with this timestamp has been committed. */
+    public void committed(long recordTimestamp) {
+        if ( recordTimestamp < 0 )
+            // No timestamp.
+            return;
+        long millis = System.currentTimeMillis() - recordTimestamp;
+        endToEndTime.observe(Math.max(0, millis) / 1e3);
+    }
+
+    /** RDF Patches with {@code received} quad changes have been merged, {@code cancelled} of them cancelled. */
+    public void patchCompaction(long received, long cancelled) {
+        patchChanges.add(received);
+        patchChangesCancelled.add(cancelled);
+    }
+
+    /** A message could not be processed. */
+    public void error(String contentType) {
+        String key = ( contentType == null ) ? "none" : contentType;
+        errors.computeIfAbsent(key, k->new LongAdder()).increment();
+    }
+
+    /**
+     * Update the lag of the partitions of this topic from the consumer's position
+     * and the end offsets it has fetched. Must be called on the thread that polls the
+     * consumer. This does not call the Kafka server.
+     */
+    public void updateLag(Consumer<?, ?> consumer) {
+        try {
+            for ( TopicPartition tp : consumer.assignment() ) {
+                if ( ! topic.equals(tp.topic()) )
+                    continue;
+                OptionalLong partitionLag = consumer.currentLag(tp);
+                if ( partitionLag.isPresent() ) {
+                    lag.put(tp.partition(), partitionLag.getAsLong());
+                    endOffsets.put(tp.partition(), consumer.position(tp) + partitionLag.getAsLong());
+                }
+            }
+        } catch (RuntimeException ex) {
+            FmtLog.debug(LOG, "[%s] Consumer lag not available: %s", topic, ex.getMessage());
+        }
+    }
+
+    // ---- JMX
+
+    private ObjectName objectName() throws Exception {
+        return new ObjectName(jmxDomain+":type=Connector,topic="+ObjectName.quote(topic));
+    }
+
+    private void registerJMX() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName();
+            if ( ! mbs.isRegistered(name) )
+                mbs.registerMBean(this, name);
+        } catch (Exception ex) {
+            FmtLog.warn(LOG, "[%s] Failed to register JMX metrics: %s", topic, ex.getMessage());
+        }
+    }
+
+    private void unregisterJMX() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName();
+            if ( mbs.isRegistered(name) )
+                mbs.unregisterMBean(name);
+        } catch (Exception ex) {
+            FmtLog.warn(LOG, "[%s] Failed to unregister JMX metrics: %s", topic, ex.getMessage());
+        }
+    }
+
+    @Override public String getTopic()                  { return topic; }
+    @Override public long getRecords()                  { return records.sum(); }
+    @Override public long getBytes()                    { return bytes.sum(); }
+    @Override public long getBatches()                  { return batches.sum(); }
+    @Override public double getRecordsPerSecond()       { return recordRate.perSecond(); }
+    @Override public double getBytesPerSecond()         { return byteRate.perSecond(); }
+    @Override public double getMeanBatchRecords()       { return batchRecords.mean(); }
+    @Override public double getMeanPollMillis()         { return pollTime.mean() * 1e3; }
+    @Override public double getMeanParseMillis()        { return parseTime.mean() * 1e3; }
+    @Override public double getMeanApplyMillis()        { return applyTime.mean() * 1e3; }
+    @Override public double getMeanCommitMillis()       { return commitTime.mean() * 1e3; }
+    @Override public double getMeanStateWriteMillis()   { return stateWriteTime.mean() * 1e3; }
+    @Override public double getMeanEndToEndMillis()     { return endToEndTime.mean() * 1e3; }
+    @Override public double getP99EndToEndMillis()      { return endToEndTime.quantile(0.99) * 1e3; }
+    @Override public long getPatchChanges()             { return patchChanges.sum(); }
+    @Override public long getPatchChangesCancelled()    { return patchChangesCancelled.sum(); }
+    @Override public long getNodeCacheEntries()         { return nodeCache(FKParserContext::getSize); }
+    @Override public long getNodeCacheBytes()           { return nodeCache(FKParserContext::getEstimatedBytes); }
+    @Override public long getNodeCacheHits()            { return nodeCache(FKParserContext::getHits); }
+    @Override public long getNodeCacheMisses()          { return nodeCache(FKParserContext::getMisses); }
+
+    private long nodeCache(Function<FKParserContext, Long> value) {
+        FKParserContext parserContext = FKParserContext.find(topic);
+        return ( parserContext == null ) ? 0 : value.apply(parserContext);
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public String getErrorsByContentType() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(errors).forEach((ct, count)->{
+            if ( ! sb.isEmpty() )
+                sb.append(", ");
+            sb.append(ct).append('=').append(count.sum());
+        });
+        return sb.toString();
+    }
+
+    @Override
+    public long getLag() {
+        return lag.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /** Lag by partition. */
+    public Map<Integer, Long> getPartitionLag() {
+        return new TreeMap<>(lag);
+    }
+
+    /** End offset (the offset of the next record to be written) by partition, when last seen by the consumer. */
+    public Map<Integer, Long> getPartitionEndOffsets() {
+        return new TreeMap<>(endOffsets);
+    }
+
+    // ---- Prometheus
+
+    /** Write the metrics of all topics in Prometheus text format. */
+    public static void writePrometheus(StringBuilder out) {
+        writePrometheus(out, topic->true);
+    }
+
+    /** Write the metrics of the topics accepted by {@code topics} in Prometheus text format. */
+    public static void writePrometheus(StringBuilder out, Predicate<String> topics) {
+        List<FKMetrics> all = new ArrayList<>(registry.values());
+        all.removeIf(m->! topics.test(m.topic));
+        all.sort((m1, m2)->m1.topic.compareTo(m2.topic));
+        counter(out, all, "fuseki_kafka_records_total", "Records processed.", m->m.records.sum());
+        counter(out, all, "fuseki_kafka_bytes_total", "Payload bytes processed.", m->m.bytes.sum());
+        counter(out, all, "fuseki_kafka_batches_total", "Batches processed.", m->m.batches.sum());
+        counter(out, all, "fuseki_kafka_patch_changes_total", "Quad changes in merged RDF Patches.", m->m.patchChanges.sum());
+        counter(out, all, "fuseki_kafka_patch_changes_cancelled_total", "Quad changes in merged RDF Patches cancelled by a later change.", m->m.patchChangesCancelled.sum());
+        counter(out, all, "fuseki_kafka_node_cache_hits_total", "IRIs parsed that were in the node cache.", FKMetrics::getNodeCacheHits);
+        counter(out, all, "fuseki_kafka_node_cache_misses_total", "IRIs parsed that were not in the node cache.", FKMetrics::getNodeCacheMisses);
+        gauge(out, all, "fuseki_kafka_node_cache_entries", "Entries in the node cache.", FKMetrics::getNodeCacheEntries);
+        gauge(out, all, "fuseki_kafka_node_cache_bytes", "Estimated memory used by the node cache.", FKMetrics::getNodeCacheBytes);
+
+        header(out, "fuseki_kafka_errors_total", "counter", "Messages that could not be processed, by content type.");
+        for ( FKMetrics m : all )
+            new TreeMap<>(m.errors).forEach((ct, count)->
+                sample(out, "fuseki_kafka_errors_total", m.labels("content_type", ct), count.sum()));
+
+        header(out, "fuseki_kafka_consumer_lag", "gauge", "Records between the consumer position and the end of the partition.");
+        for ( FKMetrics m : all )
+            m.getPartitionLag().forEach((partition, partitionLag)->
+                sample(out, "fuseki_kafka_consumer_lag", m.labels("partition", Integer.toString(partition)), partitionLag));
+
+        histogram(out, all, "fuseki_kafka_batch_records", "Records in a batch.", m->m.batchRecords);
+        histogram(out, all, "fuseki_kafka_poll_seconds", "Time waiting for records.", m->m.pollTime);
+        histogram(out, all, "fuseki_kafka_parse_seconds", "Time parsing a message, when parsing ahead.", m->m.parseTime);
+        histogram(out, all, "fuseki_kafka_apply_seconds", "Time applying a batch.", m->m.applyTime);
+        histogram(out, all, "fuseki_kafka_commit_seconds", "Time committing a batch.", m->m.commitTime);
+        histogram(out, all, "fuseki_kafka_state_write_seconds", "Time recording the offset in the connector state.", m->m.stateWriteTime);
+        histogram(out, all, "fuseki_kafka_end_to_end_seconds", "Time from the record timestamp to the batch commit.", m->m.endToEndTime);
+    }
+
+    private String labels(String... extra) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("topic=\"").append(escape(topic)).append('"');
+        for ( int i = 0 ; i+1 < extra.length ; i += 2 )
+            sb.append(',').append(extra[i]).append("=\"").append(escape(extra[i+1])).append('"');
+        return sb.toString();
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ").append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if ( value == Math.rint(value) && ! Double.isInfinite(value) )
+            return Long.toString((long)value);
+        return Double.toString(value);
+    }
+
+    private static void counter(StringBuilder out, List<FKMetrics> all, String name, String help, Function<FKMetrics, Long> value) {
+        header(out, name, "counter", help);
+        for ( FKMetrics m : all )
+            sample(out, name, m.labels(), value.apply(m));
+    }
+
+    private static void gauge(StringBuilder out, List<FKMetrics> all, String name, String help, Function<FKMetrics, Long> value) {
+        header(out, name, "gauge", help);
+        for ( FKMetrics m : all )
+            sample(out, name, m.labels(), value.apply(m));
+    }
+
+    private static void histogram(StringBuilder out, List<FKMetrics> all, String name, String help, Function<FKMetrics, Histogram> histogram) {
+        header(out, name, "histogram", help);
+        for ( FKMetrics m : all ) {
+            Histogram h = histogram.apply(m);
+            long cumulative = 0;
+            for ( int i = 0 ; i < h.bounds.length ; i++ ) {
+                cumulative += h.buckets[i].sum();
+                sample(out, name+"_bucket", m.labels("le", format(h.bounds[i])), cumulative);
+            }
+            sample(out, name+"_bucket", m.labels("le", "+Inf"), h.count.sum());
+            sample(out, name+"_sum", m.labels(), h.sum.sum());
+            sample(out, name+"_count", m.labels(), h.count.sum());
+        }
+    }
+
+    /** Histogram with fixed bucket upper bounds. */
+    private static class Histogram {
+        private final double[] bounds;
+        // Not cumulative. The last bucket is for values above the last bound.
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length+1];
+            for ( int i = 0 ; i < buckets.length ; i++ )
+                buckets[i] = new LongAdder();
+        }
+
+        void observe(double value) {
+            int i = 0;
+            while ( i < bounds.length && value > bounds[i] )
+                i++;
+            buckets[i].increment();
+            count.increment();
+            sum.add(value);
+        }
+
+        double mean() {
+            long n = count.sum();
+            return ( n == 0 ) ? 0 : sum.sum() / n;
+        }
+
+        /** The upper bound of the bucket containing the quantile. */
+        double quantile(double q) {
+            long n = count.sum();
+            if ( n == 0 )
+                return 0;
+            long target = (long)Math.ceil(q * n);
+            long cumulative = 0;
+            for ( int i = 0 ; i < bounds.length ; i++ ) {
+                cumulative += buckets[i].sum();
+                if ( cumulative >= target )
+                    return bounds[i];
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /** Events per second over the last minute, counted in one second slots. */
+    private static class Rate {
+        private static final int slots = 60;
+        private final long[] seconds = new long[slots];
+        private final long[] counts = new long[slots];
+
+        synchronized void mark(long n) {
+            long now = System.currentTimeMillis() / 1000;
+            int idx = (int)(now % slots);
+            if ( seconds[idx] != now ) {
+                seconds[idx] = now;
+                counts[idx] = 0;
+            }
+            counts[idx] += n;
+        }
+
+        synchronized double perSecond() {
+            long now = System.currentTimeMillis() / 1000;
+            long total = 0;
+            for ( int i = 0 ; i < slots ; i++ ) {
+                if ( now - seconds[i] < slots )
+                    total += counts[i];
+            }
+            return (double)total / slots;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+/**
+ * JMX view of the {@link FKMetrics} of a connector.
+ * Times are in milliseconds; rates are over the last minute.
+ */
+public interface FKMetricsMBean {
+
+    public String getTopic();
+
+    public long getRecords();
+
+    public long getBytes();
+
+    public long getBatches();
+
+    public long getErrors();
+
+    /** Errors by content type, as "type=count" pairs. */
+    public String getErrorsByContentType();
+
+    public double getRecordsPerSecond();
+
+    public double getBytesPerSecond();
+
+    /** Records between the last record received and the end of each partition, summed over the partitions. */
+    public long getLag();
+
+    public double getMeanBatchRecords();
+
+    public double getMeanPollMillis();
+
+    public double getMeanParseMillis();
+
+    public double getMeanApplyMillis();
+
+    public double getMeanCommitMillis();
+
+    public double getMeanStateWriteMillis();
+
+    public double getMeanEndToEndMillis();
+
+    /** Upper bound, from the histogram buckets, of the 99th percentile of the end-to-end latency. */
+    public double getP99EndToEndMillis();
+
+    /** Quad changes in RDF Patch messages that were merged. */
+    public long getPatchChanges();
+
+    /** Quad changes in merged RDF Patch messages that were cancelled by a later change to the same quad. */
+    public long getPatchChangesCancelled();
+
+    /** Entries in the connector's cache of IRIs to nodes used when parsing. */
+    public long getNodeCacheEntries();
+
+    /** Estimated memory, in bytes, of the connector's cache of IRIs to nodes. */
+    public long getNodeCacheBytes();
+
+    /** IRIs parsed that were found in the connector's cache of IRIs to nodes. */
+    public long getNodeCacheHits();
+
+    /** IRIs parsed that were not in the connector's cache of IRIs to nodes. */
+    public long getNodeCacheMisses();
+}
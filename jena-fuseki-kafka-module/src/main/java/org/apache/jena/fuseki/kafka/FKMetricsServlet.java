@@ -0,0 +1,53 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The connector metrics ({@link FKMetrics}) in Prometheus text format.
+ * <p>
+ * As for the status and control endpoint ({@link FKControlServlet}), this is only
+ * added to the server if a connector has {@code fk:controlUsers}, it requires
+ * authentication, and it only has the metrics of the connectors the user is
+ * allowed to see.
+ */
+public class FKMetricsServlet extends HttpServlet {
+
+    private static final String contentTypePrometheus = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        FKMetrics.writePrometheus(sb, topic->isAllowed(request, topic));
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentTypePrometheus);
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    private static boolean isAllowed(HttpServletRequest request, String topic) {
+        FKControl control = FKRegistry.get().getControl(topic);
+        return control != null && FKControlServlet.isAllowed(request, control.getConnector());
+    }
+}
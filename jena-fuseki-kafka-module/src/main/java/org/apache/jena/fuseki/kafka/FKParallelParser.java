@@ -0,0 +1,216 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Parse a large N-Triples or N-Quads message on several threads.
+ * <p>
+ * Each line of N-Triples and N-Quads is a complete triple or quad (a newline in a
+ * literal is always escaped), so the body is split into chunks at newlines and the
+ * chunks are parsed in parallel on a fork-join pool. The triples and quads are sent
+ * to the destination, on the calling thread, in the order of the message. A few
+ * chunks are parsed ahead of the one being sent, so memory use does not depend on
+ * the size of the message.
+ * <p>
+ * A blank node label means the same blank node throughout the message, and a
+ * different one from any other message, as when the message is parsed in one go.
+ * <p>
+ * If a chunk has a syntax error, parsing stops with the exception, and none of the
+ * triples and quads of that chunk, or of the chunks after it, are sent. Those of the
+ * chunks before it have already been sent, so the destination must be able to
+ * discard the whole message: the connector applies the message with
+ * {@link FKUndo#atomic}, or collects it before applying it. Line numbers in the
+ * error message are from the start of the chunk.
+ */
+public class FKParallelParser {
+
+    private static ForkJoinPool pool = null;
+
+    private static synchronized ForkJoinPool pool() {
+        if ( pool == null )
+            pool = new ForkJoinPool(FKConst.parallelParseThreads);
+        return pool;
+    }
+
+    /** Whether a message is parsed in parallel: N-Triples or N-Quads of at least {@link FKConst#parallelParseMinBytes}. */
+    public static boolean applies(RequestFK request, Lang lang) {
+        if ( FKConst.parallelParseThreads < 2 )
+            return false;
+        if ( ! RDFLanguages.sameLang(Lang.NTRIPLES, lang) && ! RDFLanguages.sameLang(Lang.NQUADS, lang) )
+            return false;
+        // Bytes as received; a message with an input stream (chunks) has a byte count of -1.
+        return request.getByteCount() >= FKConst.parallelParseMinBytes;
+    }
+
+    /**
+     * Parse the body of a message, which {@link #applies}, to {@code dest}.
+     * On a syntax error, {@code dest} has received part of the message.
+     */
+    public static void parse(RequestFK request, Lang lang, StreamRDF dest) {
+        parse(request, lang, dest, null);
+    }
+
+    /**
+     * Parse the body of a message, which {@link #applies}, to {@code dest}, using
+     * the connector's {@link FKParserContext} if it is not null.
+     */
+    public static void parse(RequestFK request, Lang lang, StreamRDF dest, FKParserContext parserContext) {
+        ByteBuffer body = ( request.getContentEncoding() == null )
+                ? request.getByteBuffer()
+                : ByteBuffer.wrap(IO.readWholeFile(request.getInputStream()));
+        parse(body, lang, dest, FKConst.parallelParseChunkBytes, parserContext);
+    }
+
+    /** Parse N-Triples or N-Quads to {@code dest}. On a syntax error, {@code dest} has received part of the message. */
+    public static void parse(ByteBuffer body, Lang lang, StreamRDF dest) {
+        parse(body, lang, dest, FKConst.parallelParseChunkBytes);
+    }
+
+    /*package*/ static void parse(ByteBuffer body, Lang lang, StreamRDF dest, int chunkBytes) {
+        parse(body, lang, dest, chunkBytes, null);
+    }
+
+    /*package*/ static void parse(ByteBuffer body, Lang lang, StreamRDF dest, int chunkBytes, FKParserContext parserContext) {
+        // Blank nodes labels are kept by the parser, then made unique to this message.
+        String bnodePrefix = UUID.randomUUID().toString()+"-";
+        int window = 2 * FKConst.parallelParseThreads;
+        Deque<ForkJoinTask<List<Object>>> parsing = new ArrayDeque<>();
+        int position = body.position();
+        int limit = body.limit();
+        try {
+            while ( position < limit || ! parsing.isEmpty() ) {
+                while ( position < limit && parsing.size() < window ) {
+                    int end = chunkEnd(body, position, limit, chunkBytes);
+                    ByteBuffer chunk = body.duplicate().position(position).limit(end).slice();
+                    parsing.add(pool().submit(()->parseChunk(chunk, lang, bnodePrefix, parserContext)));
+                    position = end;
+                }
+                for ( Object item : await(parsing.removeFirst()) ) {
+                    if ( item instanceof Triple triple )
+                        dest.triple(triple);
+                    else
+                        dest.quad((Quad)item);
+                }
+            }
+        } finally {
+            parsing.forEach(task->task.cancel(true));
+        }
+    }
+
+    /** The end of a chunk starting at {@code start}: just after the first newline after the chunk size. */
+    private static int chunkEnd(ByteBuffer body, int start, int limit, int chunkBytes) {
+        long target = (long)start + chunkBytes;
+        if ( target >= limit )
+            return limit;
+        int i = (int)target;
+        while ( i < limit && body.get(i) != '\n' )
+            i++;
+        return Math.min(i+1, limit);
+    }
+
+    // Triples and quads, in order.
+    private static List<Object> parseChunk(ByteBuffer chunk, Lang lang, String bnodePrefix, FKParserContext parserContext) {
+        List<Object> items = new ArrayList<>();
+        StreamRDF collector = new StreamRDFBase() {
+            @Override public void triple(Triple triple) {
+                items.add(Triple.create(bnode(triple.getSubject()), triple.getPredicate(), bnode(triple.getObject())));
+            }
+            @Override public void quad(Quad quad) {
+                items.add(Quad.create(bnode(quad.getGraph()), bnode(quad.getSubject()), quad.getPredicate(), bnode(quad.getObject())));
+            }
+            private Node bnode(Node node) {
+                return node.isBlank() ? NodeFactory.createBlankNode(bnodePrefix+node.getBlankNodeLabel()) : node;
+            }
+        };
+        if ( parserContext != null ) {
+            parserContext.parse(lang, new ByteBufferInputStream(chunk), collector, LabelToNode.createUseLabelAsGiven());
+            return items;
+        }
+        RDFParser.source(new ByteBufferInputStream(chunk))
+                 .lang(lang)
+                 .labelToNode(LabelToNode.createUseLabelAsGiven())
+                 .parse(collector);
+        return items;
+    }
+
+    private static List<Object> await(ForkJoinTask<List<Object>> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FusekiKafkaException("Interrupted while waiting for parsing", ex);
+        } catch (ExecutionException ex) {
+            if ( ex.getCause() instanceof RuntimeException runtimeEx )
+                throw runtimeEx;
+            throw new FusekiKafkaException("Parse failed", ex.getCause());
+        }
+    }
+
+    /** Read a {@link ByteBuffer}, which may be read-only. */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? ( buffer.get() & 0xFF ) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if ( len == 0 )
+                return 0;
+            if ( ! buffer.hasRemaining() )
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.jena.fuseki.kafka;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.atlas.lib.Cache;
+import org.apache.jena.atlas.lib.CacheFactory;
+import org.apache.jena.graph.Node;
+import org.apache.jena.irix.IRIs;
+import org.apache.jena.irix.IRIxResolver;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.common.ParseFK;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParserRegistry;
+import org.apache.jena.riot.RIOT;
+import org.apache.jena.riot.ReaderRIOTFactory;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.*;
+
+/**
+ * Parsing state kept for the lifetime of a connector and shared by all its
+ * messages: a bounded cache of IRI strings to nodes.
+ * <p>
+ * Messages on a topic usually use the same vocabulary and mention the same
+ * subjects again and again. Parsing a message with {@link #parse} looks up each
+ * absolute IRI in the cache; when it is there, the node is used as it is, without
+ * resolving, checking, or creating the node again, and the nodes added to the
+ * dataset are shared between messages. A relative IRI depends on the base of the
+ * message and is always resolved.
+ * <p>
+ * Each message is parsed with its own prefixes and blank node labels. Warnings
+ * from checking an IRI are only given the first time the IRI is parsed while it
+ * is in the cache.
+ * <p>
+ * RDF Thrift and RDF Protobuf messages do not go through the cache.
+ * <p>
+ * There is one {@code FKParserContext} per topic ({@link #get}); its size and
+ * estimated memory are reported by {@link FKMetrics}.
+ */
+public class FKParserContext {
+
+    // Per topic; one connector per topic.
+    private static final Map<String, FKParserContext> contexts = new ConcurrentHashMap<>();
+
+    /** The parser context for the connector; null if the connector does not have a node cache. */
+    public static FKParserContext get(KConnectorDesc conn) {
+        int size = ( conn.getNodeCacheSize() < 0 ) ? FKConst.nodeCacheSize : conn.getNodeCacheSize();
+        if ( size == 0 )
+            return null;
+        return contexts.computeIfAbsent(conn.getTopic(), topic->new FKParserContext(size));
+    }
+
+    /** The parser context for a topic, if there is one; otherwise null. */
+    public static FKParserContext find(String topic) {
+        return contexts.get(topic);
+    }
+
+    /** Release the parser context for a topic. */
+    public static void remove(String topic) {
+        contexts.remove(topic);
+    }
+
+    // Approximate bytes for a cache entry, apart from the characters of the IRI:
+    // the key string, the node and its string, and the cache's own entry.
+    private static final int entryOverheadBytes = 160;
+
+    private final int maxSize;
+    private final Cache<String, Node> iris;
+    // Immutable, so shared by all the messages.
+    private final IRIxResolver resolver = IRIxResolver.create().base(IRIs.getSystemBase()).resolve(true).allowRelative(false).build();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+
+    /*package*/ FKParserContext(int maxSize) {
+        this.maxSize = maxSize;
+        this.iris = CacheFactory.createCache(maxSize);
+    }
+
+    /** Parse RDF data to {@code dest}. */
+    public void parse(Lang lang, InputStream data, StreamRDF dest) {
+        parse(lang, data, dest, SyntaxLabels.createLabelToNode());
+    }
+
+    /** Parse RDF data to {@code dest}, with the given blank node labelling. */
+    public void parse(Lang lang, InputStream data, StreamRDF dest, LabelToNode labels) {
+        ReaderRIOTFactory factory = RDFParserRegistry.getFactory(lang);
+        if ( factory == null || RDFLanguages.sameLang(Lang.RDFTHRIFT, lang) || RDFLanguages.sameLang(Lang.RDFPROTO, lang) ) {
+            ParseFK.parse(lang, data, dest);
+            return;
+        }
+        ParserProfile profile = new CachingParserProfile(RiotLib.factoryRDF(labels));
+        factory.create(lang, profile).read(data, null, null, dest, RIOT.getContext().copy());
+    }
+
+    /** Maximum number of entries in the cache. */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Number of entries in the cache. */
+    public long getSize() {
+        return iris.size();
+    }
+
+    /** Estimated memory used by the cache, in bytes. */
+    public long getEstimatedBytes() {
+        long added = misses.sum();
+        long meanChars = ( added == 0 ) ? 0 : chars.sum() / added;
+        // The key and the node each have the characters of the IRI (compact strings).
+        return getSize() * (entryOverheadBytes + 2 * meanChars);
+    }
+
+    /** IRIs found in the cache. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** IRIs not in the cache, which were then added. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Whether an IRI string has a scheme, and so does not depend on the base. */
+    private static boolean isAbsolute(String iriStr) {
+        int n = iriStr.length();
+        if ( n == 0 || ! isAlpha(iriStr.charAt(0)) )
+            return false;
+        for ( int i = 1 ; i < n ; i++ ) {
+            char ch = iriStr.charAt(i);
+            if ( ch == ':' )
+                return true;
+            if ( ! isAlpha(ch) && ! ( ch >= '0' && ch <= '9' ) && ch != '+' && ch != '-' && ch != '.' )
+                return false;
+        }
+        return false;
+    }
+
+    private static boolean isAlpha(char ch) {
+        return ( ch >= 'a' && ch <= 'z' ) || ( ch >= 'A' && ch <= 'Z' );
+    }
+
+    /** A parser profile for one message that creates nodes for absolute IRIs through the cache. */
+    private class CachingParserProfile extends ParserProfileStd {
+        CachingParserProfile(FactoryRDF factory) {
+            super(factory, ErrorHandlerFactory.errorHandlerStd, resolver, PrefixMapFactory.create(),
+                  RIOT.getContext().copy(), true, false);
+        }
+
+        @Override
+        public Node createURI(String uriStr, long line, long col) {
+            if ( ! isAbsolute(uriStr) )
+                return super.createURI(uriStr, line, col);
+            Node node = iris.getIfPresent(uriStr);
+            if ( node != null ) {
+                hits.increment();
+                return node;
+            }
+            node = super.createURI(uriStr, line, col);
+            iris.put(uriStr, node);
+            misses.increment();
+            chars.add(uriStr.length());
+            return node;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.rdfpatch.RDFPatch;
+import org.apache.jena.rdfpatch.changes.RDFChangesCollector;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Merge RDF Patches into one net change: the last add or delete of each quad.
+ * <p>
+ * Adding or deleting a quad does not depend on anything else, and a later change to
+ * the same quad replaces the effect of an earlier one, so applying the net change
+ * has the same outcome as applying the patches in order. An add and a later delete
+ * of the same quad (or a delete and a later add) leave only the later change; the
+ * earlier one is "cancelled".
+ * <p>
+ * The changes of a patch transaction that ends with an abort ({@code TA}) are
+ * dropped.
+ * <p>
+ * Patch header rows ({@code H id}, {@code H prev}, ...) are dropped: the net change
+ * has no header rows. The id and previous id of a patch, if used, are not carried
+ * over, so a patch log cannot be checked against the merged patch.
+ */
+public class FKPatchCompactor implements RDFChanges {
+
+    // A prefix change; uriStr is null for a delete.
+    private record PrefixChange(Node graph, String prefix, String uriStr) {}
+
+    // Quad to true for add, false for delete. Kept in the order of the last change.
+    private final Map<Quad, Boolean> changes = new LinkedHashMap<>();
+    private final List<PrefixChange> prefixChanges = new ArrayList<>();
+    // Changes inside a patch transaction, until it commits.
+    private Map<Quad, Boolean> txnChanges = null;
+    private List<PrefixChange> txnPrefixChanges = null;
+    private long txnReceived = 0;
+    private long received = 0;
+
+    public FKPatchCompactor() {}
+
+    /** Add a patch. */
+    public void add(RDFPatch patch) {
+        patch.apply(this);
+        // An unfinished transaction.
+        txnCommit();
+    }
+
+    /** Number of quad changes received, not counting those in aborted transactions. */
+    public long getReceived() {
+        return received;
+    }
+
+    /** Number of quad changes in the net change. */
+    public long getNet() {
+        return changes.size();
+    }
+
+    /** Number of quad changes replaced by a later change to the same quad. */
+    public long getCancelled() {
+        return received - changes.size();
+    }
+
+    /** Send the net change to {@code dest}, without transaction markers. */
+    public void apply(RDFChanges dest) {
+        for ( PrefixChange pc : prefixChanges ) {
+            if ( pc.uriStr() != null )
+                dest.addPrefix(pc.graph(), pc.prefix(), pc.uriStr());
+            else
+                dest.deletePrefix(pc.graph(), pc.prefix());
+        }
+        changes.forEach((quad, isAdd) -> {
+            if ( isAdd )
+                dest.add(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+            else
+                dest.delete(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+        });
+    }
+
+    /** The net change as a patch, in one transaction. */
+    public RDFPatch asPatch() {
+        RDFChangesCollector collector = new RDFChangesCollector();
+        collector.start();
+        collector.txnBegin();
+        apply(collector);
+        collector.txnCommit();
+        collector.finish();
+        return collector.getRDFPatch();
+    }
+
+    private void change(Node g, Node s, Node p, Node o, boolean isAdd) {
+        Quad quad = Quad.create(( g == null || Quad.isDefaultGraph(g) ) ? Quad.defaultGraphIRI : g, s, p, o);
+        Map<Quad, Boolean> target;
+        if ( txnChanges != null ) {
+            target = txnChanges;
+            txnReceived++;
+        } else {
+            target = changes;
+            received++;
+        }
+        // Move to the end.
+        target.remove(quad);
+        target.put(quad, isAdd);
+    }
+
+    private void prefixChange(Node gn, String prefix, String uriStr) {
+        List<PrefixChange> target = ( txnPrefixChanges != null ) ? txnPrefixChanges : prefixChanges;
+        target.add(new PrefixChange(gn, prefix, uriStr));
+    }
+
+    @Override
+    public void header(String field, Node value) {
+        // Header rows are dropped.
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        change(g, s, p, o, true);
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        change(g, s, p, o, false);
+    }
+
+    @Override
+    public void addPrefix(Node gn, String prefix, String uriStr) {
+        prefixChange(gn, prefix, uriStr);
+    }
+
+    @Override
+    public void deletePrefix(Node gn, String prefix) {
+        prefixChange(gn, prefix, null);
+    }
+
+    @Override
+    public void txnBegin() {
+        txnCommit();
+        txnChanges = new LinkedHashMap<>();
+        txnPrefixChanges = new ArrayList<>();
+        txnReceived = 0;
+    }
+
+    @Override
+    public void txnCommit() {
+        if ( txnChanges == null )
+            return;
+        Map<Quad, Boolean> committed = txnChanges;
+        List<PrefixChange> committedPrefixes = txnPrefixChanges;
+        txnChanges = null;
+        txnPrefixChanges = null;
+        received += txnReceived;
+        committed.forEach((quad, isAdd) -> {
+            changes.remove(quad);
+            changes.put(quad, isAdd);
+        });
+        prefixChanges.addAll(committedPrefixes);
+    }
+
+    @Override
+    public void txnAbort() {
+        txnChanges = null;
+        txnPrefixChanges = null;
+    }
+
+    @Override
+    public void segment() {}
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void finish() {}
+}
@@ -0,0 +1,192 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.errors.WakeupException;
+
+/**
+ * Fetch from Kafka on a separate thread so that fetching carries on while
+ * earlier records are being applied.
+ * <p>
+ * The fetcher thread polls the {@link Consumer} and puts the records in a queue.
+ * The queue is bounded by the total payload size of the records in it. When the
+ * queue is full, the fetcher pauses the consumer's partitions, and it resumes them
+ * when the queue has been drained below the limit. While paused, the fetcher
+ * carries on calling {@code consumer.poll}, which returns nothing but keeps the
+ * consumer active.
+ * <p>
+ * Each fetch is tagged with the connector's rewind {@link FKControl#getGeneration
+ * generation}; fetches from before a rewind are dropped.
+ * <p>
+ * After {@link #start}, the consumer must only be used by the fetcher thread.
+ */
+public class FKPrefetcher implements FKRecordSource {
+
+    private final String topic;
+    private final Consumer<String, RequestFK> consumer;
+    private final long maxBytes;
+    private final FKMetrics metrics;
+    // Null if the connector is not registered.
+    private final FKControl control;
+    // Records from one consumer.poll, with the rewind generation when they were fetched.
+    private record Fetched(ConsumerRecords<String, RequestFK> records, long bytes, long generation) {}
+
+    private final BlockingQueue<Fetched> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong queueBytes = new AtomicLong(0);
+    private volatile boolean running = false;
+    private Future<?> fetchTask = null;
+    private boolean paused = false;
+    // Generation of the records last returned by poll. Only used by the polling thread.
+    private long lastGeneration = 0;
+
+    /**
+     * Prefetcher with a limit of {@code maxBytes} payload bytes waiting to be
+     * processed. The limit may be exceeded by one {@code consumer.poll}.
+     */
+    public FKPrefetcher(String topic, Consumer<String, RequestFK> consumer, long maxBytes) {
+        this(topic, consumer, maxBytes, FKMetrics.unregistered());
+    }
+
+    /** Prefetcher recording the polls and the lag in the connector's {@code metrics}. */
+    public FKPrefetcher(String topic, Consumer<String, RequestFK> consumer, long maxBytes, FKMetrics metrics) {
+        if ( maxBytes <= 0 )
+            throw new IllegalArgumentException("Prefetch size must be positive: "+maxBytes);
+        this.topic = topic;
+        this.consumer = Objects.requireNonNull(consumer);
+        this.maxBytes = maxBytes;
+        this.metrics = Objects.requireNonNull(metrics);
+        this.control = FKRegistry.get().getControl(topic);
+    }
+
+    /** Start the fetcher, using a thread from the executor. */
+    public void start(ExecutorService executor) {
+        running = true;
+        fetchTask = executor.submit(this::fetchLoop);
+    }
+
+    /** Stop the fetcher. Records already fetched are still returned by {@link #poll}. */
+    public void stop() {
+        running = false;
+        consumer.wakeup();
+        // End a poll waiting for records: records of no generation are not returned.
+        queue.add(new Fetched(ConsumerRecords.empty(), 0, -1));
+    }
+
+    /**
+     * Stop the fetcher and wait, up to {@code timeout}, for it to finish using the
+     * consumer. Return false if it has not finished.
+     */
+    public boolean stop(Duration timeout) {
+        stop();
+        return fetchTask == null || FKS.awaitTask(fetchTask, timeout);
+    }
+
+    /** Total payload bytes waiting to be processed. */
+    public long getQueuedBytes() {
+        return queueBytes.get();
+    }
+
+    @Override
+    public ConsumerRecords<String, RequestFK> poll(Duration timeout) {
+        try {
+            Fetched fetched = queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if ( fetched == null )
+                return ConsumerRecords.empty();
+            queueBytes.addAndGet(-fetched.bytes());
+            if ( fetched.generation() != currentGeneration() )
+                // Fetched before a rewind.
+                return ConsumerRecords.empty();
+            lastGeneration = fetched.generation();
+            return fetched.records();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return ConsumerRecords.empty();
+        }
+    }
+
+    @Override
+    public long generation() {
+        return lastGeneration;
+    }
+
+    private long currentGeneration() {
+        return ( control == null ) ? 0 : control.getGeneration();
+    }
+
+    private void fetchLoop() {
+        while ( running ) {
+            try {
+                fetchStep();
+            } catch (WakeupException ex) {
+                // Stopping.
+            } catch (Throwable th) {
+                FmtLog.warn(LOG, th, "[%s] Prefetch: %s", topic, th.getMessage());
+            }
+        }
+    }
+
+    private void fetchStep() {
+        if ( control != null && control.applyRewinds(consumer) ) {
+            // Drop the records fetched from before the rewind.
+            Fetched fetched;
+            while ( (fetched = queue.poll()) != null )
+                queueBytes.addAndGet(-fetched.bytes());
+        }
+        boolean full = queueBytes.get() >= maxBytes;
+        boolean hold = full || ( control != null && control.isPaused() );
+        if ( hold && ! paused ) {
+            FmtLog.debug(LOG, "[%s] Prefetch: pause (%,d bytes queued)", topic, queueBytes.get());
+            consumer.pause(consumer.assignment());
+            paused = true;
+        } else if ( ! hold && paused ) {
+            FmtLog.debug(LOG, "[%s] Prefetch: resume (%,d bytes queued)", topic, queueBytes.get());
+            consumer.resume(consumer.assignment());
+            paused = false;
+        }
+        Duration pollDuration = paused ? FKConst.prefetchPausedWaitDuration : FKConst.pollingWaitDuration;
+        ConsumerRecords<String, RequestFK> cRecords = consumer.poll(pollDuration);
+        metrics.updateLag(consumer);
+        if ( cRecords.isEmpty() )
+            return;
+        long bytes = payloadSize(cRecords);
+        queueBytes.addAndGet(bytes);
+        queue.add(new Fetched(cRecords, bytes, currentGeneration()));
+    }
+
+    private static long payloadSize(ConsumerRecords<String, RequestFK> cRecords) {
+        long bytes = 0;
+        for ( ConsumerRecord<String, RequestFK> cRec : cRecords )
+            bytes += Math.max(0, cRec.value().getByteCount());
+        return bytes;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.util.List;
+
+import org.apache.jena.rdfpatch.RDFPatch;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.update.UpdateRequest;
+
+/**
+ * A Kafka message that has been parsed, ready to be applied to a dataset.
+ * See {@link FKProcessorPrepare}.
+ */
+public sealed interface FKPrepared {
+
+    /** RDF data. Triples are in the default graph. */
+    public record Data(List<Quad> quads) implements FKPrepared {}
+
+    /** SPARQL Update. */
+    public record Update(UpdateRequest updateRequest) implements FKPrepared {}
+
+    /** RDF Patch. */
+    public record Patch(RDFPatch patch) implements FKPrepared {}
+
+    /** The message could not be parsed or is not a supported kind of message. */
+    public record Failed(String message, RuntimeException exception) implements FKPrepared {}
+}
@@ -46,4 +46,10 @@ public interface FKProcessor {
      * Finished batch.
      */
     public void finishBatch(int processedCount, long finishOffset, long startOffset);
+
+    /**
+     * Record errors in {@code metrics}, the metrics of the {@link FKBatchProcessor}
+     * calling this processor.
+     */
+    public default void setMetrics(FKMetrics metrics) {}
 }
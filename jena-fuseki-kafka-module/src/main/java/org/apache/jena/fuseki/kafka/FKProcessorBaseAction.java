@@ -23,6 +23,7 @@ import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.kafka.FusekiKafka;
 import org.apache.jena.kafka.RequestFK;
 import org.apache.jena.kafka.ResponseFK;
+import org.apache.jena.kafka.common.ParseFK;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.riot.WebContent;
@@ -34,16 +35,25 @@ import org.apache.jena.riot.WebContent;
  * the dataset URL. By looking at the {@code Content-Type}, it splits incoming Kafka messages into:
  * <ul>
  * <li>SPARQL Updates</li>
- * <li>RDF Patch</li>
- * <li>RDF Data</li>
+ * <li>RDF Patch (text or binary)</li>
+ * <li>RDF Data (including the binary formats RDF Thrift and RDF Protobuf)</li>
  * <ul>
+ * Implementations should read data with {@link ParseFK}, which has a fast path
+ * for the binary formats.
  */
 public abstract class FKProcessorBaseAction implements FKProcessor {
 
     private static AtomicLong requestId = new AtomicLong(0);
 
+    protected FKMetrics metrics = FKMetrics.unregistered();
+
     protected FKProcessorBaseAction() {}
 
+    @Override
+    public void setMetrics(FKMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public abstract void startBatch(int batchSize, long offsetStart);
 
@@ -77,7 +87,7 @@ public abstract class FKProcessorBaseAction implements FKProcessor {
                 actionSparqlUpdate(id, request, data);
                 return null;
             }
-            if ( WebContent.contentTypePatch.equals(contentType) ) {
+            if ( ParseFK.isPatch(contentType) ) {
                 actionRDFPatch(id, request, data);
                 return null;
             }
@@ -88,8 +98,10 @@ public abstract class FKProcessorBaseAction implements FKProcessor {
                 return null;
             }
             FmtLog.warn(FusekiKafka.LOG, "Failed to handle '%s'",  contentType);
+            metrics.error(contentType);
             return null;
         } catch (RuntimeException ex) {
+            metrics.error(request.getContentType());
             actionFailed(id, request, ex);
             return null;
         }
@@ -0,0 +1,47 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.util.List;
+
+import org.apache.jena.kafka.RequestFK;
+
+/**
+ * A {@link FKProcessor} that can process a run of consecutive SPARQL Update
+ * messages as one update, and a run of consecutive RDF Patch messages as one patch.
+ * <p>
+ * {@link FKBatchProcessor} passes each run of two or more SPARQL Update records
+ * in a batch to {@link #processUpdates}, and each run of two or more RDF Patch
+ * records to {@link #processPatches}, unless it is parsing ahead. The records of
+ * a run have the same headers, apart from Content-Length, so a processor can send
+ * the run on with the headers of the first request.
+ */
+public interface FKProcessorCoalesce extends FKProcessor {
+
+    /**
+     * Process SPARQL Update requests, in order. A request that fails is logged and
+     * counted, and does not stop the others, as if each had been processed on its own.
+     */
+    public void processUpdates(List<RequestFK> requests);
+
+    /**
+     * Process RDF Patch requests, in order, as one net change
+     * ({@link FKPatchCompactor}). A request that fails is logged and counted, and
+     * does not stop the others.
+     */
+    public void processPatches(List<RequestFK> requests);
+}
@@ -0,0 +1,273 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.kafka.FusekiKafka;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.ResponseFK;
+import org.apache.jena.kafka.common.ParseFK;
+import org.apache.jena.rdfpatch.RDFPatch;
+import org.apache.jena.rdfpatch.changes.RDFChangesApply;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+
+/**
+ * A {@link FKProcessor} that applies RDF data, SPARQL Update and RDF Patch
+ * directly to a {@link DatasetGraph}, without going through the Fuseki servlet
+ * dispatch.
+ * <p>
+ * This processor does not start or finish transactions. It is used with
+ * {@link FKBatchProcessor#FKBatchProcessor(Transactional, FKProcessor)} where the
+ * {@link Transactional} is the dataset so there is one write transaction for each
+ * batch of Kafka messages, not one per message.
+ * <p>
+ * Each message is all-or-nothing: a message that fails part way through is
+ * logged and skipped, and the changes it made before the failure are undone
+ * ({@link FKUndo}). The transactions of an RDF Patch are kept, except one that
+ * ends with an abort ({@code TA}).
+ * <p>
+ * This processor also supports parsing messages ahead of applying them
+ * ({@link FKProcessorPrepare}). A message parsed ahead is only applied if it
+ * parsed completely.
+ * <p>
+ * A run of SPARQL Update messages ({@link FKProcessorCoalesce}) is applied with
+ * consecutive messages of only {@code INSERT DATA} and {@code DELETE DATA} merged
+ * into one update; other updates are applied one message at a time. A run of RDF
+ * Patch messages is applied as one net change ({@link FKPatchCompactor}).
+ */
+public class FKProcessorDirect extends FKProcessorBaseAction implements FKProcessorPrepare, FKProcessorCoalesce {
+
+    private final DatasetGraph dsg;
+    // Parsing state shared by the messages of the connector; may be null.
+    private final FKParserContext parserContext;
+
+    public FKProcessorDirect(DatasetGraph dsg) {
+        this(dsg, null);
+    }
+
+    /** A processor that parses RDF data with the connector's {@link FKParserContext}, if not null. */
+    public FKProcessorDirect(DatasetGraph dsg, FKParserContext parserContext) {
+        this.dsg = Objects.requireNonNull(dsg);
+        this.parserContext = parserContext;
+    }
+
+    public DatasetGraph getDataset() {
+        return dsg;
+    }
+
+    @Override
+    public void startBatch(int batchSize, long offsetStart) {}
+
+    @Override
+    public void finishBatch(int processedCount, long finishOffset, long startOffset) {}
+
+    @Override
+    protected void actionSparqlUpdate(String id, RequestFK request, InputStream data) {
+        UpdateRequest updateRequest = UpdateFactory.read(data);
+        FKUndo.atomic(dsg, x->UpdateAction.execute(updateRequest, x));
+    }
+
+    @Override
+    public void processUpdates(List<RequestFK> requests) {
+        List<RequestFK> dataRequests = new ArrayList<>();
+        List<UpdateRequest> dataUpdates = new ArrayList<>();
+        for ( RequestFK request : requests ) {
+            UpdateRequest updateRequest;
+            try {
+                updateRequest = UpdateFactory.read(request.getInputStream());
+            } catch (RuntimeException ex) {
+                metrics.error(request.getContentType());
+                actionFailed(request.getTopic(), request, ex);
+                continue;
+            }
+            if ( FKUpdates.isDataOnly(updateRequest) ) {
+                dataRequests.add(request);
+                dataUpdates.add(updateRequest);
+                continue;
+            }
+            applyDataUpdates(dataRequests, dataUpdates);
+            applyUpdate(request, updateRequest);
+        }
+        applyDataUpdates(dataRequests, dataUpdates);
+    }
+
+    private void applyDataUpdates(List<RequestFK> requests, List<UpdateRequest> updates) {
+        if ( requests.isEmpty() )
+            return;
+        try {
+            UpdateRequest merged = FKUpdates.merge(updates);
+            FKUndo.atomic(dsg, x->UpdateAction.execute(merged, x));
+        } catch (RuntimeException ex) {
+            // The merged update has been undone. Apply the messages one at a time to skip the one that fails.
+            for ( int i = 0 ; i < requests.size() ; i++ )
+                applyUpdate(requests.get(i), updates.get(i));
+        }
+        requests.clear();
+        updates.clear();
+    }
+
+    private void applyUpdate(RequestFK request, UpdateRequest updateRequest) {
+        try {
+            FKUndo.atomic(dsg, x->UpdateAction.execute(updateRequest, x));
+        } catch (RuntimeException ex) {
+            metrics.error(request.getContentType());
+            actionFailed(request.getTopic(), request, ex);
+        }
+    }
+
+    @Override
+    public void processPatches(List<RequestFK> requests) {
+        FKPatchCompactor compactor = new FKPatchCompactor();
+        List<RequestFK> patchRequests = new ArrayList<>(requests.size());
+        List<RDFPatch> patches = new ArrayList<>(requests.size());
+        for ( RequestFK request : requests ) {
+            try {
+                RDFPatch patch = ParseFK.readPatch(request.getContentType(), request.getInputStream());
+                compactor.add(patch);
+                patchRequests.add(request);
+                patches.add(patch);
+            } catch (RuntimeException ex) {
+                metrics.error(request.getContentType());
+                actionFailed(request.getTopic(), request, ex);
+            }
+        }
+        if ( patches.isEmpty() )
+            return;
+        try {
+            FKUndo.atomic(dsg, x->compactor.apply(new RDFChangesApply(x)));
+            metrics.patchCompaction(compactor.getReceived(), compactor.getCancelled());
+        } catch (RuntimeException ex) {
+            // Find the patch that fails.
+            for ( int i = 0 ; i < patches.size() ; i++ ) {
+                RequestFK request = patchRequests.get(i);
+                try {
+                    applyPatch(patches.get(i));
+                } catch (RuntimeException ex2) {
+                    metrics.error(request.getContentType());
+                    actionFailed(request.getTopic(), request, ex2);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void actionRDFPatch(String id, RequestFK request, InputStream data) {
+        applyPatch(ParseFK.readPatch(request.getContentType(), data));
+    }
+
+    // The batch is the transaction: a patch transaction that commits is applied, one that aborts is dropped.
+    private void applyPatch(RDFPatch patch) {
+        FKPatchCompactor compactor = new FKPatchCompactor();
+        compactor.add(patch);
+        FKUndo.atomic(dsg, x->compactor.apply(new RDFChangesApply(x)));
+    }
+
+    @Override
+    protected void actionData(String id, RequestFK request, Lang lang, InputStream data) {
+        // Triples go into the default graph.
+        FKUndo.atomic(dsg, x->{
+            StreamRDF dest = StreamRDFLib.dataset(x);
+            if ( FKParallelParser.applies(request, lang) )
+                FKParallelParser.parse(request, lang, dest, parserContext);
+            else
+                parse(lang, data, dest);
+        });
+    }
+
+    private void parse(Lang lang, InputStream data, StreamRDF dest) {
+        if ( parserContext != null )
+            parserContext.parse(lang, data, dest);
+        else
+            ParseFK.parse(lang, data, dest);
+    }
+
+    @Override
+    public FKPrepared prepare(RequestFK request) {
+        String contentType = request.getContentType();
+        if ( contentType == null )
+            return new FKPrepared.Failed("No content type. Message rejected.", null);
+        try {
+            InputStream data = request.getInputStream();
+            if ( WebContent.contentTypeSPARQLUpdate.equals(contentType) )
+                return new FKPrepared.Update(UpdateFactory.read(data));
+            if ( ParseFK.isPatch(contentType) )
+                return new FKPrepared.Patch(ParseFK.readPatch(contentType, data));
+            Lang lang = RDFLanguages.contentTypeToLang(contentType);
+            if ( lang != null ) {
+                List<Quad> quads = new ArrayList<>();
+                StreamRDF collector = new StreamRDFBase() {
+                    @Override public void triple(Triple triple) { quads.add(Quad.create(Quad.defaultGraphIRI, triple)); }
+                    @Override public void quad(Quad quad)       { quads.add(quad); }
+                };
+                if ( FKParallelParser.applies(request, lang) )
+                    FKParallelParser.parse(request, lang, collector, parserContext);
+                else
+                    parse(lang, data, collector);
+                return new FKPrepared.Data(quads);
+            }
+            return new FKPrepared.Failed("Failed to handle '"+contentType+"'", null);
+        } catch (RuntimeException ex) {
+            return new FKPrepared.Failed(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public ResponseFK apply(RequestFK request, FKPrepared prepared) {
+        String id = request.getTopic();
+        try {
+            if ( prepared instanceof FKPrepared.Data data ) {
+                FKUndo.atomic(dsg, x->data.quads().forEach(x::add));
+            } else if ( prepared instanceof FKPrepared.Update update ) {
+                FKUndo.atomic(dsg, x->UpdateAction.execute(update.updateRequest(), x));
+            } else if ( prepared instanceof FKPrepared.Patch patch ) {
+                applyPatch(patch.patch());
+            } else if ( prepared instanceof FKPrepared.Failed failed ) {
+                metrics.error(request.getContentType());
+                if ( failed.exception() != null )
+                    actionFailed(id, request, failed.exception());
+                else
+                    FmtLog.warn(FusekiKafka.LOG, "[%s] %s", id, failed.message());
+            }
+        } catch (RuntimeException ex) {
+            metrics.error(request.getContentType());
+            actionFailed(id, request, ex);
+        }
+        return ResponseFK.success(request.getTopic());
+    }
+
+    @Override
+    protected void actionFailed(String id, RequestFK request, RuntimeException ex) {
+        FmtLog.warn(FusekiKafka.LOG, "[%s] Failed to apply message: %s", id, ex.getMessage());
+    }
+}
@@ -16,16 +16,30 @@
 
 package org.apache.jena.fuseki.kafka;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpServletRequest;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.fuseki.kafka.lib.HttpServletRequestMinimal;
 import org.apache.jena.fuseki.kafka.lib.HttpServletResponseMinimal;
 import org.apache.jena.fuseki.server.Dispatcher;
+import org.apache.jena.kafka.FusekiKafka;
 import org.apache.jena.kafka.RequestFK;
 import org.apache.jena.kafka.ResponseFK;
+import org.apache.jena.kafka.common.ParseFK;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
 
 /**
  * A {@link FKProcessor} that sends {@link RequestFK} to Fuseki via the usual Fuseki
@@ -33,17 +47,30 @@ import org.apache.jena.kafka.ResponseFK;
  * <p>
  * This implementation of {@link FKProcessor} puts one transaction around each Kafka
  * message processing because it is done by the Fuseki dispatch and action.
+ * <p>
+ * A run of SPARQL Update messages ({@link FKProcessorCoalesce}) is sent as one
+ * update request, so one transaction, with consecutive {@code INSERT DATA} and
+ * {@code DELETE DATA} operations merged. If that fails, Fuseki aborts its
+ * transaction and the messages are sent again one at a time. A run of RDF Patch
+ * messages is sent as one patch with the net change ({@link FKPatchCompactor}),
+ * in the same way.
  */
-public class FKProcessorFusekiDispatch extends FKProcessorBase1 {
+public class FKProcessorFusekiDispatch extends FKProcessorBase1 implements FKProcessorCoalesce {
     private static byte[] emptyBytes = new byte[0];
     private String requestURI;
     private ServletContext servletContext;
+    private FKMetrics metrics = FKMetrics.unregistered();
 
     public FKProcessorFusekiDispatch(String requestURI, ServletContext servletContext) {
         this.requestURI = requestURI;
         this.servletContext = servletContext;
     }
 
+    @Override
+    public void setMetrics(FKMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public void startBatch(int batchSize, long offsetStart) {}
 
@@ -52,18 +79,105 @@ public class FKProcessorFusekiDispatch extends FKProcessorBase1 {
 
     @Override
     protected ResponseFK process1(RequestFK requestFK) {
-        Map<String, String> requestParameters = Map.of();
         ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-        HttpServletRequest request = new HttpServletRequestMinimal(requestURI, requestFK.getHeaders(), requestParameters,
-                                                                   requestFK.getInputStream(), servletContext);
-        HttpServletResponseMinimal response = new HttpServletResponseMinimal(bytesOut);
-
-        // Full dispatch via Fuseki.
-        Dispatcher.dispatch(request, response);
+        HttpServletResponseMinimal response = dispatch(requestFK, bytesOut);
+        if ( response.getStatus() >= 400 )
+            metrics.error(requestFK.getContentType());
 
         byte[] responseBytes = ( bytesOut.size() != 0 ) ? bytesOut.toByteArray() : emptyBytes;
         ResponseFK result = ResponseFK.create(requestFK.getTopic(), response.headers(), responseBytes);
         return result;
     }
 
+    @Override
+    public void processUpdates(List<RequestFK> requests) {
+        List<RequestFK> parsed = new ArrayList<>(requests.size());
+        List<UpdateRequest> updates = new ArrayList<>(requests.size());
+        for ( RequestFK requestFK : requests ) {
+            // Read the body once; it may be needed again.
+            byte[] body = IO.readWholeFile(requestFK.getInputStream());
+            RequestFK request = new RequestFK(requestFK.getTopic(), requestHeaders(requestFK), body);
+            try {
+                updates.add(UpdateFactory.read(new ByteArrayInputStream(body)));
+                parsed.add(request);
+            } catch (RuntimeException ex) {
+                // Bad request - it changes nothing. Fuseki reports it.
+                process1(request);
+            }
+        }
+        if ( parsed.size() <= 1 ) {
+            parsed.forEach(this::process1);
+            return;
+        }
+        RequestFK first = parsed.get(0);
+        Map<String, String> headers = new HashMap<>(first.getHeaders());
+        headers.keySet().removeIf(h->h.equalsIgnoreCase(HttpNames.hContentLength));
+        byte[] body = FKUpdates.merge(updates).toString().getBytes(StandardCharsets.UTF_8);
+        RequestFK combined = new RequestFK(first.getTopic(), headers, body);
+        HttpServletResponseMinimal response = dispatch(combined, new ByteArrayOutputStream());
+        if ( response.getStatus() < 400 )
+            return;
+        FmtLog.info(FusekiKafka.LOG, "[%s] Combined update of %d messages failed (%d) - sending one at a time",
+                    first.getTopic(), parsed.size(), response.getStatus());
+        parsed.forEach(this::process1);
+    }
+
+    @Override
+    public void processPatches(List<RequestFK> requests) {
+        FKPatchCompactor compactor = new FKPatchCompactor();
+        List<RequestFK> parsed = new ArrayList<>(requests.size());
+        for ( RequestFK requestFK : requests ) {
+            byte[] body = IO.readWholeFile(requestFK.getInputStream());
+            RequestFK request = new RequestFK(requestFK.getTopic(), requestHeaders(requestFK), body);
+            try {
+                compactor.add(ParseFK.readPatch(request.getContentType(), new ByteArrayInputStream(body)));
+                parsed.add(request);
+            } catch (RuntimeException ex) {
+                process1(request);
+            }
+        }
+        if ( parsed.size() <= 1 ) {
+            parsed.forEach(this::process1);
+            return;
+        }
+        RequestFK first = parsed.get(0);
+        Map<String, String> headers = new HashMap<>(first.getHeaders());
+        headers.keySet().removeIf(h->h.equalsIgnoreCase(HttpNames.hContentLength) || h.equalsIgnoreCase(HttpNames.hContentType));
+        headers.put(HttpNames.hContentType, WebContent.contentTypePatch);
+        ByteArrayOutputStream patchOut = new ByteArrayOutputStream();
+        RDFPatchOps.write(patchOut, compactor.asPatch());
+        RequestFK combined = new RequestFK(first.getTopic(), headers, patchOut.toByteArray());
+        HttpServletResponseMinimal response = dispatch(combined, new ByteArrayOutputStream());
+        if ( response.getStatus() < 400 ) {
+            metrics.patchCompaction(compactor.getReceived(), compactor.getCancelled());
+            return;
+        }
+        FmtLog.info(FusekiKafka.LOG, "[%s] Combined patch of %d messages failed (%d) - sending one at a time",
+                    first.getTopic(), parsed.size(), response.getStatus());
+        parsed.forEach(this::process1);
+    }
+
+    private HttpServletResponseMinimal dispatch(RequestFK requestFK, ByteArrayOutputStream bytesOut) {
+        Map<String, String> requestParameters = Map.of();
+        HttpServletRequest request = new HttpServletRequestMinimal(requestURI, requestHeaders(requestFK), requestParameters,
+                                                                   requestFK.getInputStream(), servletContext);
+        HttpServletResponseMinimal response = new HttpServletResponseMinimal(bytesOut);
+        // Full dispatch via Fuseki.
+        Dispatcher.dispatch(request, response);
+        return response;
+    }
+
+    /**
+     * The body passed to Fuseki is already decompressed, so remove Content-Encoding
+     * and the Content-Length of the compressed body.
+     */
+    private static Map<String, String> requestHeaders(RequestFK requestFK) {
+        Map<String, String> headers = requestFK.getHeaders();
+        if ( ! headers.containsKey(FusekiKafka.hContentEncoding) )
+            return headers;
+        Map<String, String> decodedHeaders = new HashMap<>(headers);
+        decodedHeaders.remove(FusekiKafka.hContentEncoding);
+        decodedHeaders.remove(HttpNames.hContentLength);
+        return decodedHeaders;
+    }
 }
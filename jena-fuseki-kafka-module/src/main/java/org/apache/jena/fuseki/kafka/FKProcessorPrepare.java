@@ -0,0 +1,43 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.ResponseFK;
+
+/**
+ * A {@link FKProcessor} where processing a request can be split into two steps:
+ * parsing the message, which can be done ahead of time on another thread, and
+ * applying the parsed message, which is done in Kafka order.
+ * <p>
+ * {@link FKBatchProcessor} uses this to parse records on worker threads while the
+ * batch thread applies the records already parsed.
+ */
+public interface FKProcessorPrepare extends FKProcessor {
+
+    /**
+     * Parse a request. This is called on worker threads and must not change any
+     * shared state.
+     */
+    public FKPrepared prepare(RequestFK request);
+
+    /**
+     * Apply a request previously parsed by {@link #prepare}.
+     * This is called in Kafka order, within the batch.
+     */
+    public ResponseFK apply(RequestFK request, FKPrepared prepared);
+}
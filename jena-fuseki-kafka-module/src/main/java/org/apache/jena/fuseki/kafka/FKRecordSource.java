@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+
+/**
+ * Where {@link FKBatchProcessor#receiver} gets records from.
+ * This is either a Kafka {@link Consumer} directly ({@code consumer::poll})
+ * or a {@link FKPrefetcher}.
+ */
+@FunctionalInterface
+public interface FKRecordSource {
+    /**
+     * Return the next records, waiting up to {@code timeout} for some to arrive.
+     * Returns an empty {@link ConsumerRecords} if there are none.
+     */
+    public ConsumerRecords<String, RequestFK> poll(Duration timeout);
+
+    /**
+     * The rewind generation ({@link FKControl#getGeneration}) of the records returned
+     * by the last call of {@link #poll}. Records of an earlier generation than the
+     * connector's were fetched before a rewind and are not applied. A source that
+     * does not see rewinds returns 0.
+     */
+    public default long generation() {
+        return 0;
+    }
+
+    /**
+     * A source for which all records are of the current {@code generation}, because
+     * it carries out rewinds itself before polling.
+     */
+    public static FKRecordSource create(FKRecordSource source, LongSupplier generation) {
+        return new FKRecordSource() {
+            @Override
+            public ConsumerRecords<String, RequestFK> poll(Duration timeout) {
+                return source.poll(timeout);
+            }
+            @Override
+            public long generation() {
+                return generation.getAsLong();
+            }
+        };
+    }
+
+    /** This source, calling {@code action} with the records it returns. */
+    public default FKRecordSource peek(java.util.function.Consumer<ConsumerRecords<String, RequestFK>> action) {
+        FKRecordSource source = this;
+        return new FKRecordSource() {
+            @Override
+            public ConsumerRecords<String, RequestFK> poll(Duration timeout) {
+                ConsumerRecords<String, RequestFK> cRecords = source.poll(timeout);
+                action.accept(cRecords);
+                return cRecords;
+            }
+            @Override
+            public long generation() {
+                return source.generation();
+            }
+        };
+    }
+}
@@ -37,6 +37,9 @@ public class FKRegistry {
     // Topic to connector record.
     private Map<String, KConnectorDesc> topicToConnector = new ConcurrentHashMap<>();
 
+    // Topic to the status and control of the running connector.
+    private Map<String, FKControl> topicToControl = new ConcurrentHashMap<>();
+
     // Dispatch to topic.
     private Map<String, String> pathToTopic = new ConcurrentHashMap<>();
 
@@ -70,11 +73,30 @@ public class FKRegistry {
             pathToTopic.put(connectorDescriptor.getLocalDispatchPath(), topicName);
     }
 
+    /**
+     * Register the {@link FKControl} of a running connector.
+     */
+    public void registerControl(FKControl control) {
+        topicToControl.put(control.getTopic(), control);
+    }
+
+    /**
+     * Return the {@link FKControl} for a topic, or null if the connector is not running.
+     */
+    public FKControl getControl(String topicName) {
+        return topicToControl.get(topicName);
+    }
+
+    public Collection<FKControl> getControls() {
+        return topicToControl.values();
+    }
+
     /**
      * Remove all registrations associated with a topic.
      */
     public void unregister(String topicName) {
         topicToConnector.remove(topicName);
+        topicToControl.remove(topicName);
         pathToTopic.remove(topicName);
     }
 }
@@ -21,8 +21,9 @@ import static org.apache.jena.kafka.FusekiKafka.LOG;
 
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.servlet.ServletContext;
 import org.apache.jena.atlas.lib.Pair;
@@ -38,6 +39,7 @@ import org.apache.jena.kafka.common.DataState;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.kafka.clients.NetworkClient;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
@@ -57,57 +59,199 @@ public class FKS {
      */
     public static void addConnectorToServer(KConnectorDesc conn, FusekiServer server,
                                             DataState dataState, FKBatchProcessor batchProcessor) {
+        addConnectorToServer(conn, server, dataState, batchProcessor, null);
+    }
+
+    /**
+     * Add a connector to a server, polling the given consumer (if not null) in place
+     * of a Kafka consumer for the connector settings. For example, a Kafka
+     * {@code MockConsumer}, or the in-memory consumer of the tests and benchmarks,
+     * runs the connector without a Kafka broker.
+     * Shared consumer connectors given the same consumer share it.
+     */
+    public static void addConnectorToServer(KConnectorDesc conn, FusekiServer server,
+                                            DataState dataState, FKBatchProcessor batchProcessor,
+                                            Consumer<String, RequestFK> kafkaConsumer) {
         String topicName = conn.getTopic();
         // Remote not (yet) supported.
         //String remoteEndpoint = conn.getRemoteEndpoint();
 
+        addCheckpoint(dataState);
+        FKControl control = new FKControl(conn, dataState, batchProcessor);
+        FKRegistry.get().registerControl(control);
+
+        if ( conn.getSharedConsumer() ) {
+            // Polling is done by the shared consumer, for all its connectors.
+            if ( conn.getBulkLoad() != null )
+                FmtLog.warn(LOG, "[%s] fk:bulkLoad is not used with fk:sharedConsumer", topicName);
+            if ( conn.getPrefetchBytes() > 0 )
+                FmtLog.warn(LOG, "[%s] fk:prefetchBytes is not used with fk:sharedConsumer", topicName);
+            if ( conn.getBatchLingerMillis() > 0 )
+                FmtLog.warn(LOG, "[%s] fk:batchLinger is not used with fk:sharedConsumer", topicName);
+            FKSharedConsumer.get(conn, kafkaConsumer).addConnector(conn, dataState, batchProcessor);
+            return;
+        }
+
         // -- Kafka Consumer
+        Consumer<String, RequestFK> consumer = ( kafkaConsumer != null ) ? kafkaConsumer : createConsumer(conn);
+        DatasetGraph bulkLoadDataset = null;
+        if ( conn.getBulkLoad() != null && conn.getLocalDispatchPath() != null ) {
+            DatasetGraph dsg = findActionProcessorDataset(server, conn.getLocalDispatchPath()).getRight();
+            if ( FKBulkLoad.applies(conn, dataState, dsg) )
+                bulkLoadDataset = dsg;
+        }
+        List<TopicPartition> partitions = setupConnector(conn, consumer, dataState, batchProcessor);
+        if ( bulkLoadDataset != null )
+            FKBulkLoad.load(conn, consumer, partitions, dataState, bulkLoadDataset, batchProcessor.getMetrics());
+        logStart(conn);
+
+        // Fetch on a separate thread, or poll the consumer when processing.
+        FKMetrics metrics = batchProcessor.getMetrics();
+        FKRecordSource source = FKRecordSource.create(duration->{
+            applyControl(control, consumer);
+            ConsumerRecords<String, RequestFK> cRecords = consumer.poll(duration);
+            metrics.updateLag(consumer);
+            return cRecords;
+        }, control::getGeneration);
+        FKPrefetcher prefetcher = null;
+        if ( conn.getPrefetchBytes() > 0 ) {
+            prefetcher = new FKPrefetcher(topicName, consumer, conn.getPrefetchBytes(), metrics);
+            prefetcher.start(threads);
+            source = prefetcher;
+        }
+        FKArchive archive = FKArchive.get(conn);
+        if ( archive != null ) {
+            // Archive the records as they are received.
+            source = source.peek(archive::append);
+        }
+
+        // Do now for some catchup.
+        oneTopicPoll(batchProcessor, source, dataState, FKConst.initialWaitDuration);
+
+        FmtLog.info(LOG, "[%s] Initial sync : Offset = %d", topicName, dataState.getLastOffset());
+
+        // ASYNC
+        // The consumer is closed when the connector stops if it was created here.
+        startTopicPoll(batchProcessor, source, dataState, consumer, kafkaConsumer == null, prefetcher);
+    }
+
+    /**
+     * Carry out the requests made to the {@link FKControl} of a connector.
+     * Must be called on the thread that polls the consumer.
+     */
+    /*package*/ static boolean applyControl(FKControl control, Consumer<String, RequestFK> consumer) {
+        boolean rewound = control.applyRewinds(consumer);
+        List<TopicPartition> partitions = control.partitions(consumer);
+        if ( control.isPaused() )
+            consumer.pause(partitions);
+        else
+            consumer.resume(partitions);
+        return rewound;
+    }
+
+    /** The Kafka consumer for the connector settings. */
+    /*package*/ static Consumer<String, RequestFK> createConsumer(KConnectorDesc conn) {
         Properties cProps = conn.getKafkaConsumerProps();
         StringDeserializer strDeser = new StringDeserializer();
         Deserializer<RequestFK> reqDer = new DeserializerActionFK();
-        Consumer<String, RequestFK> consumer = new KafkaConsumer<>(cProps, strDeser, reqDer);
+        return new KafkaConsumer<>(cProps, strDeser, reqDer);
+    }
 
+    /**
+     * Add the partitions of the connector's topic to the consumer assignment and set
+     * the start point for each partition according to the connector settings and the
+     * {@link DataState}. Return the partitions added.
+     * <p>
+     * Must be called on the thread that polls the consumer.
+     */
+    /*package*/ static List<TopicPartition> setupConnector(KConnectorDesc conn, Consumer<String, RequestFK> consumer,
+                                                            DataState dataState, FKBatchProcessor batchProcessor) {
+        String topicName = conn.getTopic();
         // To replicate a database, we need to see all the Kafka messages in-order,
         // which forces us to have only one partition. We need a partition to be able to seek.
-        TopicPartition topicPartition = new TopicPartition(topicName, 0);
-        Collection<TopicPartition> partitions = List.of(topicPartition);
-        consumer.assign(partitions);
+        // If the producers partition by key, so the order across partitions does not matter,
+        // the connector can consume all partitions, each in-order.
+        List<TopicPartition> partitions = conn.getMultiPartition()
+                ? allPartitions(consumer, topicName)
+                : List.of(new TopicPartition(topicName, 0));
+        // The consumer may be shared with other connectors.
+        Set<TopicPartition> assignment = new HashSet<>(consumer.assignment());
+        assignment.addAll(partitions);
+        consumer.assign(assignment);
+        if ( partitions.size() > 1 ) {
+            FmtLog.info(LOG, "[%s] Consuming %d partitions", topicName, partitions.size());
+            batchProcessor.setPartitionLanes(laneExecutor(topicName, partitions.size()));
+        }
 
         // -- Choose start point.
         // If true, ignore topic state and start at current.
         boolean syncTopic = conn.getSyncTopic();
-        boolean replayTopic = conn.getReplayTopic();
-
-        // Last offset processed
-        long stateOffset = dataState.getLastOffset();
-        if ( stateOffset < 0 ) {
-            FmtLog.info(LOG, "[%s] Initialize from topic", conn.getTopic());
-            // consumer.seekToBeginning(Arrays.asList(topicPartition)); BUG
-            replayTopic = true;
-        }
 
         checkKafkaTopicConnection(consumer, topicName);
+        FKArchive archive = FKArchive.get(conn);
+
+        for ( TopicPartition topicPartition : partitions ) {
+            boolean replayTopic = conn.getReplayTopic();
+            // Last offset processed
+            long stateOffset = dataState.getLastOffset(topicPartition.partition());
+            if ( stateOffset < 0 ) {
+                FmtLog.info(LOG, "[%s] Initialize from topic", label(topicPartition));
+                // consumer.seekToBeginning(Arrays.asList(topicPartition)); BUG
+                replayTopic = true;
+            }
 
-        if ( replayTopic ) {
-            setupReplayTopic(consumer, topicPartition, dataState);
-        } else if ( syncTopic ) {
-            setupSyncTopic(consumer, topicPartition, dataState);
-        } else {
-            setupNoSyncTopic(consumer, topicPartition, dataState);
+            if ( replayTopic ) {
+                setupReplayTopic(consumer, topicPartition, dataState);
+            } else if ( syncTopic ) {
+                setupSyncTopic(consumer, topicPartition, dataState);
+            } else {
+                setupNoSyncTopic(consumer, topicPartition, dataState);
+            }
+            if ( archive != null && ( replayTopic || syncTopic ) )
+                catchUpFromArchive(archive, consumer, topicPartition, dataState, batchProcessor, replayTopic);
         }
+        return partitions;
+    }
 
+    /**
+     * Apply the records in the archive from the consumer position, then move the
+     * consumer to after the records applied. For a replay, start at the beginning
+     * of the archive if that is before the beginning of the topic.
+     */
+    private static void catchUpFromArchive(FKArchive archive, Consumer<String, RequestFK> consumer, TopicPartition topicPartition,
+                                           DataState dataState, FKBatchProcessor batchProcessor, boolean replay) {
+        String topic = label(topicPartition);
+        int partition = topicPartition.partition();
+        long position = consumer.position(topicPartition);
+        long from = position;
+        long archiveFirst = archive.firstOffset(partition);
+        if ( replay && archiveFirst >= 0 && archiveFirst < position ) {
+            from = archiveFirst;
+            dataState.setLastOffset(partition, from - 1);
+        }
+        FmtLog.info(LOG, "[%s] Archive: catch up from %d (archive %d to %d)", topic, from, archiveFirst, archive.lastOffset(partition));
+        long next;
+        try {
+            next = archive.replay(partition, from, records->batchProcessor.dispatch(topicPartition.topic(), dataState, records));
+        } catch (RuntimeException ex) {
+            FmtLog.warn(LOG, ex, "[%s] Archive: replay failed: %s", topic, ex.getMessage());
+            next = dataState.getLastOffset(partition) + 1;
+        }
+        if ( next == from ) {
+            FmtLog.info(LOG, "[%s] Archive: nothing to apply", topic);
+            return;
+        }
+        FmtLog.info(LOG, "[%s] Archive: applied to %d ; topic from %d", topic, next - 1, Math.max(next, position));
+        if ( next > position )
+            consumer.seek(topicPartition, next);
+    }
+
+    /*package*/ static void logStart(KConnectorDesc conn) {
+        String topicName = conn.getTopic();
         if ( conn.getLocalDispatchPath() != null )
             FmtLog.info(LOG, "[%s] Start FusekiKafka : Topic = %s : Dataset = %s", topicName, topicName, conn.getLocalDispatchPath());
         else
             FmtLog.info(LOG, "[%s] Start FusekiKafka : Topic = %s : Relay = %s", topicName, topicName, conn.getRemoteEndpoint());
-
-        // Do now for some catchup.
-        oneTopicPoll(batchProcessor, consumer, dataState, FKConst.initialWaitDuration);
-
-        FmtLog.info(LOG, "[%s] Initial sync : Offset = %d", topicName, dataState.getLastOffset());
-
-        // ASYNC
-        startTopicPoll(batchProcessor, consumer, dataState, "Kafka:" + topicName);
     }
 
     /**
@@ -274,17 +418,43 @@ public class FKS {
         }
     }
 
+    /** All the partitions of a topic, or partition 0 if they can not be found. */
+    private static List<TopicPartition> allPartitions(Consumer<String, RequestFK> consumer, String topicName) {
+        List<PartitionInfo> partitionInfo = null;
+        try {
+            partitionInfo = consumer.partitionsFor(topicName, FKConst.checkKafkaDuration);
+        } catch (TimeoutException ex) {
+            FmtLog.warn(LOG, "[%s] Failed to get the partitions of the topic", topicName);
+        }
+        if ( partitionInfo == null || partitionInfo.isEmpty() ) {
+            FmtLog.warn(LOG, "[%s] No partitions found - using partition 0", topicName);
+            return List.of(new TopicPartition(topicName, 0));
+        }
+        return partitionInfo.stream()
+                .map(info->new TopicPartition(info.topic(), info.partition()))
+                .sorted(Comparator.comparingInt(TopicPartition::partition))
+                .toList();
+    }
+
+    /** Log label for a partition: the topic name, with the partition number if not partition 0. */
+    private static String label(TopicPartition topicPartition) {
+        if ( topicPartition.partition() == 0 )
+            return topicPartition.topic();
+        return topicPartition.topic()+"-"+topicPartition.partition();
+    }
+
     /** Set to catch up on the topic at the next (first) call. */
     private static void setupSyncTopic(Consumer<String, RequestFK> consumer, TopicPartition topicPartition, DataState dataState) {
-        String topic = dataState.getTopic();
+        String topic = label(topicPartition);
+        int partition = topicPartition.partition();
         long topicPosition = consumer.position(topicPartition);
-        long stateOffset = dataState.getLastOffset();
+        long stateOffset = dataState.getLastOffset(partition);
 
         FmtLog.info(LOG, "[%s] State=%d  Topic next offset=%d", topic, stateOffset, topicPosition);
         if ( (stateOffset >= 0) && (stateOffset >= topicPosition) ) {
             FmtLog.info(LOG, "[%s] Adjust state record %d -> %d", topic, stateOffset, topicPosition - 1);
             stateOffset = topicPosition - 1;
-            dataState.setLastOffset(stateOffset);
+            dataState.setLastOffset(partition, stateOffset);
         } else if ( topicPosition != stateOffset + 1 ) {
             FmtLog.info(LOG, "[%s] Set sync %d -> %d", topic, stateOffset, topicPosition - 1);
             consumer.seek(topicPartition, stateOffset + 1);
@@ -298,24 +468,26 @@ public class FKS {
      * (first) call.
      */
     private static void setupNoSyncTopic(Consumer<String, RequestFK> consumer, TopicPartition topicPartition, DataState dataState) {
-        String topic = dataState.getTopic();
+        String topic = label(topicPartition);
+        int partition = topicPartition.partition();
         long topicPosition = consumer.position(topicPartition);
-        long stateOffset = dataState.getLastOffset();
+        long stateOffset = dataState.getLastOffset(partition);
         FmtLog.info(LOG, "[%s] No sync: State=%d  Topic offset=%d", topic, stateOffset, topicPosition);
-        dataState.setLastOffset(topicPosition);
+        dataState.setLastOffset(partition, topicPosition);
     }
 
     /** Set to jump to the start of the topic. */
     private static void setupReplayTopic(Consumer<String, RequestFK> consumer, TopicPartition topicPartition, DataState dataState) {
-        String topic = dataState.getTopic();
+        String topic = label(topicPartition);
+        int partition = topicPartition.partition();
         long topicPosition = consumer.position(topicPartition);
-        long stateOffset = dataState.getLastOffset();
+        long stateOffset = dataState.getLastOffset(partition);
         FmtLog.info(LOG, "[%s] Replay: Old state=%d  Topic offset=%d", topic, stateOffset, topicPosition);
         Map<TopicPartition, Long> m = consumer.beginningOffsets(List.of(topicPartition));
         // offset of next-to-read.
         long beginning = m.get(topicPartition);
         consumer.seek(topicPartition, beginning);
-        dataState.setLastOffset(beginning-1);
+        dataState.setLastOffset(partition, beginning-1);
     }
 
     private static ExecutorService threads = threadExecutor();
@@ -326,20 +498,119 @@ public class FKS {
 
     /** The background threads */
     static void resetPollThreads() {
+        pollLoops.values().forEach(pollLoop->pollLoop.running().set(false));
+        pollLoops.clear();
         threads.shutdown();
         threads = threadExecutor();
+        FKSharedConsumer.resetAll();
+        flushState();
+        checkpointStates.clear();
+    }
+
+    // -- State checkpoints.
+    // The state of connectors with a checkpoint policy is written periodically, not after every batch.
+
+    private static final Set<DataState> checkpointStates = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService checkpointThread = null;
+
+    private static synchronized void addCheckpoint(DataState dataState) {
+        if ( ! dataState.hasCheckpointPolicy() )
+            return;
+        if ( checkpointThread == null ) {
+            checkpointThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "FK-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long tick = FKConst.checkpointTick.toMillis();
+            checkpointThread.scheduleWithFixedDelay(FKS::checkpointState, tick, tick, TimeUnit.MILLISECONDS);
+            // Write the latest state on normal JVM exit.
+            Runtime.getRuntime().addShutdownHook(new Thread(FKS::flushState, "FK-state-flush"));
+        }
+        checkpointStates.add(dataState);
+    }
+
+    private static void checkpointState() {
+        for ( DataState dataState : checkpointStates ) {
+            try {
+                dataState.checkpoint();
+            } catch (Throwable th) {
+                FmtLog.warn(LOG, th, "[%s] Failed to write state: %s", dataState.getTopic(), th.getMessage());
+            }
+        }
     }
 
-    private static void startTopicPoll(FKBatchProcessor requestProcessor, Consumer<String, RequestFK> consumer, DataState dataState, String label) {
-        Runnable task = () -> topicPoll(requestProcessor, consumer, dataState);
-        threads.submit(task);
+    /** Write the state of all connectors with a checkpoint policy that has not yet been written. */
+    public static void flushState() {
+        for ( DataState dataState : checkpointStates ) {
+            try {
+                dataState.flush();
+            } catch (Throwable th) {
+                FmtLog.warn(LOG, th, "[%s] Failed to write state: %s", dataState.getTopic(), th.getMessage());
+            }
+        }
+    }
+
+    // -- Polling loops, by topic, so that they can be stopped.
+
+    private record PollLoop(AtomicBoolean running, Future<?> task, Consumer<String, RequestFK> consumer, boolean closeConsumer,
+                            FKPrefetcher prefetcher) {}
+    private static final Map<String, PollLoop> pollLoops = new ConcurrentHashMap<>();
+
+    private static void startTopicPoll(FKBatchProcessor requestProcessor, FKRecordSource source, DataState dataState,
+                                       Consumer<String, RequestFK> consumer, boolean closeConsumer, FKPrefetcher prefetcher) {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Runnable task = () -> topicPoll(requestProcessor, source, dataState, running);
+        pollLoops.put(dataState.getTopic(), new PollLoop(running, threads.submit(task), consumer, closeConsumer, prefetcher));
+    }
+
+    /**
+     * Stop polling for the connector of {@code topic}, and wait for the batch being
+     * processed to finish. After this, the connector does not receive records, or
+     * use its archive.
+     */
+    /*package*/ static void stopConnector(String topic) {
+        FKSharedConsumer.removeConnector(topic, FKConst.stopWaitDuration);
+        PollLoop pollLoop = pollLoops.remove(topic);
+        if ( pollLoop == null )
+            return;
+        pollLoop.running().set(false);
+        // End the poll in progress, if any.
+        if ( pollLoop.prefetcher() != null )
+            pollLoop.prefetcher().stop();
+        else
+            pollLoop.consumer().wakeup();
+        boolean stopped = awaitTask(pollLoop.task(), FKConst.stopWaitDuration);
+        if ( pollLoop.prefetcher() != null )
+            stopped = pollLoop.prefetcher().stop(FKConst.stopWaitDuration) && stopped;
+        if ( ! stopped ) {
+            FmtLog.warn(LOG, "[%s] Polling did not stop within %s seconds", topic, FKConst.stopWaitDuration.toSeconds());
+            return;
+        }
+        if ( pollLoop.closeConsumer() )
+            pollLoop.consumer().close();
+    }
+
+    /** Wait, up to {@code timeout}, for a task to finish. Return false if it has not finished. */
+    /*package*/ static boolean awaitTask(Future<?> task, Duration timeout) {
+        try {
+            task.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (java.util.concurrent.TimeoutException ex) {
+            return false;
+        } catch (ExecutionException | CancellationException ex) {
+            return true;
+        }
     }
 
     /** Polling task loop.*/
-    private static void topicPoll(FKBatchProcessor requestProcessor, Consumer<String, RequestFK> consumer, DataState dataState) {
-        for ( ;; ) {
+    private static void topicPoll(FKBatchProcessor requestProcessor, FKRecordSource source, DataState dataState, AtomicBoolean running) {
+        while ( running.get() ) {
             try {
-                boolean somethingReceived = oneTopicPoll(requestProcessor, consumer, dataState, FKConst.pollingWaitDuration);
+                boolean somethingReceived = oneTopicPoll(requestProcessor, source, dataState, FKConst.pollingWaitDuration);
             } catch (Throwable th) {
                 FmtLog.debug(LOG, th, "[%s] Unexpected Exception %s", dataState.getTopic(), dataState);
             }
@@ -347,10 +618,10 @@ public class FKS {
     }
 
     /** A polling attempt either returns some records or waits the polling duration. */
-    private static boolean oneTopicPoll(FKBatchProcessor requestProcessor, Consumer<String, RequestFK> consumer, DataState dataState, Duration pollingDuration) {
+    private static boolean oneTopicPoll(FKBatchProcessor requestProcessor, FKRecordSource source, DataState dataState, Duration pollingDuration) {
         String topic = dataState.getTopic();
         long lastOffsetState = dataState.getLastOffset();
-        boolean somethingReceived = requestProcessor.receiver(consumer, dataState, pollingDuration);
+        boolean somethingReceived = requestProcessor.receiver(source, dataState, pollingDuration);
         if ( somethingReceived ) {
             long newOffset = dataState.getLastOffset();
             FmtLog.debug(LOG, "[%s] Offset: %d -> %d", topic, lastOffsetState, newOffset);
@@ -367,7 +638,54 @@ public class FKS {
     public static FKBatchProcessor plainFKBatchProcessor(KConnectorDesc conn, ServletContext servletContext) {
         String requestURI = conn.getLocalDispatchPath();
         FKProcessor requestProcessor = new FKProcessorFusekiDispatch(requestURI, servletContext);
-        FKBatchProcessor batchProcessor = FKBatchProcessor.createBatchProcessor(requestProcessor);
+        // Each message is its own transaction. The batch policy controls how often the state is updated.
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(null, requestProcessor, FKBatchPolicy.create(conn));
+        batchProcessor.setMetrics(FKMetrics.get(conn.getTopic()));
         return batchProcessor;
     }
+
+    /**
+     * Make a {@link FKBatchProcessor} for the Fuseki Server being built that applies
+     * each batch of ConsumerRecords ({@link RequestFK}) directly to the dataset
+     * of the connector's dispatch path, inside a single write transaction.
+     */
+    public static FKBatchProcessor directFKBatchProcessor(KConnectorDesc conn, FusekiServer server) {
+        String requestURI = conn.getLocalDispatchPath();
+        DatasetGraph dsg = findActionProcessorDataset(server, requestURI).getRight();
+        if ( dsg == null ) {
+            String msg = String.format("No dataset for '%s'", requestURI);
+            throw new FusekiKafkaException(msg);
+        }
+        FKProcessor requestProcessor = new FKProcessorDirect(dsg, FKParserContext.get(conn));
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(dsg, requestProcessor, FKBatchPolicy.create(conn));
+        batchProcessor.setMetrics(FKMetrics.get(conn.getTopic()));
+        if ( conn.getOffsetInDataset() )
+            batchProcessor.setOffsetsInDataset(dsg);
+        int parseThreads = conn.getParseThreads();
+        if ( parseThreads > 0 ) {
+            ExecutorService executor = parseExecutor(conn.getTopic(), parseThreads);
+            batchProcessor.setParseAhead(executor, parseThreads * FKConst.parseAheadPerThread);
+        }
+        return batchProcessor;
+    }
+
+    /** Threads for parsing Kafka messages ahead of applying them. */
+    private static ExecutorService parseExecutor(String topic, int threads) {
+        return daemonExecutor("FK-parse-"+topic, threads);
+    }
+
+    /** Threads for processing the partitions of a topic, one per partition. */
+    private static ExecutorService laneExecutor(String topic, int threads) {
+        return daemonExecutor("FK-lane-"+topic, threads);
+    }
+
+    /*package*/ static ExecutorService daemonExecutor(String threadName, int threads) {
+        AtomicInteger counter = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, threadName+"-"+counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
 }
@@ -0,0 +1,291 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+/**
+ * One Kafka consumer, and one polling thread, for several connectors.
+ * <p>
+ * Connectors with the same bootstrap servers and Kafka consumer properties (the
+ * group id is ignored - the connector assigns partitions, it does not subscribe)
+ * share a {@code FKSharedConsumer}. The consumer is assigned the partitions of all
+ * the topics. Records from each poll are split by topic and passed to the
+ * connector's {@link FKBatchProcessor} on a thread from a shared dispatch pool.
+ * <p>
+ * While a connector is processing records, its partitions are paused in the
+ * consumer so the records of a topic are processed in order, one batch at a time,
+ * and a slow connector does not hold up the others. Requests to a connector's
+ * {@link FKControl} are carried out between polls, when the connector is not
+ * processing records.
+ * <p>
+ * The consumer is only used on the polling thread. Other threads pass actions to
+ * the polling thread.
+ */
+public class FKSharedConsumer {
+
+    private static final Map<String, FKSharedConsumer> sharedConsumers = new ConcurrentHashMap<>();
+    // Shared consumers polling a consumer provided by the caller, by that consumer.
+    private static final Map<Consumer<String, RequestFK>, FKSharedConsumer> providedConsumers = new ConcurrentHashMap<>();
+    private static final AtomicInteger counter = new AtomicInteger(0);
+
+    /** The shared consumer for the connector, creating it if necessary. */
+    public static FKSharedConsumer get(KConnectorDesc conn) {
+        return sharedConsumers.computeIfAbsent(key(conn), k->new FKSharedConsumer(conn.getBootstrapServers(), FKS.createConsumer(conn)));
+    }
+
+    /**
+     * The shared consumer polling {@code consumer}, creating it if necessary.
+     * Connectors given the same consumer, such as an in-memory consumer, share it.
+     * If {@code consumer} is null, this is {@link #get(KConnectorDesc)}.
+     */
+    public static FKSharedConsumer get(KConnectorDesc conn, Consumer<String, RequestFK> consumer) {
+        if ( consumer == null )
+            return get(conn);
+        return providedConsumers.computeIfAbsent(consumer, c->new FKSharedConsumer(conn.getBootstrapServers(), c));
+    }
+
+    /** Stop all the shared consumers. */
+    /*package*/ static void resetAll() {
+        sharedConsumers.values().forEach(FKSharedConsumer::stop);
+        sharedConsumers.clear();
+        providedConsumers.values().forEach(FKSharedConsumer::stop);
+        providedConsumers.clear();
+    }
+
+    /**
+     * Remove the connector for {@code topic} from the shared consumer it is on, if
+     * any, and wait, up to {@code timeout}, for the records it is processing.
+     * After this, the shared consumer does not archive or pass on records for the topic.
+     */
+    /*package*/ static void removeConnector(String topic, Duration timeout) {
+        List<FKSharedConsumer> all = new ArrayList<>(sharedConsumers.values());
+        all.addAll(providedConsumers.values());
+        for ( FKSharedConsumer shared : all )
+            shared.remove(topic, timeout);
+    }
+
+    /** Connectors with the same key can share a consumer. */
+    private static String key(KConnectorDesc conn) {
+        Properties props = conn.getKafkaConsumerProps();
+        // The group id is made unique per connector.
+        SortedMap<String, String> settings = new TreeMap<>();
+        props.stringPropertyNames().forEach(name -> {
+            if ( ! ConsumerConfig.GROUP_ID_CONFIG.equals(name) )
+                settings.put(name, props.getProperty(name));
+        });
+        return conn.getBootstrapServers()+" "+settings;
+    }
+
+    // A connector using the shared consumer.
+    private record Member(KConnectorDesc conn, DataState dataState, FKBatchProcessor batchProcessor, FKControl control,
+                          List<TopicPartition> partitions) {}
+
+    private final String label;
+    private final Consumer<String, RequestFK> consumer;
+    // Topic name to connector. Only accessed on the polling thread.
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    // Topics with records being processed, and the task processing them. Only accessed on the polling thread.
+    private final Map<String, Future<?>> busy = new HashMap<>();
+    // Work for the polling thread.
+    private final BlockingQueue<Runnable> actions = new LinkedBlockingQueue<>();
+    private final ExecutorService pollThread;
+    private final ExecutorService dispatchThreads;
+    private volatile boolean running = true;
+
+    private FKSharedConsumer(String bootstrapServers, Consumer<String, RequestFK> consumer) {
+        this.label = "FK-shared-"+counter.incrementAndGet();
+        this.consumer = consumer;
+        this.pollThread = FKS.daemonExecutor(label+"-poll", 1);
+        this.dispatchThreads = FKS.daemonExecutor(label+"-dispatch", FKConst.sharedDispatchThreads);
+        pollThread.submit(this::pollLoop);
+        FmtLog.info(LOG, "[%s] Shared consumer for %s", label, bootstrapServers);
+    }
+
+    /**
+     * Add a connector. The partitions of the topic are added to the consumer and the
+     * start point set. This waits until that has been done by the polling thread.
+     */
+    public void addConnector(KConnectorDesc conn, DataState dataState, FKBatchProcessor batchProcessor) {
+        CompletableFuture<Void> added = new CompletableFuture<>();
+        runOnPollThread(()->{
+            try {
+                if ( members.containsKey(conn.getTopic()) )
+                    throw new FusekiKafkaException("Topic already has a connector on this shared consumer: "+conn.getTopic());
+                List<TopicPartition> partitions = FKS.setupConnector(conn, consumer, dataState, batchProcessor);
+                FKControl control = FKRegistry.get().getControl(conn.getTopic());
+                if ( control == null )
+                    control = new FKControl(conn, dataState, batchProcessor);
+                members.put(conn.getTopic(), new Member(conn, dataState, batchProcessor, control, partitions));
+                FKS.logStart(conn);
+                added.complete(null);
+            } catch (Throwable th) {
+                added.completeExceptionally(th);
+            }
+        });
+        try {
+            added.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FusekiKafkaException("Interrupted while adding connector for "+conn.getTopic(), ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if ( cause instanceof RuntimeException runtimeEx )
+                throw runtimeEx;
+            throw new FusekiKafkaException("Failed to add connector for "+conn.getTopic(), cause);
+        }
+    }
+
+    private void remove(String topic, Duration timeout) {
+        if ( ! running )
+            return;
+        CompletableFuture<Future<?>> removed = new CompletableFuture<>();
+        runOnPollThread(()->{
+            Member member = members.remove(topic);
+            if ( member != null ) {
+                Set<TopicPartition> assignment = new HashSet<>(consumer.assignment());
+                member.partitions().forEach(assignment::remove);
+                consumer.assign(assignment);
+            }
+            removed.complete(busy.get(topic));
+        });
+        try {
+            Future<?> processing = removed.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if ( processing != null && ! FKS.awaitTask(processing, timeout) )
+                FmtLog.warn(LOG, "[%s] Records still being processed", topic);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            FmtLog.warn(LOG, "[%s] Shared consumer %s did not remove the connector", topic, label);
+        }
+    }
+
+    /**
+     * Queue an action for the polling thread. The action runs when the current
+     * {@code consumer.poll} returns, which is kept short for this reason.
+     * ({@code consumer.wakeup} is not used because it would also abort the next
+     * blocking call on the consumer if there is no poll in progress.)
+     */
+    private void runOnPollThread(Runnable action) {
+        actions.add(action);
+    }
+
+    private void stop() {
+        running = false;
+        consumer.wakeup();
+        pollThread.shutdown();
+        dispatchThreads.shutdown();
+    }
+
+    /** Polling task loop. */
+    private void pollLoop() {
+        try {
+            while ( running ) {
+                try {
+                    runActions();
+                    applyControls();
+                    if ( consumer.assignment().isEmpty() ) {
+                        // Nothing to poll - wait for work.
+                        Runnable action = actions.poll(FKConst.pollingWaitDuration.toMillis(), TimeUnit.MILLISECONDS);
+                        if ( action != null )
+                            action.run();
+                        continue;
+                    }
+                    ConsumerRecords<String, RequestFK> cRecords = consumer.poll(FKConst.sharedPollingWaitDuration);
+                    members.values().forEach(member->member.batchProcessor().getMetrics().updateLag(consumer));
+                    if ( ! cRecords.isEmpty() )
+                        dispatch(cRecords);
+                } catch (WakeupException ex) {
+                    // Stopping.
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (Throwable th) {
+                    FmtLog.warn(LOG, th, "[%s] Unexpected exception: %s", label, th.getMessage());
+                }
+            }
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private void runActions() {
+        Runnable action;
+        while ( (action = actions.poll()) != null )
+            action.run();
+    }
+
+    /**
+     * Carry out control requests (pause, resume, rewind) for the connectors that are
+     * not processing records. The partitions of a connector that is processing
+     * records stay paused until it has finished.
+     */
+    private void applyControls() {
+        for ( Member member : members.values() ) {
+            if ( ! busy.containsKey(member.conn().getTopic()) )
+                FKS.applyControl(member.control(), consumer);
+        }
+    }
+
+    /** Pass the records for each topic to its connector. */
+    private void dispatch(ConsumerRecords<String, RequestFK> cRecords) {
+        for ( Member member : members.values() ) {
+            List<ConsumerRecord<String, RequestFK>> records = new ArrayList<>();
+            for ( TopicPartition topicPartition : member.partitions() )
+                records.addAll(cRecords.records(topicPartition));
+            if ( records.isEmpty() )
+                continue;
+            FKArchive archive = FKArchive.get(member.conn());
+            if ( archive != null )
+                archive.append(records);
+            // No more records for this connector until these have been processed.
+            consumer.pause(member.partitions());
+            busy.put(member.conn().getTopic(), dispatchThreads.submit(()->process(member, records)));
+        }
+    }
+
+    /** Process records on a dispatch thread. */
+    private void process(Member member, List<ConsumerRecord<String, RequestFK>> records) {
+        String topic = member.conn().getTopic();
+        DataState dataState = member.dataState();
+        try {
+            long lastOffsetState = dataState.getLastOffset();
+            member.batchProcessor().dispatch(topic, dataState, records);
+            FmtLog.debug(LOG, "[%s] Offset: %d -> %d", topic, lastOffsetState, dataState.getLastOffset());
+        } catch (Throwable th) {
+            FmtLog.error(LOG, th, "[%s] %s", topic, th.getMessage());
+        } finally {
+            // Resumed, unless paused by request, by applyControls.
+            runOnPollThread(()->busy.remove(topic));
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFOps;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.loader.base.LoaderOps;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * A snapshot of a dataset, tagged with the offsets of the topic it corresponds to,
+ * for starting a new replica without replaying the whole topic.
+ * <p>
+ * A snapshot is a data file in any RDF syntax that can be read by file extension
+ * (snapshots written by {@link #write} are gzipped RDF Thrift; a TDB2 backup,
+ * gzipped N-Quads, can also be used) and a JSON file, written after the data file:
+ * <pre>
+ *   { "topic": "TOPIC", "data": "DATA FILE NAME", "created": "2024-01-01T00:00:00Z",
+ *     "offsets": { "0": 1234 } }
+ * </pre>
+ * The offsets are the last offset applied, by partition. The data file name is
+ * relative to the directory of the JSON file.
+ */
+public class FKSnapshot {
+
+    private static final String metadataSuffix = ".json";
+    private static final String dataSuffix = ".rt.gz";
+    private static final DateTimeFormatter timestampFmt =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    private final String topic;
+    private final Path metadata;
+    private final Path data;
+    private final Instant created;
+    private final Map<Integer, Long> offsets;
+
+    private FKSnapshot(String topic, Path metadata, Path data, Instant created, Map<Integer, Long> offsets) {
+        this.topic = topic;
+        this.metadata = metadata;
+        this.data = data;
+        this.created = created;
+        this.offsets = offsets;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /** The JSON file. */
+    public Path getMetadata() {
+        return metadata;
+    }
+
+    /** The data file. */
+    public Path getData() {
+        return data;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    /** The last offset applied, by partition. */
+    public Map<Integer, Long> getOffsets() {
+        return offsets;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Snapshot[%s %s %s %s]", topic, data.getFileName(), created, offsets);
+    }
+
+    /**
+     * Load the latest snapshot in the connector's snapshot directory into the
+     * dataset, and set the {@link DataState} to its offsets, if the connector has no
+     * state and the dataset is empty. Return the snapshot loaded, or null.
+     * <p>
+     * The snapshot's offsets are recorded in the dataset ({@link FKDatasetOffsets})
+     * in the transaction that loads the data. If the server stops after the load but
+     * before the state is written, the next start finds the dataset is not empty, and
+     * sets the state from the offsets in the dataset instead of replaying the topic
+     * from the start on top of the snapshot.
+     */
+    public static FKSnapshot bootstrap(KConnectorDesc conn, DataState dataState, DatasetGraph dsg) {
+        String topic = conn.getTopic();
+        if ( conn.getSnapshotDirectory() == null )
+            return null;
+        if ( dataState.getLastOffset() >= 0 || ! dataState.getPartitionOffsets().isEmpty() )
+            return null;
+        if ( dsg == null ) {
+            FmtLog.warn(LOG, "[%s] Snapshot: no dataset for %s", topic, conn.getLocalDispatchPath());
+            return null;
+        }
+        if ( ! Txn.calculateRead(dsg, dsg::isEmpty) ) {
+            Map<Integer, Long> offsets = FKDatasetOffsets.read(dsg, topic);
+            if ( offsets.isEmpty() ) {
+                FmtLog.info(LOG, "[%s] Snapshot: dataset is not empty", topic);
+                return null;
+            }
+            // Loaded, but the state was not recorded.
+            FmtLog.info(LOG, "[%s] Snapshot: dataset is not empty ; offsets from the dataset %s", topic, offsets);
+            offsets.forEach(dataState::setLastOffset);
+            dataState.flush();
+            return null;
+        }
+        FKSnapshot snapshot = latest(Path.of(conn.getSnapshotDirectory()), topic);
+        if ( snapshot == null ) {
+            FmtLog.info(LOG, "[%s] Snapshot: none found in %s", topic, conn.getSnapshotDirectory());
+            return null;
+        }
+        FmtLog.info(LOG, "[%s] Snapshot: load %s", topic, snapshot);
+        long start = System.nanoTime();
+        snapshot.load(dsg);
+        snapshot.getOffsets().forEach(dataState::setLastOffset);
+        dataState.flush();
+        FmtLog.info(LOG, "[%s] Snapshot: loaded in %.1fs ; offsets %s", topic, (System.nanoTime()-start)/1e9, snapshot.getOffsets());
+        return snapshot;
+    }
+
+    /**
+     * Load the snapshot data into a dataset, and record the snapshot's offsets in
+     * the dataset ({@link FKDatasetOffsets}), in one transaction. Offsets for the
+     * topic in the data file are replaced. A TDB2 dataset is loaded with the TDB2
+     * bulk loader.
+     */
+    public void load(DatasetGraph dsg) {
+        if ( TDBInternal.isTDB2(dsg) ) {
+            DataLoader loader = LoaderFactory.phasedLoader(dsg, LoaderOps.outputToLog());
+            loader.startBulk();
+            try {
+                StreamRDF dest = loader.stream();
+                parse(dest);
+                offsets.forEach((partition, offset)->dest.quad(FKDatasetOffsets.quad(topic, partition, offset)));
+                loader.finishBulk();
+            } catch (RuntimeException ex) {
+                loader.finishException(ex);
+                throw ex;
+            }
+            return;
+        }
+        StreamRDF dest = StreamRDFLib.dataset(dsg);
+        Txn.executeWrite(dsg, ()->{
+            parse(dest);
+            offsets.forEach((partition, offset)->FKDatasetOffsets.write(dsg, topic, partition, offset));
+        });
+    }
+
+    /**
+     * Parse the data file, which may be compressed, by file extension. Offsets for
+     * the topic in the data are skipped.
+     */
+    private void parse(StreamRDF dest) {
+        String filename = data.toString();
+        StreamRDF stream = new StreamRDFWrapper(dest) {
+            @Override
+            public void quad(Quad quad) {
+                if ( ! FKDatasetOffsets.isOffset(quad, topic) )
+                    super.quad(quad);
+            }
+        };
+        try ( InputStream in = IO.openFileBuffered(filename) ) {
+            RDFParser.source(in).lang(RDFLanguages.filenameToLang(filename)).parse(stream);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Write a snapshot of the dataset, from one read transaction, to the directory.
+     * The offsets are those recorded in the dataset ({@link FKDatasetOffsets}, from
+     * {@code fk:offsetInDataset}), read in the same transaction as the data, so that
+     * no message is applied again to a replica started from the snapshot. It is an
+     * error if the dataset does not record offsets for the topic.
+     */
+    public static FKSnapshot write(DatasetGraph dsg, String topic, Path directory) {
+        return write(dsg, topic, directory, -1);
+    }
+
+    /**
+     * Write a snapshot, as {@link #write(DatasetGraph, String, Path)}, reading the
+     * dataset at no more than {@code bytesPerSecond} (of uncompressed RDF Thrift) if
+     * that is positive, so as to leave the server's resources for queries.
+     */
+    public static FKSnapshot write(DatasetGraph dsg, String topic, Path directory, long bytesPerSecond) {
+        try {
+            Files.createDirectories(directory);
+            Instant created = Instant.now();
+            // Names are by the millisecond; don't reuse one.
+            while ( Files.exists(directory.resolve(topic+"-"+timestampFmt.format(created)+metadataSuffix)) )
+                created = created.plusMillis(1);
+            String baseName = topic+"-"+timestampFmt.format(created);
+            Path dataFile = directory.resolve(baseName+dataSuffix);
+            Path metadataFile = directory.resolve(baseName+metadataSuffix);
+            Path tmp = directory.resolve(baseName+dataSuffix+".tmp");
+            Map<Integer, Long> offsets = Txn.calculateRead(dsg, ()->{
+                Map<Integer, Long> x = FKDatasetOffsets.read(dsg, topic);
+                if ( x.isEmpty() )
+                    throw new FusekiKafkaException("No offsets for topic '"+topic+"' in the dataset: snapshots need fk:offsetInDataset");
+                try ( OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(tmp), 64*1024);
+                      OutputStream out = ( bytesPerSecond > 0 ) ? new ThrottledOutputStream(gzip, bytesPerSecond) : gzip ) {
+                    StreamRDF writer = StreamRDFWriter.getWriterStream(out, RDFFormat.RDF_THRIFT);
+                    writer.start();
+                    StreamRDFOps.sendDatasetToStream(dsg, writer);
+                    writer.finish();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return x;
+            });
+            Files.move(tmp, dataFile, StandardCopyOption.ATOMIC_MOVE);
+            FKSnapshot snapshot = new FKSnapshot(topic, metadataFile, dataFile, created, offsets);
+            FmtLog.info(LOG, "[%s] Snapshot: written %s", topic, snapshot);
+            writeMetadata(snapshot);
+            return snapshot;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void writeMetadata(FKSnapshot snapshot) throws IOException {
+        Path metadataFile = snapshot.getMetadata();
+        JsonObject obj = new JsonObject();
+        obj.put("topic", snapshot.getTopic());
+        obj.put("data", snapshot.getData().getFileName().toString());
+        obj.put("created", snapshot.getCreated().toString());
+        JsonObject offsets = new JsonObject();
+        snapshot.getOffsets().forEach((partition, offset) -> offsets.put(Integer.toString(partition), offset));
+        obj.put("offsets", offsets);
+        Path tmp = metadataFile.resolveSibling(metadataFile.getFileName()+".tmp");
+        Files.writeString(tmp, JSON.toString(obj), StandardCharsets.UTF_8);
+        Files.move(tmp, metadataFile, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete the snapshots of the topic in the directory except the newest
+     * {@code retain}. Return the number deleted.
+     */
+    public static int prune(Path directory, String topic, int retain) {
+        List<FKSnapshot> snapshots = list(directory, topic);
+        int deleted = 0;
+        for ( FKSnapshot snapshot : snapshots.subList(Math.min(retain, snapshots.size()), snapshots.size()) ) {
+            try {
+                // Metadata first, so a partly deleted snapshot is never used.
+                Files.deleteIfExists(snapshot.getMetadata());
+                Files.deleteIfExists(snapshot.getData());
+                deleted++;
+            } catch (IOException ex) {
+                FmtLog.warn(LOG, "[%s] Snapshot: failed to delete %s: %s", topic, snapshot, ex.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    /** The snapshots of the topic in the directory, newest first. */
+    public static List<FKSnapshot> list(Path directory, String topic) {
+        if ( ! Files.isDirectory(directory) )
+            return List.of();
+        try ( Stream<Path> files = Files.list(directory) ) {
+            return files.filter(f->f.getFileName().toString().endsWith(metadataSuffix))
+                        .map(f->read(f, topic))
+                        .filter(s->s != null)
+                        .sorted(Comparator.comparing(FKSnapshot::getCreated).reversed())
+                        .toList();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** The newest snapshot of the topic in the directory, or null. */
+    public static FKSnapshot latest(Path directory, String topic) {
+        List<FKSnapshot> snapshots = list(directory, topic);
+        return snapshots.isEmpty() ? null : snapshots.get(0);
+    }
+
+    /** Read a snapshot JSON file; null if it is not a snapshot of the topic or the data file is missing. */
+    private static FKSnapshot read(Path metadataFile, String topic) {
+        try {
+            JsonObject obj = JSON.read(metadataFile.toString());
+            if ( ! obj.hasKey("topic") || ! topic.equals(obj.getString("topic")) )
+                return null;
+            Path data = metadataFile.resolveSibling(obj.getString("data"));
+            if ( ! Files.exists(data) ) {
+                FmtLog.warn(LOG, "[%s] Snapshot: data file missing: %s", topic, data);
+                return null;
+            }
+            Instant created = obj.hasKey("created")
+                    ? Instant.parse(obj.getString("created"))
+                    : Files.getLastModifiedTime(metadataFile).toInstant();
+            Map<Integer, Long> offsets = new TreeMap<>();
+            JsonObject offsetsObj = obj.getObj("offsets");
+            for ( String key : offsetsObj.keys() ) {
+                JsonValue v = offsetsObj.get(key);
+                offsets.put(Integer.parseInt(key), v.getAsNumber().value().longValue());
+            }
+            return new FKSnapshot(topic, metadataFile, data, created, offsets);
+        } catch (RuntimeException | IOException ex) {
+            FmtLog.warn(LOG, "[%s] Snapshot: bad file %s: %s", topic, metadataFile, ex.getMessage());
+            return null;
+        }
+    }
+
+    /** Limit the rate of writing, to limit the rate of reading the dataset. */
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long written = 0;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            throttle(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            throttle(len);
+        }
+
+        private void throttle(int len) throws IOException {
+            written += len;
+            long aheadMillis = written*1000/bytesPerSecond - (System.nanoTime()-start)/1_000_000;
+            if ( aheadMillis <= 10 )
+                return;
+            try {
+                Thread.sleep(aheadMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Snapshot interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.kafka.FusekiKafka.LOG;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.sparql.core.DatasetGraph;
+
+/**
+ * Write a {@link FKSnapshot} of a connector's dataset to the snapshot directory
+ * every {@code fk:snapshotInterval}, keeping the latest {@code fk:snapshotRetain}.
+ * <p>
+ * Each snapshot is written from one read transaction, on a low priority thread, at
+ * no more than {@code fk:snapshotBytesPerSecond}. No snapshot is written if no
+ * records have been applied since the last one, judged by the offsets recorded in the
+ * dataset ({@code fk:offsetInDataset}).
+ * <p>
+ * Publishers are stopped by {@link FMod_FusekiKafka#serverStopped}.
+ */
+public class FKSnapshotPublisher {
+
+    // Per topic; one connector per topic.
+    private static final Map<String, FKSnapshotPublisher> publishers = new ConcurrentHashMap<>();
+
+    /**
+     * Start publishing snapshots for the connector, if it has a snapshot directory
+     * and a snapshot interval. Return the publisher, or null.
+     */
+    public static FKSnapshotPublisher start(KConnectorDesc conn, DatasetGraph dsg) {
+        if ( conn.getSnapshotDirectory() == null || conn.getSnapshotIntervalMillis() <= 0 )
+            return null;
+        FKSnapshotPublisher publisher = new FKSnapshotPublisher(conn, dsg);
+        FKSnapshotPublisher previous = publishers.put(conn.getTopic(), publisher);
+        if ( previous != null )
+            previous.stop();
+        publisher.start();
+        return publisher;
+    }
+
+    /** Stop publishing snapshots for a topic. */
+    public static void stop(String topic) {
+        FKSnapshotPublisher publisher = publishers.remove(topic);
+        if ( publisher != null )
+            publisher.stop();
+    }
+
+    private final KConnectorDesc conn;
+    private final DatasetGraph dsg;
+    private final Path directory;
+    private final int retain;
+    private ScheduledExecutorService executor = null;
+    // Offsets of the last snapshot written.
+    private Map<Integer, Long> lastOffsets = null;
+
+    /*package*/ FKSnapshotPublisher(KConnectorDesc conn, DatasetGraph dsg) {
+        this.conn = conn;
+        this.dsg = dsg;
+        this.directory = Path.of(conn.getSnapshotDirectory());
+        this.retain = ( conn.getSnapshotRetain() > 0 ) ? conn.getSnapshotRetain() : FKConst.snapshotRetain;
+        FKSnapshot latest = FKSnapshot.latest(directory, conn.getTopic());
+        if ( latest != null )
+            lastOffsets = latest.getOffsets();
+    }
+
+    private synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FK-snapshot-"+conn.getTopic());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = conn.getSnapshotIntervalMillis();
+        executor.scheduleWithFixedDelay(this::publishTask, interval, interval, TimeUnit.MILLISECONDS);
+        FmtLog.info(LOG, "[%s] Snapshot: every %ds to %s", conn.getTopic(), interval/1000, directory);
+    }
+
+    private synchronized void stop() {
+        if ( executor != null )
+            executor.shutdownNow();
+        executor = null;
+    }
+
+    private void publishTask() {
+        try {
+            publish();
+        } catch (Throwable th) {
+            FmtLog.warn(LOG, th, "[%s] Snapshot: failed: %s", conn.getTopic(), th.getMessage());
+        }
+    }
+
+    /**
+     * Write a snapshot, unless nothing has been applied since the last one, and
+     * delete the oldest beyond those retained. Return the snapshot written, or null.
+     */
+    /*package*/ FKSnapshot publish() {
+        // The DataState can lag the dataset; the dataset offsets are what a snapshot records.
+        Map<Integer, Long> offsets = FKDatasetOffsets.read(dsg, conn.getTopic());
+        if ( offsets.isEmpty() || offsets.equals(lastOffsets) )
+            return null;
+        FKSnapshot snapshot = FKSnapshot.write(dsg, conn.getTopic(), directory, conn.getSnapshotBytesPerSecond());
+        lastOffsets = snapshot.getOffsets();
+        FKSnapshot.prune(directory, conn.getTopic(), retain);
+        return snapshot;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Apply one message to a dataset, inside the batch transaction, so that it is
+ * all-or-nothing.
+ * <p>
+ * The message is applied to a view of the dataset that records the quads it
+ * actually adds and deletes: a quad is recorded as added only if it was not in the
+ * dataset, and as deleted only if it was. The graphs of the view
+ * ({@link #getGraph}, {@link #getDefaultGraph}) are views of the view, so changes
+ * made through a graph, such as by SPARQL Update ADD, COPY, MOVE and CLEAR, are
+ * recorded too. If the message fails part way through, the changes are undone, in
+ * reverse order, before the exception is passed on; the rest of the batch is
+ * unaffected.
+ * <p>
+ * The record is kept in memory for the time it takes to apply the message. Each
+ * change costs a {@code contains} check, and a delete of a pattern lists the
+ * matching quads first.
+ * <p>
+ * Changes to the dataset prefixes are not undone.
+ */
+public class FKUndo extends DatasetGraphWrapper {
+
+    /** Run {@code action} on a view of {@code dsg}; if it throws an exception, undo its changes. */
+    public static void atomic(DatasetGraph dsg, Consumer<DatasetGraph> action) {
+        FKUndo undo = new FKUndo(dsg);
+        try {
+            action.accept(undo);
+        } catch (RuntimeException ex) {
+            undo.undo();
+            throw ex;
+        }
+    }
+
+    // The quads changed, in order, and whether each was added or deleted.
+    private final List<Quad> quads = new ArrayList<>();
+    private final List<Boolean> added = new ArrayList<>();
+
+    private FKUndo(DatasetGraph dsg) {
+        super(dsg);
+    }
+
+    private void undo() {
+        DatasetGraph dsg = getBase();
+        for ( int i = quads.size()-1 ; i >= 0 ; i-- ) {
+            if ( added.get(i) )
+                dsg.delete(quads.get(i));
+            else
+                dsg.add(quads.get(i));
+        }
+        quads.clear();
+        added.clear();
+    }
+
+    @Override
+    public Graph getDefaultGraph() {
+        return GraphView.createDefaultGraph(this);
+    }
+
+    @Override
+    public Graph getUnionGraph() {
+        return GraphView.createUnionGraph(this);
+    }
+
+    @Override
+    public Graph getGraph(Node graphNode) {
+        if ( Quad.isUnionGraph(graphNode) )
+            return getUnionGraph();
+        if ( Quad.isDefaultGraph(graphNode) )
+            return getDefaultGraph();
+        return GraphView.createNamedGraph(this, graphNode);
+    }
+
+    @Override
+    public void add(Quad quad) {
+        add(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    @Override
+    public void delete(Quad quad) {
+        delete(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        DatasetGraph dsg = getBase();
+        if ( dsg.contains(g, s, p, o) )
+            return;
+        dsg.add(g, s, p, o);
+        quads.add(Quad.create(g, s, p, o));
+        added.add(true);
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        DatasetGraph dsg = getBase();
+        if ( ! dsg.contains(g, s, p, o) )
+            return;
+        dsg.delete(g, s, p, o);
+        quads.add(Quad.create(g, s, p, o));
+        added.add(false);
+    }
+
+    @Override
+    public void deleteAny(Node g, Node s, Node p, Node o) {
+        // The quads matched are all in the dataset.
+        List<Quad> matches = Iter.toList(getBase().find(g, s, p, o));
+        for ( Quad quad : matches ) {
+            getBase().delete(quad);
+            quads.add(quad);
+            added.add(false);
+        }
+    }
+
+    @Override
+    public void clear() {
+        deleteAny(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    @Override
+    public void addGraph(Node graphName, Graph graph) {
+        removeGraph(graphName);
+        graph.find().forEachRemaining(t -> add(graphName, t.getSubject(), t.getPredicate(), t.getObject()));
+    }
+
+    @Override
+    public void removeGraph(Node graphName) {
+        deleteAny(graphName, Node.ANY, Node.ANY, Node.ANY);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.util.List;
+
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateRequest;
+
+/**
+ * Combining SPARQL Update requests, for {@link FKProcessorCoalesce}.
+ */
+public class FKUpdates {
+
+    /** Whether the request is only {@code INSERT DATA} and {@code DELETE DATA} operations. */
+    public static boolean isDataOnly(UpdateRequest request) {
+        for ( Update update : request.getOperations() ) {
+            if ( ! ( update instanceof UpdateDataInsert ) && ! ( update instanceof UpdateDataDelete ) )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * One request with the operations of the requests, in order. Consecutive
+     * {@code INSERT DATA} operations become one {@code INSERT DATA}, and consecutive
+     * {@code DELETE DATA} operations become one {@code DELETE DATA}.
+     * <p>
+     * The requests are parsed separately, so the prefixes and base of one request do
+     * not apply to another.
+     */
+    public static UpdateRequest merge(List<UpdateRequest> requests) {
+        UpdateRequest merged = new UpdateRequest();
+        QuadDataAcc quads = null;
+        // Whether quads are to be inserted or deleted.
+        boolean inserting = false;
+        for ( UpdateRequest request : requests ) {
+            for ( Update update : request.getOperations() ) {
+                if ( update instanceof UpdateDataInsert insert ) {
+                    if ( quads != null && ! inserting )
+                        quads = flush(merged, quads, false);
+                    if ( quads == null )
+                        quads = new QuadDataAcc();
+                    inserting = true;
+                    insert.getQuads().forEach(quads::addQuad);
+                } else if ( update instanceof UpdateDataDelete delete ) {
+                    if ( quads != null && inserting )
+                        quads = flush(merged, quads, true);
+                    if ( quads == null )
+                        quads = new QuadDataAcc();
+                    inserting = false;
+                    delete.getQuads().forEach(quads::addQuad);
+                } else {
+                    if ( quads != null )
+                        quads = flush(merged, quads, inserting);
+                    merged.add(update);
+                }
+            }
+        }
+        if ( quads != null )
+            flush(merged, quads, inserting);
+        return merged;
+    }
+
+    private static QuadDataAcc flush(UpdateRequest merged, QuadDataAcc quads, boolean inserting) {
+        merged.add(inserting ? new UpdateDataInsert(quads) : new UpdateDataDelete(quads));
+        return null;
+    }
+}
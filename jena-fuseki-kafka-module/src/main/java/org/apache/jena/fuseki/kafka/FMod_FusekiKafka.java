@@ -18,9 +18,13 @@ package org.apache.jena.fuseki.kafka;
 
 import static org.apache.jena.kafka.FusekiKafka.LOG;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.jena.assembler.Assembler;
@@ -30,6 +34,7 @@ import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.fuseki.Fuseki;
 import org.apache.jena.fuseki.main.FusekiServer;
 import org.apache.jena.fuseki.main.FusekiServer.Builder;
+import org.apache.jena.fuseki.main.JettySecurityLib;
 import org.apache.jena.fuseki.main.sys.FusekiAutoModule;
 import org.apache.jena.kafka.KConnectorDesc;
 import org.apache.jena.kafka.KafkaConnectorAssembler;
@@ -37,11 +42,15 @@ import org.apache.jena.kafka.RequestFK;
 import org.apache.jena.kafka.SysJenaKafka;
 import org.apache.jena.kafka.common.DataState;
 import org.apache.jena.kafka.common.PersistentState;
+import org.apache.jena.kafka.common.StateJournal;
+import org.apache.jena.kafka.refs.RefBytes;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.shared.JenaException;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.assembler.AssemblerUtils;
 import org.apache.jena.sparql.util.graph.GraphUtils;
+import org.eclipse.jetty.ee10.servlet.security.ConstraintSecurityHandler;
 
 /**
  * Connect Kafka to a dataset. Messages on a Kafka topic are HTTP-like:
@@ -66,6 +75,10 @@ public class FMod_FusekiKafka implements FusekiAutoModule {
     // [BATCHER] Change in concurrent hash map (topic -> Pair<KConnectorDesc, DataState>>)
     private ThreadLocal<List<Pair<KConnectorDesc, DataState>>> buildState = ThreadLocal.withInitial(ArrayList::new);
 
+    // The connectors started for each server, for when the server stops.
+    // The module is shared by all the servers in the JVM; stopping can be on any thread.
+    private final Map<FusekiServer, List<Pair<KConnectorDesc, DataState>>> started = new ConcurrentHashMap<>();
+
     @Override
     public String name() {
         return "FMod FusekiKafka";
@@ -90,6 +103,32 @@ public class FMod_FusekiKafka implements FusekiAutoModule {
             return;
         }
         connectors.forEach(connector -> oneConnector(builder, connector, configModel));
+        if ( hasControl() ) {
+            builder.addServlet(FKControlServlet.controlPath+"/*", new FKControlServlet());
+            builder.addServlet(FKMetrics.metricsPath, new FKMetricsServlet());
+        }
+    }
+
+    /** Whether any connector is available at the status and control, and metrics, endpoints. */
+    private boolean hasControl() {
+        return buildState.get().stream().anyMatch(pair->pair.getLeft().getControlUsers() != null);
+    }
+
+    /**
+     * Require authentication for the status and control endpoint, and the metrics
+     * endpoint, as for a dataset with an access policy. The users are then checked
+     * against each connector's {@code fk:controlUsers}.
+     */
+    private static void secureControl(FusekiServer server) {
+        ConstraintSecurityHandler securityHandler = server.getJettyServer().getDescendant(ConstraintSecurityHandler.class);
+        if ( securityHandler == null ) {
+            FmtLog.warn(LOG, "No password file for the server: %s and %s refuse all requests",
+                        FKControlServlet.controlPath, FKMetrics.metricsPath);
+            return;
+        }
+        JettySecurityLib.addPathConstraint(securityHandler, FKControlServlet.controlPath);
+        JettySecurityLib.addPathConstraint(securityHandler, FKControlServlet.controlPath+"/*");
+        JettySecurityLib.addPathConstraint(securityHandler, FKMetrics.metricsPath);
     }
 
     /*package*/ void oneConnector(FusekiServer.Builder builder, Resource connector, Model configModel) {
@@ -109,14 +148,30 @@ public class FMod_FusekiKafka implements FusekiAutoModule {
 //        DatasetGraph dsg = builder.getDataset(datasetName);
 //        if ( dsg == null )
 //            throw new FusekiKafkaException("No datasets for '" + conn.getLocalEndpoint() + "'");
-        PersistentState state = new PersistentState(conn.getStateFile());
+        RefBytes state = stateStorage(conn);
 
         DataState dataState = DataState.restoreOrCreate(state, dispatchURI, remoteEndpoint, conn.getTopic());
+        dataState.setCheckpointPolicy(conn.getStateCheckpointMillis(), conn.getStateCheckpointOffsets());
+        if ( offsetInDataset(conn) && ! dataState.hasCheckpointPolicy() )
+            // The dataset has the offset committed with each batch.
+            dataState.setCheckpointPolicy(FKConst.offsetInDatasetStateInterval.toMillis(), -1);
         long lastOffset = dataState.getLastOffset();
         FmtLog.info(LOG, "Initial offset for topic %s = %d (%s)", conn.getTopic(), lastOffset, dispatchURI);
         recordConnector(builder, conn, dataState);
     }
 
+    /**
+     * Where the connector state is kept: the connector's state file or, if there is
+     * one, the shared state journal, keyed by the state file name.
+     */
+    private static RefBytes stateStorage(KConnectorDesc conn) {
+        if ( conn.getStateJournal() == null )
+            return new PersistentState(conn.getStateFile());
+        StateJournal journal = StateJournal.open(conn.getStateJournal());
+        Path stateFile = Path.of(conn.getStateFile()).toAbsolutePath().normalize();
+        return journal.entry(stateFile.toString(), stateFile);
+    }
+
     // Passing connector across stages by using a ThreadLocal.
     private void recordConnector(Builder builder, KConnectorDesc conn, DataState dataState) {
         Pair<KConnectorDesc, DataState> pair = Pair.create(conn, dataState);
@@ -138,6 +193,9 @@ public class FMod_FusekiKafka implements FusekiAutoModule {
         List<Pair<KConnectorDesc, DataState>> connectors = connectors(server);
         if ( connectors == null )
             return;
+        if ( hasControl() )
+            secureControl(server);
+        List<Pair<KConnectorDesc, DataState>> serverConnectors = started.computeIfAbsent(server, s->new CopyOnWriteArrayList<>());
         connectors.forEach(pair->{
             KConnectorDesc conn = pair.getLeft();
             DataState dataState = pair.getRight();
@@ -146,7 +204,21 @@ public class FMod_FusekiKafka implements FusekiAutoModule {
                         conn.getBootstrapServers(), conn.getTopic(),
                         conn.dispatchLocal() ? conn.getLocalDispatchPath() : conn.getRemoteEndpoint());
             FKBatchProcessor batchProcessor = makeFKBatchProcessor(conn, server);
+            if ( conn.getOffsetInDataset() && conn.getDirectApply() ) {
+                DatasetGraph dsg = FKS.findActionProcessorDataset(server, conn.getLocalDispatchPath()).getRight();
+                FKDatasetOffsets.restore(dsg, dataState);
+            }
+            if ( conn.getSnapshotDirectory() != null && conn.dispatchLocal() ) {
+                // A new replica: start from a snapshot, then sync from its offsets.
+                DatasetGraph dsg = FKS.findActionProcessorDataset(server, conn.getLocalDispatchPath()).getRight();
+                FKSnapshot.bootstrap(conn, dataState, dsg);
+            }
             FKS.addConnectorToServer(conn, server, dataState, batchProcessor);
+            serverConnectors.add(pair);
+            if ( conn.getSnapshotIntervalMillis() > 0 && conn.getSnapshotDirectory() != null && conn.dispatchLocal() ) {
+                DatasetGraph dsg = FKS.findActionProcessorDataset(server, conn.getLocalDispatchPath()).getRight();
+                FKSnapshotPublisher.start(conn, dsg);
+            }
         });
     }
 
@@ -158,25 +230,49 @@ public class FMod_FusekiKafka implements FusekiAutoModule {
         buildState.remove();
     }
 
+    /** Whether the connector records offsets in the dataset. This requires direct apply. */
+    private static boolean offsetInDataset(KConnectorDesc conn) {
+        if ( ! conn.getOffsetInDataset() )
+            return false;
+        if ( ! conn.getDirectApply() ) {
+            FmtLog.warn(LOG, "[%s] fk:offsetInDataset needs fk:directApply - ignored", conn.getTopic());
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Make a {@link FKBatchProcessor} for the Fuseki Server being built. The default
      * is one that loops on the ConsumerRecords ({@link RequestFK}) sending each to
-     * the Fuseki server for dispatch. Other policies are possible such as
-     * aggregating batches or directly applying to a dataset.
+     * the Fuseki server for dispatch. If the connector is configured with
+     * {@code fk:directApply}, each batch is applied to the dataset in one transaction.
+     * Other policies are possible such as aggregating batches.
      */
     protected FKBatchProcessor makeFKBatchProcessor(KConnectorDesc conn, FusekiServer server) {
+        if ( conn.getDirectApply() )
+            return FKS.directFKBatchProcessor(conn, server);
         return FKS.plainFKBatchProcessor(conn, server.getServletContext());
     }
 
     @Override
     public void serverStopped(FusekiServer server) {
-        List<Pair<KConnectorDesc, DataState>> connectors = connectors(server);
-        if ( connectors == null )
+        List<Pair<KConnectorDesc, DataState>> connectors = started.remove(server);
+        if ( connectors == null ) {
+            FKS.flushState();
             return;
+        }
+        // Stop receiving and processing records before closing what the polling uses.
+        connectors.forEach(pair->FKS.stopConnector(pair.getLeft().getTopic()));
+        FKS.flushState();
         connectors.forEach(pair->{
             KConnectorDesc conn = pair.getLeft();
-            DataState dataState = pair.getRight();
+            FKSnapshotPublisher.stop(conn.getTopic());
             FKRegistry.get().unregister(conn.getTopic());
+            FKMetrics.remove(conn.getTopic());
+            FKArchive.close(conn.getTopic());
+            FKParserContext.remove(conn.getTopic());
+            if ( conn.getStateJournal() != null )
+                StateJournal.release(conn.getStateJournal());
         });
     }
 }
@@ -18,6 +18,7 @@ package org.apache.jena.fuseki.kafka.lib;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
@@ -27,6 +28,7 @@ import java.util.function.BiConsumer;
 import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.lib.Lib;
 import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.ContentEncodingFK;
 import org.apache.jena.kafka.FusekiKafka;
 import org.apache.jena.kafka.common.DataState;
 import org.apache.jena.kafka.common.DeserializerDump;
@@ -46,6 +48,7 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
@@ -88,6 +91,36 @@ public class FKLib {
         }
     }
 
+    /**
+     * Send files, compressed with {@code contentEncoding} ("gzip", "deflate", "zstd"
+     * or "lz4"; see {@link ContentEncodingFK}).
+     */
+    public static void sendFiles(Properties props, String topic, String contentEncoding, List<String> files) {
+        if ( ! ContentEncodingFK.isCompressed(contentEncoding) ) {
+            sendFiles(props, topic, files);
+            return;
+        }
+        try ( StringSerializer serString = new StringSerializer();
+              ByteArraySerializer serBytes = new ByteArraySerializer();
+              Producer<String, byte[]> producer = new KafkaProducer<>(props, serString, serBytes) ) {
+            for ( String fn : files ) {
+                String ct = ctForFile(fn);
+                List<Header> headers = new ArrayList<>();
+                if ( ct != null )
+                    headers.add(header(HttpNames.hContentType, ct));
+                headers.add(header(FusekiKafka.hContentEncoding, contentEncoding));
+                byte[] body = ContentEncodingFK.encode(contentEncoding, IO.readWholeFileAsUTF8(fn).getBytes(StandardCharsets.UTF_8));
+                RecordMetadata res = sendBody(producer, null, topic, headers, body);
+                if ( res == null )
+                    FmtLog.error(LOG, "[%s] Error: sendFile %s", topic, fn);
+                else if ( ! res.hasOffset() )
+                    FmtLog.info(LOG, "[%s] No offset", topic);
+                else
+                    FmtLog.info(LOG, "[%s] Send: %s (%s): Offset = %s", topic, fn, contentEncoding, res.offset());
+            }
+        }
+    }
+
     public static void sendString(Properties props, String topic, String contentType, String content) {
         try ( StringSerializer serString1 = new StringSerializer();
               StringSerializer serString2 = new StringSerializer();
@@ -131,9 +164,9 @@ public class FKLib {
         return res;
     }
 
-    private static RecordMetadata sendBody(Producer<String, String> producer, Integer partition, String topic, List<Header> headers, String body) {
+    private static <X> RecordMetadata sendBody(Producer<String, X> producer, Integer partition, String topic, List<Header> headers, X body) {
         try {
-            ProducerRecord<String, String> pRec = new ProducerRecord<>(topic, partition, null, null, body, headers);
+            ProducerRecord<String, X> pRec = new ProducerRecord<>(topic, partition, null, null, body, headers);
             Future<RecordMetadata> f = producer.send(pRec);
             RecordMetadata res = f.get();
             return res;
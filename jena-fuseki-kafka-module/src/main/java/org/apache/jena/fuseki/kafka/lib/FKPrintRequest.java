@@ -23,10 +23,9 @@ import org.apache.jena.atlas.io.IO;
 import org.apache.jena.fuseki.kafka.FKProcessorBaseAction;
 import org.apache.jena.kafka.RequestFK;
 import org.apache.jena.kafka.ResponseFK;
+import org.apache.jena.kafka.common.ParseFK;
 import org.apache.jena.rdfpatch.RDFPatch;
-import org.apache.jena.rdfpatch.RDFPatchOps;
 import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.update.UpdateFactory;
@@ -56,7 +55,7 @@ public class FKPrintRequest extends FKProcessorBaseAction {
     @Override
     protected void actionRDFPatch(String id, RequestFK request, InputStream data) {
         //printRaw(topic, data);
-        RDFPatch patch = RDFPatchOps.read(data);
+        RDFPatch patch = ParseFK.readPatch(request.getContentType(), data);
         String dataStr = patch.toString();
         print(id, request, dataStr);
     }
@@ -65,7 +64,7 @@ public class FKPrintRequest extends FKProcessorBaseAction {
     protected void actionData(String id, RequestFK request, Lang lang, InputStream data) {
         StringWriter sw = new StringWriter();
         StreamRDF stream = StreamRDFLib.writer(sw);
-        RDFParser.source(data).lang(lang).parse(stream);
+        ParseFK.parse(lang, data, stream);
         String dataStr = sw.toString();
         print(id, request, dataStr);
     }
@@ -0,0 +1,195 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+/**
+ * A Kafka consumer that reads {@link FKLocalTopic local topics}, for running a
+ * connector ({@link FKS#addConnectorToServer(org.apache.jena.kafka.KConnectorDesc,
+ * org.apache.jena.fuseki.main.FusekiServer, org.apache.jena.kafka.common.DataState,
+ * FKBatchProcessor, org.apache.kafka.clients.consumer.Consumer)}) without a Kafka
+ * broker, such as for end-to-end benchmarks.
+ * <p>
+ * Assignment, position, seek and pause are those of {@link MockConsumer}; polling,
+ * offsets and partition information come from the local topics. A poll waits for
+ * records to be sent to a topic up to its timeout, as a Kafka consumer does.
+ */
+public class FKLocalConsumer extends MockConsumer<String, RequestFK> {
+
+    private final Map<String, FKLocalTopic> topics = new HashMap<>();
+    private final int maxPollRecords;
+    private final AtomicBoolean wakeup = new AtomicBoolean(false);
+
+    /** A consumer of the topics, returning up to 500 records (the Kafka default) from each poll. */
+    public FKLocalConsumer(FKLocalTopic... topics) {
+        this(500, topics);
+    }
+
+    /** A consumer of the topics, returning up to {@code maxPollRecords} records from each poll. */
+    public FKLocalConsumer(int maxPollRecords, FKLocalTopic... topics) {
+        super(OffsetResetStrategy.EARLIEST);
+        this.maxPollRecords = maxPollRecords;
+        for ( FKLocalTopic topic : topics )
+            this.topics.put(topic.getName(), topic);
+    }
+
+    @Override
+    public synchronized void assign(Collection<TopicPartition> partitions) {
+        // Where a position starts, before any seek.
+        updateBeginningOffsets(beginningOffsets(partitions));
+        super.assign(partitions);
+    }
+
+    @Override
+    public ConsumerRecords<String, RequestFK> poll(Duration timeout) {
+        // Not synchronized: the wait must not block wakeup().
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        for (;;) {
+            if ( wakeup.getAndSet(false) )
+                throw new WakeupException();
+            Map<TopicPartition, List<ConsumerRecord<String, RequestFK>>> fetched = fetch();
+            if ( ! fetched.isEmpty() )
+                return new ConsumerRecords<>(fetched);
+            long remaining = deadline - System.currentTimeMillis();
+            if ( remaining <= 0 )
+                return ConsumerRecords.empty();
+            try {
+                FKLocalTopic.awaitRecords(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new WakeupException();
+            }
+        }
+    }
+
+    private synchronized Map<TopicPartition, List<ConsumerRecord<String, RequestFK>>> fetch() {
+        Map<TopicPartition, List<ConsumerRecord<String, RequestFK>>> fetched = new HashMap<>();
+        Set<TopicPartition> paused = paused();
+        int count = 0;
+        for ( TopicPartition tp : assignment() ) {
+            if ( count >= maxPollRecords )
+                break;
+            FKLocalTopic topic = topics.get(tp.topic());
+            if ( topic == null || paused.contains(tp) )
+                continue;
+            long position = position(tp);
+            List<ConsumerRecord<String, RequestFK>> records = topic.read(tp.partition(), position, maxPollRecords - count);
+            if ( records.isEmpty() )
+                continue;
+            fetched.put(tp, records);
+            seek(tp, records.get(records.size()-1).offset() + 1);
+            count += records.size();
+        }
+        return fetched;
+    }
+
+    @Override
+    public void wakeup() {
+        wakeup.set(true);
+        FKLocalTopic.signal();
+    }
+
+    @Override
+    public synchronized List<PartitionInfo> partitionsFor(String topicName) {
+        FKLocalTopic topic = topics.get(topicName);
+        if ( topic == null )
+            return List.of();
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for ( int i = 0 ; i < topic.getNumPartitions() ; i++ )
+            partitions.add(new PartitionInfo(topicName, i, null, null, null));
+        return partitions;
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topicName, Duration timeout) {
+        return partitionsFor(topicName);
+    }
+
+    @Override
+    public synchronized Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for ( TopicPartition tp : partitions ) {
+            FKLocalTopic topic = topics.get(tp.topic());
+            offsets.put(tp, topic == null ? 0L : topic.beginningOffset(tp.partition()));
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return beginningOffsets(partitions);
+    }
+
+    @Override
+    public synchronized Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for ( TopicPartition tp : partitions ) {
+            FKLocalTopic topic = topics.get(tp.topic());
+            offsets.put(tp, topic == null ? 0L : topic.endOffset(tp.partition()));
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return endOffsets(partitions);
+    }
+
+    @Override
+    public synchronized OptionalLong currentLag(TopicPartition tp) {
+        FKLocalTopic topic = topics.get(tp.topic());
+        if ( topic == null || ! assignment().contains(tp) )
+            return OptionalLong.empty();
+        return OptionalLong.of(topic.endOffset(tp.partition()) - position(tp));
+    }
+
+    @Override
+    public synchronized Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch) {
+        Map<TopicPartition, OffsetAndTimestamp> found = new HashMap<>();
+        timestampsToSearch.forEach((tp, timestamp) -> {
+            FKLocalTopic topic = topics.get(tp.topic());
+            long offset = ( topic == null ) ? -1 : topic.offsetForTime(tp.partition(), timestamp);
+            // As Kafka: null for no record at or after the time.
+            found.put(tp, offset < 0 ? null : new OffsetAndTimestamp(offset, timestamp));
+        });
+        return found;
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch, Duration timeout) {
+        return offsetsForTimes(timestampsToSearch);
+    }
+}
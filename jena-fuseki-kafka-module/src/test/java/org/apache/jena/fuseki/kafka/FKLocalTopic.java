@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+
+/**
+ * An in-memory topic, for running a connector without a Kafka broker.
+ * It is read with a {@link FKLocalConsumer}.
+ * <p>
+ * Each partition is a list of records; the offset of a record is its position in
+ * the partition. If the topic has a retention limit, only that many of the latest
+ * records of each partition are kept, so a long run does not keep every record
+ * in memory.
+ */
+public class FKLocalTopic {
+
+    // Signalled when records are added to any local topic.
+    private static final Object signal = new Object();
+
+    private final String name;
+    private final Partition[] partitions;
+    private final int retention;
+
+    private static class Partition {
+        final List<ConsumerRecord<String, RequestFK>> records = new ArrayList<>();
+        // Offset of records.get(0).
+        long base = 0;
+    }
+
+    /** A topic with one partition and no retention limit. */
+    public FKLocalTopic(String name) {
+        this(name, 1, -1);
+    }
+
+    /**
+     * A topic with {@code numPartitions} partitions, keeping at most
+     * {@code retention} records per partition; -1 for no limit.
+     */
+    public FKLocalTopic(String name, int numPartitions, int retention) {
+        if ( numPartitions <= 0 )
+            throw new IllegalArgumentException("Number of partitions must be positive: "+numPartitions);
+        this.name = name;
+        this.retention = retention;
+        this.partitions = new Partition[numPartitions];
+        for ( int i = 0 ; i < numPartitions ; i++ )
+            partitions[i] = new Partition();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumPartitions() {
+        return partitions.length;
+    }
+
+    /** Add a record to partition 0. Return its offset. */
+    public long send(RequestFK request) {
+        return send(0, null, request);
+    }
+
+    /** Add a record to a partition, timestamped now. Return its offset. */
+    public long send(int partition, String key, RequestFK request) {
+        long offset;
+        synchronized(this) {
+            Partition p = partitions[partition];
+            offset = p.base + p.records.size();
+            int valueSize = (int)request.getByteCount();
+            p.records.add(new ConsumerRecord<>(name, partition, offset, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                                               -1, valueSize, key, request, new RecordHeaders(), Optional.empty()));
+            if ( retention > 0 && p.records.size() >= 2 * retention ) {
+                // Drop in blocks to keep the cost per record constant.
+                int drop = p.records.size() - retention;
+                p.records.subList(0, drop).clear();
+                p.base += drop;
+            }
+        }
+        synchronized(signal) {
+            signal.notifyAll();
+        }
+        return offset;
+    }
+
+    /** The offset of the first record kept. */
+    public synchronized long beginningOffset(int partition) {
+        return partitions[partition].base;
+    }
+
+    /** The offset of the next record to be added. */
+    public synchronized long endOffset(int partition) {
+        Partition p = partitions[partition];
+        return p.base + p.records.size();
+    }
+
+    /**
+     * The offset of the first record with a timestamp at or after {@code timestamp},
+     * or -1 if there is none.
+     */
+    public synchronized long offsetForTime(int partition, long timestamp) {
+        Partition p = partitions[partition];
+        for ( int i = 0 ; i < p.records.size() ; i++ ) {
+            if ( p.records.get(i).timestamp() >= timestamp )
+                return p.base + i;
+        }
+        return -1;
+    }
+
+    /** Up to {@code max} records, starting at {@code offset} or the first record kept, whichever is later. */
+    public synchronized List<ConsumerRecord<String, RequestFK>> read(int partition, long offset, int max) {
+        Partition p = partitions[partition];
+        int start = (int)Math.max(0, offset - p.base);
+        int end = Math.min(p.records.size(), start + max);
+        if ( start >= end )
+            return List.of();
+        return new ArrayList<>(p.records.subList(start, end));
+    }
+
+    /** Wait until a record is added to any local topic, or the time runs out. */
+    /*package*/ static void awaitRecords(long millis) throws InterruptedException {
+        if ( millis <= 0 )
+            return;
+        synchronized(signal) {
+            signal.wait(millis);
+        }
+    }
+
+    /** Wake up threads waiting in {@link #awaitRecords}. */
+    /*package*/ static void signal() {
+        synchronized(signal) {
+            signal.notifyAll();
+        }
+    }
+}
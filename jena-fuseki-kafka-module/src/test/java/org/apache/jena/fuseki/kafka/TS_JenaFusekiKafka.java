@@ -25,6 +25,27 @@ import org.junit.platform.suite.api.Suite;
     TestConnectorDescriptor.class
     , TestFK.class
     , TestConfigFK.class
+    , TestFKDirect.class
+    , TestFKBatchPolicy.class
+    , TestFKParseAhead.class
+    , TestFKPartitions.class
+    , TestFKPrefetcher.class
+    , TestFKChunkedInput.class
+    , TestFKContentEncoding.class
+    , TestFKBinary.class
+    , TestFKDatasetOffsets.class
+    , TestFKMetrics.class
+    , TestFKControl.class
+    , TestFKLocalTopic.class
+    , TestFKArchive.class
+    , TestFKBulkLoad.class
+    , TestFKSnapshot.class
+    , TestFKSnapshotPublisher.class
+    , TestFKUpdates.class
+    , TestFKPatchCompactor.class
+    , TestFKParallelParser.class
+    , TestFKParserContext.class
+    , TestFKSharedConsumer.class
 })
 
 public class TS_JenaFusekiKafka {}
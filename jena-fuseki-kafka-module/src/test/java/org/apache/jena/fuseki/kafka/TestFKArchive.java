@@ -0,0 +1,165 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** The local archive of records ({@link FKArchive}). */
+public class TestFKArchive {
+    static { JenaSystem.init(); }
+
+    @Test public void archive_replay() throws IOException {
+        Path dir = Files.createTempDirectory("fk-archive");
+        try {
+            FKArchive archive = new FKArchive(dir, TOPIC);
+            archive.append(records(0,
+                                   request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                   request(WebContent.contentTypeNQuads, file("data-nq")),
+                                   request(WebContent.contentTypePatch, file("patch1.rdfp"))));
+            // Gap.
+            archive.append(records(5, request(WebContent.contentTypeNQuads, file("data-nq"))));
+            archive.close();
+
+            // Reopen, with a partly written block at the end.
+            Path segment;
+            try ( Stream<Path> files = Files.list(dir.resolve(TOPIC).resolve("p0")) ) {
+                segment = files.findFirst().orElseThrow();
+            }
+            Files.write(segment, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+            archive = new FKArchive(dir, TOPIC);
+            assertEquals(0, archive.firstOffset(0));
+            assertEquals(5, archive.lastOffset(0));
+
+            List<ConsumerRecord<String, RequestFK>> replayed = new ArrayList<>();
+            long next = archive.replay(0, 1, replayed::addAll);
+            // Stops at the gap.
+            assertEquals(3, next);
+            assertEquals(2, replayed.size());
+            assertEquals(1, replayed.get(0).offset());
+            assertEquals(WebContent.contentTypeNQuads, replayed.get(0).value().getContentType());
+            assertEquals(WebContent.contentTypePatch, replayed.get(1).value().getContentType());
+            // Not archived.
+            assertEquals(3, archive.replay(0, 3, replayed::addAll));
+            archive.close();
+        } finally {
+            FileOps.clearAll(dir.toString());
+            FileOps.delete(dir.toString());
+        }
+    }
+
+    @Test public void archive_catch_up() throws IOException {
+        Path dir = Files.createTempDirectory("fk-archive");
+        try {
+            KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").archiveDirectory(dir.toString()).build();
+            FKLocalTopic topic = new FKLocalTopic(TOPIC);
+            for ( int i = 0 ; i < 3 ; i++ )
+                topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+            topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+            // The first three records have been archived.
+            FKArchive archive = FKArchive.get(conn);
+            archive.append(topic.read(0, 0, 3));
+
+            DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+            FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+            DataState dataState = DataState.createEphemeral(TOPIC);
+            try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+                FKS.setupConnector(conn, consumer, dataState, batchProcessor);
+                assertEquals(2, dataState.getLastOffset());
+                assertEquals(3, consumer.position(new TopicPartition(TOPIC, 0)));
+                assertEquals(1, count(dsg));
+                batchProcessor.receiver(consumer, dataState, Duration.ofMillis(10));
+                assertEquals(3, dataState.getLastOffset());
+                assertEquals(2, count(dsg));
+            }
+        } finally {
+            FKArchive.close(TOPIC);
+            FileOps.clearAll(dir.toString());
+            FileOps.delete(dir.toString());
+        }
+    }
+
+    @Test public void archive_stop_connector() throws IOException {
+        Path dir = Files.createTempDirectory("fk-archive");
+        try {
+            KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").archiveDirectory(dir.toString()).build();
+            FKLocalTopic topic = new FKLocalTopic(TOPIC);
+            topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+            DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+            FusekiServer server = FusekiServer.create().port(0).add("/ds", dsg).build();
+            DataState dataState = DataState.createEphemeral(TOPIC);
+            FKLocalConsumer consumer = new FKLocalConsumer(topic);
+            FKS.addConnectorToServer(conn, server, dataState, directBatchProcessor(dsg), consumer);
+            await(()->dataState.getLastOffset() == 0);
+
+            // Returns when polling has stopped, without waiting for the poll to time out.
+            long start = System.currentTimeMillis();
+            FKS.stopConnector(TOPIC);
+            assertTrue(System.currentTimeMillis() - start < FKConst.pollingWaitDuration.toMillis());
+            topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+            Lib.sleep(100);
+            assertEquals(0, dataState.getLastOffset());
+            // Nothing more archived; closing does not race with the polling.
+            FKArchive.close(TOPIC);
+            assertEquals(0, new FKArchive(dir, TOPIC).lastOffset(0));
+        } finally {
+            FKRegistry.get().unregister(TOPIC);
+            FKS.resetPollThreads();
+            FKArchive.close(TOPIC);
+            FileOps.clearAll(dir.toString());
+            FileOps.delete(dir.toString());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ( ! condition.getAsBoolean() ) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timeout");
+            Lib.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.JenaTransactionException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Dividing received records into batches ({@link FKBatchPolicy}). */
+public class TestFKBatchPolicy {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_batch_retry() {
+        // A batch that fails is received again, from the first record not applied.
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        AtomicBoolean fail = new AtomicBoolean(true);
+        DatasetGraph failOnce = new DatasetGraphWrapper(dsg) {
+            @Override
+            public void commit() {
+                if ( fail.getAndSet(false) )
+                    throw new JenaTransactionException("Commit failed");
+                super.commit();
+            }
+        };
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(failOnce, new FKProcessorDirect(dsg));
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").build();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKControl control = new FKControl(conn, dataState, batchProcessor);
+        FKLocalTopic topic = new FKLocalTopic(TOPIC);
+        topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+            consumer.assign(List.of(new TopicPartition(TOPIC, 0)));
+            FKRecordSource source = FKRecordSource.create(duration->{
+                FKS.applyControl(control, consumer);
+                return consumer.poll(duration);
+            }, control::getGeneration);
+            batchProcessor.receiver(source, dataState, Duration.ofMillis(10));
+            assertEquals(-1, dataState.getLastOffset());
+            assertNotNull(control.getLastFailure());
+            assertEquals(0, count(dsg));
+
+            batchProcessor.receiver(source, dataState, Duration.ofMillis(10));
+            assertEquals(1, dataState.getLastOffset());
+            assertEquals(2, count(dsg));
+        }
+    }
+
+    @Test public void direct_batch_retry_limit() {
+        // A batch that keeps failing is skipped after the retry limit.
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        AtomicBoolean fail = new AtomicBoolean(true);
+        DatasetGraph failing = new DatasetGraphWrapper(dsg) {
+            @Override
+            public void commit() {
+                if ( fail.get() )
+                    throw new JenaTransactionException("Commit failed");
+                super.commit();
+            }
+        };
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(failing, new FKProcessorDirect(dsg));
+        batchProcessor.setRetryPolicy(2, Duration.ofMillis(1));
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").build();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKControl control = new FKControl(conn, dataState, batchProcessor);
+        FKLocalTopic topic = new FKLocalTopic(TOPIC);
+        topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+            consumer.assign(List.of(new TopicPartition(TOPIC, 0)));
+            FKRecordSource source = FKRecordSource.create(duration->{
+                FKS.applyControl(control, consumer);
+                return consumer.poll(duration);
+            }, control::getGeneration);
+            // The first attempt and the first retry.
+            for ( int i = 0 ; i < 2 ; i++ ) {
+                batchProcessor.receiver(source, dataState, Duration.ofMillis(10));
+                assertEquals(-1, dataState.getLastOffset());
+            }
+            // The second retry fails: the batch is skipped.
+            batchProcessor.receiver(source, dataState, Duration.ofMillis(10));
+            assertEquals(1, dataState.getLastOffset());
+            assertEquals(0, count(dsg));
+
+            fail.set(false);
+            topic.send(request(WebContent.contentTypePatch, file("patch1.rdfp")));
+            batchProcessor.receiver(source, dataState, Duration.ofMillis(10));
+            assertEquals(2, dataState.getLastOffset());
+            assertTrue(count(dsg) > 0);
+        }
+    }
+
+    @Test public void direct_batch_split() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        AtomicInteger batches = new AtomicInteger(0);
+        FKProcessor processor = new FKProcessorDirect(dsg) {
+            @Override public void startBatch(int batchSize, long offsetStart) { batches.incrementAndGet(); }
+        };
+        FKBatchPolicy policy = FKBatchPolicy.create(2, -1, -1, -1);
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(dsg, processor, policy);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                              request(WebContent.contentTypeNQuads, file("data-nq")),
+                                                              request(WebContent.contentTypePatch, file("patch1.rdfp")));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(2, offset);
+        assertEquals(2, batches.get());
+        assertEquals(6, count(dsg));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.DIR;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.junit.jupiter.api.Test;
+
+/** Applying binary RDF and binary RDF Patch messages. */
+public class TestFKBinary {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_binary() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        // RDF Thrift, RDF Protobuf, then a binary patch.
+        ByteArrayOutputStream thrift = new ByteArrayOutputStream();
+        StreamRDF writer = StreamRDFWriter.getWriterStream(thrift, RDFFormat.RDF_THRIFT);
+        RDFParser.source(DIR+"/data-nq").lang(Lang.NQUADS).parse(writer);
+        ByteArrayOutputStream proto = new ByteArrayOutputStream();
+        writer = StreamRDFWriter.getWriterStream(proto, RDFFormat.RDF_PROTO);
+        RDFParser.source(DIR+"/data.ttl").parse(writer);
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        RDFPatchOps.writeBinary(patch, RDFPatchOps.read(DIR+"/patch1.rdfp"));
+
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              new RequestFK(TOPIC, Map.of(HttpNames.hContentType, WebContent.contentTypeRDFThrift), thrift.toByteArray()),
+                                                              new RequestFK(TOPIC, Map.of(HttpNames.hContentType, WebContent.contentTypeRDFProto), proto.toByteArray()),
+                                                              new RequestFK(TOPIC, Map.of(HttpNames.hContentType, WebContent.contentTypePatchThrift), patch.toByteArray()));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(2, offset);
+        assertEquals(6, count(dsg));
+    }
+}
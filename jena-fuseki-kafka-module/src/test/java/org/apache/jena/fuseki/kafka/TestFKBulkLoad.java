@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Loading a topic with the TDB2 bulk loader ({@link FKBulkLoad}). */
+public class TestFKBulkLoad {
+    static { JenaSystem.init(); }
+
+    @Test public void bulk_load() {
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").bulkLoad("parallel").build();
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        assertTrue(FKBulkLoad.applies(conn, dataState, dsg));
+        FKLocalTopic topic = new FKLocalTopic(TOPIC);
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+        topic.send(request(WebContent.contentTypeSPARQLUpdate, "CLEAR ALL"));
+        topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+            List<TopicPartition> partitions = FKS.setupConnector(conn, consumer, dataState, batchProcessor);
+            // Stops at the update.
+            assertEquals(2, FKBulkLoad.load(conn, consumer, partitions, dataState, dsg, FKMetrics.unregistered()));
+            assertEquals(1, dataState.getLastOffset());
+            assertEquals(2, count(dsg));
+            // The rest of the topic as usual.
+            batchProcessor.receiver(consumer, dataState, Duration.ofMillis(10));
+            assertEquals(3, dataState.getLastOffset());
+            assertEquals(1, count(dsg));
+        }
+    }
+
+    @Test public void bulk_load_bad_message() {
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").bulkLoad("phased").build();
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKLocalTopic topic = new FKLocalTopic(TOPIC);
+        topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+        // Syntax error after two triples: none of it is loaded.
+        topic.send(request(WebContent.contentTypeTurtle, "<x:a> <x:p> 1 . <x:b> <x:p> 2 . JUNK"));
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+            List<TopicPartition> partitions = FKS.setupConnector(conn, consumer, dataState, batchProcessor);
+            assertEquals(3, FKBulkLoad.load(conn, consumer, partitions, dataState, dsg, FKMetrics.unregistered()));
+            assertEquals(2, dataState.getLastOffset());
+            assertEquals(2, count(dsg));
+        }
+    }
+
+    @Test public void bulk_load_resume() {
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").bulkLoad("phased").build();
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKLocalTopic topic = new FKLocalTopic(TOPIC, 3, -1);
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        TopicPartition tp0 = new TopicPartition(TOPIC, 0);
+        TopicPartition tp1 = new TopicPartition(TOPIC, 1);
+        TopicPartition tp2 = new TopicPartition(TOPIC, 2);
+        List<TopicPartition> partitions = List.of(tp0, tp1, tp2);
+        try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+            consumer.assign(partitions);
+            partitions.forEach(tp -> consumer.seek(tp, 0));
+            // Paused by someone else: still paused after the load.
+            consumer.pause(List.of(tp1));
+            assertEquals(1, FKBulkLoad.load(conn, consumer, partitions, dataState, dsg, FKMetrics.unregistered()));
+            assertEquals(1, count(dsg));
+            assertEquals(Set.of(tp1), consumer.paused());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.update;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.jena.kafka.FusekiKafka;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Messages sent as several records ({@link FKChunkedInput}). */
+public class TestFKChunkedInput {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_chunked() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        // Split mid-line.
+        String body = file("data-nq");
+        int split = body.length()/2;
+        RequestFK chunk0 = new RequestFK(TOPIC, Map.of(HttpNames.hContentType, WebContent.contentTypeNQuads,
+                                                       FusekiKafka.hChunkId, "ID", FusekiKafka.hChunkIndex, "0"),
+                                         body.substring(0, split).getBytes(StandardCharsets.UTF_8));
+        RequestFK chunk1 = new RequestFK(TOPIC, Map.of(FusekiKafka.hChunkId, "ID", FusekiKafka.hChunkIndex, "1",
+                                                       FusekiKafka.hChunkLast, "true"),
+                                         body.substring(split).getBytes(StandardCharsets.UTF_8));
+        ConsumerRecords<String, RequestFK> cRecords = records(0, chunk0, chunk1,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(2, offset);
+        assertEquals(2, count(dsg));
+    }
+
+    @Test public void direct_chunked_dispatch() {
+        // Records received elsewhere: the chunks of a message arrive in two calls.
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        TopicPartition topicPartition = new TopicPartition(TOPIC, 0);
+        String body = file("data-nq");
+        int split = body.length()/2;
+        RequestFK chunk0 = new RequestFK(TOPIC, Map.of(HttpNames.hContentType, WebContent.contentTypeNQuads,
+                                                       FusekiKafka.hChunkId, "ID", FusekiKafka.hChunkIndex, "0"),
+                                         body.substring(0, split).getBytes(StandardCharsets.UTF_8));
+        RequestFK chunk1 = new RequestFK(TOPIC, Map.of(FusekiKafka.hChunkId, "ID", FusekiKafka.hChunkIndex, "1",
+                                                       FusekiKafka.hChunkLast, "true"),
+                                         body.substring(split).getBytes(StandardCharsets.UTF_8));
+        batchProcessor.dispatch(TOPIC, dataState, records(0, update("INSERT DATA { <x:s> <x:p> 1 }"), chunk0).records(topicPartition));
+        // The message is held back.
+        assertEquals(0, dataState.getLastOffset());
+        assertEquals(1, count(dsg));
+        batchProcessor.dispatch(TOPIC, dataState, records(2, chunk1).records(topicPartition));
+        assertEquals(2, dataState.getLastOffset());
+        assertEquals(2, count(dsg));
+    }
+
+    @Test public void direct_chunked_orphan() {
+        // The first chunk is not received, for example, after a rewind.
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        RequestFK chunk1 = new RequestFK(TOPIC, Map.of(FusekiKafka.hChunkId, "ID", FusekiKafka.hChunkIndex, "1"),
+                                         "<x:s> <x:p> ".getBytes(StandardCharsets.UTF_8));
+        RequestFK chunk2 = new RequestFK(TOPIC, Map.of(FusekiKafka.hChunkId, "ID", FusekiKafka.hChunkIndex, "2",
+                                                       FusekiKafka.hChunkLast, "true"),
+                                         "<x:o> .".getBytes(StandardCharsets.UTF_8));
+        long offset = batchProcessor.processBatch(TOPIC, -1, records(0, chunk1, chunk2, update("INSERT DATA { <x:s> <x:p> 1 }")));
+        assertEquals(2, offset);
+        assertEquals(1, count(dsg));
+    }
+}
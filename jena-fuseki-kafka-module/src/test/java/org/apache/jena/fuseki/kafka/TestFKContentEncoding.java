@@ -0,0 +1,50 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.compressed;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.jena.kafka.ContentEncodingFK;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.junit.jupiter.api.Test;
+
+/** Applying compressed messages. */
+public class TestFKContentEncoding {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_content_encoding() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              compressed(WebContent.contentTypeTurtle, ContentEncodingFK.GZIP, file("data.ttl")),
+                                                              compressed(WebContent.contentTypeNQuads, ContentEncodingFK.LZ4, file("data-nq")));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(1, offset);
+        assertEquals(2, count(dsg));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.jena.fuseki.kafka.lib.HttpServletRequestMinimal;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Pausing and rewinding a connector ({@link FKControl}, {@link FKControlServlet}). */
+public class TestFKControl {
+    static { JenaSystem.init(); }
+
+    @Test public void control_pause_rewind() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").build();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKControl control = new FKControl(conn, dataState, batchProcessor);
+        TopicPartition partition0 = new TopicPartition(TOPIC, 0);
+        try ( MockConsumer<String, RequestFK> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) ) {
+            consumer.assign(List.of(partition0));
+            consumer.updateBeginningOffsets(Map.of(partition0, 0L));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, null, request(WebContent.contentTypeTurtle, file("data.ttl"))));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 1, null, request(WebContent.contentTypeNQuads, file("data-nq"))));
+            batchProcessor.receiver(consumer, dataState, Duration.ofMillis(10));
+            assertEquals(1, dataState.getLastOffset());
+
+            control.pause();
+            FKS.applyControl(control, consumer);
+            assertEquals(Set.of(partition0), consumer.paused());
+            assertEquals(FKControl.State.PAUSED, control.getState());
+            assertEquals("PAUSED", FKControlServlet.status(control).getString("state"));
+
+            control.rewindToOffset(-1, 1);
+            control.resume();
+            assertTrue(FKS.applyControl(control, consumer));
+            assertTrue(consumer.paused().isEmpty());
+            assertEquals(1, consumer.position(partition0));
+            assertEquals(0, dataState.getLastOffset());
+        }
+    }
+
+    @Test public void control_users() {
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").controlUsers("admin, ops").build();
+        assertTrue(FKControlServlet.isAllowed(user("ops"), conn));
+        assertTrue(! FKControlServlet.isAllowed(user("other"), conn));
+        // Not authenticated.
+        assertTrue(! FKControlServlet.isAllowed(user(null), conn));
+        KConnectorDesc connAny = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").controlUsers("*").build();
+        assertTrue(FKControlServlet.isAllowed(user("other"), connAny));
+        assertTrue(! FKControlServlet.isAllowed(user(null), connAny));
+        // Not available at the endpoint.
+        KConnectorDesc connNone = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").build();
+        assertTrue(! FKControlServlet.isAllowed(user("admin"), connNone));
+    }
+
+    private static HttpServletRequest user(String user) {
+        return new HttpServletRequestMinimal(FKControlServlet.controlPath, Map.of(), Map.of(), null, null) {
+            @Override public String getRemoteUser() { return user; }
+        };
+    }
+}
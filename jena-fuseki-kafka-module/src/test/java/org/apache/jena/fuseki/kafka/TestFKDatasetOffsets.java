@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Recording the offsets in the dataset ({@link FKDatasetOffsets}). */
+public class TestFKDatasetOffsets {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_offset_in_dataset() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        batchProcessor.setOffsetsInDataset(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(5,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                              request(WebContent.contentTypeNQuads, file("data-nq")));
+        long offset = batchProcessor.processBatch(TOPIC, 4, cRecords);
+        assertEquals(6, offset);
+        assertEquals(Map.of(0, 6L), FKDatasetOffsets.read(dsg, TOPIC));
+
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKDatasetOffsets.restore(dsg, dataState);
+        assertEquals(6, dataState.getLastOffset());
+    }
+
+    @Test public void direct_offset_in_dataset_rewind() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        batchProcessor.setOffsetsInDataset(dsg);
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").build();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKControl control = new FKControl(conn, dataState, batchProcessor);
+        TopicPartition partition0 = new TopicPartition(TOPIC, 0);
+        try ( MockConsumer<String, RequestFK> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) ) {
+            consumer.assign(List.of(partition0));
+            consumer.updateBeginningOffsets(Map.of(partition0, 0L));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, null, request(WebContent.contentTypeTurtle, file("data.ttl"))));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 1, null, request(WebContent.contentTypeNQuads, file("data-nq"))));
+            batchProcessor.receiver(consumer, dataState, Duration.ofMillis(10));
+            assertEquals(Map.of(0, 1L), FKDatasetOffsets.read(dsg, TOPIC));
+
+            // The rewind is recorded in the dataset, so it is kept after a restart.
+            control.rewindToOffset(0, 1);
+            FKS.applyControl(control, consumer);
+            assertEquals(Map.of(0, 0L), FKDatasetOffsets.read(dsg, TOPIC));
+            DataState restarted = DataState.createEphemeral(TOPIC);
+            FKDatasetOffsets.restore(dsg, restarted);
+            assertEquals(0, restarted.getLastOffset());
+        }
+    }
+}
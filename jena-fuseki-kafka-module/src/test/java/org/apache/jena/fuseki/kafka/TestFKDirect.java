@@ -0,0 +1,170 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.kafka.ContentEncodingFK;
+import org.apache.jena.kafka.FusekiKafka;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Apply batches directly to a dataset - no Kafka broker needed. */
+public class TestFKDirect {
+    static { JenaSystem.init(); }
+
+    static String DIR = "src/test/files";
+    static String TOPIC = "TEST";
+
+    @Test public void direct_data() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                              request(WebContent.contentTypeNQuads, file("data-nq")));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(1, offset);
+        assertEquals(2, count(dsg));
+    }
+
+    @Test public void direct_update_patch() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                              request(WebContent.contentTypeSPARQLUpdate, "CLEAR ALL"),
+                                                              request(WebContent.contentTypePatch, file("patch1.rdfp")));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(2, offset);
+        assertEquals(4, count(dsg));
+    }
+
+    @Test public void direct_bad_message() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(10,
+                                                              request(WebContent.contentTypeTurtle, "JUNK"),
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")));
+        long offset = batchProcessor.processBatch(TOPIC, 9, cRecords);
+        assertEquals(11, offset);
+        assertEquals(1, count(dsg));
+    }
+
+    @Test public void direct_message_atomic() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                              // Syntax error after two triples.
+                                                              request(WebContent.contentTypeTurtle, "<x:a> <x:p> 1 . <x:b> <x:p> 2 . JUNK"),
+                                                              // The second operation fails.
+                                                              update("INSERT DATA { <x:c> <x:p> 3 } ; LOAD <file:///no/such/file.ttl>"));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(2, offset);
+        assertEquals(1, count(dsg));
+    }
+
+    @Test public void direct_message_undo() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        // Only the changes that the failed update made are undone. The triple it
+        // inserts is already there and stays; the changes made through the graphs of
+        // the dataset (ADD, CLEAR) are undone.
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                              update("INSERT DATA { <http://example/s1> <http://example/p> <http://example/o> } ;"
+                                                                     +" ADD DEFAULT TO GRAPH <x:g> ; CLEAR DEFAULT ;"
+                                                                     +" LOAD <file:///no/such/file.ttl>"));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(1, offset);
+        assertEquals(1, count(dsg));
+        assertEquals(1, Txn.calculateRead(dsg, ()->dsg.getDefaultGraph().size()));
+    }
+
+    @Test public void direct_patch_abort() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            // Parsing ahead applies each patch on its own.
+            batchProcessor.setParseAhead(executor, 1);
+            ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                                  patch("TX .\nA <x:a> <x:p> 1 .\nTC ."),
+                                                                  patch("TX .\nA <x:b> <x:p> 2 .\nTA ."));
+            batchProcessor.processBatch(TOPIC, -1, cRecords);
+            assertEquals(1, count(dsg));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static FKBatchProcessor directBatchProcessor(DatasetGraph dsg) {
+        return new FKBatchProcessor(dsg, new FKProcessorDirect(dsg));
+    }
+
+    static String file(String fn) {
+        return IO.readWholeFileAsUTF8(DIR+"/"+fn);
+    }
+
+    static RequestFK request(String contentType, String body) {
+        return new RequestFK(TOPIC, Map.of(HttpNames.hContentType, contentType), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static RequestFK compressed(String contentType, String contentEncoding, String body) {
+        byte[] bytes = ContentEncodingFK.encode(contentEncoding, body.getBytes(StandardCharsets.UTF_8));
+        return new RequestFK(TOPIC, Map.of(HttpNames.hContentType, contentType, FusekiKafka.hContentEncoding, contentEncoding), bytes);
+    }
+
+    /** Consecutive records on partition 0, starting at offset {@code start}. */
+    static ConsumerRecords<String, RequestFK> records(long start, RequestFK... requests) {
+        TopicPartition topicPartition = new TopicPartition(TOPIC, 0);
+        List<ConsumerRecord<String, RequestFK>> list = new ArrayList<>();
+        long offset = start;
+        for ( RequestFK request : requests )
+            list.add(new ConsumerRecord<>(TOPIC, 0, offset++, null, request));
+        return new ConsumerRecords<>(Map.of(topicPartition, list));
+    }
+
+    static RequestFK update(String update) {
+        return request(WebContent.contentTypeSPARQLUpdate, update);
+    }
+
+    static RequestFK patch(String patch) {
+        return request(WebContent.contentTypePatch, patch);
+    }
+
+    static long count(DatasetGraph dsg) {
+        return Txn.calculateRead(dsg, ()->dsg.stream().count());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** The in-memory topic and consumer ({@link FKLocalTopic}, {@link FKLocalConsumer}). */
+public class TestFKLocalTopic {
+    static { JenaSystem.init(); }
+
+    @Test public void local_topic() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        TopicPartition partition0 = new TopicPartition(TOPIC, 0);
+        FKLocalTopic topic = new FKLocalTopic(TOPIC);
+        topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        try ( FKLocalConsumer consumer = new FKLocalConsumer(2, topic) ) {
+            assertEquals(1, consumer.partitionsFor(TOPIC, Duration.ofMillis(10)).size());
+            consumer.assign(List.of(partition0));
+            assertEquals(0, consumer.position(partition0));
+            assertEquals(3, consumer.currentLag(partition0).getAsLong());
+
+            // Two records per poll.
+            assertEquals(2, consumer.poll(Duration.ofMillis(10)).count());
+            assertEquals(1, consumer.currentLag(partition0).getAsLong());
+            consumer.seek(partition0, 0);
+
+            batchProcessor.receiver(consumer, dataState, Duration.ofMillis(10));
+            assertEquals(2, dataState.getLastOffset());
+            assertEquals(0, consumer.currentLag(partition0).getAsLong());
+            assertTrue(count(dsg) > 0);
+
+            // Nothing to read: waits for the timeout.
+            assertTrue(consumer.poll(Duration.ofMillis(10)).isEmpty());
+            assertEquals(Map.of(partition0, 3L), consumer.endOffsets(List.of(partition0)));
+        }
+    }
+
+    @Test public void local_topic_retention() {
+        FKLocalTopic topic = new FKLocalTopic(TOPIC, 1, 2);
+        for ( int i = 0 ; i < 4 ; i++ )
+            topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+        assertEquals(2, topic.beginningOffset(0));
+        assertEquals(4, topic.endOffset(0));
+        // Reading from before the retained records starts at the first one kept.
+        assertEquals(2, topic.read(0, 0, 10).get(0).offset());
+    }
+}
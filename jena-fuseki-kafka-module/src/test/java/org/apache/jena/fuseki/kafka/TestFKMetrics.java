@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.jena.fuseki.kafka.lib.HttpServletRequestMinimal;
+import org.apache.jena.fuseki.kafka.lib.HttpServletResponseMinimal;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.junit.jupiter.api.Test;
+
+/** Connector metrics ({@link FKMetrics}). */
+public class TestFKMetrics {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_metrics() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        FKMetrics metrics = FKMetrics.get(TOPIC);
+        batchProcessor.setMetrics(metrics);
+        long records = metrics.getRecords();
+        long batches = metrics.getBatches();
+        long errors = metrics.getErrors();
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              request(WebContent.contentTypeTurtle, "JUNK"),
+                                                              request(WebContent.contentTypeTurtle, file("data.ttl")));
+        batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(records+2, metrics.getRecords());
+        assertEquals(batches+1, metrics.getBatches());
+        assertEquals(errors+1, metrics.getErrors());
+        assertTrue(metrics.getErrorsByContentType().contains(WebContent.contentTypeTurtle));
+
+        StringBuilder sb = new StringBuilder();
+        FKMetrics.writePrometheus(sb);
+        String text = sb.toString();
+        assertTrue(text.contains("fuseki_kafka_records_total{topic=\""+TOPIC+"\"} "+metrics.getRecords()));
+        assertTrue(text.contains("fuseki_kafka_apply_seconds_count{topic=\""+TOPIC+"\"}"));
+    }
+
+    @Test public void metrics_servlet_users() throws IOException {
+        String topic1 = "TEST-METRICS-1";
+        String topic2 = "TEST-METRICS-2";
+        KConnectorDesc conn1 = KConnectorDesc.create().topic(topic1).fusekiDispatchName("/ds1").controlUsers("ops").build();
+        KConnectorDesc conn2 = KConnectorDesc.create().topic(topic2).fusekiDispatchName("/ds2").build();
+        FKMetrics.get(topic1);
+        FKMetrics.get(topic2);
+        FKRegistry.get().registerControl(new FKControl(conn1, DataState.createEphemeral(topic1), null));
+        FKRegistry.get().registerControl(new FKControl(conn2, DataState.createEphemeral(topic2), null));
+        try {
+            String text = metricsText("ops");
+            assertTrue(text.contains("topic=\""+topic1+"\""));
+            // Not available at the endpoint.
+            assertFalse(text.contains("topic=\""+topic2+"\""));
+            // Not allowed, or not authenticated.
+            assertFalse(metricsText("other").contains("topic=\""+topic1+"\""));
+            assertFalse(metricsText(null).contains("topic=\""+topic1+"\""));
+        } finally {
+            FKRegistry.get().unregister(topic1);
+            FKRegistry.get().unregister(topic2);
+            FKMetrics.remove(topic1);
+            FKMetrics.remove(topic2);
+        }
+    }
+
+    private static String metricsText(String user) throws IOException {
+        HttpServletRequest request = new HttpServletRequestMinimal(FKMetrics.metricsPath, Map.of(), Map.of(), null, null) {
+            @Override public String getRemoteUser() { return user; }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FKMetricsServlet().doGet(request, new HttpServletResponseMinimal(out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+
+/** Parsing large N-Triples and N-Quads messages on several threads ({@link FKParallelParser}). */
+public class TestFKParallelParser {
+    static { JenaSystem.init(); }
+
+    @Test public void parallel_parse() {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            sb.append("_:b").append(i%10).append(" <x:p> \"").append(i).append("\" <x:g").append(i%3).append("> .\n");
+            sb.append("<x:s> <x:q> _:b").append(i%10).append(" .\n");
+        }
+        ByteBuffer body = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(dsg, ()->{
+            // Many small chunks.
+            FKParallelParser.parse(body.duplicate(), Lang.NQUADS, StreamRDFLib.dataset(dsg), 100);
+        });
+        assertEquals(1010, count(dsg));
+        // The same label is the same blank node in every chunk.
+        assertEquals(10, Txn.calculateRead(dsg, ()->dsg.stream().map(Quad::getSubject).filter(Node::isBlank).distinct().count()));
+        // Another message has different blank nodes.
+        Txn.executeWrite(dsg, ()->FKParallelParser.parse(body.duplicate(), Lang.NQUADS, StreamRDFLib.dataset(dsg), 1000));
+        assertEquals(20, Txn.calculateRead(dsg, ()->dsg.stream().map(Quad::getSubject).filter(Node::isBlank).distinct().count()));
+        // Bad line.
+        ByteBuffer bad = ByteBuffer.wrap((sb+"<x:s> JUNK\n").getBytes(StandardCharsets.UTF_8));
+        assertThrows(RiotException.class, ()->FKParallelParser.parse(bad, Lang.NQUADS, StreamRDFLib.sinkNull(), 100));
+        // Applied as one message, the chunks before the bad line are undone.
+        DatasetGraph dsg2 = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(dsg2, ()->
+            assertThrows(RiotException.class, ()->FKUndo.atomic(dsg2, x->FKParallelParser.parse(bad.duplicate(), Lang.NQUADS, StreamRDFLib.dataset(x), 100)))
+        );
+        assertEquals(0, count(dsg2));
+    }
+}
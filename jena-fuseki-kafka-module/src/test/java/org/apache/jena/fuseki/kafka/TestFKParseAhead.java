@@ -0,0 +1,61 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.junit.jupiter.api.Test;
+
+/** Parsing records ahead on worker threads while earlier ones are applied. */
+public class TestFKParseAhead {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_parse_ahead() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            batchProcessor.setParseAhead(executor, 2);
+            ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                                  request(WebContent.contentTypeTurtle, file("data.ttl")),
+                                                                  request(WebContent.contentTypeSPARQLUpdate, "CLEAR ALL"),
+                                                                  request(WebContent.contentTypeTurtle, "JUNK"),
+                                                                  request(WebContent.contentTypePatch, file("patch1.rdfp")),
+                                                                  request(WebContent.contentTypeNQuads, file("data-nq")));
+            long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+            assertEquals(4, offset);
+            assertEquals(5, count(dsg));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+
+/** Sharing parser state between the messages of a connector ({@link FKParserContext}). */
+public class TestFKParserContext {
+    static { JenaSystem.init(); }
+
+    @Test public void parser_context() {
+        FKParserContext parserContext = new FKParserContext(100);
+        String data = "PREFIX : <http://example/> :s :p _:b . _:b :p <rel> .";
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(dsg, ()->{
+            parserContext.parse(Lang.TTL, new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), StreamRDFLib.dataset(dsg));
+            parserContext.parse(Lang.TTL, new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), StreamRDFLib.dataset(dsg));
+        });
+        // Blank nodes are per message.
+        assertEquals(4, count(dsg));
+        // :s, :p are cached; the relative IRI is not.
+        assertEquals(2, parserContext.getSize());
+        assertEquals(2, parserContext.getMisses());
+        assertEquals(4, parserContext.getHits());
+        assertTrue(parserContext.getEstimatedBytes() > 0);
+        // The same node object in both messages.
+        List<Node> subjects = Txn.calculateRead(dsg, ()->dsg.stream().map(Quad::getSubject).filter(Node::isURI).toList());
+        assertEquals(2, subjects.size());
+        assertSame(subjects.get(0), subjects.get(1));
+        // Prefixes are per message.
+        assertThrows(RiotException.class, ()->parserContext.parse(Lang.TTL, new ByteArrayInputStream(":s :p :o .".getBytes(StandardCharsets.UTF_8)), StreamRDFLib.sinkNull()));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.ResponseFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Reading all the partitions of a topic, each on its own lane. */
+public class TestFKPartitions {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_partition_lanes() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TopicPartition partition0 = new TopicPartition(TOPIC, 0);
+        TopicPartition partition1 = new TopicPartition(TOPIC, 1);
+        try ( MockConsumer<String, RequestFK> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) ) {
+            batchProcessor.setPartitionLanes(executor);
+            consumer.assign(List.of(partition0, partition1));
+            consumer.updateBeginningOffsets(Map.of(partition0, 0L, partition1, 5L));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, null, request(WebContent.contentTypeTurtle, file("data.ttl"))));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 1, 5, null, request(WebContent.contentTypeNQuads, file("data-nq"))));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 1, 6, null, request(WebContent.contentTypePatch, file("patch1.rdfp"))));
+
+            DataState dataState = DataState.createEphemeral(TOPIC);
+            boolean received = batchProcessor.receiver(consumer, dataState, Duration.ofMillis(10));
+            assertTrue(received);
+            assertEquals(0, dataState.getLastOffset());
+            assertEquals(6, dataState.getLastOffset(1));
+            assertEquals(Map.of(0, 0L, 1, 6L), dataState.getPartitionOffsets());
+            assertEquals(6, count(dsg));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void partition_lanes_serial() {
+        // The lanes do not call the processor at the same time.
+        AtomicInteger active = new AtomicInteger(0);
+        AtomicInteger maxActive = new AtomicInteger(0);
+        AtomicInteger processed = new AtomicInteger(0);
+        FKProcessor processor = new FKProcessor() {
+            @Override
+            public void startBatch(int batchSize, long offsetStart) {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            }
+            @Override
+            public ResponseFK process(RequestFK request) {
+                // Give another lane the chance to start.
+                Lib.sleep(5);
+                processed.incrementAndGet();
+                return null;
+            }
+            @Override
+            public void finishBatch(int processedCount, long finishOffset, long startOffset) {
+                active.decrementAndGet();
+            }
+        };
+        // Without a transaction, nothing else keeps the lanes apart.
+        FKBatchProcessor batchProcessor = FKBatchProcessor.createBatchProcessor(processor);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            batchProcessor.setPartitionLanes(executor);
+            List<ConsumerRecord<String, RequestFK>> records = new ArrayList<>();
+            for ( int partition = 0 ; partition < 4 ; partition++ ) {
+                for ( long offset = 0 ; offset < 3 ; offset++ )
+                    records.add(new ConsumerRecord<>(TOPIC, partition, offset, null, request(WebContent.contentTypeNQuads, "")));
+            }
+            DataState dataState = DataState.createEphemeral(TOPIC);
+            batchProcessor.dispatch(TOPIC, dataState, records);
+            assertEquals(1, maxActive.get());
+            assertEquals(12, processed.get());
+            assertEquals(Map.of(0, 2L, 1, 2L, 2, 2L, 3, 2L), dataState.getPartitionOffsets());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
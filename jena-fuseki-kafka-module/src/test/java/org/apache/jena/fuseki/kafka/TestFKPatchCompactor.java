@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.patch;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.junit.jupiter.api.Test;
+
+/** Combining RDF Patch messages ({@link FKPatchCompactor}). */
+public class TestFKPatchCompactor {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_patch_coalesce() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        FKMetrics metrics = batchProcessor.getMetrics();
+        long cancelled = metrics.getPatchChangesCancelled();
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              patch("A <x:a> <x:p> 1 .\nA <x:b> <x:p> 2 ."),
+                                                              patch("D <x:a> <x:p> 1 ."),
+                                                              patch("TX .\nA <x:c> <x:p> 3 .\nTA ."),
+                                                              patch("JUNK"),
+                                                              patch("A <x:a> <x:p> 1 .\nD <x:b> <x:p> 2 .\nA <x:d> <x:p> 4 <x:g> ."));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(4, offset);
+        assertEquals(2, count(dsg));
+        assertEquals(cancelled+3, metrics.getPatchChangesCancelled());
+    }
+
+    @Test public void direct_patch_coalesce_headers() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        List<Integer> runs = new ArrayList<>();
+        FKProcessorDirect processor = new FKProcessorDirect(dsg) {
+            @Override
+            public void processPatches(List<RequestFK> requests) {
+                runs.add(requests.size());
+                super.processPatches(requests);
+            }
+        };
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(dsg, processor);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              patchWithHeaders("A <x:a> <x:p> 1 .", "A"),
+                                                              patchWithHeaders("A <x:b> <x:p> 2 .", "A"),
+                                                              patchWithHeaders("D <x:a> <x:p> 1 .", "B"),
+                                                              patchWithHeaders("A <x:c> <x:p> 3 .", "A"),
+                                                              patchWithHeaders("A <x:d> <x:p> 4 .", "A"));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(4, offset);
+        assertEquals(3, count(dsg));
+        assertEquals(List.of(2, 2), runs);
+    }
+
+    private static RequestFK patchWithHeaders(String patch, String graph) {
+        Map<String, String> headers = Map.of(HttpNames.hContentType, WebContent.contentTypePatch, "X-Graph", graph);
+        return new RequestFK(TOPIC, headers, patch.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test public void patch_compactor() {
+        FKPatchCompactor compactor = new FKPatchCompactor();
+        compactor.add(RDFPatchOps.read(new ByteArrayInputStream("TX .\nA <x:s> <x:p> 1 .\nD <x:s> <x:p> 1 .\nPA \"ex\" <http://example/> .\nTC .".getBytes(StandardCharsets.UTF_8))));
+        compactor.add(RDFPatchOps.read(new ByteArrayInputStream("A <x:s> <x:p> 2 .\nD <x:s> <x:p> 3 .".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(4, compactor.getReceived());
+        assertEquals(3, compactor.getNet());
+        assertEquals(1, compactor.getCancelled());
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        // The patch is one transaction.
+        RDFPatchOps.applyChange(dsg, compactor.asPatch());
+        assertEquals(1, count(dsg));
+        assertEquals("http://example/", Txn.calculateRead(dsg, ()->dsg.prefixes().get("ex")));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Fetching records while earlier ones are applied ({@link FKPrefetcher}). */
+public class TestFKPrefetcher {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_prefetch() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TopicPartition partition0 = new TopicPartition(TOPIC, 0);
+        try ( MockConsumer<String, RequestFK> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) ) {
+            consumer.assign(List.of(partition0));
+            consumer.updateBeginningOffsets(Map.of(partition0, 0L));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, null, request(WebContent.contentTypeTurtle, file("data.ttl"))));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 1, null, request(WebContent.contentTypeNQuads, file("data-nq"))));
+
+            // Small queue - pauses after the first fetch.
+            FKPrefetcher prefetcher = new FKPrefetcher(TOPIC, consumer, 1);
+            prefetcher.start(executor);
+            try {
+                DataState dataState = DataState.createEphemeral(TOPIC);
+                boolean received = batchProcessor.receiver(prefetcher, dataState, Duration.ofSeconds(5));
+                assertTrue(received);
+                assertEquals(1, dataState.getLastOffset());
+                assertEquals(0, prefetcher.getQueuedBytes());
+                assertEquals(2, count(dsg));
+            } finally {
+                prefetcher.stop();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void control_rewind_received() {
+        // Records received before a rewind are not applied.
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").build();
+        DataState dataState = DataState.createEphemeral(TOPIC);
+        FKControl control = new FKControl(conn, dataState, batchProcessor);
+        TopicPartition partition0 = new TopicPartition(TOPIC, 0);
+        try ( MockConsumer<String, RequestFK> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) ) {
+            consumer.assign(List.of(partition0));
+            consumer.updateBeginningOffsets(Map.of(partition0, 0L));
+            control.rewindToOffset(-1, 5);
+            AtomicBoolean first = new AtomicBoolean(true);
+            FKRecordSource source = duration->{
+                if ( ! first.getAndSet(false) )
+                    return ConsumerRecords.empty();
+                // Fetched, then the rewind is carried out.
+                ConsumerRecords<String, RequestFK> cRecords = records(0, request(WebContent.contentTypeTurtle, file("data.ttl")));
+                control.applyRewinds(consumer);
+                return cRecords;
+            };
+            batchProcessor.receiver(source, dataState, Duration.ofMillis(10));
+            assertEquals(1, control.getGeneration());
+            assertEquals(4, dataState.getLastOffset());
+            assertEquals(0, count(dsg));
+        }
+    }
+}
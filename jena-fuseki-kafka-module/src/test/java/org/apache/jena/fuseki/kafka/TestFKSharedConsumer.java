@@ -0,0 +1,130 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.apache.jena.assembler.Assembler;
+import org.apache.jena.assembler.Mode;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.KafkaConnectorAssembler;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Connectors sharing one consumer, polling local topics. */
+public class TestFKSharedConsumer {
+    static { JenaSystem.init(); }
+
+    private static String TOPIC1 = "TEST1";
+    private static String TOPIC2 = "TEST2";
+
+    @AfterEach public void after() {
+        FKRegistry.get().unregister(TOPIC1);
+        FKRegistry.get().unregister(TOPIC2);
+        FKS.resetPollThreads();
+    }
+
+    @Test public void shared_consumer_local() {
+        DatasetGraph dsg1 = DatasetGraphFactory.createTxnMem();
+        DatasetGraph dsg2 = DatasetGraphFactory.createTxnMem();
+        FKLocalTopic topic1 = new FKLocalTopic(TOPIC1);
+        FKLocalTopic topic2 = new FKLocalTopic(TOPIC2);
+        topic1.send(request(TOPIC1, WebContent.contentTypeTurtle, file("data.ttl")));
+        topic2.send(request(TOPIC2, WebContent.contentTypeNQuads, file("data-nq")));
+        topic2.send(request(TOPIC2, WebContent.contentTypeSPARQLUpdate, "INSERT DATA { <x:s> <x:p> 1 }"));
+
+        KConnectorDesc conn1 = KConnectorDesc.create().topic(TOPIC1).fusekiDispatchName("/ds1").sharedConsumer(true).build();
+        KConnectorDesc conn2 = KConnectorDesc.create().topic(TOPIC2).fusekiDispatchName("/ds2").sharedConsumer(true).build();
+        DataState dataState1 = DataState.createEphemeral(TOPIC1);
+        DataState dataState2 = DataState.createEphemeral(TOPIC2);
+        FusekiServer server = FusekiServer.create().port(0).add("/ds1", dsg1).add("/ds2", dsg2).build();
+
+        // Both connectors poll the one local consumer.
+        FKLocalConsumer consumer = new FKLocalConsumer(topic1, topic2);
+        FKS.addConnectorToServer(conn1, server, dataState1, directBatchProcessor(dsg1), consumer);
+        FKS.addConnectorToServer(conn2, server, dataState2, directBatchProcessor(dsg2), consumer);
+        await(()->dataState1.getLastOffset() == 0 && dataState2.getLastOffset() == 1);
+        assertEquals(1, count(dsg1));
+        assertEquals(2, count(dsg2));
+
+        // More records, received by the connector for that topic only.
+        topic1.send(request(TOPIC1, WebContent.contentTypeNQuads, file("data-nq")));
+        await(()->dataState1.getLastOffset() == 1);
+        assertEquals(2, count(dsg1));
+        assertEquals(1, dataState2.getLastOffset());
+    }
+
+    @Test public void shared_consumer_linger() {
+        String config = """
+            PREFIX fk: <http://jena.apache.org/fuseki/kafka#>
+            <x:connector> a fk:Connector ;
+                fk:bootstrapServers "localhost:9092" ;
+                fk:topic            "%s" ;
+                fk:fusekiServiceName "/ds" ;
+                fk:stateFile        "State.state" ;
+                fk:sharedConsumer   true ;
+            """.formatted(TOPIC1);
+        assertNotNull(connector(config+" ."));
+        // Batches of a shared consumer are each poll's records: no linger.
+        // The assembler reports the error and returns no connector.
+        assertNull(connector(config+" fk:batchLinger 100 ."));
+    }
+
+    private static KConnectorDesc connector(String config) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFParser.fromString(config, Lang.TURTLE).parse(model);
+        Resource connector = model.createResource("x:connector");
+        return (KConnectorDesc)new KafkaConnectorAssembler().open(Assembler.general, connector, Mode.DEFAULT);
+    }
+
+    private static RequestFK request(String topic, String contentType, String body) {
+        return new RequestFK(topic, Map.of(HttpNames.hContentType, contentType), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ( ! condition.getAsBoolean() ) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timeout");
+            Lib.sleep(10);
+        }
+    }
+}
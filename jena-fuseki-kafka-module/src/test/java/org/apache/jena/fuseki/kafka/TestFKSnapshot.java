@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.file;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Starting a replica from a snapshot ({@link FKSnapshot}). */
+public class TestFKSnapshot {
+    static { JenaSystem.init(); }
+
+    @Test public void snapshot_bootstrap() throws IOException {
+        Path dir = Files.createTempDirectory("fk-snapshot");
+        try {
+            KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").snapshotDirectory(dir.toString()).build();
+            FKLocalTopic topic = new FKLocalTopic(TOPIC);
+            topic.send(request(WebContent.contentTypeNQuads, file("data-nq")));
+            topic.send(request(WebContent.contentTypeTurtle, file("data.ttl")));
+            topic.send(request(WebContent.contentTypeSPARQLUpdate, "INSERT DATA { <x:s> <x:p> 1 }"));
+
+            // Snapshot of the first two records.
+            DatasetGraph dsg1 = DatasetGraphFactory.createTxnMem();
+            DataState dataState1 = DataState.createEphemeral(TOPIC);
+            FKBatchProcessor batchProcessor1 = directBatchProcessor(dsg1);
+            // No offsets in the dataset.
+            assertThrows(FusekiKafkaException.class, ()->FKSnapshot.write(dsg1, TOPIC, dir));
+            batchProcessor1.setOffsetsInDataset(dsg1);
+            try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+                FKS.setupConnector(conn, consumer, dataState1, batchProcessor1);
+                List<ConsumerRecord<String, RequestFK>> records = consumer.poll(Duration.ofMillis(10)).records(new TopicPartition(TOPIC, 0));
+                batchProcessor1.dispatch(TOPIC, dataState1, records.subList(0, 2));
+            }
+            assertEquals(1, dataState1.getLastOffset());
+            FKSnapshot written = FKSnapshot.write(dsg1, TOPIC, dir);
+            assertEquals(Map.of(0, 1L), written.getOffsets());
+
+            // New replica.
+            DatasetGraph dsg2 = DatasetGraphFactory.createTxnMem();
+            DataState dataState2 = DataState.createEphemeral(TOPIC);
+            FKSnapshot loaded = FKSnapshot.bootstrap(conn, dataState2, dsg2);
+            assertNotNull(loaded);
+            assertEquals(1, dataState2.getLastOffset());
+            // The data and the offsets.
+            assertEquals(3, count(dsg2));
+            assertEquals(Map.of(0, 1L), FKDatasetOffsets.read(dsg2, TOPIC));
+            // Not again.
+            assertNull(FKSnapshot.bootstrap(conn, dataState2, dsg2));
+
+            // Continues after the snapshot.
+            FKBatchProcessor batchProcessor = directBatchProcessor(dsg2);
+            batchProcessor.setOffsetsInDataset(dsg2);
+            try ( FKLocalConsumer consumer = new FKLocalConsumer(topic) ) {
+                FKS.setupConnector(conn, consumer, dataState2, batchProcessor);
+                batchProcessor.receiver(consumer, dataState2, Duration.ofMillis(10));
+            }
+            assertEquals(2, dataState2.getLastOffset());
+            assertEquals(4, count(dsg2));
+        } finally {
+            FileOps.clearAll(dir.toString());
+            FileOps.delete(dir.toString());
+        }
+    }
+
+    @Test public void snapshot_bootstrap_offsets() throws IOException {
+        snapshotBootstrapOffsets(DatasetGraphFactory.createTxnMem());
+    }
+
+    @Test public void snapshot_bootstrap_offsets_tdb2() throws IOException {
+        snapshotBootstrapOffsets(DatabaseMgr.createDatasetGraph());
+    }
+
+    private static void snapshotBootstrapOffsets(DatasetGraph dsg) throws IOException {
+        Path dir = Files.createTempDirectory("fk-snapshot");
+        try {
+            KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds").snapshotDirectory(dir.toString()).build();
+            // A snapshot whose data has an out-of-date offset for the topic.
+            Files.writeString(dir.resolve("snapshot.nq"), """
+                <x:s> <x:p> <x:o> .
+                <urn:x-fuseki-kafka:topic:%s> <urn:x-fuseki-kafka:partition:0> "3"^^<http://www.w3.org/2001/XMLSchema#integer> <urn:x-fuseki-kafka:offsets> .
+                """.formatted(TOPIC));
+            Files.writeString(dir.resolve("snapshot.json"), """
+                { "topic": "%s", "data": "snapshot.nq", "created": "2024-01-01T00:00:00Z", "offsets": { "0": 7 } }
+                """.formatted(TOPIC));
+
+            DataState dataState = DataState.createEphemeral(TOPIC);
+            assertNotNull(FKSnapshot.bootstrap(conn, dataState, dsg));
+            assertEquals(7, dataState.getLastOffset());
+            // The data and the snapshot's offsets, recorded with the data.
+            assertEquals(2, count(dsg));
+            assertEquals(Map.of(0, 7L), FKDatasetOffsets.read(dsg, TOPIC));
+
+            // Stopped before the state was written: the state comes from the dataset.
+            DataState dataState2 = DataState.createEphemeral(TOPIC);
+            assertNull(FKSnapshot.bootstrap(conn, dataState2, dsg));
+            assertEquals(7, dataState2.getLastOffset());
+            assertEquals(2, count(dsg));
+        } finally {
+            FileOps.clearAll(dir.toString());
+            FileOps.delete(dir.toString());
+        }
+    }
+}
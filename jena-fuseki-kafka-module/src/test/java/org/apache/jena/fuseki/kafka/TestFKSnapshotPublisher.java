@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+/** Writing snapshots in the background ({@link FKSnapshotPublisher}). */
+public class TestFKSnapshotPublisher {
+    static { JenaSystem.init(); }
+
+    @Test public void snapshot_publish() throws IOException {
+        Path dir = Files.createTempDirectory("fk-snapshot");
+        try {
+            KConnectorDesc conn = KConnectorDesc.create().topic(TOPIC).fusekiDispatchName("/ds")
+                    .snapshotDirectory(dir.toString()).snapshotIntervalMillis(60_000).snapshotRetain(2).build();
+            DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+            DataState dataState = DataState.createEphemeral(TOPIC);
+            FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+            batchProcessor.setOffsetsInDataset(dsg);
+            FKSnapshotPublisher publisher = new FKSnapshotPublisher(conn, dsg);
+            // Nothing applied yet.
+            assertNull(publisher.publish());
+            for ( int i = 0 ; i < 3 ; i++ ) {
+                batchProcessor.dispatch(TOPIC, dataState, records(i, request(WebContent.contentTypeSPARQLUpdate, "INSERT DATA { <x:s> <x:p> "+i+" }"))
+                                                            .records(new TopicPartition(TOPIC, 0)));
+                assertNotNull(publisher.publish());
+                // No change.
+                assertNull(publisher.publish());
+            }
+            List<FKSnapshot> snapshots = FKSnapshot.list(dir, TOPIC);
+            assertEquals(2, snapshots.size());
+            assertEquals(Map.of(0, 2L), snapshots.get(0).getOffsets());
+            assertEquals(Map.of(0, 1L), snapshots.get(1).getOffsets());
+            try ( Stream<Path> files = Files.list(dir) ) {
+                assertEquals(4, files.count());
+            }
+
+            // A new publisher continues from the latest snapshot.
+            assertNull(new FKSnapshotPublisher(conn, dsg).publish());
+            DatasetGraph dsg2 = DatasetGraphFactory.createTxnMem();
+            snapshots.get(0).load(dsg2);
+            // The data and the offsets.
+            assertEquals(4, count(dsg2));
+        } finally {
+            FileOps.clearAll(dir.toString());
+            FileOps.delete(dir.toString());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.fuseki.kafka;
+
+import static org.apache.jena.fuseki.kafka.TestFKDirect.TOPIC;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.count;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.directBatchProcessor;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.records;
+import static org.apache.jena.fuseki.kafka.TestFKDirect.update;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.junit.jupiter.api.Test;
+
+/** Combining SPARQL Update messages ({@link FKUpdates}). */
+public class TestFKUpdates {
+    static { JenaSystem.init(); }
+
+    @Test public void direct_update_coalesce() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        FKBatchProcessor batchProcessor = directBatchProcessor(dsg);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              update("INSERT DATA { <x:a> <x:p> 1 . <x:b> <x:p> 2 }"),
+                                                              update("DELETE DATA { <x:a> <x:p> 1 }"),
+                                                              update("JUNK"),
+                                                              update("PREFIX : <http://example/> INSERT DATA { :c :p 3 }"),
+                                                              // Prefixes do not carry over from another message.
+                                                              update("INSERT DATA { :d :p 4 }"),
+                                                              update("INSERT { ?s <x:q> 0 } WHERE { ?s ?p ?o }"),
+                                                              update("DELETE DATA { <http://example/c> <http://example/p> 3 }"));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(6, offset);
+        assertEquals(3, count(dsg));
+    }
+
+    @Test public void direct_update_coalesce_headers() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        List<Integer> runs = new ArrayList<>();
+        FKProcessorDirect processor = new FKProcessorDirect(dsg) {
+            @Override
+            public void processUpdates(List<RequestFK> requests) {
+                runs.add(requests.size());
+                super.processUpdates(requests);
+            }
+        };
+        FKBatchProcessor batchProcessor = new FKBatchProcessor(dsg, processor);
+        ConsumerRecords<String, RequestFK> cRecords = records(0,
+                                                              updateWithHeaders("INSERT DATA { <x:a> <x:p> 1 }", "A", "30"),
+                                                              // Content-Length does not count.
+                                                              updateWithHeaders("INSERT DATA { <x:b> <x:p> 2 }", "A", "31"),
+                                                              updateWithHeaders("INSERT DATA { <x:c> <x:p> 3 }", "B", "30"),
+                                                              updateWithHeaders("INSERT DATA { <x:d> <x:p> 4 }", "B", "30"));
+        long offset = batchProcessor.processBatch(TOPIC, -1, cRecords);
+        assertEquals(3, offset);
+        assertEquals(4, count(dsg));
+        assertEquals(List.of(2, 2), runs);
+    }
+
+    private static RequestFK updateWithHeaders(String update, String graph, String contentLength) {
+        Map<String, String> headers = Map.of(HttpNames.hContentType, WebContent.contentTypeSPARQLUpdate,
+                                             HttpNames.hContentLength, contentLength,
+                                             "X-Graph", graph);
+        return new RequestFK(TOPIC, headers, update.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test public void update_merge() {
+        UpdateRequest merged = FKUpdates.merge(List.of(UpdateFactory.create("INSERT DATA { <x:s> <x:p> 1 }"),
+                                                       UpdateFactory.create("INSERT DATA { <x:s> <x:p> 2 } ; DELETE DATA { <x:s> <x:p> 1 }"),
+                                                       UpdateFactory.create("DELETE DATA { <x:s> <x:p> 3 } ; CLEAR ALL ; INSERT DATA { <x:s> <x:p> 4 }")));
+        assertEquals(4, merged.getOperations().size());
+        assertEquals(2, ((UpdateDataInsert)merged.getOperations().get(0)).getQuads().size());
+        assertEquals(2, ((UpdateDataDelete)merged.getOperations().get(1)).getQuads().size());
+        assertTrue(FKUpdates.isDataOnly(UpdateFactory.create("INSERT DATA { <x:s> <x:p> 1 } ; DELETE DATA { <x:s> <x:p> 1 }")));
+        assertTrue(! FKUpdates.isDataOnly(merged));
+    }
+}
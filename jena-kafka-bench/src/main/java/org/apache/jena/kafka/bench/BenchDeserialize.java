@@ -0,0 +1,68 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.kafka.DeserializerActionFK;
+import org.apache.jena.kafka.JK;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Turning a Kafka record into a {@link RequestFK}: {@link DeserializerActionFK}
+ * and {@link JK#headerToMap}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchDeserialize {
+
+    @Param
+    public Payload payload;
+
+    private Headers headers;
+    private byte[] body;
+    private final DeserializerActionFK deserializer = new DeserializerActionFK();
+
+    @Setup
+    public void setup() {
+        headers = new RecordHeaders(JK.mapToHeaders(Map.of(HttpNames.hContentType, payload.contentType(),
+                                                           HttpNames.hContentLength, Integer.toString(payload.bytes().length),
+                                                           "Kafka-Request-Id", "bench-1")));
+        body = payload.bytes();
+    }
+
+    /** Deserialize, and look at the headers as the connector does. */
+    @Benchmark
+    public String deserialize() {
+        RequestFK request = deserializer.deserialize("bench", headers, body);
+        return request.getContentType();
+    }
+
+    @Benchmark
+    public Map<String, String> headerToMap() {
+        return JK.headerToMap(headers);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.fuseki.kafka.FKProcessor;
+import org.apache.jena.fuseki.kafka.FKProcessorDirect;
+import org.apache.jena.fuseki.kafka.FKProcessorFusekiDispatch;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.fuseki.server.DataService;
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.ResponseFK;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Processing one message: dispatch through Fuseki ({@link FKProcessorFusekiDispatch})
+ * compared to applying it directly ({@link FKProcessorDirect}, which goes through
+ * {@code FKProcessorBaseAction.processAction}) to an in-memory or a TDB2 dataset.
+ * <p>
+ * Each direct application is its own write transaction, as each dispatched
+ * message is. The data is the same each time so, after the first invocation, the
+ * dataset does not grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchProcess {
+
+    @Param({"dispatch-mem", "direct-mem", "direct-tdb2"})
+    public String mode;
+
+    @Param
+    public Payload payload;
+
+    private static final String TOPIC = "bench";
+    private static final String DATASET = "/ds";
+
+    private DatasetGraph dsg;
+    private Path tdbDir = null;
+    private FusekiServer server = null;
+    private FKProcessor processor;
+    private boolean direct;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        switch(mode) {
+            case "dispatch-mem", "direct-mem" -> dsg = DatasetGraphFactory.createTxnMem();
+            case "direct-tdb2" -> {
+                tdbDir = Files.createTempDirectory("bench-tdb2");
+                dsg = DatabaseMgr.connectDatasetGraph(tdbDir.toString());
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: "+mode);
+        }
+        direct = mode.startsWith("direct");
+        if ( direct ) {
+            processor = new FKProcessorDirect(dsg);
+            return;
+        }
+        // The endpoints used by a connector dispatching to Fuseki.
+        DataService dataService = DataService.newBuilder(dsg)
+                .addEndpoint(Operation.Query)
+                .addEndpoint(Operation.Update)
+                .addEndpoint(Operation.GSP_RW)
+                .addEndpoint(Operation.Patch)
+                .build();
+        server = FusekiServer.create().port(0).add(DATASET, dataService).build().start();
+        processor = new FKProcessorFusekiDispatch(DATASET, server.getServletContext());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if ( server != null )
+            server.stop();
+        if ( tdbDir != null ) {
+            TDBInternal.expel(dsg);
+            FileOps.clearAll(tdbDir.toString());
+            FileOps.delete(tdbDir.toString());
+        }
+    }
+
+    @Benchmark
+    public ResponseFK process() {
+        RequestFK request = new RequestFK(TOPIC, Map.of(HttpNames.hContentType, payload.contentType()), payload.bytes());
+        if ( direct )
+            return Txn.calculateWrite(dsg, ()->processor.process(request));
+        return processor.process(request);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.kafka.common.PersistentState;
+import org.apache.jena.kafka.common.StateJournal;
+import org.apache.jena.kafka.refs.RefBytes;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Recording the offset after each batch: {@link DataState#setLastOffset} with each
+ * kind of state storage, and {@link PersistentState#setBytes} on its own.
+ * <ul>
+ * <li>"file" - a state file, rewritten each time</li>
+ * <li>"checkpoint" - a state file with a checkpoint policy of every 100 offsets</li>
+ * <li>"journal" - an entry in a {@link StateJournal}</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchState {
+
+    @Param({"file", "checkpoint", "journal"})
+    public String storage;
+
+    private static final String TOPIC = "bench";
+
+    private Path dir;
+    private PersistentState persistentState;
+    private DataState dataState;
+    private long offset = 0;
+    private byte[] stateBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bench-state");
+        Path stateFile = dir.resolve("state.json");
+        persistentState = new PersistentState(stateFile);
+        RefBytes ref = switch(storage) {
+            case "file", "checkpoint" -> persistentState;
+            case "journal" -> StateJournal.open(dir.resolve("state.journal").toString()).entry(stateFile.toString(), null);
+            default -> throw new IllegalArgumentException("Unknown storage: "+storage);
+        };
+        dataState = DataState.restoreOrCreate(ref, "/ds", "", TOPIC);
+        if ( storage.equals("checkpoint") )
+            dataState.setCheckpointPolicy(-1, 100);
+        // A typical state file.
+        stateBytes = "{ \"dataset\": \"/ds\", \"endpoint\": \"\", \"topic\": \"bench\", \"offset\": 123456 }\n".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        StateJournal.closeAll();
+        try ( var files = Files.list(dir) ) {
+            for ( Path path : files.toList() )
+                Files.deleteIfExists(path);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long setLastOffset() {
+        dataState.setLastOffset(++offset);
+        return offset;
+    }
+
+    @Benchmark
+    public byte[] persistentStateSetBytes() {
+        persistentState.setBytes(stateBytes);
+        return stateBytes;
+    }
+}
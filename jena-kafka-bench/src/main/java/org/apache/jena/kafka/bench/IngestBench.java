@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.fuseki.kafka.FKBatchProcessor;
+import org.apache.jena.fuseki.kafka.FKLocalConsumer;
+import org.apache.jena.fuseki.kafka.FKLocalTopic;
+import org.apache.jena.fuseki.kafka.FKMetrics;
+import org.apache.jena.fuseki.kafka.FKS;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.kafka.KConnectorDesc;
+import org.apache.jena.kafka.RequestFK;
+import org.apache.jena.kafka.common.DataState;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * End-to-end ingest benchmark: a connector on a Fuseki server, reading from an
+ * in-JVM topic ({@link FKLocalTopic}, {@link FKLocalConsumer}) so no Kafka broker
+ * is needed.
+ * <p>
+ * A producer thread sends N-Triples messages, each with distinct triples, staying
+ * at most {@code window} records ahead of the connector. The benchmark reports
+ * records/second and MB/second, and the latency percentiles from sending a record
+ * to it being committed (as seen in the connector state, sampled every 100&micro;s).
+ * The first {@code warmup} records are not measured.
+ * <p>
+ * Arguments are {@code name=value}:
+ * <pre>
+ *   records=1000000   Records measured
+ *   warmup=100000     Records sent before measuring
+ *   triples=10        Triples per record
+ *   mode=direct       direct (apply to the dataset) or dispatch (through Fuseki)
+ *   db=tdb2           tdb2 or mem
+ *   location=         TDB2 database directory (default: a temporary directory)
+ *   batch=-1          Connector batch.maxRecords
+ *   parseThreads=0    Connector parse threads (direct mode)
+ *   window=100000     Maximum records sent and not yet committed
+ * </pre>
+ * Run with
+ * <pre>
+ *   java -cp jena-kafka-bench/target/benchmarks.jar org.apache.jena.kafka.bench.IngestBench records=2000000
+ * </pre>
+ */
+public class IngestBench {
+
+    private static final String TOPIC = "ingest";
+    private static final String DATASET = "/ds";
+
+    public static void main(String... args) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        for ( String arg : args ) {
+            String[] x = arg.split("=", 2);
+            if ( x.length != 2 ) {
+                System.err.println("Argument must be name=value: "+arg);
+                System.exit(1);
+            }
+            params.put(x[0], x[1]);
+        }
+        int records = Integer.parseInt(params.getOrDefault("records", "1000000"));
+        int warmup = Integer.parseInt(params.getOrDefault("warmup", "100000"));
+        int triples = Integer.parseInt(params.getOrDefault("triples", "10"));
+        String mode = params.getOrDefault("mode", "direct");
+        String db = params.getOrDefault("db", "tdb2");
+        String location = params.get("location");
+        int batch = Integer.parseInt(params.getOrDefault("batch", "-1"));
+        int parseThreads = Integer.parseInt(params.getOrDefault("parseThreads", "0"));
+        int window = Integer.parseInt(params.getOrDefault("window", "100000"));
+
+        boolean direct = switch(mode) {
+            case "direct" -> true;
+            case "dispatch" -> false;
+            default -> throw new IllegalArgumentException("Unknown mode: "+mode);
+        };
+        Path tdbDir = null;
+        DatasetGraph dsg = switch(db) {
+            case "mem" -> DatasetGraphFactory.createTxnMem();
+            case "tdb2" -> {
+                tdbDir = ( location != null ) ? Path.of(location) : Files.createTempDirectory("ingest-tdb2");
+                yield DatabaseMgr.connectDatasetGraph(tdbDir.toString());
+            }
+            default -> throw new IllegalArgumentException("Unknown db: "+db);
+        };
+
+        KConnectorDesc conn = KConnectorDesc.create()
+                .topic(TOPIC)
+                .fusekiDispatchName(DATASET)
+                .directApply(direct)
+                .batchMaxRecords(batch)
+                .parseThreads(parseThreads)
+                .build();
+        FusekiServer server = FusekiServer.create().port(0).add(DATASET, dsg).build();
+        FKBatchProcessor batchProcessor = direct
+                ? FKS.directFKBatchProcessor(conn, server)
+                : FKS.plainFKBatchProcessor(conn, server.getServletContext());
+        DataState dataState = DataState.createEphemeral(TOPIC);
+
+        // Records older than the window are not needed again.
+        FKLocalTopic topic = new FKLocalTopic(TOPIC, 1, 2 * window);
+        FKLocalConsumer consumer = new FKLocalConsumer(topic);
+        FKS.addConnectorToServer(conn, server, dataState, batchProcessor, consumer);
+        server.start();
+
+        System.out.printf("Ingest: records=%,d warmup=%,d triples=%d mode=%s db=%s batch=%d parseThreads=%d\n",
+                          records, warmup, triples, mode, db, batch, parseThreads);
+
+        int total = warmup + records;
+        long[] sendNanos = new long[total];
+        long[] latencyNanos = new long[records];
+        long[] bytesSent = new long[1];
+
+        Thread producer = new Thread(()->{
+            for ( int i = 0 ; i < total ; i++ ) {
+                while ( i - (dataState.getLastOffset()+1) >= window )
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                RequestFK request = request(i, triples);
+                if ( i >= warmup )
+                    bytesSent[0] += request.getByteCount();
+                sendNanos[i] = System.nanoTime();
+                topic.send(request);
+            }
+        }, "IngestBench-producer");
+        producer.setDaemon(true);
+        producer.start();
+
+        long next = 0;
+        long startNanos = -1;
+        while ( next < total ) {
+            long applied = dataState.getLastOffset();
+            long now = System.nanoTime();
+            for ( ; next <= applied ; next++ ) {
+                if ( next >= warmup )
+                    latencyNanos[(int)(next - warmup)] = now - sendNanos[(int)next];
+            }
+            if ( startNanos < 0 && next >= warmup ) {
+                startNanos = now;
+                if ( warmup > 0 )
+                    System.out.printf("Warmup done: %,d records\n", warmup);
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        producer.join();
+
+        double seconds = elapsedNanos / 1e9;
+        Arrays.sort(latencyNanos);
+        System.out.printf("Time:       %.3f s\n", seconds);
+        System.out.printf("Records:    %,.0f records/s\n", records / seconds);
+        System.out.printf("Throughput: %.2f MB/s\n", bytesSent[0] / seconds / (1024*1024));
+        System.out.printf("Latency:    p50=%.2f ms  p90=%.2f ms  p99=%.2f ms  p99.9=%.2f ms  max=%.2f ms\n",
+                          percentile(latencyNanos, 0.50), percentile(latencyNanos, 0.90),
+                          percentile(latencyNanos, 0.99), percentile(latencyNanos, 0.999),
+                          latencyNanos[records-1] / 1e6);
+        FKMetrics metrics = FKMetrics.get(TOPIC);
+        System.out.printf("Connector:  %,d batches, mean %.1f records/batch, mean apply %.2f ms, mean commit %.2f ms\n",
+                          metrics.getBatches(), metrics.getMeanBatchRecords(),
+                          metrics.getMeanApplyMillis(), metrics.getMeanCommitMillis());
+
+        server.stop();
+        if ( tdbDir != null && location == null ) {
+            TDBInternal.expel(dsg);
+            FileOps.clearAll(tdbDir.toString());
+            FileOps.delete(tdbDir.toString());
+        }
+        // The connector polling thread does not stop.
+        System.exit(0);
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        int idx = (int)Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, idx)] / 1e6;
+    }
+
+    private static final Map<String, String> headers = Map.of(HttpNames.hContentType, WebContent.contentTypeNTriples);
+
+    /** Record i: distinct triples about one subject. */
+    private static RequestFK request(int i, int triples) {
+        StringBuilder sb = new StringBuilder();
+        for ( int j = 0 ; j < triples ; j++ )
+            sb.append("<http://example/s").append(i)
+              .append("> <http://example/p").append(j)
+              .append("> \"value ").append(i).append('-').append(j).append("\" .\n");
+        return new RequestFK(TOPIC, headers, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
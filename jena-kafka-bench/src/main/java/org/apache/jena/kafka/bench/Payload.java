@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.bench;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.riot.WebContent;
+
+/**
+ * Message payloads for the benchmarks, generated in memory.
+ * Data payloads have distinct subjects, literals and IRIs, in the shape of
+ * typical entity updates.
+ */
+public enum Payload {
+    /** N-Quads, 10 quads. */
+    NQUADS_SMALL(WebContent.contentTypeNQuads, nquads(10)),
+    /** N-Quads, 10,000 quads. */
+    NQUADS_LARGE(WebContent.contentTypeNQuads, nquads(10_000)),
+    /** Turtle, 1,000 triples with prefixes. */
+    TURTLE(WebContent.contentTypeTurtle, turtle(1_000)),
+    /** RDF Patch, a transaction adding and deleting 1,000 quads. */
+    PATCH(WebContent.contentTypePatch, patch(1_000)),
+    /** SPARQL Update, INSERT DATA of 100 triples and a DELETE WHERE. */
+    UPDATE(WebContent.contentTypeSPARQLUpdate, update(100));
+
+    private final String contentType;
+    private final byte[] bytes;
+
+    private Payload(String contentType, String body) {
+        this.contentType = contentType;
+        this.bytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    private static final String NS = "http://example/";
+
+    private static String nquads(int n) {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; i < n ; i++ )
+            sb.append(quad(i)).append(" .\n");
+        return sb.toString();
+    }
+
+    private static String quad(int i) {
+        return String.format("<%ss%d> <%sp%d> \"value %d\" <%sg%d>", NS, i/10, NS, i%10, i, NS, i%3);
+    }
+
+    private static String triple(int i) {
+        return String.format(":s%d :p%d \"value %d\"", i/10, i%10, i);
+    }
+
+    private static String turtle(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PREFIX : <").append(NS).append(">\n");
+        for ( int i = 0 ; i < n ; i++ )
+            sb.append(triple(i)).append(" .\n");
+        return sb.toString();
+    }
+
+    private static String patch(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("TX .\n");
+        for ( int i = 0 ; i < n ; i++ )
+            sb.append("A ").append(quad(i)).append(" .\n");
+        for ( int i = 0 ; i < n ; i += 10 )
+            sb.append("D ").append(quad(i)).append(" .\n");
+        sb.append("TC .\n");
+        return sb.toString();
+    }
+
+    private static String update(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PREFIX : <").append(NS).append(">\n");
+        sb.append("INSERT DATA {\n");
+        for ( int i = 0 ; i < n ; i++ )
+            sb.append("  ").append(triple(i)).append(" .\n");
+        sb.append("} ;\n");
+        sb.append("DELETE WHERE { :s0 :p0 ?o }\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.cmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.jena.atlas.logging.LogCtl;
+import org.apache.jena.cmd.ArgDecl;
+import org.apache.jena.cmd.CmdException;
+import org.apache.jena.cmd.CmdGeneral;
+import org.apache.jena.kafka.common.ParseFK;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sys.JenaSystem;
+
+/**
+ * Compare the time to parse the same data as N-Quads, RDF Thrift and RDF Protobuf,
+ * as the connector parses message bodies ({@link ParseFK}).
+ * <p>
+ * Each file is converted to each format in memory, then parsed {@code --repeat}
+ * times after {@code --warmup} untimed parses.
+ */
+public class FK_ParseBench extends CmdGeneral {
+
+    static final ArgDecl argRepeat = new ArgDecl(ArgDecl.HasValue, "repeat", "n");
+    static final ArgDecl argWarmup = new ArgDecl(ArgDecl.HasValue, "warmup");
+
+    static {
+        LogCtl.setLog4j2();
+        JenaSystem.init();
+    }
+
+    public static void main(String... args) {
+        new FK_ParseBench(args).mainRun();
+    }
+
+    private int repeat = 10;
+    private int warmup = 3;
+
+    public FK_ParseBench(String... args) {
+        super(args);
+        super.add(argRepeat);
+        super.add(argWarmup);
+    }
+
+    @Override
+    protected String getCommandName() {
+        return "parsebench";
+    }
+
+    @Override
+    protected String getSummary() {
+        return getCommandName()+" [--repeat N] [--warmup N] FILE...";
+    }
+
+    @Override
+    protected void processModulesAndArgs() {
+        repeat = intArg(argRepeat, repeat);
+        warmup = intArg(argWarmup, warmup);
+        if ( repeat <= 0 )
+            throw new CmdException("--repeat must be positive");
+    }
+
+    private int intArg(ArgDecl argDecl, int dft) {
+        if ( ! contains(argDecl) )
+            return dft;
+        try {
+            return Integer.parseInt(getValue(argDecl));
+        } catch (NumberFormatException ex) {
+            throw new CmdException("Bad number: "+getValue(argDecl));
+        }
+    }
+
+    @Override
+    protected void exec() {
+        if ( getPositional().isEmpty() )
+            throw new CmdException("No files");
+        for ( String fn : getPositional() ) {
+            System.out.println("== "+fn);
+            bench("N-Quads",  Lang.NQUADS,    convert(fn, RDFFormat.NQUADS));
+            bench("Thrift",   Lang.RDFTHRIFT, convert(fn, RDFFormat.RDF_THRIFT));
+            bench("Protobuf", Lang.RDFPROTO,  convert(fn, RDFFormat.RDF_PROTO));
+        }
+    }
+
+    private static byte[] convert(String fn, RDFFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamRDF writer = StreamRDFWriter.getWriterStream(out, format);
+        RDFParser.source(fn).parse(writer);
+        return out.toByteArray();
+    }
+
+    private void bench(String label, Lang lang, byte[] bytes) {
+        long count = 0;
+        for ( int i = 0 ; i < warmup ; i++ )
+            count = parse(lang, bytes);
+        long start = System.nanoTime();
+        for ( int i = 0 ; i < repeat ; i++ )
+            count = parse(lang, bytes);
+        long elapsed = System.nanoTime() - start;
+        double millis = elapsed / 1e6 / repeat;
+        double rate = ( millis > 0 ) ? count / (millis / 1000) : 0;
+        System.out.printf("%-10s %,12d bytes %,10d quads %10.2f ms %,14.0f quads/s\n", label, bytes.length, count, millis, rate);
+    }
+
+    private static long parse(Lang lang, byte[] bytes) {
+        StreamRDFCounting counter = StreamRDFLib.count();
+        ParseFK.parse(lang, new ByteArrayInputStream(bytes), counter);
+        return counter.count();
+    }
+}
@@ -16,10 +16,16 @@
 
 package org.apache.jena.kafka.cmd;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
@@ -30,10 +36,14 @@ import org.apache.jena.atlas.logging.LogCtl;
 import org.apache.jena.cmd.ArgDecl;
 import org.apache.jena.cmd.CmdException;
 import org.apache.jena.cmd.CmdGeneral;
-import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFLanguages;
-import org.apache.jena.riot.RIOT;
-import org.apache.jena.riot.WebContent;
+import org.apache.jena.kafka.ContentEncodingFK;
+import org.apache.jena.kafka.FusekiKafka;
+import org.apache.jena.kafka.JK;
+import org.apache.jena.rdfpatch.RDFPatch;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.riot.web.HttpNames;
 import org.apache.jena.sys.JenaSystem;
 import org.apache.jena.util.FileUtils;
@@ -43,15 +53,30 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
-/** Send one file. */
+/**
+ * Send one file.
+ * <p>
+ * With {@code --chunk BYTES}, each file is sent as a series of records of at most
+ * that many bytes, read from the file as they are sent.
+ * <p>
+ * With {@code --compress gzip|deflate|zstd|lz4}, the body is compressed and sent
+ * with a {@code Content-Encoding} header. Chunks are compressed separately.
+ * <p>
+ * With {@code --binary}, RDF data files are converted to RDF Thrift and RDF Patch
+ * files to binary RDF Patch before sending.
+ */
 public class FK_Send extends CmdGeneral {
 
     static final ArgDecl argServer      = new ArgDecl(ArgDecl.HasValue, "server", "s") ;
     static final ArgDecl argTopic       = new ArgDecl(ArgDecl.HasValue, "topic", "t") ;
     static final ArgDecl argContentType = new ArgDecl(ArgDecl.HasValue, "content-type", "ct") ;
     static final ArgDecl argKafkaHeader = new ArgDecl(ArgDecl.HasValue, "header", "H") ;
+    static final ArgDecl argChunk       = new ArgDecl(ArgDecl.HasValue, "chunk") ;
+    static final ArgDecl argCompress    = new ArgDecl(ArgDecl.HasValue, "compress", "z") ;
+    static final ArgDecl argBinary      = new ArgDecl(ArgDecl.NoValue, "binary") ;
 
     static {
         LogCtl.setLog4j2();
@@ -68,6 +93,9 @@ public class FK_Send extends CmdGeneral {
     private String contentType = null;
     private List<String> kafkaHeadersStr = null;
     private List<Header> kafkaHeaders = null;
+    private int chunkSize = -1;
+    private String contentEncoding = null;
+    private boolean binary = false;
 
     public FK_Send(String... args) {
         super(args) ;
@@ -75,6 +103,9 @@ public class FK_Send extends CmdGeneral {
         super.add(argTopic) ;
         super.add(argContentType) ;
         super.add(argKafkaHeader);
+        super.add(argChunk);
+        super.add(argCompress);
+        super.add(argBinary);
     }
 
     @Override
@@ -84,7 +115,7 @@ public class FK_Send extends CmdGeneral {
 
     @Override
     protected String getSummary() {
-        return getCommandName()+" --server BOOTSTRAP [-ct MIMETYPE] FILE...";
+        return getCommandName()+" --server BOOTSTRAP [-ct MIMETYPE] [--chunk BYTES] [--compress ENCODING] [--binary] FILE...";
     }
 
     @Override
@@ -99,22 +130,33 @@ public class FK_Send extends CmdGeneral {
 
         kafkaHeadersStr = super.getValues(argKafkaHeader);
         kafkaHeaders = kafkaHeadersStr.stream().map(h->kafkaHeader(h)).collect(Collectors.toList());
+        binary = contains(argBinary);
         // Add a content type header.
         contentType = super.getValue(argContentType);
+        if ( binary && contentType != null )
+            throw new CmdException("--binary sets the content type; --content-type not allowed");
         if ( contentType != null )
             kafkaHeaders.add(kafkaHeader(HttpNames.hContentType, contentType));
-    }
 
-    private static RecordMetadata send(Producer<String, String> producer, Integer partition, String topic, List<Header> headers, String body) {
-        try {
-            ProducerRecord<String, String> pRec = new ProducerRecord<>(topic, partition, null, null, body, headers);
-            Future<RecordMetadata> f = producer.send(pRec);
-            RecordMetadata res = f.get();
-            return res;
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        if ( contains(argChunk) ) {
+            try {
+                chunkSize = Integer.parseInt(getValue(argChunk));
+            } catch (NumberFormatException ex) {
+                throw new CmdException("Bad --chunk value: "+getValue(argChunk));
+            }
+            if ( chunkSize <= 0 )
+                throw new CmdException("--chunk must be positive: "+chunkSize);
+        }
+
+        if ( contains(argCompress) ) {
+            contentEncoding = getValue(argCompress);
+            if ( ! ContentEncodingFK.isSupported(contentEncoding) )
+                throw new CmdException("Unsupported --compress encoding: "+contentEncoding);
+            if ( ContentEncodingFK.isCompressed(contentEncoding) )
+                kafkaHeaders.add(kafkaHeader(FusekiKafka.hContentEncoding, contentEncoding));
+            else
+                contentEncoding = null;
         }
-        return null;
     }
 
     @Override
@@ -123,6 +165,19 @@ public class FK_Send extends CmdGeneral {
             throw new CmdException("Nothing to send") ;
         Properties props = new Properties();
         props.put("bootstrap.servers", server);
+        if ( chunkSize > 0 || contentEncoding != null || binary ) {
+            try ( StringSerializer serString = new StringSerializer();
+                  ByteArraySerializer serBytes = new ByteArraySerializer();
+                  Producer<String, byte[]> producer = new KafkaProducer<>(props, serString, serBytes)) {
+                for ( String fn : getPositional() ) {
+                    if ( chunkSize > 0 )
+                        execChunked(producer, fn);
+                    else
+                        execBytes(producer, fn);
+                }
+            }
+            return;
+        }
         try ( StringSerializer serString1 = new StringSerializer();
               StringSerializer serString2 = new StringSerializer();
               Producer<String, String> producer = new KafkaProducer<>(props, serString1, serString2)) {
@@ -134,17 +189,9 @@ public class FK_Send extends CmdGeneral {
     }
 
     protected void exec1(Producer<String, String> producer, String fn) {
-        List<Header> sendHeaders = new ArrayList<>(kafkaHeaders);
-        boolean hasContentType = kafkaHeaders.stream().anyMatch(h->h.key().equalsIgnoreCase(HttpNames.hContentType));
-        if ( ! hasContentType ) {
-            String ct = chooseContentType(fn);
-            if ( ct == null )
-                throw new CmdException("Failed to determine the Content-type for '"+fn+"'");
-            sendHeaders.add(kafkaHeader(HttpNames.hContentType, ct));
-        }
-
+        List<Header> sendHeaders = sendHeaders(fn);
         String body = IO.readWholeFileAsUTF8(fn);
-        RecordMetadata res = send(producer, null, topic, sendHeaders, body);
+        RecordMetadata res = send(producer, null, null, topic, sendHeaders, body);
         if ( res == null )
             System.out.println("Error");
         else if ( ! res.hasOffset() )
@@ -154,10 +201,140 @@ public class FK_Send extends CmdGeneral {
     }
 
 
+    /** Send a file, converted to binary and/or compressed. */
+    protected void execBytes(Producer<String, byte[]> producer, String fn) {
+        List<Header> sendHeaders = sendHeaders(fn);
+        byte[] body = ContentEncodingFK.encode(contentEncoding, readBody(fn));
+        RecordMetadata res = send(producer, null, null, topic, sendHeaders, body);
+        if ( res == null )
+            System.out.println("Error");
+        else if ( ! res.hasOffset() )
+            System.out.println("No offset");
+        else
+            System.out.println("Send: Offset = "+res.offset());
+    }
+
+    /**
+     * Send a file as consecutive records of up to {@code chunkSize} bytes.
+     * The first record has the headers (including the Content-Type).
+     * If compressing, each chunk is compressed and has the Content-Encoding header.
+     * The chunk id is the record key so that all the chunks go to the same partition.
+     */
+    protected void execChunked(Producer<String, byte[]> producer, String fn) {
+        List<Header> sendHeaders = sendHeaders(fn);
+        String chunkId = UUID.randomUUID().toString();
+        try ( InputStream in = binary ? new ByteArrayInputStream(readBody(fn)) : IO.openFileBuffered(fn) ) {
+            byte[] chunk = in.readNBytes(chunkSize);
+            long index = 0;
+            RecordMetadata res = null;
+            for ( ;; ) {
+                byte[] next = in.readNBytes(chunkSize);
+                boolean last = ( next.length == 0 );
+                List<Header> chunkHeaders = ( index == 0 ) ? new ArrayList<>(sendHeaders) : new ArrayList<>();
+                if ( index != 0 && contentEncoding != null )
+                    chunkHeaders.add(kafkaHeader(FusekiKafka.hContentEncoding, contentEncoding));
+                chunkHeaders.add(kafkaHeader(FusekiKafka.hChunkId, chunkId));
+                chunkHeaders.add(kafkaHeader(FusekiKafka.hChunkIndex, Long.toString(index)));
+                if ( last )
+                    chunkHeaders.add(kafkaHeader(FusekiKafka.hChunkLast, "true"));
+                res = send(producer, null, chunkId, topic, chunkHeaders, ContentEncodingFK.encode(contentEncoding, chunk));
+                if ( res == null ) {
+                    System.out.println("Error");
+                    return;
+                }
+                if ( last )
+                    break;
+                chunk = next;
+                index++;
+            }
+            System.out.println("Send: "+(index+1)+" chunks: Offset = "+res.offset());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static <X> RecordMetadata send(Producer<String, X> producer, Integer partition, String key, String topic, List<Header> headers, X body) {
+        try {
+            ProducerRecord<String, X> pRec = new ProducerRecord<>(topic, partition, null, key, body, headers);
+            Future<RecordMetadata> f = producer.send(pRec);
+            return f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /** The body to send: the file, or the file converted to binary. */
+    private byte[] readBody(String fn) {
+        if ( ! binary )
+            return readFile(fn);
+        String ct = chooseContentType(fn);
+        if ( WebContent.contentTypePatch.equals(ct) )
+            return toBinaryPatch(fn);
+        Lang lang = ( ct == null ) ? null : RDFLanguages.contentTypeToLang(ct);
+        if ( lang == null || JK.isBinaryRDF(ct) )
+            // SPARQL Update, unknown or already binary.
+            return readFile(fn);
+        return toRDFThrift(fn);
+    }
+
+    /** Convert an RDF data file to RDF Thrift. */
+    static byte[] toRDFThrift(String fn) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamRDF writer = StreamRDFWriter.getWriterStream(out, RDFFormat.RDF_THRIFT);
+        RDFParser.source(fn).parse(writer);
+        return out.toByteArray();
+    }
+
+    /** Convert an RDF Patch file to binary RDF Patch. */
+    static byte[] toBinaryPatch(String fn) {
+        RDFPatch patch;
+        try ( InputStream in = IO.openFileBuffered(fn) ) {
+            patch = RDFPatchOps.read(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFPatchOps.writeBinary(out, patch);
+        return out.toByteArray();
+    }
+
+    private static byte[] readFile(String fn) {
+        try ( InputStream in = IO.openFileBuffered(fn) ) {
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private List<Header> sendHeaders(String fn) {
+        List<Header> sendHeaders = new ArrayList<>(kafkaHeaders);
+        boolean hasContentType = kafkaHeaders.stream().anyMatch(h->h.key().equalsIgnoreCase(HttpNames.hContentType));
+        if ( ! hasContentType ) {
+            String ct = binary ? chooseBinaryContentType(fn) : chooseContentType(fn);
+            if ( ct == null )
+                throw new CmdException("Failed to determine the Content-type for '"+fn+"'");
+            sendHeaders.add(kafkaHeader(HttpNames.hContentType, ct));
+        }
+        return sendHeaders;
+    }
+
+    /** The content type after conversion by {@link #readBody}. */
+    private String chooseBinaryContentType(String fn) {
+        String ct = chooseContentType(fn);
+        if ( WebContent.contentTypePatch.equals(ct) )
+            return WebContent.contentTypePatchThrift;
+        if ( ct == null || JK.isBinaryRDF(ct) || RDFLanguages.contentTypeToLang(ct) == null )
+            return ct;
+        return WebContent.contentTypeRDFThrift;
+    }
+
     private String chooseContentType(String fn) {
         String ext = FileUtils.getFilenameExt(fn);
         if ( Lib.equals("ru", ext) )
             return WebContent.contentTypeSPARQLUpdate;
+        if ( Lib.equals("rdfp", ext) )
+            return WebContent.contentTypePatch;
         Lang lang = RDFLanguages.filenameToLang(fn);
         if ( lang != null )
             return lang.getContentType().getContentTypeStr();
@@ -84,15 +84,19 @@ public class FK_SyncDB {
         Deserializer<RequestFK> reqDer = new DeserializerActionFK(false, null);
 
         try ( Consumer<String, RequestFK> consumer = new KafkaConsumer<>(cProps, strDeser, reqDer) ) {
-            TopicPartition topicPartition = new TopicPartition(topic, 0);
-            consumer.assign(List.of(topicPartition));
+            List<TopicPartition> partitions = conn.getMultiPartition()
+                    ? consumer.partitionsFor(topic).stream().map(info->new TopicPartition(topic, info.partition())).toList()
+                    : List.of(new TopicPartition(topic, 0));
+            consumer.assign(partitions);
 
-            // Resume or start from the beginning.
-            long initialOffset = dState.getLastOffset();
-            if ( initialOffset < 0 )
-                consumer.seekToBeginning(List.of(topicPartition));
-            else
-                consumer.seek(topicPartition, initialOffset+1);
+            // Resume or start from the beginning, for each partition.
+            for ( TopicPartition topicPartition : partitions ) {
+                long initialOffset = dState.getLastOffset(topicPartition.partition());
+                if ( initialOffset < 0 )
+                    consumer.seekToBeginning(List.of(topicPartition));
+                else
+                    consumer.seek(topicPartition, initialOffset+1);
+            }
 
             /// XXX Unfinished.
             for ( ;; ) {
@@ -44,7 +44,7 @@ public class fk {
             case "-h" :
             case "-help" :
             case "--help" :
-                System.err.println("Commands: send, dump");
+                System.err.println("Commands: send, dump, parsebench");
                 return;
             case "version":
             case "--version":
@@ -63,6 +63,7 @@ public class fk {
         switch (cmdExec) {
             case "send":  FK_Send.main(argsSub); break;
             case "dump":  FK_DumpTopic.main(argsSub); break;
+            case "parsebench":  FK_ParseBench.main(argsSub); break;
             default:
                 System.err.println("Failed to find a command match for '"+cmd+"'");
         }
@@ -18,6 +18,8 @@ package org.apache.jena.kafka;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
 
@@ -28,22 +30,35 @@ public class ActionKafka {
     private final Map<String, String> headers;
     private final String topic;
     // Either-or
+    // The body is bytesLength bytes of the array, starting at bytesOffset.
+    // The array may be larger (for example, it is the Kafka fetch buffer).
     private final byte[] bytes;
+    private final int bytesOffset;
+    private final int bytesLength;
     private final InputStream bytesInput;
 
-    /** Not currently used */
-    private ActionKafka(String topic, Map<String, String> headers, InputStream bytesInput) {
+    /** Body read from an input stream (a message sent in chunks). */
+    protected ActionKafka(String topic, Map<String, String> headers, InputStream bytesInput) {
         this.topic = topic;
         this.headers = headers;
         this.bytes = null;
+        this.bytesOffset = 0;
+        this.bytesLength = -1;
         this.bytesInput = Objects.requireNonNull(bytesInput);
 
     }
 
     protected ActionKafka(String topic, Map<String, String> headers, byte[] bytes) {
+        this(topic, headers, bytes, 0, bytes.length);
+    }
+
+    protected ActionKafka(String topic, Map<String, String> headers, byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
         this.topic = topic;
         this.headers = headers;
-        this.bytes = Objects.requireNonNull(bytes);
+        this.bytes = bytes;
+        this.bytesOffset = offset;
+        this.bytesLength = length;
         this.bytesInput = null;
     }
 
@@ -56,22 +71,57 @@ public class ActionKafka {
     }
 
     public String getContentType() {
+        if ( headers instanceof HeadersFK headersFK )
+            return headersFK.getContentType();
         return headers.get(FusekiKafka.hContentType);
     }
 
     public long getByteCount() {
-        return bytes == null ? -1 : bytes.length;
+        return bytes == null ? -1 : bytesLength;
     }
 
-    /* Get bytes - this may be null, meaning there is an input stream instead */
+    /**
+     * Get bytes - this may be null, meaning there is an input stream instead.
+     * These are the bytes as received, compressed if there is a {@code Content-Encoding}.
+     * This is a copy if the body is part of a larger array; {@link #getByteBuffer}
+     * does not copy.
+     */
     public byte[] getBytes() {
-        return bytes;
+        if ( bytes == null )
+            return null;
+        if ( bytesOffset == 0 && bytesLength == bytes.length )
+            return bytes;
+        return Arrays.copyOfRange(bytes, bytesOffset, bytesOffset+bytesLength);
+    }
+
+    /** The body as a read-only {@link ByteBuffer}, without copying. Returns null if there is an input stream instead. */
+    public ByteBuffer getByteBuffer() {
+        if ( bytes == null )
+            return null;
+        return ByteBuffer.wrap(bytes, bytesOffset, bytesLength).slice().asReadOnlyBuffer();
+    }
+
+    /** The {@code Content-Encoding}, or null if the body is not compressed. */
+    public String getContentEncoding() {
+        if ( hasInputStream() )
+            // Already decoded.
+            return null;
+        String encoding = headers.get(FusekiKafka.hContentEncoding);
+        return ContentEncodingFK.isCompressed(encoding) ? encoding : null;
     }
 
+    /**
+     * The body as an {@link InputStream}. This does not copy the bytes.
+     * A body with a {@code Content-Encoding} is decompressed as it is read.
+     */
     public InputStream getInputStream() {
         if ( hasInputStream() )
             return bytesInput;
-        return new ByteArrayInputStream(bytes);
+        String encoding = getContentEncoding();
+        if ( encoding != null )
+            // Not read-only so the gzip decoder can use the array.
+            return ContentEncodingFK.decode(encoding, ByteBuffer.wrap(bytes, bytesOffset, bytesLength));
+        return new ByteArrayInputStream(bytes, bytesOffset, bytesLength);
     }
 
     public boolean hasInputStream() {
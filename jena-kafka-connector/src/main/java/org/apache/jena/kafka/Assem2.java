@@ -112,6 +112,19 @@ class Assem2 {
         throw onError(node, property, "Not a single-valued string for subject-property", onError);
     }
 
+    /**
+     * Get an integer value or return a default value if no such subject-property.
+     * Error if the object is not an integer or multi-valued.
+     */
+    public static long getLongOrDft(Graph graph, Node node, Node property, long dftValue, OnError onError) {
+        Node x = G.getZeroOrOneSP(graph, node, property);
+        if ( x == null )
+            return dftValue;
+        if ( x.isLiteral() && x.getLiteralValue() instanceof Number number )
+            return number.longValue();
+        throw onError(node, property, "Not a single-valued integer for subject-property", onError);
+    }
+
     /**
      * Get a boolean.
      * Return null for no such subject-property.
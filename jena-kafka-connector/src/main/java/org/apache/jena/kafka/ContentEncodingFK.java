@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+/**
+ * Message bodies compressed as given by the {@code Content-Encoding} header.
+ * <p>
+ * The encodings are "gzip" and "deflate" (as for HTTP), and "zstd" and "lz4"
+ * (LZ4 frame format). "identity", or no header, means not compressed.
+ * zstd uses zstd-jni and lz4 uses lz4-java, the libraries the Kafka client uses
+ * for record batches.
+ * <p>
+ * A body is decompressed as it is read.
+ */
+public class ContentEncodingFK {
+
+    public static final String GZIP     = "gzip";
+    public static final String DEFLATE  = "deflate";
+    public static final String ZSTD     = "zstd";
+    public static final String LZ4      = "lz4";
+    public static final String IDENTITY = "identity";
+
+    /** Whether the encoding is supported. Null means no encoding. */
+    public static boolean isSupported(String encoding) {
+        if ( encoding == null )
+            return true;
+        return switch(normalize(encoding)) {
+            case IDENTITY, GZIP, DEFLATE, ZSTD, LZ4 -> true;
+            default -> false;
+        };
+    }
+
+    /** Whether the encoding is a compression, not "identity". */
+    public static boolean isCompressed(String encoding) {
+        return encoding != null && ! IDENTITY.equals(normalize(encoding));
+    }
+
+    /** Decompress, as it is read, a body with the encoding. */
+    public static InputStream decode(String encoding, ByteBuffer body) {
+        if ( ! isCompressed(encoding) )
+            return asInputStream(body);
+        try {
+            return switch(normalize(encoding)) {
+                case GZIP ->    new GZIPInputStream(asInputStream(body), 64*1024);
+                case DEFLATE -> new InflaterInputStream(asInputStream(body));
+                case ZSTD ->    new ZstdInputStream(asInputStream(body));
+                case LZ4 ->     new LZ4FrameInputStream(asInputStream(body));
+                default -> throw new JenaKafkaException("Unsupported Content-Encoding: "+encoding);
+            };
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** Compress a body with the encoding. */
+    public static byte[] encode(String encoding, byte[] body) {
+        if ( ! isCompressed(encoding) )
+            return body;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length/4+64);
+        try {
+            OutputStream out = switch(normalize(encoding)) {
+                case GZIP ->    new GZIPOutputStream(bytes);
+                case DEFLATE -> new DeflaterOutputStream(bytes);
+                case ZSTD ->    new ZstdOutputStream(bytes);
+                case LZ4 ->     new LZ4FrameOutputStream(bytes);
+                default -> throw new JenaKafkaException("Unsupported Content-Encoding: "+encoding);
+            };
+            try ( out ) {
+                out.write(body);
+            }
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String normalize(String encoding) {
+        return encoding.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static InputStream asInputStream(ByteBuffer body) {
+        if ( body.hasArray() )
+            return new ByteArrayInputStream(body.array(), body.arrayOffset()+body.position(), body.remaining());
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+}
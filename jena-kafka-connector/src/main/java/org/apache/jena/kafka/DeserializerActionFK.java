@@ -17,21 +17,29 @@
 package org.apache.jena.kafka;
 
 import java.io.PrintStream;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
 
 import org.apache.jena.atlas.lib.StrUtils;
 import org.apache.jena.riot.WebContent;
-import org.apache.jena.riot.web.HttpNames;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.Deserializer;
 
 /**
  * Deserialize to an internal "request object"
+ * <p>
+ * The headers are a view of the Kafka headers ({@link HeadersFK}), and the body
+ * is the bytes given by Kafka. Where Kafka passes a heap {@code ByteBuffer}, a
+ * large body is a slice of its array, not a copy. The slice keeps the whole array,
+ * which may be the buffer of a complete fetch, in memory until the request has been
+ * processed, so bodies smaller than {@link #sliceMinBytes} are copied.
  */
 public class DeserializerActionFK implements Deserializer<RequestFK> {
 
     private final static String defaultContentType = WebContent.contentTypeNQuads;
+    /** Bodies at least this size are a slice of the Kafka buffer; smaller ones are copied. */
+    public final static int sliceMinBytes = 64*1024;
     // Verbose mode - dumps incoming Kafka event to an output stream.
     // The purpose is to be able to capture events
     private final Function<Integer, PrintStream> dumpOutput;
@@ -59,16 +67,32 @@ public class DeserializerActionFK implements Deserializer<RequestFK> {
 
     @Override
     public RequestFK deserialize(String topic, Headers headers, byte[] data) {
-        Map<String, String> requestHeaders = JK.headerToMap(headers);
+        return deserialize(topic, headers, data, 0, data.length);
+    }
+
+    @Override
+    public RequestFK deserialize(String topic, Headers headers, ByteBuffer data) {
+        if ( data == null )
+            return null;
+        if ( data.hasArray() && data.remaining() >= sliceMinBytes ) {
+            // No copy.
+            return deserialize(topic, headers, data.array(), data.arrayOffset()+data.position(), data.remaining());
+        }
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return deserialize(topic, headers, bytes, 0, bytes.length);
+    }
 
+    private RequestFK deserialize(String topic, Headers headers, byte[] data, int offset, int length) {
         if ( verbose && dumpOutput != null ) {
             synchronized(this) {
                 counter++;
                 try (PrintStream out = dumpOutput.apply(counter)) {
                     out.printf("## %d ##\n", counter);
-                    headers.forEach(h -> out.println(h.key() + ": " + StrUtils.fromUTF8bytes(h.value())));
+                    if ( headers != null )
+                        headers.forEach(h -> out.println(h.key() + ": " + StrUtils.fromUTF8bytes(h.value())));
                     out.println();
-                    String x = StrUtils.fromUTF8bytes(data);
+                    String x = new String(data, offset, length, StandardCharsets.UTF_8);
                     out.print(x);
                     if (!x.endsWith("\n"))
                         out.println();
@@ -77,19 +101,9 @@ public class DeserializerActionFK implements Deserializer<RequestFK> {
             }
         }
 
-        // Default Content-Type to NQuads
-        if ( ! requestHeaders.containsKey(HttpNames.hContentType) ) {
-            //Log.warn(FusekiKafka.LOG, "No Content-Type - defaulting to "+defaultContentType);
-            requestHeaders.put(HttpNames.hContentType, defaultContentType);
-        }
-
-        // Content-Length
-        if ( ! requestHeaders.containsKey(HttpNames.hContentLength) ) {
-            String contentLengthStr = Integer.toString(data.length);
-            requestHeaders.put(HttpNames.hContentLength, contentLengthStr);
-        }
-
-        return new RequestFK(topic, requestHeaders, data);
+        // Default Content-Type to NQuads. Content-Length is provided if not in the headers.
+        HeadersFK requestHeaders = new HeadersFK(headers, defaultContentType, length);
+        return new RequestFK(topic, requestHeaders, data, offset, length);
     }
 
     @Override
@@ -25,8 +25,18 @@ public class FusekiKafka {
     public static Logger LOG = LoggerFactory.getLogger(FusekiKafka.class);
 
     public static final String hContentType = HttpNames.hContentType;
+    /** Header: compression of the body (see {@link ContentEncodingFK}). */
+    public static final String hContentEncoding = HttpNames.hContentEncoding;
     public static final String hRequestType = "RT";
 
+    // A large message sent as several consecutive records.
+    /** Header: identifier of a message sent in chunks; the same for all chunks. */
+    public static final String hChunkId = "Chunk-Id";
+    /** Header: index, from 0, of a chunk of a message. */
+    public static final String hChunkIndex = "Chunk-Index";
+    /** Header: "true" for the last chunk of a message. */
+    public static final String hChunkLast = "Chunk-Last";
+
     public static String noRemoteEndpointName = "";
     public static String noFusekiServiceName  = "";
 }
@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka;
+
+import java.util.*;
+
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Read-only {@code Map} view of the Kafka headers of a record.
+ * <p>
+ * Header values are decoded to strings when asked for, not when the record is
+ * received. The Content-Type is found when the view is created; common content
+ * types are shared strings (see {@link JK#contentType}). A default Content-Type and
+ * the Content-Length are supplied if the record does not have them.
+ * <p>
+ * If there are multiple headers with the same key name, the last one is used.
+ */
+public class HeadersFK extends AbstractMap<String, String> {
+
+    private static final Header[] noHeaders = new Header[0];
+
+    private final Header[] headers;
+    private final String contentType;
+    private final int contentLength;
+    // Created if the whole map is needed.
+    private Map<String, String> asMap = null;
+
+    /**
+     * View of {@code headers}, which may be null, for a record with a body of
+     * {@code contentLength} bytes.
+     */
+    public HeadersFK(Headers headers, String defaultContentType, int contentLength) {
+        this.headers = ( headers == null ) ? noHeaders : headers.toArray();
+        Header ctHeader = lastHeader(HttpNames.hContentType);
+        this.contentType = ( ctHeader == null ) ? defaultContentType : JK.contentType(ctHeader.value());
+        this.contentLength = contentLength;
+    }
+
+    /** The Content-Type. */
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String get(Object key) {
+        if ( HttpNames.hContentType.equals(key) )
+            return contentType;
+        Header header = lastHeader(key);
+        if ( header != null )
+            return Bytes.bytes2string(header.value());
+        if ( HttpNames.hContentLength.equals(key) )
+            return Integer.toString(contentLength);
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if ( HttpNames.hContentType.equals(key) || HttpNames.hContentLength.equals(key) )
+            return true;
+        return lastHeader(key) != null;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if ( asMap == null )
+            asMap = Collections.unmodifiableMap(buildMap());
+        return asMap.entrySet();
+    }
+
+    private Map<String, String> buildMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for ( Header header : headers )
+            map.put(header.key(), Bytes.bytes2string(header.value()));
+        map.put(HttpNames.hContentType, contentType);
+        map.putIfAbsent(HttpNames.hContentLength, Integer.toString(contentLength));
+        return map;
+    }
+
+    private Header lastHeader(Object key) {
+        for ( int i = headers.length-1 ; i >= 0 ; i-- ) {
+            if ( headers[i].key().equals(key) )
+                return headers[i];
+        }
+        return null;
+    }
+}
@@ -18,11 +18,13 @@ package org.apache.jena.kafka;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.riot.WebContent;
 import org.apache.kafka.common.header.Header;
 
 public class JK {
@@ -41,6 +43,45 @@ public class JK {
         return map;
     }
 
+    // Content types that are expected to be common on Kafka topics.
+    private static final String[] commonContentTypes = {
+        WebContent.contentTypeNQuads,
+        WebContent.contentTypeNTriples,
+        WebContent.contentTypeTurtle,
+        WebContent.contentTypeTriG,
+        WebContent.contentTypeRDFXML,
+        WebContent.contentTypeJSONLD,
+        WebContent.contentTypeRDFThrift,
+        WebContent.contentTypeRDFProto,
+        WebContent.contentTypeSPARQLUpdate,
+        WebContent.contentTypePatch,
+        WebContent.contentTypePatchThrift
+    };
+    private static final byte[][] commonContentTypesBytes =
+            Arrays.stream(commonContentTypes).map(ct->ct.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+
+    /**
+     * A Content-Type header value as a string. Common content types return a
+     * shared string without decoding the bytes.
+     */
+    public static String contentType(byte[] headerValue) {
+        for ( int i = 0 ; i < commonContentTypesBytes.length ; i++ ) {
+            if ( Arrays.equals(commonContentTypesBytes[i], headerValue) )
+                return commonContentTypes[i];
+        }
+        return Bytes.bytes2string(headerValue);
+    }
+
+    /**
+     * Whether the content type is one of the binary RDF encodings: RDF Thrift,
+     * RDF Protobuf or binary RDF Patch.
+     */
+    public static boolean isBinaryRDF(String contentType) {
+        return WebContent.contentTypeRDFThrift.equals(contentType)
+            || WebContent.contentTypeRDFProto.equals(contentType)
+            || WebContent.contentTypePatchThrift.equals(contentType);
+    }
+
     /**
      * Map to Kafka headers. No support for multiple headers with the same key name.
      */
@@ -51,19 +51,109 @@ public class KConnectorDesc {
     // Kafka consumer setup.
     private final Properties kafkaConsumerProps;
 
+    // Apply to the dataset, not via Fuseki dispatch.
+    private final boolean directApply;
+
+    // Batching: zero or less means "not set".
+    private final int batchMaxRecords;
+    private final long batchMaxBytes;
+    private final long batchLingerMillis;
+    private final long maxTransactionMillis;
+
+    // Threads to parse messages ahead of applying them (direct apply).
+    private final int parseThreads;
+
+    // Consume all partitions of the topic, not just partition 0.
+    private final boolean multiPartition;
+
+    // Share one Kafka consumer with other connectors to the same Kafka cluster.
+    private final boolean sharedConsumer;
+
+    // Bytes of Kafka records to fetch ahead of processing; zero or less for no prefetch.
+    private final long prefetchBytes;
+
+    // Write the state file at most this often (milliseconds); zero or less for after every batch.
+    private final long stateCheckpointMillis;
+
+    // Write the state file when the offset has advanced this much; zero or less for after every batch.
+    private final long stateCheckpointOffsets;
+
+    // Record the offset in the dataset, in the same transaction as the batch (direct apply).
+    private final boolean offsetInDataset;
+
+    // Shared state journal file, used instead of the state file; null for none.
+    private final String stateJournal;
+
+    // Directory for the local archive of consumed records; null for none.
+    private final String archiveDirectory;
+
+    // TDB2 loader for the initial load of an empty dataset; null for none.
+    private final String bulkLoad;
+
+    // Directory of offset-tagged dataset snapshots to start a new replica from; null for none.
+    private final String snapshotDirectory;
+
+    // Interval between snapshots written to the snapshot directory; -1 for none.
+    private final long snapshotIntervalMillis;
+
+    // Number of snapshots kept; -1 for the default.
+    private final int snapshotRetain;
+
+    // Maximum rate of writing a snapshot; -1 for no limit.
+    private final long snapshotBytesPerSecond;
+
+    // Entries in the cache of IRIs to nodes used when parsing; 0 for none, -1 for the default.
+    private final int nodeCacheSize;
+
+    // Users allowed to use the status and control endpoint for this connector; null for no endpoint.
+    private final String controlUsers;
+
+    /** Start building a {@link KConnectorDesc}. */
+    public static Builder create() {
+        return new Builder();
+    }
+
     public KConnectorDesc(String topic, String bootstrapServers, String fusekiDispatchName, String remoteEndpoint, String stateFile,
                           boolean syncTopic, boolean replayTopic,
                           Properties kafkaConsumerProps) {
-        this.topic = Objects.requireNonNull(topic, "topic");
-        this.bootstrapServers = bootstrapServers;
-        this.fusekiDispatchPath = fusekiDispatchName;
-        this.remoteEndpoint = remoteEndpoint;
-        this.syncTopic = syncTopic;
-        this.replayTopic = replayTopic;
-        this.stateFile = stateFile;
-        this.kafkaConsumerProps = kafkaConsumerProps;
-
-        boolean hasLocalFusekiService = StringUtils.isEmpty(fusekiDispatchName);
+        this(create().topic(topic).bootstrapServers(bootstrapServers)
+                     .fusekiDispatchName(fusekiDispatchName).remoteEndpoint(remoteEndpoint).stateFile(stateFile)
+                     .syncTopic(syncTopic).replayTopic(replayTopic)
+                     .kafkaConsumerProps(kafkaConsumerProps));
+    }
+
+    private KConnectorDesc(Builder builder) {
+        this.topic = Objects.requireNonNull(builder.topic, "topic");
+        this.bootstrapServers = builder.bootstrapServers;
+        this.fusekiDispatchPath = builder.fusekiDispatchName;
+        this.remoteEndpoint = builder.remoteEndpoint;
+        this.syncTopic = builder.syncTopic;
+        this.replayTopic = builder.replayTopic;
+        this.stateFile = builder.stateFile;
+        this.kafkaConsumerProps = builder.kafkaConsumerProps;
+        this.directApply = builder.directApply;
+        this.batchMaxRecords = builder.batchMaxRecords;
+        this.batchMaxBytes = builder.batchMaxBytes;
+        this.batchLingerMillis = builder.batchLingerMillis;
+        this.maxTransactionMillis = builder.maxTransactionMillis;
+        this.parseThreads = builder.parseThreads;
+        this.multiPartition = builder.multiPartition;
+        this.sharedConsumer = builder.sharedConsumer;
+        this.prefetchBytes = builder.prefetchBytes;
+        this.stateCheckpointMillis = builder.stateCheckpointMillis;
+        this.stateCheckpointOffsets = builder.stateCheckpointOffsets;
+        this.offsetInDataset = builder.offsetInDataset;
+        this.stateJournal = builder.stateJournal;
+        this.archiveDirectory = builder.archiveDirectory;
+        this.bulkLoad = builder.bulkLoad;
+        this.snapshotDirectory = builder.snapshotDirectory;
+        this.snapshotIntervalMillis = builder.snapshotIntervalMillis;
+        this.snapshotRetain = builder.snapshotRetain;
+        this.snapshotBytesPerSecond = builder.snapshotBytesPerSecond;
+        this.nodeCacheSize = builder.nodeCacheSize;
+        this.controlUsers = builder.controlUsers;
+
+        boolean hasLocalFusekiService = StringUtils.isEmpty(fusekiDispatchPath);
         boolean hasRemoteEndpoint = StringUtils.isEmpty(remoteEndpoint);
 
         if ( hasRemoteEndpoint && hasLocalFusekiService  )
@@ -122,6 +212,171 @@ public class KConnectorDesc {
         return kafkaConsumerProps;
     }
 
+    /**
+     * Whether to apply Kafka messages directly to the dataset of the local dispatch
+     * path, with one transaction per batch, rather than dispatching each message
+     * through the Fuseki server.
+     */
+    public boolean getDirectApply() {
+        return directApply;
+    }
+
+    /** Maximum number of Kafka records in one batch; zero or less for no limit. */
+    public int getBatchMaxRecords() {
+        return batchMaxRecords;
+    }
+
+    /** Maximum total payload size, in bytes, of one batch; zero or less for no limit. */
+    public long getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * Time, in milliseconds, to accumulate records across several Kafka polls before
+     * processing them as one batch. Zero or less means one batch per poll.
+     */
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    /**
+     * Maximum time, in milliseconds, for one batch transaction. A batch that takes
+     * longer is split and the rest of the records go into the next transaction.
+     * Zero or less for no limit.
+     */
+    public long getMaxTransactionMillis() {
+        return maxTransactionMillis;
+    }
+
+    /**
+     * Number of threads used to parse messages ahead of applying them to the dataset.
+     * Zero means parse on the polling thread. Only used with {@link #getDirectApply}.
+     */
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    /**
+     * Whether to consume all the partitions of the topic. Records are in order
+     * within each partition, not across partitions, so this is for topics where the
+     * producers partition by key such that the order between partitions does not matter.
+     * The default is to consume only partition 0.
+     */
+    public boolean getMultiPartition() {
+        return multiPartition;
+    }
+
+    /**
+     * Whether this connector shares a Kafka consumer, and its polling thread, with
+     * other connectors that have the same bootstrap servers and Kafka consumer
+     * properties (apart from the group id).
+     */
+    public boolean getSharedConsumer() {
+        return sharedConsumer;
+    }
+
+    /**
+     * Maximum payload bytes of Kafka records fetched, on a separate thread, ahead of
+     * being processed. Zero or less means no prefetch: the consumer is polled when
+     * the previous batch has been processed.
+     */
+    public long getPrefetchBytes() {
+        return prefetchBytes;
+    }
+
+    /**
+     * Interval, in milliseconds, between writes of the state file. Zero or less
+     * means the state file is written after every batch.
+     */
+    public long getStateCheckpointMillis() {
+        return stateCheckpointMillis;
+    }
+
+    /**
+     * Number of offsets the connector may advance before the state file is written.
+     * Zero or less means the state file is written after every batch.
+     */
+    public long getStateCheckpointOffsets() {
+        return stateCheckpointOffsets;
+    }
+
+    /**
+     * Whether the offset is recorded in the dataset, in the same transaction as
+     * each batch, and restored from there at startup. Requires direct apply.
+     */
+    public boolean getOffsetInDataset() {
+        return offsetInDataset;
+    }
+
+    /**
+     * File name of the state journal shared by connectors, or null. When set, the
+     * connector state is kept in the journal, not in the state file.
+     */
+    public String getStateJournal() {
+        return stateJournal;
+    }
+
+    /**
+     * Directory for the local archive of the records consumed, or null. When set,
+     * catching up (including a replay) reads the archive before the topic.
+     */
+    public String getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    /**
+     * The TDB2 loader ("basic", "sequential", "phased" or "parallel") used
+     * to load the start of the topic when the connector has no state and the dataset
+     * is empty, or null for none.
+     */
+    public String getBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     * Directory of dataset snapshots tagged with topic offsets, or null. When set,
+     * and the connector has no state and the dataset is empty, the latest snapshot
+     * is loaded and the connector continues from its offsets.
+     */
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    /**
+     * Interval, in milliseconds, between snapshots of the dataset written to the
+     * snapshot directory, or -1 for none.
+     */
+    public long getSnapshotIntervalMillis() {
+        return snapshotIntervalMillis;
+    }
+
+    /** Number of snapshots kept in the snapshot directory, or -1 for the default. */
+    public int getSnapshotRetain() {
+        return snapshotRetain;
+    }
+
+    /** Maximum rate, in bytes per second, of writing a snapshot, or -1 for no limit. */
+    public long getSnapshotBytesPerSecond() {
+        return snapshotBytesPerSecond;
+    }
+
+    /**
+     * Number of entries in the cache of IRIs to nodes shared by all the messages of
+     * the connector when parsing, 0 for no cache, or -1 for the default.
+     */
+    public int getNodeCacheSize() {
+        return nodeCacheSize;
+    }
+
+    /**
+     * Users, comma separated, allowed to see and control the connector at the
+     * server's status and control endpoint, or null if the connector is not
+     * available there. {@code "*"} is any authenticated user.
+     */
+    public String getControlUsers() {
+        return controlUsers;
+    }
+
 //    public Properties getKafkaProducerProps() {
 //        return kafkaProducerProps;
 //    }
@@ -130,6 +385,209 @@ public class KConnectorDesc {
     public String toString() {
         return "ConnectorFK [topic=" + topic + ", fusekiDispatchName=" + fusekiDispatchPath + ", remoteEndpoint=" + remoteEndpoint + ", syncTopic="
                + syncTopic + ", replayTopic=" + replayTopic + ", stateFile=" + stateFile
+               + ", directApply=" + directApply
+               + ", batchMaxRecords=" + batchMaxRecords + ", batchMaxBytes=" + batchMaxBytes
+               + ", batchLingerMillis=" + batchLingerMillis + ", maxTransactionMillis=" + maxTransactionMillis
+               + ", parseThreads=" + parseThreads
+               + ", multiPartition=" + multiPartition
+               + ", sharedConsumer=" + sharedConsumer
+               + ", prefetchBytes=" + prefetchBytes
+               + ", stateCheckpointMillis=" + stateCheckpointMillis
+               + ", stateCheckpointOffsets=" + stateCheckpointOffsets
+               + ", offsetInDataset=" + offsetInDataset
+               + ", stateJournal=" + stateJournal
+               + ", archiveDirectory=" + archiveDirectory
+               + ", bulkLoad=" + bulkLoad
+               + ", snapshotDirectory=" + snapshotDirectory
+               + ", snapshotIntervalMillis=" + snapshotIntervalMillis
+               + ", snapshotRetain=" + snapshotRetain
+               + ", snapshotBytesPerSecond=" + snapshotBytesPerSecond
+               + ", nodeCacheSize=" + nodeCacheSize
+               + ", controlUsers=" + controlUsers
                + "]";
     }
+
+    /** Builder for a {@link KConnectorDesc}. */
+    public static class Builder {
+        private String topic = null;
+        private String bootstrapServers = null;
+        private String fusekiDispatchName = null;
+        private String remoteEndpoint = null;
+        private String stateFile = null;
+        private boolean syncTopic = true;
+        private boolean replayTopic = false;
+        private Properties kafkaConsumerProps = null;
+        private boolean directApply = false;
+        private int batchMaxRecords = -1;
+        private long batchMaxBytes = -1;
+        private long batchLingerMillis = -1;
+        private long maxTransactionMillis = -1;
+        private int parseThreads = 0;
+        private boolean multiPartition = false;
+        private boolean sharedConsumer = false;
+        private long prefetchBytes = -1;
+        private long stateCheckpointMillis = -1;
+        private long stateCheckpointOffsets = -1;
+        private boolean offsetInDataset = false;
+        private String stateJournal = null;
+        private String archiveDirectory = null;
+        private String bulkLoad = null;
+        private String snapshotDirectory = null;
+        private long snapshotIntervalMillis = -1;
+        private int snapshotRetain = -1;
+        private long snapshotBytesPerSecond = -1;
+        private int nodeCacheSize = -1;
+        private String controlUsers = null;
+
+        private Builder() {}
+
+        public Builder topic(String topic) {
+            this.topic = topic;
+            return this;
+        }
+
+        public Builder bootstrapServers(String bootstrapServers) {
+            this.bootstrapServers = bootstrapServers;
+            return this;
+        }
+
+        public Builder fusekiDispatchName(String fusekiDispatchName) {
+            this.fusekiDispatchName = fusekiDispatchName;
+            return this;
+        }
+
+        public Builder remoteEndpoint(String remoteEndpoint) {
+            this.remoteEndpoint = remoteEndpoint;
+            return this;
+        }
+
+        public Builder stateFile(String stateFile) {
+            this.stateFile = stateFile;
+            return this;
+        }
+
+        public Builder syncTopic(boolean syncTopic) {
+            this.syncTopic = syncTopic;
+            return this;
+        }
+
+        public Builder replayTopic(boolean replayTopic) {
+            this.replayTopic = replayTopic;
+            return this;
+        }
+
+        public Builder kafkaConsumerProps(Properties kafkaConsumerProps) {
+            this.kafkaConsumerProps = kafkaConsumerProps;
+            return this;
+        }
+
+        public Builder directApply(boolean directApply) {
+            this.directApply = directApply;
+            return this;
+        }
+
+        public Builder batchMaxRecords(int batchMaxRecords) {
+            this.batchMaxRecords = batchMaxRecords;
+            return this;
+        }
+
+        public Builder batchMaxBytes(long batchMaxBytes) {
+            this.batchMaxBytes = batchMaxBytes;
+            return this;
+        }
+
+        public Builder batchLingerMillis(long batchLingerMillis) {
+            this.batchLingerMillis = batchLingerMillis;
+            return this;
+        }
+
+        public Builder maxTransactionMillis(long maxTransactionMillis) {
+            this.maxTransactionMillis = maxTransactionMillis;
+            return this;
+        }
+
+        public Builder parseThreads(int parseThreads) {
+            this.parseThreads = parseThreads;
+            return this;
+        }
+
+        public Builder multiPartition(boolean multiPartition) {
+            this.multiPartition = multiPartition;
+            return this;
+        }
+
+        public Builder sharedConsumer(boolean sharedConsumer) {
+            this.sharedConsumer = sharedConsumer;
+            return this;
+        }
+
+        public Builder prefetchBytes(long prefetchBytes) {
+            this.prefetchBytes = prefetchBytes;
+            return this;
+        }
+
+        public Builder stateCheckpointMillis(long stateCheckpointMillis) {
+            this.stateCheckpointMillis = stateCheckpointMillis;
+            return this;
+        }
+
+        public Builder stateCheckpointOffsets(long stateCheckpointOffsets) {
+            this.stateCheckpointOffsets = stateCheckpointOffsets;
+            return this;
+        }
+
+        public Builder offsetInDataset(boolean offsetInDataset) {
+            this.offsetInDataset = offsetInDataset;
+            return this;
+        }
+
+        public Builder stateJournal(String stateJournal) {
+            this.stateJournal = stateJournal;
+            return this;
+        }
+
+        public Builder archiveDirectory(String archiveDirectory) {
+            this.archiveDirectory = archiveDirectory;
+            return this;
+        }
+
+        public Builder bulkLoad(String bulkLoad) {
+            this.bulkLoad = bulkLoad;
+            return this;
+        }
+
+        public Builder snapshotDirectory(String snapshotDirectory) {
+            this.snapshotDirectory = snapshotDirectory;
+            return this;
+        }
+
+        public Builder snapshotIntervalMillis(long snapshotIntervalMillis) {
+            this.snapshotIntervalMillis = snapshotIntervalMillis;
+            return this;
+        }
+
+        public Builder snapshotRetain(int snapshotRetain) {
+            this.snapshotRetain = snapshotRetain;
+            return this;
+        }
+
+        public Builder snapshotBytesPerSecond(long snapshotBytesPerSecond) {
+            this.snapshotBytesPerSecond = snapshotBytesPerSecond;
+            return this;
+        }
+
+        public Builder nodeCacheSize(int nodeCacheSize) {
+            this.nodeCacheSize = nodeCacheSize;
+            return this;
+        }
+
+        public Builder controlUsers(String controlUsers) {
+            this.controlUsers = controlUsers;
+            return this;
+        }
+
+        public KConnectorDesc build() {
+            return new KConnectorDesc(this);
+        }
+    }
 }
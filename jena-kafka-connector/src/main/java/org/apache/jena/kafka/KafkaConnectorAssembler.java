@@ -101,6 +101,71 @@ public class KafkaConnectorAssembler extends AssemblerBase implements Assembler
     /** Replay whole topic on startup? */
 
     private static Node pReplayTopic           = NodeFactory.createURI(NS+"replayTopic");
+
+    /**
+     * Apply messages directly to the dataset, one transaction per batch, instead of
+     * dispatching each message through the Fuseki server.
+     */
+    public static Node pDirectApply           = NodeFactory.createURI(NS+"directApply");
+
+    // Batching: how Kafka records are grouped into transactions.
+    /** Maximum number of records in a batch. */
+    public static Node pBatchMaxRecords       = NodeFactory.createURI(NS+"batchMaxRecords");
+    /** Maximum payload bytes in a batch. */
+    public static Node pBatchMaxBytes         = NodeFactory.createURI(NS+"batchMaxBytes");
+    /** Milliseconds to accumulate records across polls before processing. */
+    public static Node pBatchLinger           = NodeFactory.createURI(NS+"batchLinger");
+    /** Maximum milliseconds for one batch transaction. */
+    public static Node pMaxTransactionTime    = NodeFactory.createURI(NS+"maxTransactionTime");
+
+    /** Number of threads to parse messages ahead of applying them (with direct apply). */
+    public static Node pParseThreads          = NodeFactory.createURI(NS+"parseThreads");
+
+    /** Consume all partitions of the topic, each with its own offset. */
+    public static Node pMultiPartition        = NodeFactory.createURI(NS+"multiPartition");
+
+    /** Share a Kafka consumer with other connectors to the same Kafka cluster. */
+    public static Node pSharedConsumer        = NodeFactory.createURI(NS+"sharedConsumer");
+
+    /** Bytes of Kafka records to fetch ahead of processing them. */
+    public static Node pPrefetchBytes         = NodeFactory.createURI(NS+"prefetchBytes");
+
+    /** Interval, in milliseconds, between writes of the state file. */
+    public static Node pStateCheckpointMillis = NodeFactory.createURI(NS+"stateCheckpointMillis");
+
+    /** Number of offsets between writes of the state file. */
+    public static Node pStateCheckpointOffsets = NodeFactory.createURI(NS+"stateCheckpointOffsets");
+
+    /** Record the offset in the dataset, in the transaction of each batch. */
+    public static Node pOffsetInDataset      = NodeFactory.createURI(NS+"offsetInDataset");
+
+    /** State journal file, shared by connectors, used instead of the state file of each connector. */
+    public static Node pStateJournal         = NodeFactory.createURI(NS+"stateJournal");
+
+    /** Directory for a local archive of the records consumed, used to catch up without reading the topic. */
+    public static Node pArchiveDirectory     = NodeFactory.createURI(NS+"archiveDirectory");
+
+    /** TDB2 loader for the initial load of an empty dataset by a connector with no state. */
+    public static Node pBulkLoad             = NodeFactory.createURI(NS+"bulkLoad");
+
+    /** Directory of dataset snapshots tagged with topic offsets, used to start a new replica. */
+    public static Node pSnapshotDirectory    = NodeFactory.createURI(NS+"snapshotDirectory");
+
+    /** Interval, in milliseconds, between snapshots written to the snapshot directory. */
+    public static Node pSnapshotInterval     = NodeFactory.createURI(NS+"snapshotInterval");
+
+    /** Number of snapshots kept in the snapshot directory. */
+    public static Node pSnapshotRetain       = NodeFactory.createURI(NS+"snapshotRetain");
+
+    /** Maximum rate, in bytes per second, of writing a snapshot. */
+    public static Node pSnapshotBytesPerSecond = NodeFactory.createURI(NS+"snapshotBytesPerSecond");
+
+    /** Number of entries in the cache of IRIs to nodes kept across messages when parsing. */
+    public static Node pNodeCacheSize        = NodeFactory.createURI(NS+"nodeCacheSize");
+
+    /** Users allowed to see and control the connector at the status and control endpoint. */
+    public static Node pControlUsers         = NodeFactory.createURI(NS+"controlUsers");
+
     /**
      * Destination for dumped events.
      * A destination of "" is stdout. "stdout" and "stderr" map to the channels of the same name.
@@ -123,6 +188,10 @@ public class KafkaConnectorAssembler extends AssemblerBase implements Assembler
     // Values.
     private static boolean dftSyncTopic       = true;
     private static boolean dftReplayTopic     = false;
+    private static boolean dftDirectApply     = false;
+    private static boolean dftMultiPartition  = false;
+    private static boolean dftSharedConsumer  = false;
+    private static boolean dftOffsetInDataset = false;
     public static String dftKafkaGroupId      = "JenaFusekiKafka";
 
     public static Resource getType() {
@@ -186,6 +255,76 @@ public class KafkaConnectorAssembler extends AssemblerBase implements Assembler
          *
          *     ## Relay to a remote triplestore.
          *     fk:remoteEndpoint    "http://host/triplestore";
+         *
+         *     ## true means apply to the dataset with one transaction per batch
+         *     ## (by-passes the Fuseki dispatch of each message).
+         *     fk:directApply       false;
+         *
+         *     ## Batching - no limits by default (one batch per Kafka poll).
+         *     fk:batchMaxRecords   5000;
+         *     fk:batchMaxBytes     10000000;
+         *     ## Milliseconds to accumulate records across polls.
+         *     fk:batchLinger       1000;
+         *     ## Milliseconds after which a batch transaction is split.
+         *     fk:maxTransactionTime 500;
+         *
+         *     ## Threads to parse messages while applying earlier ones (direct apply only).
+         *     fk:parseThreads      4;
+         *
+         *     ## Consume all partitions of the topic (default: only partition 0).
+         *     ## Use when producers partition by key, e.g. by named graph.
+         *     fk:multiPartition    false;
+         *
+         *     ## Share one Kafka consumer, and polling thread, with other connectors
+         *     ## having the same bootstrap servers and Kafka settings.
+         *     ## Not with fk:prefetchBytes or fk:bulkLoad.
+         *     fk:sharedConsumer    false;
+         *
+         *     ## Fetch from Kafka on a separate thread, up to this many bytes ahead.
+         *     ## Large bodies keep their Kafka fetch buffer in memory while waiting.
+         *     fk:prefetchBytes     50000000;
+         *
+         *     ## Write the state file at most every 1000ms or 10000 offsets (default: every batch).
+         *     ## After a crash, up to this many messages are applied again.
+         *     fk:stateCheckpointMillis   1000;
+         *     fk:stateCheckpointOffsets  10000;
+         *
+         *     ## Record the offset in the dataset, in the same transaction as each batch
+         *     ## (with fk:directApply). The dataset, not the state file, is then the record
+         *     ## of what has been applied.
+         *     fk:offsetInDataset  false;
+         *
+         *     ## Keep the state in a journal file shared by all connectors with the same
+         *     ## journal, instead of the state file. An existing state file is migrated.
+         *     fk:stateJournal     "Databases/kafka-state.journal";
+         *
+         *     ## Keep the records consumed in compressed segment files in this directory.
+         *     ## Catching up, or a replay, reads the archive then the rest of the topic.
+         *     fk:archiveDirectory "Databases/kafka-archive";
+         *
+         *     ## Starting with no state and an empty TDB2 dataset, load the data messages
+         *     ## up to the end of the topic with the TDB2 bulk loader (basic, sequential,
+         *     ## phased or parallel).
+         *     fk:bulkLoad         "parallel";
+         *
+         *     ## Starting with no state and an empty dataset, load the latest snapshot
+         *     ## in this directory and continue from the topic offsets it records.
+         *     fk:snapshotDirectory "Databases/snapshots";
+         *
+         *     ## Write a snapshot of the dataset, with the offsets applied, to the
+         *     ## snapshot directory every hour, keeping the latest 3, writing at
+         *     ## most 20MB a second. Needs fk:directApply and fk:offsetInDataset.
+         *     fk:snapshotInterval 3600000;
+         *     fk:snapshotRetain   3;
+         *     fk:snapshotBytesPerSecond 20000000;
+         *
+         *     ## Entries in the cache of IRIs to nodes kept across the messages of
+         *     ## the connector when parsing. 0 for no cache.
+         *     fk:nodeCacheSize    100000;
+         *
+         *     ## Make the connector available at /$/kafka to these
+         *     ## authenticated users (the server needs a password file).
+         *     fk:controlUsers     "admin";
          *     .
          */
 
@@ -200,6 +339,38 @@ public class KafkaConnectorAssembler extends AssemblerBase implements Assembler
 
         boolean syncTopic = Assem2.getBooleanOrDft(graph, node, pSyncTopic, dftSyncTopic, errorException);
         boolean replayTopic = Assem2.getBooleanOrDft(graph, node, pReplayTopic, dftReplayTopic, errorException);
+        boolean directApply = Assem2.getBooleanOrDft(graph, node, pDirectApply, dftDirectApply, errorException);
+
+        long batchMaxRecords = Assem2.getLongOrDft(graph, node, pBatchMaxRecords, -1, errorException);
+        long batchMaxBytes = Assem2.getLongOrDft(graph, node, pBatchMaxBytes, -1, errorException);
+        long batchLinger = Assem2.getLongOrDft(graph, node, pBatchLinger, -1, errorException);
+        long maxTransactionTime = Assem2.getLongOrDft(graph, node, pMaxTransactionTime, -1, errorException);
+        long parseThreads = Assem2.getLongOrDft(graph, node, pParseThreads, 0, errorException);
+        boolean multiPartition = Assem2.getBooleanOrDft(graph, node, pMultiPartition, dftMultiPartition, errorException);
+        boolean sharedConsumer = Assem2.getBooleanOrDft(graph, node, pSharedConsumer, dftSharedConsumer, errorException);
+        long prefetchBytes = Assem2.getLongOrDft(graph, node, pPrefetchBytes, -1, errorException);
+        long stateCheckpointMillis = Assem2.getLongOrDft(graph, node, pStateCheckpointMillis, -1, errorException);
+        long stateCheckpointOffsets = Assem2.getLongOrDft(graph, node, pStateCheckpointOffsets, -1, errorException);
+        boolean offsetInDataset = Assem2.getBooleanOrDft(graph, node, pOffsetInDataset, dftOffsetInDataset, errorException);
+        String stateJournal = Assem2.getStringOrDft(graph, node, pStateJournal, null, errorException);
+        String archiveDirectory = Assem2.getStringOrDft(graph, node, pArchiveDirectory, null, errorException);
+        String bulkLoad = Assem2.getStringOrDft(graph, node, pBulkLoad, null, errorException);
+        // A shared consumer is polled by its own thread for all its connectors.
+        if ( sharedConsumer && prefetchBytes > 0 )
+            throw error(node, pPrefetchBytes, "fk:prefetchBytes can not be used with fk:sharedConsumer");
+        if ( sharedConsumer && bulkLoad != null )
+            throw error(node, pBulkLoad, "fk:bulkLoad can not be used with fk:sharedConsumer");
+        if ( sharedConsumer && batchLinger > 0 )
+            throw error(node, pBatchLinger, "fk:batchLinger can not be used with fk:sharedConsumer");
+        String snapshotDirectory = Assem2.getStringOrDft(graph, node, pSnapshotDirectory, null, errorException);
+        long snapshotInterval = Assem2.getLongOrDft(graph, node, pSnapshotInterval, -1, errorException);
+        // The offsets of a snapshot must be read in the same transaction as the data.
+        if ( snapshotInterval > 0 && ! ( directApply && offsetInDataset ) )
+            throw error(node, pSnapshotInterval, "Snapshots need fk:directApply and fk:offsetInDataset");
+        long snapshotRetain = Assem2.getLongOrDft(graph, node, pSnapshotRetain, -1, errorException);
+        long snapshotBytesPerSecond = Assem2.getLongOrDft(graph, node, pSnapshotBytesPerSecond, -1, errorException);
+        long nodeCacheSize = Assem2.getLongOrDft(graph, node, pNodeCacheSize, -1, errorException);
+        String controlUsers = Assem2.getStringOrDft(graph, node, pControlUsers, null, errorException);
 
         String eventSource = Assem2.getStringOrDft(graph, node, pEventSource, null, errorException);
         if ( eventSource != null )
@@ -224,6 +395,15 @@ public class KafkaConnectorAssembler extends AssemblerBase implements Assembler
         if ( stateFile.startsWith("file:") )
             stateFile = IRILib.IRIToFilename(stateFile);
 
+        if ( stateJournal != null && stateJournal.startsWith("file:") )
+            stateJournal = IRILib.IRIToFilename(stateJournal);
+
+        if ( archiveDirectory != null && archiveDirectory.startsWith("file:") )
+            archiveDirectory = IRILib.IRIToFilename(archiveDirectory);
+
+        if ( snapshotDirectory != null && snapshotDirectory.startsWith("file:") )
+            snapshotDirectory = IRILib.IRIToFilename(snapshotDirectory);
+
         String groupIdAssembler = Assem2.getStringOrDft(graph, node, pKafkaGroupId, dftKafkaGroupId, errorException);
         // We need the group id to be unique so multiple servers will
         // see all the messages topic partition.
@@ -231,9 +411,37 @@ public class KafkaConnectorAssembler extends AssemblerBase implements Assembler
 
         // ----
         Properties kafkaConsumerProps = kafkaConsumerProps(graph,  node,  topic, bootstrapServers, groupId);
-        return new KConnectorDesc(topic, bootstrapServers,
-                                       datasetName, remoteEndpoint, stateFile, syncTopic,
-                                       replayTopic, kafkaConsumerProps);
+        return KConnectorDesc.create()
+                .topic(topic)
+                .bootstrapServers(bootstrapServers)
+                .fusekiDispatchName(datasetName)
+                .remoteEndpoint(remoteEndpoint)
+                .stateFile(stateFile)
+                .syncTopic(syncTopic)
+                .replayTopic(replayTopic)
+                .kafkaConsumerProps(kafkaConsumerProps)
+                .directApply(directApply)
+                .batchMaxRecords(Math.toIntExact(batchMaxRecords))
+                .batchMaxBytes(batchMaxBytes)
+                .batchLingerMillis(batchLinger)
+                .maxTransactionMillis(maxTransactionTime)
+                .parseThreads(Math.toIntExact(parseThreads))
+                .multiPartition(multiPartition)
+                .sharedConsumer(sharedConsumer)
+                .prefetchBytes(prefetchBytes)
+                .stateCheckpointMillis(stateCheckpointMillis)
+                .stateCheckpointOffsets(stateCheckpointOffsets)
+                .offsetInDataset(offsetInDataset)
+                .stateJournal(stateJournal)
+                .archiveDirectory(archiveDirectory)
+                .bulkLoad(bulkLoad)
+                .snapshotDirectory(snapshotDirectory)
+                .snapshotIntervalMillis(snapshotInterval)
+                .snapshotRetain(Math.toIntExact(snapshotRetain))
+                .snapshotBytesPerSecond(snapshotBytesPerSecond)
+                .nodeCacheSize(Math.toIntExact(nodeCacheSize))
+                .controlUsers(controlUsers)
+                .build();
     }
 
     private Properties kafkaConsumerProps(Graph graph, Node node,
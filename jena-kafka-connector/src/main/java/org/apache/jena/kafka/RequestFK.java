@@ -16,6 +16,7 @@
 
 package org.apache.jena.kafka;
 
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -26,4 +27,14 @@ public class RequestFK extends ActionKafka {
     public RequestFK(String topic, Map<String, String> headers, byte[] bytes) {
         super(topic, headers, bytes);
     }
+
+    /** Request with a body that is read from an {@link InputStream}. */
+    public RequestFK(String topic, Map<String, String> headers, InputStream bytesInput) {
+        super(topic, headers, bytesInput);
+    }
+
+    /** Request with a body that is {@code length} bytes of {@code bytes} starting at {@code offset}. */
+    public RequestFK(String topic, Map<String, String> headers, byte[] bytes, int offset, int length) {
+        super(topic, headers, bytes, offset, length);
+    }
 }
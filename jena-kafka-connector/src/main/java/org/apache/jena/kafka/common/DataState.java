@@ -19,7 +19,10 @@ package org.apache.jena.kafka.common;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.atlas.json.JSON;
@@ -29,7 +32,22 @@ import org.apache.jena.kafka.refs.RefBytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Track the state of data ingested from Kafka.  */
+/**
+ * Track the state of data ingested from Kafka.
+ * <p>
+ * The offset is for partition 0 of the topic. When all the partitions of a topic
+ * are consumed, the offsets of the other partitions are recorded as
+ * {@code "partitions"} in the state.
+ * <p>
+ * By default, the state is written each time an offset is set. With a checkpoint
+ * policy ({@link #setCheckpointPolicy}), the state is written when the given time
+ * has passed, or the offsets have advanced by the given amount, since the last
+ * write. Call {@link #checkpoint} periodically, so that state is written when
+ * messages stop arriving, and {@link #flush} on shutdown.
+ * <p>
+ * After a crash, the connector restarts from the last state written, so up to
+ * the checkpoint interval's worth of messages (time or offsets) is applied again.
+ */
 public class DataState {
     static Logger LOG = LoggerFactory.getLogger(DataState.class);
 
@@ -38,6 +56,7 @@ public class DataState {
     private static String fEndpoint = "endpoint";
     private static String fTopic = "topic";
     private static String fOffset = "offset";
+    private static String fPartitions = "partitions";
 
     private final String dispatchPath;
     private final String remoteEndpoint;
@@ -48,6 +67,17 @@ public class DataState {
     //  0 : first to be written
     //  X : Last Kafka offset read is X-1.
     private long offset;
+    // Partition number to last offset, for partitions other than 0.
+    // Empty when only partition 0 is used.
+    private final Map<Integer, Long> partitionOffsets = new TreeMap<>();
+
+    // Checkpoint policy. Zero or less for "not used".
+    private long checkpointMillis = -1;
+    private long checkpointOffsets = -1;
+    // Changes since the last write.
+    private boolean dirty = false;
+    private long offsetsSinceWrite = 0;
+    private long lastWriteMillis = System.currentTimeMillis();
 
     /** Minimal dummy DataState */
     public static DataState createEphemeral(String topic) {
@@ -94,24 +124,70 @@ public class DataState {
             throw new JenaKafkaException("Topic does not match: loaded="+dataState.dispatchPath+ " / expected=" +topic);
     }
 
-    private void writeState() {
-        if ( state == null )
+    /**
+     * Write the state when {@code millis} milliseconds have passed, or the offsets
+     * have advanced by {@code offsets}, since the last write. Zero or less for
+     * either value means that condition is not used; if both are unused, the state
+     * is written every time an offset is set.
+     */
+    public synchronized void setCheckpointPolicy(long millis, long offsets) {
+        this.checkpointMillis = millis;
+        this.checkpointOffsets = offsets;
+    }
+
+    /** Whether writing the state is delayed by a checkpoint policy. */
+    public synchronized boolean hasCheckpointPolicy() {
+        return checkpointMillis > 0 || checkpointOffsets > 0;
+    }
+
+    /** Write the state if there are changes and the checkpoint time interval has passed. */
+    public synchronized void checkpoint() {
+        if ( dirty && checkpointMillis > 0 && System.currentTimeMillis() - lastWriteMillis >= checkpointMillis )
+            writeState();
+    }
+
+    /** Write the state if there are changes not yet written. */
+    public synchronized void flush() {
+        if ( dirty )
+            writeState();
+    }
+
+    /** Record a change of offset, writing the state if the checkpoint policy says so. */
+    private void changed(long previousOffset, long newOffset) {
+        dirty = true;
+        if ( ! hasCheckpointPolicy() ) {
+            writeState();
+            return;
+        }
+        offsetsSinceWrite += ( previousOffset < 0 ) ? 1 : Math.max(0, newOffset - previousOffset);
+        if ( checkpointOffsets > 0 && offsetsSinceWrite >= checkpointOffsets ) {
+            writeState();
             return;
-        // Via JSON.
-        JsonObject obj = asJson();
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        try ( IndentedWriter b = new IndentedWriter(output) ) {
-            //b.setFlatMode(true);
-            JSON.write(b, obj);
-            b.println();
         }
+        checkpoint();
+    }
 
-        //FmtLog.info(LOG, "[%s] DataState new offset = %d", getTopic(), offset);
-        state.setBytes(output.toByteArray());
+    private void writeState() {
+        if ( state != null ) {
+            // Via JSON.
+            JsonObject obj = asJson();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try ( IndentedWriter b = new IndentedWriter(output) ) {
+                //b.setFlatMode(true);
+                JSON.write(b, obj);
+                b.println();
+            }
+            //FmtLog.info(LOG, "[%s] DataState new offset = %d", getTopic(), offset);
+            state.setBytes(output.toByteArray());
+        }
+        // Only when written: if setBytes fails, the changes are still to be written.
+        dirty = false;
+        offsetsSinceWrite = 0;
+        lastWriteMillis = System.currentTimeMillis();
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         JsonObject obj = asJson();
         return JSON.toStringFlat(obj);
     }
@@ -124,6 +200,11 @@ public class DataState {
                 builder.pair(fEndpoint, remoteEndpoint);
             builder.pair(fTopic,   topic);
             builder.pair(fOffset,  offset);
+            if ( ! partitionOffsets.isEmpty() ) {
+                JsonObject partitions = new JsonObject();
+                partitionOffsets.forEach((p, x)->partitions.put(Integer.toString(p), x));
+                builder.pair(fPartitions, partitions);
+            }
             });
     }
 
@@ -167,6 +248,21 @@ public class DataState {
 
         DataState dataState = new DataState(state, datasetName, endpoint, topic);
         dataState.offset = offset;
+        if ( obj.hasKey(fPartitions) ) {
+            JsonObject partitions = obj.getObj(fPartitions);
+            if ( partitions == null )
+                throw new JenaKafkaException("Bad partitions: "+JSON.toStringFlat(obj));
+            for ( String key : partitions.keys() ) {
+                Number partitionOffset = partitions.getNumber(key);
+                if ( partitionOffset == null )
+                    throw new JenaKafkaException("Bad partition offset: "+JSON.toStringFlat(obj));
+                try {
+                    dataState.partitionOffsets.put(Integer.parseInt(key), partitionOffset.longValue());
+                } catch (NumberFormatException ex) {
+                    throw new JenaKafkaException("Bad partition number: "+JSON.toStringFlat(obj));
+                }
+            }
+        }
         return dataState;
     }
 
@@ -178,7 +274,7 @@ public class DataState {
      * <p>
      * {@code DataState} records last offset seen.
      */
-    public long getLastOffset() {
+    public synchronized long getLastOffset() {
         return offset;
     }
 
@@ -190,9 +286,42 @@ public class DataState {
      * <p>
      * {@code DataState} records last offset seen.
      */
-    public void setLastOffset(long offset) {
+    public synchronized void setLastOffset(long offset) {
+        long previous = this.offset;
         this.offset = offset;
-        writeState();
+        changed(previous, offset);
+    }
+
+    /**
+     * Last offset seen for a partition of the topic.
+     * Returns -1 if the partition has not been seen.
+     */
+    public synchronized long getLastOffset(int partition) {
+        if ( partition == 0 )
+            return offset;
+        return partitionOffsets.getOrDefault(partition, -1L);
+    }
+
+    /**
+     * Set the last offset seen for a partition of the topic.
+     * <p>
+     * This is safe to call from different threads, one thread per partition.
+     */
+    public synchronized void setLastOffset(int partition, long offset) {
+        long previous = getLastOffset(partition);
+        if ( partition == 0 )
+            this.offset = offset;
+        else
+            partitionOffsets.put(partition, offset);
+        changed(previous, offset);
+    }
+
+    /** The last offset seen for each partition that has been seen, including partition 0. */
+    public synchronized Map<Integer, Long> getPartitionOffsets() {
+        Map<Integer, Long> x = new TreeMap<>(partitionOffsets);
+        if ( offset >= 0 )
+            x.put(0, offset);
+        return Collections.unmodifiableMap(x);
     }
 
     public String getDatasetName() {
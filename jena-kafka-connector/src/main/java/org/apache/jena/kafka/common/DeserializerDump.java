@@ -23,15 +23,25 @@ import java.io.StringWriter;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.kafka.JK;
+import org.apache.jena.rdfpatch.RDFPatch;
 import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.update.UpdateFactory;
 import org.apache.jena.update.UpdateRequest;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.Deserializer;
 
-/** Print out the events. */
+/**
+ * Print out the events.
+ * <p>
+ * RDF data, including the binary formats, is printed as TriG and RDF Patch,
+ * text or binary, is printed as text. Binary content that can not be read is
+ * summarized, not printed.
+ */
 public class DeserializerDump implements Deserializer<String> {
 
     public DeserializerDump() {}
@@ -50,12 +60,16 @@ public class DeserializerDump implements Deserializer<String> {
         if ( a.get() )
             sbuff.append("\n");
 
+        Header ctHeader = headers.lastHeader(hContentType);
+        String contentType = ( ctHeader == null ) ? null : JK.contentType(ctHeader.value());
         try {
             // Library
-            String contentType = Bytes.bytes2string(headers.lastHeader(hContentType).value());
             if ( WebContent.contentTypeSPARQLUpdate.equals(contentType) ) {
                 bodyUpdate(sbuff, topic, data);
                 return sbuff.toString();
+            } else if ( ParseFK.isPatch(contentType) ) {
+                bodyPatch(sbuff, topic, contentType, data);
+                return sbuff.toString();
             } else {
                 Lang lang = RDFLanguages.contentTypeToLang(contentType);
                 if ( lang != null ) {
@@ -64,18 +78,26 @@ public class DeserializerDump implements Deserializer<String> {
                 }
             }
         } catch (RuntimeException ex) {}
+        if ( JK.isBinaryRDF(contentType) )
+            return sbuff.append(String.format("[%d bytes]\n", data.length)).toString();
         return Bytes.bytes2string(data);
     }
 
     private void bodyLang(StringBuilder sbuff, String topic, Lang lang, byte[] data) {
         ByteArrayInputStream bytesIn = new ByteArrayInputStream(data);
         DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
-        RDFDataMgr.read(dsg, bytesIn, lang);
+        ParseFK.parse(lang, bytesIn, StreamRDFLib.dataset(dsg));
         StringWriter sw = new StringWriter();
         RDFDataMgr.write(sw, dsg, RDFFormat.TRIG_BLOCKS);
         sbuff.append(sw.toString());
     }
 
+    private void bodyPatch(StringBuilder sbuff, String topic, String contentType, byte[] data) {
+        ByteArrayInputStream bytesIn = new ByteArrayInputStream(data);
+        RDFPatch patch = ParseFK.readPatch(contentType, bytesIn);
+        sbuff.append(patch.toString());
+    }
+
     private void bodyUpdate(StringBuilder sbuff, String topic, byte[] data) {
         ByteArrayInputStream bytesIn = new ByteArrayInputStream(data);
         UpdateRequest req = UpdateFactory.read(bytesIn);
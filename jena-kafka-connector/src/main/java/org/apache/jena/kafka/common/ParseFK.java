@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.common;
+
+import java.io.InputStream;
+
+import org.apache.jena.rdfpatch.RDFPatch;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.protobuf.ProtobufRDF;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.thrift.ThriftRDF;
+
+/**
+ * Parsing message bodies.
+ * <p>
+ * The binary encodings (RDF Thrift, RDF Protobuf, binary RDF Patch) are read
+ * directly with the Thrift and Protobuf decoders, without setting up an
+ * {@link RDFParser} for each message. They carry terms already split into their
+ * parts, so there is no IRI or literal parsing to do.
+ */
+public class ParseFK {
+
+    /** Whether the content type is RDF Patch, text or binary. */
+    public static boolean isPatch(String contentType) {
+        return WebContent.contentTypePatch.equals(contentType)
+            || WebContent.contentTypePatchThrift.equals(contentType);
+    }
+
+    /** Parse RDF data in the language {@code lang} to a {@link StreamRDF}. */
+    public static void parse(Lang lang, InputStream data, StreamRDF dest) {
+        if ( RDFLanguages.sameLang(Lang.RDFTHRIFT, lang) ) {
+            ThriftRDF.inputStreamToStream(data, dest);
+            return;
+        }
+        if ( RDFLanguages.sameLang(Lang.RDFPROTO, lang) ) {
+            ProtobufRDF.inputStreamToStreamRDF(data, dest);
+            return;
+        }
+        RDFParser.source(data).lang(lang).parse(dest);
+    }
+
+    /** Read an RDF Patch, text or binary according to the content type. */
+    public static RDFPatch readPatch(String contentType, InputStream data) {
+        if ( WebContent.contentTypePatchThrift.equals(contentType) )
+            return RDFPatchOps.readBinary(data);
+        return RDFPatchOps.read(data);
+    }
+}
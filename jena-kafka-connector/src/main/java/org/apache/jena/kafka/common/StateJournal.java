@@ -0,0 +1,347 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.kafka.JenaKafkaException;
+import org.apache.jena.kafka.refs.RefBytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One append-only file holding the state of several connectors.
+ * <p>
+ * Each update is appended as a record: length, CRC32, key and value. The latest
+ * record for a key is its current value. On opening, the file is read to the end
+ * or to the first incomplete or damaged record (a write interrupted by a crash),
+ * and the file is truncated there.
+ * <p>
+ * Updates are group-committed: an update returns when its record is on disk, and
+ * one {@code force} covers the records of all connectors that were appended while
+ * the previous {@code force} was in progress.
+ * <p>
+ * When the file has grown to more than {@link #compactBytes} and is mostly old
+ * records, it is rewritten with only the current value of each key.
+ */
+public class StateJournal {
+    static Logger LOG = LoggerFactory.getLogger(StateJournal.class);
+
+    /** Compact when the file is bigger than this and more than twice the size of the live records. */
+    public static long compactBytes = 4*1024*1024;
+
+    private static final Map<Path, StateJournal> journals = new ConcurrentHashMap<>();
+
+    /**
+     * The journal for a file, shared by all the users of the file in this JVM.
+     * Each call to {@code open} should be matched by a call to {@link #release}.
+     */
+    public static StateJournal open(String filename) {
+        Path path = path(filename);
+        return journals.compute(path, (p, journal) -> {
+            if ( journal == null )
+                journal = new StateJournal(p);
+            journal.users++;
+            return journal;
+        });
+    }
+
+    /** Finished with a journal; the file is closed when it has no other users. */
+    public static void release(String filename) {
+        Path path = path(filename);
+        journals.computeIfPresent(path, (p, journal) -> {
+            if ( --journal.users > 0 )
+                return journal;
+            journal.close();
+            return null;
+        });
+    }
+
+    /** Close all journals, whatever their users. */
+    public static void closeAll() {
+        journals.values().forEach(StateJournal::close);
+        journals.clear();
+    }
+
+    private static Path path(String filename) {
+        return Path.of(filename).toAbsolutePath().normalize();
+    }
+
+    // Record: int length (of the rest of the record), int CRC32 (of the rest of the record),
+    // short key length, key bytes (UTF-8), value bytes.
+    private static final int recordHeader = 4 + 4;
+
+    private final Path path;
+    private final Map<String, byte[]> values = new HashMap<>();
+    private FileChannel channel;
+    // End of the records written to the file.
+    private long fileEnd = 0;
+    private long liveBytes = 0;
+    // Calls to open not yet released; changed only inside the journals map.
+    private int users = 0;
+
+    // Records appended, not yet written.
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    // Sequence numbers for group commit: appended, and written and forced.
+    private long appendedSeq = 0;
+    private long syncedSeq = 0;
+    // Held while writing and forcing; appending only needs the journal lock.
+    private final Object syncLock = new Object();
+
+    private StateJournal(Path path) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException ex) {
+            throw new JenaKafkaException("Failed to open state journal: "+path, ex);
+        }
+    }
+
+    /** The journal file. */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The entry for a key. If the journal does not have the key and
+     * {@code migrateFrom} is a non-empty file, the entry starts with the contents
+     * of that file (for example, an existing connector state file). Once the
+     * journal has the contents on disk, the file is renamed with the suffix
+     * {@code .migrated} so that it is not mistaken for the current state.
+     */
+    public RefBytes entry(String key, Path migrateFrom) {
+        boolean migrate = false;
+        synchronized(this) {
+            if ( ! values.containsKey(key) && migrateFrom != null && Files.exists(migrateFrom) ) {
+                try {
+                    byte[] bytes = Files.readAllBytes(migrateFrom);
+                    if ( bytes.length > 0 ) {
+                        FmtLog.info(LOG, "Migrating %s to state journal %s", migrateFrom, path);
+                        append(key, bytes);
+                        migrate = true;
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+        if ( migrate ) {
+            sync(appendedSeq());
+            Path migrated = migrateFrom.resolveSibling(migrateFrom.getFileName()+".migrated");
+            try {
+                Files.move(migrateFrom, migrated, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                FmtLog.warn(LOG, ex, "Failed to rename %s to %s after migration", migrateFrom, migrated);
+            }
+        }
+        return new RefBytes() {
+            @Override
+            public byte[] getBytes() {
+                return StateJournal.this.get(key);
+            }
+
+            @Override
+            public void setBytes(byte[] bytes) {
+                StateJournal.this.put(key, bytes);
+            }
+        };
+    }
+
+    /** Current value for a key; an empty array if there is no value. */
+    public synchronized byte[] get(String key) {
+        byte[] bytes = values.get(key);
+        return ( bytes == null ) ? new byte[0] : bytes;
+    }
+
+    /** Set the value for a key. Returns when the value is on disk. */
+    public void put(String key, byte[] bytes) {
+        long seq;
+        synchronized(this) {
+            seq = append(key, bytes);
+        }
+        sync(seq);
+    }
+
+    private synchronized long appendedSeq() {
+        return appendedSeq;
+    }
+
+    // Called holding the journal lock.
+    private long append(String key, byte[] bytes) {
+        byte[] record = record(key, bytes);
+        byte[] previous = values.put(key, bytes);
+        if ( previous != null )
+            liveBytes -= recordHeader + 2 + key.getBytes(StandardCharsets.UTF_8).length + previous.length;
+        liveBytes += record.length;
+        buffer.writeBytes(record);
+        return ++appendedSeq;
+    }
+
+    /**
+     * Write and force records up to {@code seq}, unless another thread already has.
+     * The records stay in the buffer until they are on disk; if the write fails,
+     * the next sync writes them again, over any part-written record.
+     */
+    private void sync(long seq) {
+        synchronized(syncLock) {
+            byte[] bytes;
+            long upTo;
+            synchronized(this) {
+                if ( syncedSeq >= seq )
+                    return;
+                bytes = buffer.toByteArray();
+                upTo = appendedSeq;
+            }
+            try {
+                ByteBuffer bb = ByteBuffer.wrap(bytes);
+                while ( bb.hasRemaining() )
+                    channel.write(bb, fileEnd+bb.position());
+                channel.force(false);
+            } catch (IOException ex) {
+                throw new JenaKafkaException("Failed to write state journal: "+path, ex);
+            }
+            synchronized(this) {
+                fileEnd += bytes.length;
+                // Keep any records appended during the write.
+                byte[] all = buffer.toByteArray();
+                buffer.reset();
+                buffer.write(all, bytes.length, all.length-bytes.length);
+                syncedSeq = upTo;
+            }
+            maybeCompact();
+        }
+    }
+
+    // Called holding the sync lock.
+    private void maybeCompact() {
+        try {
+            synchronized(this) {
+                long size = fileEnd;
+                if ( size < compactBytes || size < 2 * liveBytes || buffer.size() > 0 )
+                    return;
+                compact();
+            }
+        } catch (IOException ex) {
+            FmtLog.warn(LOG, ex, "Failed to compact state journal %s", path);
+        }
+    }
+
+    // Called holding both locks.
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName()+".tmp");
+        try ( FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE) ) {
+            for ( Map.Entry<String, byte[]> e : values.entrySet() ) {
+                ByteBuffer bb = ByteBuffer.wrap(record(e.getKey(), e.getValue()));
+                while ( bb.hasRemaining() )
+                    out.write(bb);
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        liveBytes = channel.size();
+        fileEnd = liveBytes;
+        FmtLog.debug(LOG, "Compacted state journal %s: %d bytes", path, liveBytes);
+    }
+
+    private static byte[] record(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(2+keyBytes.length+value.length);
+        try ( DataOutputStream out = new DataOutputStream(body) ) {
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.write(value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        ByteBuffer record = ByteBuffer.allocate(recordHeader+bodyBytes.length);
+        record.putInt(bodyBytes.length);
+        record.putInt((int)crc.getValue());
+        record.put(bodyBytes);
+        return record.array();
+    }
+
+    /** Read the records, keeping the last value for each key. Truncate any damaged end. */
+    private void recover() throws IOException {
+        long size = channel.size();
+        ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(size));
+        while ( bytes.hasRemaining() ) {
+            if ( channel.read(bytes, bytes.position()) < 0 )
+                break;
+        }
+        bytes.flip();
+        long validEnd = 0;
+        while ( bytes.remaining() >= recordHeader ) {
+            int length = bytes.getInt();
+            int crcValue = bytes.getInt();
+            if ( length < 2 || length > bytes.remaining() )
+                break;
+            byte[] body = new byte[length];
+            bytes.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ( (int)crc.getValue() != crcValue )
+                break;
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            int keyLength = bodyBuffer.getShort() & 0xFFFF;
+            if ( keyLength > length-2 )
+                break;
+            String key = new String(body, 2, keyLength, StandardCharsets.UTF_8);
+            byte[] value = new byte[length-2-keyLength];
+            System.arraycopy(body, 2+keyLength, value, 0, value.length);
+            byte[] previous = values.put(key, value);
+            if ( previous != null )
+                liveBytes -= recordHeader + 2 + keyLength + previous.length;
+            liveBytes += recordHeader + length;
+            validEnd = bytes.position();
+        }
+        if ( validEnd < size ) {
+            FmtLog.warn(LOG, "State journal %s: damaged record at %d - truncated", path, validEnd);
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        fileEnd = validEnd;
+    }
+
+    private synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            FmtLog.warn(LOG, ex, "Failed to close state journal %s", path);
+        }
+    }
+}
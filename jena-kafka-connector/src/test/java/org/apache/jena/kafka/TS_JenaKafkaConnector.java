@@ -0,0 +1,35 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka;
+
+import org.apache.jena.kafka.common.TestDataState;
+import org.apache.jena.kafka.common.TestParseFK;
+import org.apache.jena.kafka.common.TestStateJournal;
+import org.junit.platform.suite.api.SelectClasses;
+import org.junit.platform.suite.api.Suite;
+
+
+@Suite
+@SelectClasses({
+    TestContentEncodingFK.class
+    , TestDeserializerActionFK.class
+    , TestDataState.class
+    , TestStateJournal.class
+    , TestParseFK.class
+})
+
+public class TS_JenaKafkaConnector {}
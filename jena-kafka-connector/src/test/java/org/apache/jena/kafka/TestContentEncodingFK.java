@@ -0,0 +1,83 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/** Compressed message bodies. */
+public class TestContentEncodingFK {
+
+    private static byte[] body = "<x:s> <x:p> \"Some text, some text, some text, some text.\" .\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test public void encoding_round_trip() throws IOException {
+        for ( String encoding : new String[] {ContentEncodingFK.GZIP, ContentEncodingFK.DEFLATE, ContentEncodingFK.ZSTD, ContentEncodingFK.LZ4} ) {
+            assertTrue(ContentEncodingFK.isSupported(encoding));
+            assertTrue(ContentEncodingFK.isCompressed(encoding));
+            byte[] bytes = ContentEncodingFK.encode(encoding, body);
+            assertTrue(bytes.length < body.length, encoding);
+            try ( InputStream in = ContentEncodingFK.decode(encoding, ByteBuffer.wrap(bytes)) ) {
+                assertArrayEquals(body, in.readAllBytes(), encoding);
+            }
+        }
+    }
+
+    @Test public void encoding_slice() throws IOException {
+        // The body is part of a larger buffer.
+        byte[] bytes = ContentEncodingFK.encode(ContentEncodingFK.ZSTD, body);
+        byte[] buffer = new byte[bytes.length+20];
+        System.arraycopy(bytes, 0, buffer, 10, bytes.length);
+        try ( InputStream in = ContentEncodingFK.decode(ContentEncodingFK.ZSTD, ByteBuffer.wrap(buffer, 10, bytes.length).slice()) ) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+
+    @Test public void encoding_name() throws IOException {
+        // Case and spaces do not matter.
+        byte[] bytes = ContentEncodingFK.encode(" GZIP ", body);
+        try ( InputStream in = ContentEncodingFK.decode("gzip", ByteBuffer.wrap(bytes)) ) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+
+    @Test public void encoding_identity() throws IOException {
+        assertTrue(ContentEncodingFK.isSupported(null));
+        assertFalse(ContentEncodingFK.isCompressed(null));
+        assertFalse(ContentEncodingFK.isCompressed(ContentEncodingFK.IDENTITY));
+        assertSame(body, ContentEncodingFK.encode(null, body));
+        assertSame(body, ContentEncodingFK.encode(ContentEncodingFK.IDENTITY, body));
+        try ( InputStream in = ContentEncodingFK.decode(ContentEncodingFK.IDENTITY, ByteBuffer.wrap(body)) ) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+
+    @Test public void encoding_unsupported() {
+        assertFalse(ContentEncodingFK.isSupported("br"));
+        assertThrows(JenaKafkaException.class, ()->ContentEncodingFK.encode("br", body));
+        assertThrows(JenaKafkaException.class, ()->ContentEncodingFK.decode("br", ByteBuffer.wrap(body)));
+    }
+}
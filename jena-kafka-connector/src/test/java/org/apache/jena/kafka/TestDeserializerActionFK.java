@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+/** Deserializing Kafka records to requests ({@link DeserializerActionFK}). */
+public class TestDeserializerActionFK {
+    static { JenaSystem.init(); }
+
+    private static String TOPIC = "TEST";
+
+    @Test public void deserialize_slice() {
+        // A large body in the middle of a larger buffer, as Kafka delivers it.
+        byte[] body = nquads(DeserializerActionFK.sliceMinBytes);
+        byte[] buffer = new byte[body.length+20];
+        System.arraycopy(body, 0, buffer, 10, body.length);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 10, body.length);
+
+        RequestFK request = new DeserializerActionFK().deserialize(TOPIC, headers(), byteBuffer);
+        assertSame(WebContent.contentTypeNQuads, request.getContentType());
+        assertEquals(body.length, request.getByteCount());
+        assertEquals(Integer.toString(body.length), request.getHeaders().get(HttpNames.hContentLength));
+        assertEquals(count(body), count(request));
+
+        // Not a copy: changing the buffer changes the request body.
+        Arrays.fill(buffer, (byte)' ');
+        assertEquals(0, count(request));
+    }
+
+    @Test public void deserialize_copy() {
+        // A small body is copied: changing the buffer afterwards makes no difference.
+        byte[] body = nquads(100);
+        RequestFK request = new DeserializerActionFK().deserialize(TOPIC, headers(), ByteBuffer.wrap(body));
+        assertEquals(body.length, request.getByteCount());
+        long expected = count(body);
+        Arrays.fill(body, (byte)' ');
+        assertEquals(expected, count(request));
+    }
+
+    @Test public void deserialize_default_content_type() {
+        RequestFK request = new DeserializerActionFK().deserialize(TOPIC, new RecordHeaders(), nquads(100));
+        assertEquals(WebContent.contentTypeNQuads, request.getContentType());
+    }
+
+    private static RecordHeaders headers() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(HttpNames.hContentType, WebContent.contentTypeNQuads.getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    /** N-Quads of at least {@code size} bytes. */
+    private static byte[] nquads(int size) {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; sb.length() < size ; i++ )
+            sb.append("<x:s> <x:p> \"").append(i).append("\" <x:g> .\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long count(byte[] body) {
+        return count(new RequestFK(TOPIC, Map.of(HttpNames.hContentType, WebContent.contentTypeNQuads), body));
+    }
+
+    private static long count(RequestFK request) {
+        DatasetGraph dsg = DatasetGraphFactory.create();
+        RDFParser.source(request.getInputStream()).lang(Lang.NQUADS).parse(dsg);
+        return dsg.stream().count();
+    }
+}
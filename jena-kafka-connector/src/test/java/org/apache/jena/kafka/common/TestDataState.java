@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.apache.jena.kafka.JenaKafkaException;
+import org.apache.jena.kafka.refs.RefBytes;
+import org.junit.jupiter.api.Test;
+
+/** Saving and restoring the connector state, and when it is written. */
+public class TestDataState {
+
+    private static String TOPIC = "TEST";
+
+    @Test public void state_write_every_offset() throws IOException {
+        Path stateFile = Files.createTempFile("fk-state", ".json");
+        try {
+            DataState dataState = DataState.restoreOrCreate(new PersistentState(stateFile), "/ds", "", TOPIC);
+            assertFalse(dataState.hasCheckpointPolicy());
+            dataState.setLastOffset(5);
+            assertEquals(5, readState(stateFile).getLastOffset());
+            dataState.setLastOffset(6);
+            assertEquals(6, readState(stateFile).getLastOffset());
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    @Test public void state_restore() throws IOException {
+        Path stateFile = Files.createTempFile("fk-state", ".json");
+        try {
+            DataState dataState = DataState.restoreOrCreate(new PersistentState(stateFile), "/ds", "", TOPIC);
+            dataState.setLastOffset(0, 10);
+            dataState.setLastOffset(2, 20);
+            DataState dataState2 = DataState.restoreOrCreate(new PersistentState(stateFile), "/ds", "", TOPIC);
+            assertEquals(10, dataState2.getLastOffset());
+            assertEquals(20, dataState2.getLastOffset(2));
+            assertEquals(Map.of(0, 10L, 2, 20L), dataState2.getPartitionOffsets());
+            // Not the same connector.
+            assertThrows(JenaKafkaException.class, ()->DataState.restoreOrCreate(new PersistentState(stateFile), "/other", "", TOPIC));
+            assertThrows(JenaKafkaException.class, ()->DataState.restoreOrCreate(new PersistentState(stateFile), "/ds", "", "OTHER"));
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    @Test public void state_checkpoint_offsets() throws IOException {
+        Path stateFile = Files.createTempFile("fk-state", ".json");
+        try {
+            DataState dataState = DataState.restoreOrCreate(new PersistentState(stateFile), "/ds", "", TOPIC);
+            dataState.setCheckpointPolicy(-1, 10);
+            for ( long offset = 0 ; offset < 9 ; offset++ )
+                dataState.setLastOffset(offset);
+            // Not written yet.
+            assertEquals(0, Files.size(stateFile));
+            dataState.setLastOffset(9);
+            assertEquals(9, readState(stateFile).getLastOffset());
+            dataState.setLastOffset(10);
+            assertEquals(9, readState(stateFile).getLastOffset());
+            dataState.flush();
+            assertEquals(10, readState(stateFile).getLastOffset());
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    @Test public void state_checkpoint_millis() throws IOException, InterruptedException {
+        Path stateFile = Files.createTempFile("fk-state", ".json");
+        try {
+            DataState dataState = DataState.restoreOrCreate(new PersistentState(stateFile), "/ds", "", TOPIC);
+            dataState.setCheckpointPolicy(50, -1);
+            assertTrue(dataState.hasCheckpointPolicy());
+            dataState.setLastOffset(1);
+            dataState.checkpoint();
+            // Not written yet.
+            assertEquals(0, Files.size(stateFile));
+            Thread.sleep(100);
+            dataState.checkpoint();
+            assertEquals(1, readState(stateFile).getLastOffset());
+            // No change: not written again.
+            Files.write(stateFile, new byte[0]);
+            Thread.sleep(100);
+            dataState.checkpoint();
+            dataState.flush();
+            assertEquals(0, Files.size(stateFile));
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    @Test public void state_write_fails() throws IOException {
+        Path stateFile = Files.createTempFile("fk-state", ".json");
+        try {
+            PersistentState persistentState = new PersistentState(stateFile);
+            boolean[] fail = { false };
+            RefBytes failing = new RefBytes() {
+                @Override public byte[] getBytes() { return persistentState.getBytes(); }
+                @Override public void setBytes(byte[] bytes) {
+                    if ( fail[0] )
+                        throw new JenaKafkaException("Write failed");
+                    persistentState.setBytes(bytes);
+                }
+            };
+            DataState dataState = DataState.restoreOrCreate(failing, "/ds", "", TOPIC);
+            dataState.setCheckpointPolicy(-1, 10);
+            dataState.setLastOffset(3);
+            fail[0] = true;
+            assertThrows(JenaKafkaException.class, ()->dataState.flush());
+            fail[0] = false;
+            // Still to be written.
+            dataState.flush();
+            assertEquals(3, readState(stateFile).getLastOffset());
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    private static DataState readState(Path stateFile) {
+        return DataState.create(new PersistentState(stateFile));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.kafka.JK;
+import org.apache.jena.rdfpatch.RDFPatch;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.junit.jupiter.api.Test;
+
+/** Parsing message bodies, in particular the binary encodings. */
+public class TestParseFK {
+    static { JenaSystem.init(); }
+
+    private static String data = """
+        <x:s> <x:p> "abc" .
+        <x:s> <x:p> _:b <x:g> .
+        _:b <x:q> "1"^^<http://www.w3.org/2001/XMLSchema#integer> <x:g> .
+        """;
+
+    private static String patch = """
+        TX .
+        A <x:s> <x:p> "abc" .
+        A <x:s> <x:q> 1 <x:g> .
+        D <x:s> <x:p> "abc" .
+        TC .
+        """;
+
+    @Test public void parse_thrift() {
+        parseBinary(Lang.RDFTHRIFT, RDFFormat.RDF_THRIFT);
+    }
+
+    @Test public void parse_protobuf() {
+        parseBinary(Lang.RDFPROTO, RDFFormat.RDF_PROTO);
+    }
+
+    @Test public void parse_text() {
+        DatasetGraph dsg = DatasetGraphFactory.create();
+        ParseFK.parse(Lang.NQUADS, new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), StreamRDFLib.dataset(dsg));
+        assertEquals(3, dsg.stream().count());
+    }
+
+    @Test public void binary_content_types() {
+        assertTrue(JK.isBinaryRDF(WebContent.contentTypeRDFThrift));
+        assertTrue(JK.isBinaryRDF(WebContent.contentTypeRDFProto));
+        assertTrue(JK.isBinaryRDF(WebContent.contentTypePatchThrift));
+        assertFalse(JK.isBinaryRDF(WebContent.contentTypeNQuads));
+        assertFalse(JK.isBinaryRDF(WebContent.contentTypePatch));
+    }
+
+    private static void parseBinary(Lang lang, RDFFormat format) {
+        DatasetGraph expected = DatasetGraphFactory.create();
+        RDFParser.fromString(data, Lang.NQUADS).parse(expected);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StreamRDF writer = StreamRDFWriter.getWriterStream(bytes, format);
+        writer.start();
+        expected.find().forEachRemaining(writer::quad);
+        writer.finish();
+
+        DatasetGraph dsg = DatasetGraphFactory.create();
+        ParseFK.parse(lang, new ByteArrayInputStream(bytes.toByteArray()), StreamRDFLib.dataset(dsg));
+        assertEquals(3, dsg.stream().count());
+        assertTrue(dsg.getDefaultGraph().contains(NodeFactory.createURI("x:s"), NodeFactory.createURI("x:p"), NodeFactory.createLiteralString("abc")));
+    }
+
+    @Test public void read_patch() {
+        RDFPatch expected = RDFPatchOps.read(new ByteArrayInputStream(patch.getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RDFPatchOps.writeBinary(bytes, expected);
+        assertTrue(ParseFK.isPatch(WebContent.contentTypePatchThrift));
+        RDFPatch binary = ParseFK.readPatch(WebContent.contentTypePatchThrift, new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertTrue(ParseFK.isPatch(WebContent.contentTypePatch));
+        RDFPatch text = ParseFK.readPatch(WebContent.contentTypePatch, new ByteArrayInputStream(patch.getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(ParseFK.isPatch(WebContent.contentTypeNQuads));
+        for ( RDFPatch p : new RDFPatch[] {binary, text} ) {
+            DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+            RDFPatchOps.applyChange(dsg, p);
+            assertEquals(1, dsg.stream().count());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.jena.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.jena.kafka.refs.RefBytes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** The state of several connectors in one append-only file. */
+public class TestStateJournal {
+
+    private static String TOPIC = "TEST";
+
+    private Path dir;
+    private Path journalFile;
+
+    @BeforeEach public void before() throws IOException {
+        dir = Files.createTempDirectory("fk-journal");
+        journalFile = dir.resolve("state.journal");
+    }
+
+    @AfterEach public void after() throws IOException {
+        StateJournal.closeAll();
+        try ( var files = Files.list(dir) ) {
+            for ( Path path : files.toList() )
+                Files.deleteIfExists(path);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Test public void state_journal() throws IOException {
+        Path stateFile1 = dir.resolve("state1.json");
+        Path stateFile2 = dir.resolve("state2.json");
+        // An existing state file, migrated into the journal.
+        DataState existing = DataState.restoreOrCreate(new PersistentState(stateFile1), "/ds1", "", TOPIC);
+        existing.setLastOffset(41);
+
+        StateJournal journal = StateJournal.open(journalFile.toString());
+        DataState dataState1 = DataState.restoreOrCreate(journal.entry("1", stateFile1), "/ds1", "", TOPIC);
+        DataState dataState2 = DataState.restoreOrCreate(journal.entry("2", stateFile2), "/ds2", "", TOPIC);
+        assertEquals(41, dataState1.getLastOffset());
+        assertEquals(-1, dataState2.getLastOffset());
+        // The migrated file is renamed.
+        assertFalse(Files.exists(stateFile1));
+        assertTrue(Files.exists(dir.resolve("state1.json.migrated")));
+        dataState1.setLastOffset(42);
+        dataState2.setLastOffset(7);
+        dataState2.setLastOffset(8);
+        StateJournal.release(journalFile.toString());
+
+        // A partly written record at the end is ignored.
+        Files.write(journalFile, new byte[] {0, 0, 0, 99, 1, 2}, StandardOpenOption.APPEND);
+        journal = StateJournal.open(journalFile.toString());
+        assertEquals(42, DataState.restoreOrCreate(journal.entry("1", null), "/ds1", "", TOPIC).getLastOffset());
+        assertEquals(8, DataState.restoreOrCreate(journal.entry("2", null), "/ds2", "", TOPIC).getLastOffset());
+    }
+
+    @Test public void journal_shared() {
+        StateJournal journal1 = StateJournal.open(journalFile.toString());
+        StateJournal journal2 = StateJournal.open(dir.resolve(".").resolve("state.journal").toString());
+        assertSame(journal1, journal2);
+        RefBytes entry = journal1.entry("key", null);
+        assertEquals(0, entry.getBytes().length);
+        entry.setBytes(bytes("value"));
+        assertArrayEquals(bytes("value"), journal2.get("key"));
+        // Still in use.
+        StateJournal.release(journalFile.toString());
+        assertSame(journal1, StateJournal.open(journalFile.toString()));
+        StateJournal.release(journalFile.toString());
+        StateJournal.release(journalFile.toString());
+        // Closed, then read from the file.
+        StateJournal journal3 = StateJournal.open(journalFile.toString());
+        assertNotSame(journal1, journal3);
+        assertArrayEquals(bytes("value"), journal3.get("key"));
+    }
+
+    @Test public void journal_compact() throws IOException {
+        long compactBytes = StateJournal.compactBytes;
+        try {
+            StateJournal.compactBytes = 1000;
+            StateJournal journal = StateJournal.open(journalFile.toString());
+            for ( int i = 0 ; i < 200 ; i++ ) {
+                journal.put("a", bytes("value-a-"+i));
+                journal.put("b", bytes("value-b-"+i));
+            }
+            // Rewritten with the current values only, well before 400 records.
+            assertTrue(Files.size(journalFile) < 1000);
+            StateJournal.release(journalFile.toString());
+            journal = StateJournal.open(journalFile.toString());
+            assertArrayEquals(bytes("value-a-199"), journal.get("a"));
+            assertArrayEquals(bytes("value-b-199"), journal.get("b"));
+            assertEquals(0, journal.get("c").length);
+        } finally {
+            StateJournal.compactBytes = compactBytes;
+        }
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}